@@ -25,6 +25,22 @@ android {
             )
         }
     }
+    buildFeatures {
+        // BuildConfig.DEBUG gates debug logging, see AppLog
+        buildConfig = true
+    }
+    testOptions {
+        unitTests {
+            // Robolectric needs the merged resources and manifest
+            isIncludeAndroidResources = true
+            all {
+                // forward -Dbmail.* so MailSyncBenchmarkTest can be sized from the command line
+                System.getProperties().stringPropertyNames()
+                    .filter { it.startsWith("bmail.") }
+                    .forEach { systemProperty(it, System.getProperty(it)) }
+            }
+        }
+    }
     compileOptions {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
@@ -32,6 +48,7 @@ android {
 }
 
 dependencies {
+    implementation(project(":core"))
     implementation(libs.socket.io)
     implementation(libs.appcompat)
     implementation(libs.material)
@@ -42,6 +59,11 @@ dependencies {
     implementation(libs.room.runtime.android)
     annotationProcessor(libs.androidx.room.compiler)
     testImplementation(libs.junit)
+    testImplementation(libs.robolectric)
+    testImplementation(libs.mockwebserver)
+    testImplementation(libs.core.testing)
+    testImplementation(libs.test.core)
+    testImplementation(testFixtures(project(":core")))
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
 }
\ No newline at end of file
@@ -1,31 +1,41 @@
 package com.example.bmail.Activities;
 
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.widget.EditText;
 import android.widget.ImageButton;
+import android.widget.MultiAutoCompleteTextView;
+import android.widget.Toast;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
+import androidx.lifecycle.ViewModelProvider;
 
+import com.example.bmail.Adapters.RecipientSuggestionAdapter;
 import com.example.bmail.Entities.BmailApplication;
+import com.example.bmail.Entities.Draft;
 import com.example.bmail.Entities.ServerMail;
 import com.example.bmail.R;
 import com.example.bmail.Repositories.MailRepository;
 import com.example.bmail.Utils.CallbackUtil;
 import com.example.bmail.ViewModels.ComposeViewModel;
+import com.example.bmail.core.QuoteBuilder;
 
 public class ComposeActivity extends AppCompatActivity {
+    // id of the mail to reply to or forward, see EXTRA_MODE
+    public static final String EXTRA_SOURCE_MAIL_ID = "source_mail_id";
+    // a QuoteBuilder.Mode name
+    public static final String EXTRA_MODE = "compose_mode";
 
-    private EditText etTo;
+    private MultiAutoCompleteTextView etTo;
     private EditText etSubject;
     private EditText etMessage;
     private ImageButton btnSend;
     private ComposeViewModel viewModel;
 
-    // Flag to store if the mail is a draft
-    private String draftId = null;
-
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -36,8 +46,11 @@ public class ComposeActivity extends AppCompatActivity {
 
         initViews();
 
-        loadMailIfEditing();
         setupViewModel();
+        // a recreated screen restores what was typed, the draft is kept by the ViewModel
+        if (savedInstanceState == null) {
+            loadMailIfEditing();
+        }
         setupListeners();
     }
 
@@ -66,23 +79,78 @@ public class ComposeActivity extends AppCompatActivity {
             if (mail != null) {
                 // Log the mail for debugging
                 Log.d("ComposeActivity", "Editing mail: " + mail);
-
-                etTo.setText(String.join(", ", mail.getTo()));
-                etSubject.setText(mail.getTitle());
-                etMessage.setText(mail.getBody());
-                draftId = mail.getId();
+                viewModel.openDraft(mail, this::showDraft);
+            }
+            // the list only holds a snippet, fetch the full draft body
+            if (mail == null || mail.getBody() == null) {
+                loadDraftBody(mailRepository, mailId);
             }
             return;
         }
 
         // If we are not editing a mail, check if we are forwarding or replying to a mail
-        String to = getIntent().getStringExtra("to");
-        String subject = getIntent().getStringExtra("subject");
-        String body = getIntent().getStringExtra("body");
+        String sourceMailId = getIntent().getStringExtra(EXTRA_SOURCE_MAIL_ID);
+        String mode = getIntent().getStringExtra(EXTRA_MODE);
+        if (sourceMailId != null && mode != null) {
+            viewModel.prepareResponse(sourceMailId, QuoteBuilder.Mode.valueOf(mode), response -> {
+                if (!response.getTo().isEmpty()) etTo.setText(response.getTo().get(0));
+                etSubject.setText(response.getTitle());
+                etMessage.setText(response.getBody());
+                // the answer is typed above the quote
+                etMessage.setSelection(0);
+                saveFields();
+            });
+        }
+    }
+
+    /**
+     * @brief Fetches the full draft from the server and fills the fields with it.
+     * @param mailRepository The repository to fetch the draft from.
+     * @param mailId The ID of the draft.
+     */
+    private void loadDraftBody(@NonNull MailRepository mailRepository, String mailId) {
+        mailRepository.fetchMail(mailId, new retrofit2.Callback<>() {
+            @Override
+            public void onResponse(@NonNull retrofit2.Call<ServerMail> call,
+                                   @NonNull retrofit2.Response<ServerMail> response) {
+                ServerMail mail = response.body();
+                if (!response.isSuccessful() || mail == null) {
+                    Log.e("ComposeActivity", "Failed to load draft: " + response.message());
+                    return;
+                }
+                viewModel.openDraft(mail, ComposeActivity.this::showDraft);
+            }
+
+            @Override
+            public void onFailure(@NonNull retrofit2.Call<ServerMail> call, @NonNull Throwable t) {
+                Log.e("ComposeActivity", "Network error while loading draft", t);
+            }
+        });
+    }
+
+    /**
+     * @brief Fills the fields with an opened draft, which may hold unsynced local edits.
+     * @param draft The draft to show.
+     */
+    private void showDraft(@NonNull Draft draft) {
+        setIfChanged(etTo, draft.getTo());
+        setIfChanged(etSubject, draft.getTitle());
+        setIfChanged(etMessage, draft.getBody());
+    }
+
+    private static void setIfChanged(@NonNull EditText field, @NonNull String value) {
+        if (!field.getText().toString().trim().equals(value)) {
+            field.setText(value);
+        }
+    }
 
-        if (to != null) etTo.setText(to);
-        if (subject != null) etSubject.setText(subject);
-        if (body != null) etMessage.setText(body);
+    /**
+     * @brief Stores the current fields as the local draft.
+     */
+    private void saveFields() {
+        viewModel.onFieldsChanged(etTo.getText().toString().trim(),
+                etSubject.getText().toString().trim(),
+                etMessage.getText().toString().trim());
     }
 
     /**
@@ -90,7 +158,7 @@ public class ComposeActivity extends AppCompatActivity {
      * This method initializes the ComposeViewModel using a factory that provides the MailRepository.
      */
     private void setupViewModel() {
-        viewModel = new ComposeViewModel();
+        viewModel = new ViewModelProvider(this).get(ComposeViewModel.class);
     }
 
     /**
@@ -99,11 +167,33 @@ public class ComposeActivity extends AppCompatActivity {
      */
     private void setupListeners() {
         btnSend.setOnClickListener(v -> sendMail());
+
+        // suggest addresses from the mailbox for the recipient after the last comma
+        etTo.setTokenizer(new MultiAutoCompleteTextView.CommaTokenizer());
+        etTo.setAdapter(new RecipientSuggestionAdapter(this, viewModel::suggestRecipients));
+
+        // every edit is stored locally right away, the server is updated in the background
+        TextWatcher draftWatcher = new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                saveFields();
+            }
+        };
+        etTo.addTextChangedListener(draftWatcher);
+        etSubject.addTextChangedListener(draftWatcher);
+        etMessage.addTextChangedListener(draftWatcher);
     }
 
     /**
-     * @brief Sends the mail or updates the draft based on the current state.
-     * If the mail is a draft, it updates the draft; otherwise, it sends the mail.
+     * @brief Sends the mail, or the draft being edited as a mail.
      * If no recipient is provided, it shows an error dialog.
      */
     private void sendMail() {
@@ -121,66 +211,31 @@ public class ComposeActivity extends AppCompatActivity {
         String subject = etSubject.getText().toString().trim();
         String message = etMessage.getText().toString().trim();
 
-        // log the draft id for debugging
-        Log.d("ComposeActivity", "Draft ID: " + this.draftId);
-
-        // If it's a draft, send the draft
-        if (this.draftId != null && !this.draftId.isEmpty()) {
-            CallbackUtil callback = new CallbackUtil(
-                    "sent",
-                    "Failed to update draft: ",
-                    true,
-                    this,
-                    "ComposeActivity"
-            );
-            viewModel.updateDraft(to, subject, message, this.draftId, false, callback);
-        } else {
-            // If it's not a draft, send the mail
-            Log.i("ComposeActivity", "Sending mail with subject: " + subject);
-            CallbackUtil callback = new CallbackUtil(
-                    "sent",
-                    "Failed to send mail: ",
-                    true,
-                    this,
-                    "ComposeActivity"
-            );
-            viewModel.sendMail(to, subject, message, callback);
-        }
+        Log.i("ComposeActivity", "Sending mail with subject: " + subject);
+        CallbackUtil callback = new CallbackUtil(
+                "sent",
+                "Failed to send mail: ",
+                true,
+                this,
+                "ComposeActivity"
+        );
+        viewModel.sendMail(to, subject, message, callback);
     }
 
     /**
      * @brief Handles the back navigation in this activity.
-     * When the user presses the back button, it saves the draft if there is any content
-     * in the subject or message fields.
-     * If the draft ID is not empty, it updates the existing draft; otherwise, it creates a new draft.
+     * The draft is already stored on the device, leaving the screen syncs it to the
+     * server right away.
      */
     @Override
     public boolean onSupportNavigateUp() {
-        String to = etTo.getText().toString().trim();
         String subject = etSubject.getText().toString().trim();
         String message = etMessage.getText().toString().trim();
 
-        // save draft
+        saveFields();
+        viewModel.closeDraft();
         if (!subject.isEmpty() || !message.isEmpty()) {
-            if (this.draftId != null && !this.draftId.isEmpty()) {
-                CallbackUtil callback = new CallbackUtil(
-                        "Message saved as draft.",
-                        "Failed to update draft: ",
-                        false,
-                        this,
-                        "ComposeActivity"
-                );
-                viewModel.updateDraft(to, subject, message, this.draftId, true, callback);
-            } else {
-                CallbackUtil callback = new CallbackUtil(
-                        "Message saved as draft.",
-                        "Failed to create draft: ",
-                        false,
-                        this,
-                        "ComposeActivity"
-                );
-                viewModel.createDraft(to, subject, message, callback);
-            }
+            Toast.makeText(this, "Message saved as draft.", Toast.LENGTH_SHORT).show();
         }
         finish();
         return true;
@@ -5,13 +5,13 @@ import android.os.Bundle;
 import android.util.Log;
 import android.widget.Button;
 import android.widget.EditText;
-import android.content.Context;
-import android.content.SharedPreferences;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.bmail.Api.SignupApi;
+import com.example.bmail.Api.TokenHolder;
+import com.example.bmail.Repositories.SessionBootstrap;
 import com.example.bmail.ViewModels.LoginViewModel;
 import com.example.bmail.R;
 import com.google.android.material.textfield.TextInputLayout;
@@ -24,16 +24,10 @@ public class LoginActivity extends AppCompatActivity implements SignupApi.callba
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_login);
-
-        // Initialize EditText fields
-        usernameET = findViewById(R.id.username);
-        passwordEt = findViewById(R.id.password);
 
         // Check for existing token
-        SharedPreferences prefs = getSharedPreferences("user_prefs", Context.MODE_PRIVATE);
-        String token = prefs.getString("auth_token", null);
-        // if token is not null, redirect to MailActivity
+        String token = TokenHolder.getInstance(this).getToken();
+        // if token is not null, redirect to MailActivity without inflating the login form
         if (token != null) {
             Intent intent = new Intent(this, MainActivity.class);
             startActivity(intent);
@@ -41,6 +35,12 @@ public class LoginActivity extends AppCompatActivity implements SignupApi.callba
             return;
         }
 
+        setContentView(R.layout.activity_login);
+
+        // Initialize EditText fields
+        usernameET = findViewById(R.id.username);
+        passwordEt = findViewById(R.id.password);
+
         SignupApi userApi = new SignupApi(this);
 
         // Initialize ViewModel with Repository
@@ -78,7 +78,6 @@ public class LoginActivity extends AppCompatActivity implements SignupApi.callba
         }
 
         Log.i("LoginActivity", "The username is: " + username);
-        Log.i("LoginActivity", "The password is: " + password);
 
         // Use ViewModel for login
         loginViewModel.login(username, password, this);
@@ -86,9 +85,12 @@ public class LoginActivity extends AppCompatActivity implements SignupApi.callba
 
     @Override
     public void onSuccess(String msg) {
-        Log.i("LoginActivity", "Login successful. Token: " + msg);
-        runOnUiThread(() -> {
-            // Navigate to MainActivity on successful login
+        Log.i("LoginActivity", "Login successful: " + msg);
+        // Navigate to MainActivity once its labels, profile and inbox are prefetched
+        SessionBootstrap.whenReady(() -> {
+            if (isFinishing() || isDestroyed()) {
+                return;
+            }
             Intent intent = new Intent(LoginActivity.this, MainActivity.class);
             startActivity(intent);
             finish(); // Close LoginActivity
@@ -20,15 +20,14 @@ import com.example.bmail.Entities.Label;
 import com.example.bmail.Entities.ServerMail;
 import com.example.bmail.R;
 import com.example.bmail.ViewModels.MailContentViewModel;
+import com.example.bmail.core.QuoteBuilder;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
 
 public class MailContentActivity extends AppCompatActivity {
     private MailContentViewModel viewModel;
@@ -250,54 +249,25 @@ public class MailContentActivity extends AppCompatActivity {
      * @brief Handles reply and reply all functionality
      */
     private void handleReply(@NonNull ServerMail mail, boolean replyAll) {
-        Intent intent = new Intent(this, ComposeActivity.class);
-
-        // Create a set to ensure no duplicate emails
-        Set<String> recipientSet = new HashSet<>();
-
-        // Add original sender
-        recipientSet.add(mail.getFrom());
-
-        // For reply all, add all original recipients
-        if (replyAll && !mail.getTo().isEmpty()) {
-            recipientSet.addAll(mail.getTo());
-        }
-
-        // Convert set to comma-separated string
-        String recipients = String.join(", ", recipientSet);
-
-        intent.putExtra("to", recipients);
-        intent.putExtra("subject", "Re: " + mail.getTitle());
-
-        // Create quoted reply format
-        String replyBody = "\n\n---------- Original Message ----------\n";
-        replyBody += "From: " + mail.getFrom() + "\n";
-        replyBody += "Subject: " + mail.getTitle() + "\n";
-        replyBody += "To: " + String.join(", ", mail.getTo()) + "\n\n";
-        replyBody += mail.getBody();
-
-        intent.putExtra("body", replyBody);
-
-        startActivity(intent);
+        openCompose(mail, replyAll ? QuoteBuilder.Mode.REPLY_ALL : QuoteBuilder.Mode.REPLY);
     }
 
     /**
      * @brief Handles forward functionality
      */
     private void handleForward(@NonNull ServerMail mail) {
-        Intent intent = new Intent(this, ComposeActivity.class);
-
-        intent.putExtra("subject", "Fwd: " + mail.getTitle());
-
-        // Create forwarded message format
-        String forwardBody = "\n\n---------- Forwarded Message ----------\n";
-        forwardBody += "From: " + mail.getFrom() + "\n";
-        forwardBody += "Subject: " + mail.getTitle() + "\n";
-        forwardBody += "To: " + String.join(", ", mail.getTo()) + "\n\n";
-        forwardBody += mail.getBody();
-
-        intent.putExtra("body", forwardBody);
+        openCompose(mail, QuoteBuilder.Mode.FORWARD);
+    }
 
+    /**
+     * @brief Opens the compose screen for a response to the mail.
+     * Only the mail id travels in the intent, the quote is built from the local store,
+     * so a long thread cannot exceed the size limit of an intent.
+     */
+    private void openCompose(@NonNull ServerMail mail, @NonNull QuoteBuilder.Mode mode) {
+        Intent intent = new Intent(this, ComposeActivity.class);
+        intent.putExtra(ComposeActivity.EXTRA_SOURCE_MAIL_ID, mail.getId());
+        intent.putExtra(ComposeActivity.EXTRA_MODE, mode.name());
         startActivity(intent);
     }
 
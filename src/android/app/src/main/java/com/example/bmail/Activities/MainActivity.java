@@ -1,8 +1,7 @@
 package com.example.bmail.Activities;
 
-import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
 import android.os.Bundle;
 import android.text.Editable;
 import android.text.TextWatcher;
@@ -20,21 +19,32 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.ActionBarDrawerToggle;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.view.ActionMode;
 import androidx.appcompat.widget.Toolbar;
 import androidx.drawerlayout.widget.DrawerLayout;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
+import com.example.bmail.Api.FanOut;
 import com.example.bmail.Entities.Label;
+import com.example.bmail.Entities.LabelCounter;
 import com.example.bmail.Entities.ServerMail;
+import com.example.bmail.Repositories.SessionBootstrap;
 import com.example.bmail.Utils.CallbackUtil;
+import com.example.bmail.Utils.DrawCallbacks;
 import com.example.bmail.ViewModels.MainActivityViewModel;
+import com.example.bmail.Metrics.StartupMilestones;
 import com.example.bmail.R;
 import com.example.bmail.Adapters.MailsAdapter;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.navigation.NavigationView;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 public class MainActivity extends AppCompatActivity {
     // Constants for mail labels
     private static final String LABEL_INBOX = "inbox";
@@ -48,8 +58,16 @@ public class MainActivity extends AppCompatActivity {
     private ImageView btnProfile;
     private EditText searchBar;
     private TextView logout;
+    // shown while mails are selected, null otherwise
+    private ActionMode selectionMode;
+
+    // the ViewModel survived a configuration change and still holds what is shown
+    private boolean retainedState;
 
     private int labelCounter = 9;
+    // label ids keyed by lower-case label name, used to match drawer items to counters
+    private final Map<String, String> labelIdsByName = new HashMap<>();
+    private final Map<String, LabelCounter> labelCounters = new HashMap<>();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -63,9 +81,16 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
-        viewModel.loadUserDetails();
-        viewModel.loadLabels();
-        viewModel.loadMails();
+        if (retainedState) {
+            retainedState = false;
+            return;
+        }
+        // right after login the repositories already hold what the first load would fetch
+        if (SessionBootstrap.consumePrefetched()) {
+            viewModel.markLoaded();
+            return;
+        }
+        viewModel.loadAll();
     }
 
     /**
@@ -106,9 +131,22 @@ public class MainActivity extends AppCompatActivity {
      */
     private void setupRecyclerView() {
         RecyclerView recyclerView = findViewById(R.id.recycler_view);
-        recyclerView.setLayoutManager(new LinearLayoutManager(this));
-        adapter = new MailsAdapter(this, this::showMailContent);
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        recyclerView.setLayoutManager(layoutManager);
+        adapter = new MailsAdapter(this, this::showMailContent, this::onSelectionChanged);
         recyclerView.setAdapter(adapter);
+
+        // fetch older mails before the user reaches the end of the list
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy <= 0) {
+                    return;
+                }
+                int last = layoutManager.findLastVisibleItemPosition();
+                viewModel.onListScrolled(last, adapter.getItemCount(), adapter.getMailIdAt(last));
+            }
+        });
     }
 
     /**
@@ -130,13 +168,28 @@ public class MainActivity extends AppCompatActivity {
      * Updates the adapter when new mails are received.
      */
     private void setupViewModel() {
-        viewModel = new MainActivityViewModel();
-        viewModel.setCurrentLabel(LABEL_INBOX);
+        viewModel = new ViewModelProvider(this).get(MainActivityViewModel.class);
+        retainedState = viewModel.hasLoaded();
+        if (viewModel.getCurrentLabel().isEmpty()) {
+            viewModel.setCurrentLabel(LABEL_INBOX);
+        }
 
+        // the conversations come from the thread index, search results are single mails
+        viewModel.getThreads().observe(this, threads -> {
+            if (threads != null && !viewModel.isSearching()) {
+                adapter.setThreads(threads);
+            }
+        });
         viewModel.getMails().observe(this, mails -> {
             if (mails != null) {
-                adapter.setMails(mails);
+                if (viewModel.isSearching()) {
+                    adapter.setMails(mails);
+                }
                 refreshLayout.setRefreshing(false);
+                if (!mails.isEmpty()) {
+                    DrawCallbacks.afterNextDraw(refreshLayout, () -> StartupMilestones.mark(
+                            StartupMilestones.FIRST_LIST_FRAME));
+                }
             }
         });
 
@@ -158,6 +211,13 @@ public class MainActivity extends AppCompatActivity {
                 btnProfile.setImageResource(R.drawable.ic_person);
             }
         });
+        viewModel.getSessionExpired().observe(this, expired -> {
+            if (Boolean.TRUE.equals(expired)) {
+                Toast.makeText(this, "Session expired, please log in again",
+                        Toast.LENGTH_LONG).show();
+                openLogin();
+            }
+        });
     }
 
     /**
@@ -185,6 +245,14 @@ public class MainActivity extends AppCompatActivity {
 
         logout.setOnClickListener(v -> showLogoutDialog());
 
+        // the request metrics screen is a debugging aid, hide it in release builds
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            TextView metrics = findViewById(R.id.nav_metrics);
+            metrics.setVisibility(View.VISIBLE);
+            metrics.setOnClickListener(v ->
+                    startActivity(new Intent(this, MetricsActivity.class)));
+        }
+
 
     }
 
@@ -218,12 +286,10 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onTextChanged(CharSequence s, int start, int before, int count) {
                 String searchText = s.toString().trim();
-                if (searchText.isEmpty()) {
-                    viewModel.loadMails();
-                } else {
+                if (!searchText.isEmpty()) {
                     Log.i("MailActivity", "Searching for mails with text: " + searchText);
-                    viewModel.searchMail(searchText);
                 }
+                viewModel.onSearchTextChanged(searchText);
             }
 
             @Override
@@ -295,7 +361,67 @@ public class MainActivity extends AppCompatActivity {
                     this.labelCounter++;
                 }
             }
+
+            labelIdsByName.clear();
+            for (Label label : labels) {
+                if (label.getName() != null) {
+                    labelIdsByName.put(label.getName().toLowerCase(), label.getId());
+                }
+            }
+            renderLabelCounters();
         });
+
+        viewModel.getLabelCounters().observe(this, this::onLabelCountersChanged);
+    }
+
+    /**
+     * @brief Stores the latest label counters and refreshes the drawer.
+     * @param counters The counters of every label.
+     */
+    private void onLabelCountersChanged(List<LabelCounter> counters) {
+        labelCounters.clear();
+        if (counters != null) {
+            for (LabelCounter counter : counters) {
+                labelCounters.put(counter.getLabelId(), counter);
+            }
+        }
+        renderLabelCounters();
+    }
+
+    /**
+     * @brief Shows the counter of each label next to its drawer item.
+     * Shows the unread count when there are unread mails, otherwise the total.
+     */
+    private void renderLabelCounters() {
+        Menu menu = navigationView.getMenu();
+        for (int i = 0; i < menu.size(); i++) {
+            MenuItem item = menu.getItem(i);
+            if (item.getItemId() == R.id.nav_labels || item.getTitle() == null) {
+                continue;
+            }
+            String labelId = labelIdsByName.get(item.getTitle().toString().toLowerCase());
+            if (labelId == null) {
+                continue;
+            }
+            if (item.getActionView() == null) {
+                item.setActionView(R.layout.label_counter);
+            }
+            View actionView = item.getActionView();
+            TextView countView = actionView == null ? null :
+                    actionView.findViewById(R.id.label_count);
+            if (countView == null) {
+                continue;
+            }
+
+            LabelCounter counter = labelCounters.get(labelId);
+            if (counter == null || counter.getTotal() <= 0) {
+                countView.setText("");
+            } else if (counter.getUnread() > 0) {
+                countView.setText(String.valueOf(counter.getUnread()));
+            } else {
+                countView.setText(String.valueOf(counter.getTotal()));
+            }
+        }
     }
 
     /**
@@ -402,18 +528,128 @@ public class MainActivity extends AppCompatActivity {
 
     /**
      * @brief Perform the logout operation.
-     * Clears user preferences and redirects to the login activity.
+     * Clears the session and redirects to the login activity.
      */
     private void performLogout() {
-        SharedPreferences preferences = getSharedPreferences("user_prefs", Context.MODE_PRIVATE);
-        preferences.edit().clear().apply();
+        viewModel.logout();
+        openLogin();
+    }
 
+    /**
+     * @brief Replaces the task with the login activity.
+     */
+    private void openLogin() {
         Intent intent = new Intent(this, LoginActivity.class);
         intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
         startActivity(intent);
         finish();
     }
 
+    /**
+     * @brief Shows the selection actions in place of the toolbar while mails are selected.
+     * @param count The number of selected rows.
+     */
+    private void onSelectionChanged(int count) {
+        if (count == 0) {
+            if (selectionMode != null) {
+                selectionMode.finish();
+            }
+            return;
+        }
+        if (selectionMode == null) {
+            selectionMode = startSupportActionMode(new SelectionActionMode());
+        }
+        if (selectionMode != null) {
+            selectionMode.setTitle(String.valueOf(count));
+        }
+    }
+
+    /**
+     * @brief The actions on the mails selected in the list.
+     */
+    private class SelectionActionMode implements ActionMode.Callback {
+        @Override
+        public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+            mode.getMenuInflater().inflate(R.menu.mail_selection, menu);
+            return true;
+        }
+
+        @Override
+        public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+            return false;
+        }
+
+        @Override
+        public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+            List<ServerMail> selected = adapter.getSelectedMails();
+            int id = item.getItemId();
+            if (id == R.id.action_label) {
+                showSelectionLabelDialog(selected);
+                return true;
+            }
+            MainActivityViewModel.BulkAction action;
+            if (id == R.id.action_trash) {
+                action = MainActivityViewModel.BulkAction.TRASH;
+            } else if (id == R.id.action_spam) {
+                action = MainActivityViewModel.BulkAction.SPAM;
+            } else if (id == R.id.action_star) {
+                action = MainActivityViewModel.BulkAction.STAR;
+            } else if (id == R.id.action_delete) {
+                action = MainActivityViewModel.BulkAction.DELETE;
+            } else {
+                return false;
+            }
+            Log.i("MainActivity", "Applying " + action + " to " + selected.size() + " rows");
+            viewModel.applyToSelection(selected, action, MainActivity.this::showBulkResult);
+            mode.finish();
+            return true;
+        }
+
+        @Override
+        public void onDestroyActionMode(ActionMode mode) {
+            selectionMode = null;
+            adapter.clearSelection();
+        }
+    }
+
+    /**
+     * @brief Lets the user pick a label to add to the selected mails.
+     * @param selected The selected rows.
+     */
+    private void showSelectionLabelDialog(@NonNull List<ServerMail> selected) {
+        List<Label> labels = viewModel.getManageableLabels();
+        if (labels.isEmpty()) {
+            Toast.makeText(this, "No labels to add", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        String[] names = new String[labels.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = labels.get(i).getName();
+        }
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.change_label)
+                .setItems(names, (dialog, which) -> {
+                    viewModel.labelSelection(selected, labels.get(which).getId(),
+                            this::showBulkResult);
+                    if (selectionMode != null) {
+                        selectionMode.finish();
+                    }
+                })
+                .setNegativeButton("Cancel", (dialog, which) -> dialog.dismiss())
+                .show();
+    }
+
+    /**
+     * @brief Tells the user how a bulk action went.
+     * @param result The mails that were and were not updated.
+     */
+    private void showBulkResult(@NonNull FanOut.Result result) {
+        int failed = result.getFailed().size();
+        String message = result.getSucceeded().size() + " mails updated"
+                + (failed > 0 ? ", " + failed + " failed" : "");
+        Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
+    }
+
     /**
      * @param view The view that was clicked, containing the mail data.
      * @brief Show the content of the clicked mail.
@@ -0,0 +1,167 @@
+package com.example.bmail.Activities;
+
+import android.content.Intent;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.util.Log;
+import android.widget.Button;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.Toolbar;
+
+import com.example.bmail.Metrics.EndpointMetrics;
+import com.example.bmail.Metrics.Histogram;
+import com.example.bmail.Metrics.RequestMetrics;
+import com.example.bmail.Metrics.StartupMilestones;
+import com.example.bmail.Metrics.TraceStats;
+import com.example.bmail.R;
+import com.example.bmail.Utils.MemoryGovernor;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * @brief Debug screen listing the latency percentiles of every endpoint and of the
+ * trace sections, the cold-start milestones and the size of the in-memory caches.
+ * The JSON dump can be shared to compare runs of different app builds or backends.
+ */
+public class MetricsActivity extends AppCompatActivity {
+    private static final String TAG = "MetricsActivity";
+    private TextView table;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+
+        Toolbar toolbar = findViewById(R.id.toolbar);
+        setSupportActionBar(toolbar);
+
+        table = findViewById(R.id.metrics_table);
+        Button share = findViewById(R.id.btn_share_metrics);
+        Button reset = findViewById(R.id.btn_reset_metrics);
+        share.setOnClickListener(v -> shareJson());
+        reset.setOnClickListener(v -> {
+            RequestMetrics.getInstance().reset();
+            TraceStats.getInstance().reset();
+            render();
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        render();
+    }
+
+    /**
+     * @brief Renders one block per endpoint; times are in ms, sizes in bytes.
+     */
+    private void render() {
+        StringBuilder text = new StringBuilder();
+        Map<String, EndpointMetrics> endpoints = RequestMetrics.getInstance().getEndpoints();
+        if (endpoints.isEmpty()) {
+            text.append("No requests recorded yet.");
+        }
+        for (Map.Entry<String, EndpointMetrics> entry : endpoints.entrySet()) {
+            EndpointMetrics metrics = entry.getValue();
+            text.append(entry.getKey())
+                    .append("  n=").append(metrics.total.getCount())
+                    .append("  status=").append(metrics.getStatuses())
+                    .append('\n');
+            text.append(String.format(Locale.US, "  %-9s %8s %8s %8s %8s%n",
+                    "", "p50", "p90", "p99", "max"));
+            appendRow(text, "total ms", metrics.total, 1000);
+            appendRow(text, "ttfb ms", metrics.ttfb, 1000);
+            appendRow(text, "dns ms", metrics.dns, 1000);
+            appendRow(text, "conn ms", metrics.connect, 1000);
+            appendRow(text, "tls ms", metrics.tls, 1000);
+            appendRow(text, "in B", metrics.bytesIn, 1);
+            appendRow(text, "out B", metrics.bytesOut, 1);
+            text.append('\n');
+        }
+        Map<String, Long> startup = StartupMilestones.getMilestones();
+        if (!startup.isEmpty()) {
+            text.append("Cold start, ms since process start\n");
+            for (Map.Entry<String, Long> milestone : startup.entrySet()) {
+                text.append(String.format(Locale.US, "  %-18s %8d%n", milestone.getKey(),
+                        milestone.getValue()));
+            }
+            text.append('\n');
+        }
+        Map<String, Histogram> sections = TraceStats.getInstance().getSections();
+        if (!sections.isEmpty()) {
+            text.append("Trace sections\n");
+            text.append(String.format(Locale.US, "  %-9s %8s %8s %8s %8s%n",
+                    "n", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+            for (Map.Entry<String, Histogram> entry : sections.entrySet()) {
+                text.append("  ").append(entry.getKey()).append('\n');
+                appendRow(text, String.valueOf(entry.getValue().getCount()), entry.getValue(),
+                        1000);
+            }
+            text.append('\n');
+        }
+        Map<String, Long> caches = MemoryGovernor.getInstance().getSizes();
+        if (!caches.isEmpty()) {
+            text.append("Caches, KiB\n");
+            for (Map.Entry<String, Long> cache : caches.entrySet()) {
+                text.append(String.format(Locale.US, "  %-18s %8d%n", cache.getKey(),
+                        cache.getValue() / 1024));
+            }
+        }
+        table.setText(text);
+    }
+
+    private static void appendRow(StringBuilder text, String name, Histogram histogram,
+                                  double scale) {
+        if (histogram.getCount() == 0) {
+            return;
+        }
+        text.append(String.format(Locale.US, "  %-9s %8.1f %8.1f %8.1f %8.1f%n", name,
+                histogram.percentile(50) / scale, histogram.percentile(90) / scale,
+                histogram.percentile(99) / scale, histogram.getMax() / scale));
+    }
+
+    private void shareJson() {
+        String json;
+        try {
+            JSONObject dump = RequestMetrics.getInstance()
+                    .toJson(getAppVersion(), getString(R.string.api));
+            dump.put("traceSections", TraceStats.getInstance().toJson());
+            dump.put("startup", StartupMilestones.toJson());
+            dump.put("cacheBytes", MemoryGovernor.getInstance().toJson());
+            json = dump.toString(2);
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to serialize metrics", e);
+            return;
+        }
+        Log.i(TAG, json);
+        Intent intent = new Intent(Intent.ACTION_SEND);
+        intent.setType("application/json");
+        intent.putExtra(Intent.EXTRA_TEXT, json);
+        startActivity(Intent.createChooser(intent, getString(R.string.share_json)));
+    }
+
+    private String getAppVersion() {
+        try {
+            PackageInfo info = getPackageManager().getPackageInfo(getPackageName(), 0);
+            return info.versionName;
+        } catch (PackageManager.NameNotFoundException e) {
+            return "unknown";
+        }
+    }
+
+    /**
+     * @brief Handles the back button press in the metrics activity.
+     */
+    @Override
+    public boolean onSupportNavigateUp() {
+        finish();
+        return true;
+    }
+}
@@ -1,6 +1,5 @@
 package com.example.bmail.Adapters;
 
-import android.util.Log;
 import android.content.Context;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -8,18 +7,48 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.bmail.Entities.ServerMail;
+import com.example.bmail.Entities.ServerMailList;
+import com.example.bmail.Entities.ServerThreadList;
+import com.example.bmail.Metrics.Tracer;
 import com.example.bmail.R;
+import com.example.bmail.Utils.AppLog;
+import com.example.bmail.core.MailChangeSet;
+import com.example.bmail.core.MailRecord;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
 
 public class MailsAdapter extends RecyclerView.Adapter<MailsAdapter.mailViewHolder> {
+    /**
+     * @brief Notified when mails are selected or unselected for a bulk action.
+     */
+    public interface SelectionListener {
+        /**
+         * @param count The number of selected rows, 0 once the selection ended.
+         */
+        void onSelectionChanged(int count);
+    }
+
+    private static final String TAG = "MailsAdapter";
+    // binding runs once per row while scrolling, log only a sample of it
+    private static final AppLog.Sampler BIND_SAMPLER = AppLog.sampler(50);
     private final View.OnClickListener clickListener;
+    private final SelectionListener selectionListener;
+    // IDs of the rows selected with a long press, in the order they were selected
+    private final Set<String> selectedIds = new LinkedHashSet<>();
+    // a ServerThreadList when conversations are shown
     private List<ServerMail> mailList;
     private final LayoutInflater inflater;
 
@@ -30,21 +59,12 @@ public class MailsAdapter extends RecyclerView.Adapter<MailsAdapter.mailViewHold
         private final TextView timeTextView;
         private ServerMail currentMail;
 
-        public mailViewHolder(@NonNull View itemView, View.OnClickListener clickListener) {
+        public mailViewHolder(@NonNull View itemView) {
             super(itemView);
             sender = itemView.findViewById(R.id.senderTextView);
             subject = itemView.findViewById(R.id.subjectTextView);
             body = itemView.findViewById(R.id.previewTextView);
             timeTextView = itemView.findViewById(R.id.timeTextView);
-
-            itemView.setOnClickListener(v -> {
-                if (currentMail != null) {
-                    Log.i("MailsAdapter", "Mail clicked: " + currentMail.getTitle());
-                    v.setTag(currentMail);
-                    clickListener.onClick(v);
-                } else {
-                    Log.w("MailsAdapter", "Current mail is null, cannot handle click."); }
-            });
         }
 
         public void setMail(ServerMail mail) {
@@ -53,34 +73,72 @@ public class MailsAdapter extends RecyclerView.Adapter<MailsAdapter.mailViewHold
 
     }
 
-    public MailsAdapter(Context context, View.OnClickListener clickListener) {
+    /**
+     * @param context The context of the list.
+     * @param clickListener Opens a mail, which is passed as the tag of the view.
+     * @param selectionListener Notified when the selection changes.
+     */
+    public MailsAdapter(Context context, View.OnClickListener clickListener,
+                        SelectionListener selectionListener) {
         this.inflater = LayoutInflater.from(context);
         this.clickListener = clickListener;
+        this.selectionListener = selectionListener;
     }
 
     @NonNull
     @Override
     public mailViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        View itemView = inflater.inflate(R.layout.mail_item, parent, false);
-        return new mailViewHolder(itemView, clickListener);
+        try (Tracer.Section ignored = Tracer.begin("MailsAdapter.onCreateViewHolder")) {
+            View itemView = inflater.inflate(R.layout.mail_item, parent, false);
+            mailViewHolder holder = new mailViewHolder(itemView);
+            itemView.setOnClickListener(v -> {
+                ServerMail mail = holder.currentMail;
+                if (mail == null) {
+                    AppLog.w(TAG, "Current mail is null, cannot handle click.");
+                } else if (!selectedIds.isEmpty()) {
+                    // while selecting, a tap changes the selection
+                    toggleSelection(holder);
+                } else {
+                    AppLog.i(TAG, "Mail clicked: " + mail.getTitle());
+                    v.setTag(mail);
+                    clickListener.onClick(v);
+                }
+            });
+            itemView.setOnLongClickListener(v -> {
+                if (holder.currentMail == null) {
+                    return false;
+                }
+                toggleSelection(holder);
+                return true;
+            });
+            return holder;
+        }
     }
 
     @Override
     public void onBindViewHolder(@NonNull mailViewHolder holder, int position) {
-        ServerMail currentMail = mailList.get(position);
-        Log.i("MailsAdapter", "Binding mail at position: " + position);
-        Log.i("MailsAdapter", "Mail sender: " + currentMail.getFrom());
-        Log.i("MailsAdapter", "Mail subject: " + currentMail.getTitle());
+        try (Tracer.Section ignored = Tracer.begin("MailsAdapter.onBindViewHolder")) {
+            ServerMail currentMail = mailList.get(position);
+            if (AppLog.DEBUG && BIND_SAMPLER.shouldLog()) {
+                AppLog.d(TAG, "Binding mail at position " + position + ": "
+                        + currentMail.getId());
+            }
 
-        holder.sender.setText(currentMail.getFrom());
-        holder.subject.setText(currentMail.getTitle());
-        holder.body.setText(currentMail.getBody());
+            int threadSize = mailList instanceof ServerThreadList
+                    ? ((ServerThreadList) mailList).getMessageCount(position) : 1;
+            holder.sender.setText(threadSize > 1
+                    ? currentMail.getFrom() + " (" + threadSize + ")"
+                    : currentMail.getFrom());
+            holder.subject.setText(currentMail.getTitle());
+            holder.body.setText(currentMail.getPreview());
 
-        if (currentMail.getUpdatedAt() != null) {
-            DateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm", Locale.getDefault());
-            holder.timeTextView.setText(dateFormat.format(currentMail.getUpdatedAt()));
+            if (currentMail.getUpdatedAt() != null) {
+                DateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm", Locale.getDefault());
+                holder.timeTextView.setText(dateFormat.format(currentMail.getUpdatedAt()));
+            }
+            holder.setMail(currentMail);
+            holder.itemView.setActivated(selectedIds.contains(currentMail.getId()));
         }
-        holder.setMail(currentMail);
     }
     @Override
     public int getItemCount() {
@@ -92,12 +150,197 @@ public class MailsAdapter extends RecyclerView.Adapter<MailsAdapter.mailViewHold
 
     /**
      * @brief Sets the list of mails and notifies the adapter of the change.
+     * A list patched from the one shown only rebinds the rows that changed.
      * @param mails The new list of mails to display.
      */
     public void setMails(@NonNull List<ServerMail> mails) {
+        MailChangeSet changes = changesFrom(mailList, mails);
+        if (changes != null) {
+            this.mailList = mails;
+            changes.dispatchTo(new MailChangeSet.Target() {
+                @Override
+                public void onRemoved(int position) {
+                    notifyItemRemoved(position);
+                }
+
+                @Override
+                public void onInserted(int position) {
+                    notifyItemInserted(position);
+                }
+
+                @Override
+                public void onChanged(int position) {
+                    notifyItemChanged(position);
+                }
+            });
+            retainShownSelection();
+            return;
+        }
         notifyItemRangeRemoved(0, mailList == null ? 0 : mailList.size());
         this.mailList = mails;
         notifyItemRangeInserted(0, mailList.size());
+        retainShownSelection();
+    }
+
+    /**
+     * @return The changes from the shown list to the new one, or null if the new list
+     * has to replace it, e.g. because conversations are shown or a version was missed.
+     */
+    @Nullable
+    private MailChangeSet changesFrom(@Nullable List<ServerMail> shown,
+                                      @NonNull List<ServerMail> mails) {
+        if (!(shown instanceof ServerMailList)
+                || !(mails instanceof ServerMailList)) {
+            return null;
+        }
+        return ((ServerMailList) mails).changesSince(((ServerMailList) shown).getVersion());
+    }
+
+    /**
+     * @brief Shows one row per conversation, its newest mail with the number of mails.
+     * A list following the conversations shown only rebinds the rows that changed;
+     * rows are matched by conversation, see ThreadDiff.
+     * @param threads The conversation list, see MailRepository.getThreads.
+     */
+    public void setThreads(@NonNull ServerThreadList threads) {
+        List<ServerMail> shown = mailList;
+        if (shown instanceof ServerThreadList) {
+            DiffUtil.DiffResult diff;
+            try (Tracer.Section ignored = Tracer.begin("MailsAdapter.diffThreads")) {
+                diff = DiffUtil.calculateDiff(
+                        new ThreadDiff((ServerThreadList) shown, threads), false);
+            }
+            this.mailList = threads;
+            diff.dispatchUpdatesTo(this);
+            retainShownSelection();
+            return;
+        }
+        notifyItemRangeRemoved(0, shown == null ? 0 : shown.size());
+        this.mailList = threads;
+        notifyItemRangeInserted(0, mailList.size());
+        retainShownSelection();
+    }
+
+    /**
+     * @brief Compares two conversation lists row by row without creating their mails.
+     * A row is the same item if it shows the same conversation, and the same content
+     * if it still shows the same mail, with the same date, labels and size. A local
+     * label change keeps the date, so the labels are compared too.
+     */
+    private static final class ThreadDiff extends DiffUtil.Callback {
+        private final ServerThreadList oldList;
+        private final ServerThreadList newList;
+
+        ThreadDiff(ServerThreadList oldList, ServerThreadList newList) {
+            this.oldList = oldList;
+            this.newList = newList;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldList.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newList.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            return Objects.equals(oldList.getThreadKey(oldPosition),
+                    newList.getThreadKey(newPosition));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            if (oldList.getMessageCount(oldPosition) != newList.getMessageCount(newPosition)) {
+                return false;
+            }
+            MailRecord oldMail = oldList.getCompact().get(oldPosition);
+            MailRecord newMail = newList.getCompact().get(newPosition);
+            return oldMail.getId().equals(newMail.getId())
+                    && Objects.equals(oldMail.getUpdatedAt(), newMail.getUpdatedAt())
+                    && Objects.equals(oldMail.getDraft(), newMail.getDraft())
+                    && Objects.equals(oldMail.getLabels(), newMail.getLabels());
+        }
+    }
+
+    /**
+     * @return The selected mails, in the order they are shown.
+     */
+    @NonNull
+    public List<ServerMail> getSelectedMails() {
+        List<ServerMail> selected = new ArrayList<>(selectedIds.size());
+        for (int i = 0; i < getItemCount(); i++) {
+            if (selectedIds.contains(idAt(i))) {
+                selected.add(mailList.get(i));
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * @brief Ends the selection, e.g. once a bulk action was started.
+     */
+    public void clearSelection() {
+        if (selectedIds.isEmpty()) {
+            return;
+        }
+        selectedIds.clear();
+        notifyItemRangeChanged(0, getItemCount());
+        selectionListener.onSelectionChanged(0);
+    }
+
+    private void toggleSelection(@NonNull mailViewHolder holder) {
+        String id = holder.currentMail.getId();
+        if (!selectedIds.remove(id)) {
+            selectedIds.add(id);
+        }
+        holder.itemView.setActivated(selectedIds.contains(id));
+        selectionListener.onSelectionChanged(selectedIds.size());
+    }
+
+    /**
+     * @param position An adapter position, e.g. of the last visible row.
+     * @return The ID of the mail shown there, the latest one of a conversation, or null
+     * if there is no such row.
+     */
+    @Nullable
+    public String getMailIdAt(int position) {
+        if (mailList == null || position < 0 || position >= mailList.size()) {
+            return null;
+        }
+        return idAt(position);
+    }
+
+    /**
+     * @return The ID of a row, without creating its mail when the list is compact.
+     */
+    private String idAt(int position) {
+        if (mailList instanceof ServerMailList) {
+            return ((ServerMailList) mailList).getCompact().getId(position);
+        }
+        if (mailList instanceof ServerThreadList) {
+            return ((ServerThreadList) mailList).getCompact().getId(position);
+        }
+        return mailList.get(position).getId();
+    }
+
+    /**
+     * @brief Drops the selected rows that are no longer in the list.
+     */
+    private void retainShownSelection() {
+        if (selectedIds.isEmpty()) {
+            return;
+        }
+        Set<String> shown = new HashSet<>(mailList.size());
+        for (int i = 0; i < mailList.size(); i++) {
+            shown.add(idAt(i));
+        }
+        if (selectedIds.retainAll(shown)) {
+            selectionListener.onSelectionChanged(selectedIds.size());
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+package com.example.bmail.Adapters;
+
+import android.content.Context;
+import android.widget.ArrayAdapter;
+import android.widget.Filter;
+
+import androidx.annotation.NonNull;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * @brief Dropdown of recipient suggestions for the "to" field of the compose screen.
+ * The filter runs on the background thread of the text view, the list is only
+ * replaced on the main thread.
+ */
+public class RecipientSuggestionAdapter extends ArrayAdapter<String> {
+    private final Function<String, List<String>> suggestions;
+
+    private final Filter filter = new Filter() {
+        @Override
+        protected FilterResults performFiltering(CharSequence constraint) {
+            FilterResults results = new FilterResults();
+            if (constraint == null) {
+                return results;
+            }
+            List<String> found = suggestions.apply(constraint.toString());
+            results.values = found;
+            results.count = found.size();
+            return results;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void publishResults(CharSequence constraint, FilterResults results) {
+            clear();
+            if (results.values != null) {
+                addAll((List<String>) results.values);
+            }
+            notifyDataSetChanged();
+        }
+    };
+
+    /**
+     * @param context The context of the compose screen.
+     * @param suggestions Returns the suggestions for a typed prefix, off the main thread.
+     */
+    public RecipientSuggestionAdapter(@NonNull Context context,
+                                      @NonNull Function<String, List<String>> suggestions) {
+        super(context, android.R.layout.simple_dropdown_item_1line);
+        this.suggestions = suggestions;
+        // one notification per result instead of one for clear() and one for addAll()
+        setNotifyOnChange(false);
+    }
+
+    @NonNull
+    @Override
+    public Filter getFilter() {
+        return filter;
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.bmail.Api;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.example.bmail.Metrics.MetricsEventListener;
+import com.example.bmail.R;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.util.Date;
+
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+/**
+ * @brief Owns the OkHttp clients and Retrofit services shared by all API classes.
+ * Both clients share one connection pool, one circuit breaker and one PriorityGate,
+ * since they talk to the same server, and report their calls to RequestMetrics. Everything is
+ * created on first use, so screens that make no request do not pay for it.
+ */
+public class ApiClient {
+    private static final CircuitBreaker circuitBreaker = new CircuitBreaker();
+    private static final PriorityGate priorityGate = new PriorityGate();
+    // calls waiting in the PriorityGate hold a dispatcher slot, so OkHttp must not be
+    // the one limiting requests per host
+    private static final int MAX_DISPATCHED = 32;
+    private static OkHttpClient anonymous;
+    private static OkHttpClient authenticated;
+    private static Gson gson;
+    private static WebServiceApi anonymousApi;
+    private static WebServiceApi authenticatedApi;
+
+    private ApiClient() {
+    }
+
+    /**
+     * @brief Returns the client for requests made before logging in (login, signup).
+     */
+    public static synchronized OkHttpClient anonymous() {
+        if (anonymous == null) {
+            Dispatcher dispatcher = new Dispatcher();
+            dispatcher.setMaxRequests(MAX_DISPATCHED);
+            dispatcher.setMaxRequestsPerHost(MAX_DISPATCHED);
+            anonymous = new OkHttpClient.Builder()
+                    .dispatcher(dispatcher)
+                    .eventListenerFactory(MetricsEventListener.FACTORY)
+                    .addInterceptor(new ResilienceInterceptor(circuitBreaker))
+                    .addInterceptor(new PriorityInterceptor(priorityGate))
+                    .build();
+        }
+        return anonymous;
+    }
+
+    /**
+     * @brief Returns the client that adds the bearer token to every request.
+     * The auth interceptor runs inside the retry loop, so every attempt carries
+     * the current token.
+     */
+    public static synchronized OkHttpClient authenticated(@NonNull Context context) {
+        if (authenticated == null) {
+            authenticated = anonymous().newBuilder()
+                    .addInterceptor(new AuthInterceptor(TokenHolder.getInstance(context)))
+                    .build();
+        }
+        return authenticated;
+    }
+
+    /**
+     * @brief Returns the Gson used for all requests and responses: only @Expose fields,
+     * dates in the server's ISO 8601 format, in UTC.
+     */
+    public static synchronized Gson gson() {
+        if (gson == null) {
+            gson = new GsonBuilder()
+                    .excludeFieldsWithoutExposeAnnotation()
+                    .registerTypeAdapter(Date.class, new IsoDateAdapter())
+                    .create();
+        }
+        return gson;
+    }
+
+    /**
+     * @brief Returns the service for requests made before logging in.
+     */
+    public static synchronized WebServiceApi anonymousApi(@NonNull Context context) {
+        if (anonymousApi == null) {
+            anonymousApi = create(context.getString(R.string.api), anonymous());
+        }
+        return anonymousApi;
+    }
+
+    /**
+     * @brief Returns the service shared by the mail, label and user APIs.
+     */
+    public static synchronized WebServiceApi authenticatedApi(@NonNull Context context) {
+        if (authenticatedApi == null) {
+            authenticatedApi = create(context.getString(R.string.api), authenticated(context));
+        }
+        return authenticatedApi;
+    }
+
+    /**
+     * @brief Creates a service against a server.
+     * @param baseUrl The server URL.
+     * @param client The client to send the requests with.
+     */
+    @NonNull
+    static WebServiceApi create(@NonNull String baseUrl, @NonNull OkHttpClient client) {
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(baseUrl)
+                .client(client)
+                .addConverterFactory(TracingConverterFactory.create())
+                .addConverterFactory(CompactConverterFactory.create())
+                .addConverterFactory(GsonConverterFactory.create(gson()))
+                .build();
+        return retrofit.create(WebServiceApi.class);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.bmail.Api;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * @brief Adds the bearer token to every request and routes 401 responses through
+ * TokenHolder, so parallel requests with an expired token expire the session only once.
+ */
+public class AuthInterceptor implements Interceptor {
+    private static final String HEADER = "Authorization";
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final TokenHolder tokenHolder;
+
+    public AuthInterceptor(@NonNull TokenHolder tokenHolder) {
+        this.tokenHolder = tokenHolder;
+    }
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        Request request = chain.request();
+        String token = tokenHolder.getToken();
+        if (token == null || request.header(HEADER) != null) {
+            return chain.proceed(request);
+        }
+
+        Response response = chain.proceed(authorize(request, token));
+        if (response.code() != 401) {
+            return response;
+        }
+        String retryToken = tokenHolder.onUnauthorized(token);
+        if (retryToken == null) {
+            return response;
+        }
+        response.close();
+        return chain.proceed(authorize(request, retryToken));
+    }
+
+    private static Request authorize(@NonNull Request request, @NonNull String token) {
+        return request.newBuilder()
+                .header(HEADER, BEARER_PREFIX + token)
+                .build();
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.bmail.Api;
+
+import android.os.SystemClock;
+
+import com.example.bmail.Utils.AppLog;
+
+import java.io.IOException;
+
+/**
+ * @brief Stops sending requests to a backend that keeps failing.
+ * After FAILURE_THRESHOLD consecutive failures the breaker opens and requests fail
+ * immediately, so the app shows its cached data instead of waiting on timeouts.
+ * When the open period is over one probe request is let through; its outcome
+ * closes the breaker again or reopens it for twice as long.
+ */
+public class CircuitBreaker {
+    private static final String TAG = "CircuitBreaker";
+    static final int FAILURE_THRESHOLD = 5;
+    static final long MIN_OPEN_MILLIS = 15_000;
+    static final long MAX_OPEN_MILLIS = 120_000;
+
+    private enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * @brief Thrown instead of sending a request while the breaker is open.
+     */
+    public static class OpenException extends IOException {
+        public OpenException() {
+            super("Server unavailable, using cached data");
+        }
+    }
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openMillis = MIN_OPEN_MILLIS;
+    private long openedAt;
+
+    /**
+     * @brief Checks whether a request may be sent.
+     * @throws OpenException if the breaker is open, or half open with a probe in flight.
+     */
+    public synchronized void acquire() throws OpenException {
+        if (state == State.CLOSED) {
+            return;
+        }
+        if (state == State.OPEN && SystemClock.elapsedRealtime() - openedAt >= openMillis) {
+            AppLog.i(TAG, "Letting a probe request through");
+            state = State.HALF_OPEN;
+            return;
+        }
+        throw new OpenException();
+    }
+
+    /**
+     * @brief Records a request that reached a healthy server.
+     */
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            AppLog.i(TAG, "Server is back, closing");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        openMillis = MIN_OPEN_MILLIS;
+    }
+
+    /**
+     * @brief Records a network error or a server error.
+     */
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN) {
+            openMillis = Math.min(openMillis * 2, MAX_OPEN_MILLIS);
+            open();
+        } else if (state == State.CLOSED && consecutiveFailures >= FAILURE_THRESHOLD) {
+            open();
+        }
+    }
+
+    /**
+     * @brief Records a request that was canceled before it completed, e.g. preempted by
+     * the PriorityGate. It does not count as a failure; a canceled probe lets the next
+     * request probe instead, so the breaker is not stuck half open.
+     */
+    public synchronized void onCanceled() {
+        if (state == State.HALF_OPEN) {
+            // openedAt is unchanged, so the open period is already over
+            state = State.OPEN;
+        }
+    }
+
+    /**
+     * @return true if requests are currently being rejected.
+     */
+    public synchronized boolean isOpen() {
+        return state != State.CLOSED;
+    }
+
+    private void open() {
+        AppLog.w(TAG, "Opening for " + openMillis + " ms after " + consecutiveFailures
+                + " failures");
+        state = State.OPEN;
+        openedAt = SystemClock.elapsedRealtime();
+    }
+}
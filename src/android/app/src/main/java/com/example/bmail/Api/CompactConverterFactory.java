@@ -0,0 +1,78 @@
+package com.example.bmail.Api;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.bmail.Entities.Label;
+import com.example.bmail.Entities.ServerMail;
+import com.example.bmail.core.CompactCodec;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+/**
+ * @brief Reads mail and label lists sent in the compact binary format.
+ * The format is negotiated with the Accept header of the list endpoints. When the
+ * server answers with JSON instead, the body is handed to the next converter (Gson).
+ * Must be added before the Gson converter factory.
+ */
+public final class CompactConverterFactory extends Converter.Factory {
+    public static final String MEDIA_TYPE = CompactCodec.MEDIA_TYPE;
+
+    private CompactConverterFactory() {
+    }
+
+    @NonNull
+    public static CompactConverterFactory create() {
+        return new CompactConverterFactory();
+    }
+
+    @Nullable
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(@NonNull Type type,
+                                                            @NonNull Annotation[] annotations,
+                                                            @NonNull Retrofit retrofit) {
+        Type element = listElementType(type);
+        if (element != ServerMail.class && element != Label.class) {
+            return null;
+        }
+        Converter<ResponseBody, Object> fallback =
+                retrofit.nextResponseBodyConverter(this, type, annotations);
+        boolean mails = element == ServerMail.class;
+
+        return body -> {
+            if (!isCompact(body.contentType())) {
+                return fallback.convert(body);
+            }
+            try (ResponseBody compactBody = body) {
+                byte[] bytes = compactBody.bytes();
+                return mails ? CompactCodec.decodeMails(bytes, ServerMail::new)
+                        : CompactCodec.decodeLabels(bytes, Label::new);
+            }
+        };
+    }
+
+    private static boolean isCompact(@Nullable MediaType contentType) {
+        return contentType != null
+                && MEDIA_TYPE.equals(contentType.type() + "/" + contentType.subtype());
+    }
+
+    @Nullable
+    private static Type listElementType(Type type) {
+        if (!(type instanceof ParameterizedType)) {
+            return null;
+        }
+        ParameterizedType parameterized = (ParameterizedType) type;
+        if (parameterized.getRawType() != List.class) {
+            return null;
+        }
+        return parameterized.getActualTypeArguments()[0];
+    }
+}
@@ -0,0 +1,340 @@
+package com.example.bmail.Api;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import com.example.bmail.Entities.ClientMail;
+import com.example.bmail.Entities.Draft;
+import com.example.bmail.Entities.DraftPatch;
+import com.example.bmail.Entities.ServerMail;
+import com.example.bmail.Utils.AppLog;
+import com.example.bmail.db.DraftDao;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * @brief Keeps drafts in the local database as they are typed and syncs them to the
+ * server in the background.
+ * Every edit is written to the Draft table right away. The sync waits until the user
+ * paused typing for DEBOUNCE_MS, but at most MAX_DELAY_MS after the first unsynced
+ * edit, and then sends only the fields that differ from what the server acknowledged.
+ * A draft has at most one request in flight, edits made meanwhile go out with the next.
+ * All database work and the sync timers run on one thread, in the order of the edits.
+ */
+public class DraftApi {
+    private static final String TAG = "DraftApi";
+    static final long DEBOUNCE_MS = 2_000;
+    static final long MAX_DELAY_MS = 10_000;
+
+    private final DraftDao draftDao;
+    private final WebServiceApi webServiceApi;
+    private final Handler worker;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // the state below is only touched on the worker thread
+    private final Map<String, Runnable> scheduledFlushes = new HashMap<>();
+    private final Map<String, Long> firstUnsyncedEdit = new HashMap<>();
+    private final Set<String> inFlight = new HashSet<>();
+
+    public DraftApi(@NonNull DraftDao draftDao, @NonNull Context context) {
+        this.draftDao = draftDao;
+        this.webServiceApi = ApiClient.authenticatedApi(context.getApplicationContext());
+        HandlerThread thread = new HandlerThread(TAG);
+        thread.start();
+        worker = new Handler(thread.getLooper());
+    }
+
+    /**
+     * @brief Stores the typed fields of a draft and schedules its sync.
+     * @param localId The id of the draft row, created if it does not exist yet.
+     */
+    public void save(@NonNull String localId, @NonNull String to, @NonNull String title,
+                     @NonNull String body) {
+        worker.post(() -> {
+            Draft draft = draftDao.getById(localId);
+            long now = System.currentTimeMillis();
+            if (draft == null) {
+                draft = new Draft();
+                draft.setLocalId(localId);
+                draft.setTo(to);
+                draft.setTitle(title);
+                draft.setBody(body);
+                draft.setUpdatedAt(now);
+                draftDao.insert(draft);
+            } else if (draft.sameFields(to, title, body)) {
+                return;
+            } else {
+                draftDao.updateFields(localId, to, title, body, now);
+            }
+            scheduleFlush(localId);
+        });
+    }
+
+    /**
+     * @brief Opens a draft stored on the server for editing.
+     * Edits of the draft that were stored locally but never synced are kept.
+     * @param localId The id of the row for this editing session.
+     * @param serverId The id of the mail on the server.
+     * @param onOpened Receives the draft to show, on the main thread.
+     */
+    public void open(@NonNull String localId, @NonNull String serverId, @NonNull String to,
+                     @NonNull String title, @NonNull String body,
+                     @NonNull Consumer<Draft> onOpened) {
+        worker.post(() -> {
+            Draft draft = draftDao.getByServerId(serverId);
+            if (draft != null && !draft.getLocalId().equals(localId)) {
+                // left behind by an earlier session
+                if (draft.isDirty()) {
+                    AppLog.i(TAG, "Restoring unsynced edits of " + serverId);
+                    draftDao.delete(draft.getLocalId());
+                    draft.setLocalId(localId);
+                    draft.setClosed(false);
+                    draftDao.insert(draft);
+                    scheduleFlush(localId);
+                    Draft restored = draft;
+                    mainHandler.post(() -> onOpened.accept(restored));
+                    return;
+                }
+                draftDao.delete(draft.getLocalId());
+                draft = null;
+            }
+            if (draft == null) {
+                draft = Draft.fromServer(localId, serverId, to, title, body);
+                draftDao.insert(draft);
+            } else {
+                // opened again with the full body, the list only held a snippet
+                draft.mergeServer(to, title, body);
+                draftDao.update(draft);
+            }
+            Draft opened = draft;
+            mainHandler.post(() -> onOpened.accept(opened));
+        });
+    }
+
+    /**
+     * @brief Syncs a draft right away because its screen was left.
+     * The row is deleted once the server has everything.
+     * @param localId The id of the draft row.
+     */
+    public void close(@NonNull String localId) {
+        worker.post(() -> {
+            draftDao.close(localId);
+            cancelFlush(localId);
+            flush(localId);
+        });
+    }
+
+    /**
+     * @brief Sends a draft as a mail.
+     * A draft already on the server is turned into a mail with a PATCH of the changed
+     * fields. Otherwise the mail is sent as a new one and a draft still being created
+     * on the server is deleted there once it exists.
+     * @param localId The id of the draft row.
+     * @param mail The mail to send, with its final fields.
+     * @param callback Receives the response of the send request.
+     */
+    public void send(@NonNull String localId, @NonNull ClientMail mail,
+                     @NonNull Callback<Void> callback) {
+        worker.post(() -> {
+            cancelFlush(localId);
+            Draft draft = draftDao.getById(localId);
+            String serverId = draft == null ? null : draft.getServerId();
+            if (serverId == null) {
+                // a create still in flight finds no row and removes its server draft
+                draftDao.delete(localId);
+                webServiceApi.sendMail(mail).enqueue(callback);
+                return;
+            }
+            draft.setTo(mail.getTo().isEmpty() ? "" : String.join(", ", mail.getTo()));
+            draft.setTitle(mail.getTitle());
+            draft.setBody(mail.getBody());
+            DraftPatch patch = DraftPatch.changedFields(draft);
+            patch.setDraft(false);
+            AppLog.i(TAG, "Sending draft " + serverId + " with " + patch);
+            webServiceApi.sendDraft(patch, serverId).enqueue(new Callback<>() {
+                @Override
+                public void onResponse(@NonNull Call<Void> call, @NonNull Response<Void> response) {
+                    if (response.isSuccessful()) {
+                        worker.post(() -> draftDao.delete(localId));
+                    }
+                    callback.onResponse(call, response);
+                }
+
+                @Override
+                public void onFailure(@NonNull Call<Void> call, @NonNull Throwable t) {
+                    callback.onFailure(call, t);
+                }
+            });
+        });
+    }
+
+    /**
+     * @brief Syncs the drafts a crash or a failed request left unsynced.
+     */
+    public void flushPending() {
+        worker.post(() -> {
+            List<Draft> drafts = draftDao.getAll();
+            for (Draft draft : drafts) {
+                if (draft.isDirty()) {
+                    flush(draft.getLocalId());
+                } else if (draft.isClosed()) {
+                    draftDao.delete(draft.getLocalId());
+                }
+            }
+        });
+    }
+
+    private void scheduleFlush(@NonNull String localId) {
+        long now = SystemClock.uptimeMillis();
+        Long first = firstUnsyncedEdit.get(localId);
+        if (first == null) {
+            first = now;
+            firstUnsyncedEdit.put(localId, first);
+        }
+        cancelFlush(localId);
+        // typing continuously still syncs every MAX_DELAY_MS
+        long delay = Math.max(0, Math.min(DEBOUNCE_MS, first + MAX_DELAY_MS - now));
+        Runnable flush = () -> {
+            scheduledFlushes.remove(localId);
+            flush(localId);
+        };
+        scheduledFlushes.put(localId, flush);
+        worker.postDelayed(flush, delay);
+    }
+
+    private void cancelFlush(@NonNull String localId) {
+        Runnable scheduled = scheduledFlushes.remove(localId);
+        if (scheduled != null) {
+            worker.removeCallbacks(scheduled);
+        }
+    }
+
+    /**
+     * @brief Sends the unsynced fields of a draft, unless a request for it is in flight;
+     * the draft is checked again when that request completes.
+     */
+    private void flush(@NonNull String localId) {
+        if (inFlight.contains(localId)) {
+            return;
+        }
+        Draft draft = draftDao.getById(localId);
+        if (draft == null) {
+            firstUnsyncedEdit.remove(localId);
+            return;
+        }
+        if (!draft.isDirty()) {
+            firstUnsyncedEdit.remove(localId);
+            if (draft.isClosed()) {
+                draftDao.delete(localId);
+            }
+            return;
+        }
+        firstUnsyncedEdit.remove(localId);
+        inFlight.add(localId);
+        String to = draft.getTo();
+        String title = draft.getTitle();
+        String body = draft.getBody();
+        String serverId = draft.getServerId();
+        if (serverId == null) {
+            ClientMail mail = new ClientMail(title, body, null, DraftPatch.recipients(to), true);
+            webServiceApi.createDraft(mail).enqueue(new Callback<>() {
+                @Override
+                public void onResponse(@NonNull Call<ServerMail> call,
+                                       @NonNull Response<ServerMail> response) {
+                    ServerMail created = response.body();
+                    if (response.isSuccessful() && created != null) {
+                        worker.post(() -> synced(localId, created.getId(), true, to, title, body));
+                    } else {
+                        AppLog.e(TAG, "Failed to create draft: " + response.code());
+                        worker.post(() -> inFlight.remove(localId));
+                    }
+                }
+
+                @Override
+                public void onFailure(@NonNull Call<ServerMail> call, @NonNull Throwable t) {
+                    AppLog.e(TAG, "Network error while creating draft: " + t.getMessage());
+                    worker.post(() -> inFlight.remove(localId));
+                }
+            });
+            return;
+        }
+        DraftPatch patch = DraftPatch.changedFields(draft);
+        if (AppLog.DEBUG) AppLog.d(TAG, "Patching draft " + serverId + " with " + patch);
+        webServiceApi.patchDraft(patch, serverId).enqueue(new Callback<>() {
+            @Override
+            public void onResponse(@NonNull Call<Void> call, @NonNull Response<Void> response) {
+                if (response.isSuccessful()) {
+                    worker.post(() -> synced(localId, serverId, false, to, title, body));
+                } else {
+                    AppLog.e(TAG, "Failed to update draft: " + response.code());
+                    worker.post(() -> inFlight.remove(localId));
+                }
+            }
+
+            @Override
+            public void onFailure(@NonNull Call<Void> call, @NonNull Throwable t) {
+                AppLog.e(TAG, "Network error while updating draft: " + t.getMessage());
+                worker.post(() -> inFlight.remove(localId));
+            }
+        });
+    }
+
+    /**
+     * @brief Records a completed sync and sends what was typed while it was in flight.
+     * @param serverId The id of the draft on the server.
+     * @param created Whether the request created the draft on the server.
+     */
+    private void synced(@NonNull String localId, @NonNull String serverId, boolean created,
+                        @NonNull String to, @NonNull String title, @NonNull String body) {
+        inFlight.remove(localId);
+        Draft draft = draftDao.getById(localId);
+        if (draft == null) {
+            if (created) {
+                // sent as a new mail while the draft was being created
+                deleteOnServer(serverId);
+            }
+            return;
+        }
+        draftDao.markSynced(localId, serverId, to, title, body);
+        draft = draftDao.getById(localId);
+        if (draft.isDirty()) {
+            if (draft.isClosed()) {
+                flush(localId);
+            } else {
+                scheduleFlush(localId);
+            }
+        } else if (draft.isClosed()) {
+            draftDao.delete(localId);
+        }
+    }
+
+    private void deleteOnServer(@NonNull String serverId) {
+        webServiceApi.deleteMail(serverId, RequestPriority.VISIBLE).enqueue(new Callback<>() {
+            @Override
+            public void onResponse(@NonNull Call<Void> call, @NonNull Response<Void> response) {
+                if (!response.isSuccessful()) {
+                    AppLog.e(TAG, "Failed to delete orphaned draft: " + response.code());
+                }
+            }
+
+            @Override
+            public void onFailure(@NonNull Call<Void> call, @NonNull Throwable t) {
+                AppLog.e(TAG, "Network error while deleting orphaned draft: " + t.getMessage());
+            }
+        });
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.bmail.Api;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * @brief Sends one request per mail for a bulk action, with at most MAX_IN_FLIGHT at a
+ * time, and reports all results together once the last one completed.
+ * The server has no batch endpoint, so a bulk action is many single requests. Callers
+ * send them with PRIORITY, and the PriorityGate never sends more of that class at a
+ * time than this, so queueing them all at once would only park threads in the gate.
+ */
+public class FanOut {
+    // the priority callers pass with each request
+    public static final RequestPriority PRIORITY = RequestPriority.USER_INITIATED;
+    public static final int MAX_IN_FLIGHT = PRIORITY.getLimit();
+
+    /**
+     * @brief Outcome of a bulk action.
+     */
+    public static class Result {
+        private final List<String> succeeded;
+        private final List<String> failed;
+
+        /**
+         * @param succeeded The IDs the server accepted the request for.
+         * @param failed The IDs whose request was rejected or could not be sent.
+         */
+        public Result(@NonNull List<String> succeeded, @NonNull List<String> failed) {
+            this.succeeded = Collections.unmodifiableList(succeeded);
+            this.failed = Collections.unmodifiableList(failed);
+        }
+
+        /**
+         * @return The IDs the server accepted the request for.
+         */
+        @NonNull
+        public List<String> getSucceeded() {
+            return succeeded;
+        }
+
+        /**
+         * @return The IDs whose request was rejected or could not be sent.
+         */
+        @NonNull
+        public List<String> getFailed() {
+            return failed;
+        }
+    }
+
+    private final List<String> ids;
+    private final Function<String, Call<Void>> request;
+    private final Consumer<Result> onDone;
+    // guarded by this
+    private final List<String> succeeded = new ArrayList<>();
+    private final List<String> failed = new ArrayList<>();
+    private int next;
+
+    private FanOut(List<String> ids, Function<String, Call<Void>> request,
+                   Consumer<Result> onDone) {
+        this.ids = ids;
+        this.request = request;
+        this.onDone = onDone;
+    }
+
+    /**
+     * @brief Sends the request for every ID.
+     * @param ids The IDs, e.g. of the selected mails.
+     * @param request Creates the request for one ID.
+     * @param onDone Receives the results, on a background thread.
+     */
+    public static void run(@NonNull List<String> ids,
+                           @NonNull Function<String, Call<Void>> request,
+                           @NonNull Consumer<Result> onDone) {
+        if (ids.isEmpty()) {
+            onDone.accept(new Result(new ArrayList<>(), new ArrayList<>()));
+            return;
+        }
+        FanOut fanOut = new FanOut(new ArrayList<>(ids), request, onDone);
+        for (int i = 0; i < Math.min(MAX_IN_FLIGHT, ids.size()); i++) {
+            fanOut.sendNext();
+        }
+    }
+
+    private void sendNext() {
+        String id;
+        synchronized (this) {
+            if (next == ids.size()) {
+                return;
+            }
+            id = ids.get(next++);
+        }
+        request.apply(id).enqueue(new Callback<>() {
+            @Override
+            public void onResponse(@NonNull Call<Void> call, @NonNull Response<Void> response) {
+                completed(id, response.isSuccessful());
+            }
+
+            @Override
+            public void onFailure(@NonNull Call<Void> call, @NonNull Throwable t) {
+                completed(id, false);
+            }
+        });
+    }
+
+    private void completed(String id, boolean ok) {
+        boolean last;
+        synchronized (this) {
+            (ok ? succeeded : failed).add(id);
+            last = succeeded.size() + failed.size() == ids.size();
+        }
+        if (last) {
+            onDone.accept(new Result(succeeded, failed));
+        } else {
+            sendNext();
+        }
+    }
+}
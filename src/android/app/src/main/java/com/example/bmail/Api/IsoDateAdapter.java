@@ -0,0 +1,86 @@
+package com.example.bmail.Api;
+
+import androidx.annotation.NonNull;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * @brief Reads and writes dates the way the server does, e.g. "2025-03-01T09:30:00.000Z"
+ * from Date.toISOString(): always in UTC, whatever the time zone of the device.
+ * Gson's setDateFormat() formats in the device's zone, while the pattern writes a
+ * literal 'Z', so every date would be off by the zone offset.
+ */
+public final class IsoDateAdapter extends TypeAdapter<Date> {
+    private static final SimpleDateFormat FORMAT = utc("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+    // also accepted when parsing, in case a date comes without milliseconds
+    private static final SimpleDateFormat FORMAT_SECONDS = utc("yyyy-MM-dd'T'HH:mm:ss'Z'");
+
+    private static SimpleDateFormat utc(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        format.setLenient(false);
+        return format;
+    }
+
+    /**
+     * @param date The date.
+     * @return The date in the server's format, in UTC.
+     */
+    @NonNull
+    public static String format(@NonNull Date date) {
+        // SimpleDateFormat is not thread-safe
+        synchronized (FORMAT) {
+            return FORMAT.format(date);
+        }
+    }
+
+    /**
+     * @param text A date in the server's format.
+     * @return The date.
+     * @throws ParseException If the text is not such a date.
+     */
+    @NonNull
+    public static Date parse(@NonNull String text) throws ParseException {
+        synchronized (FORMAT) {
+            try {
+                return FORMAT.parse(text);
+            } catch (ParseException e) {
+                return FORMAT_SECONDS.parse(text);
+            }
+        }
+    }
+
+    @Override
+    public void write(JsonWriter out, Date value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else {
+            out.value(format(value));
+        }
+    }
+
+    @Override
+    public Date read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String text = in.nextString();
+        try {
+            return parse(text);
+        } catch (ParseException e) {
+            throw new JsonSyntaxException("Invalid date " + text, e);
+        }
+    }
+}
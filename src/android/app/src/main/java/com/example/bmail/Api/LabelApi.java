@@ -1,85 +1,66 @@
 package com.example.bmail.Api;
 
 import android.content.Context;
-import android.content.SharedPreferences;
-import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.lifecycle.MutableLiveData;
 
 import com.example.bmail.Entities.Label;
 import com.example.bmail.Entities.CreateLabelRequest;
-import com.example.bmail.R;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.example.bmail.Utils.AppLog;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
-import retrofit2.Retrofit;
-import retrofit2.converter.gson.GsonConverterFactory;
 
 public class LabelApi {
     private static final String TAG = "LabelApi";
-    private static final String PREFS_NAME = "user_prefs";
-    private static final String TOKEN_KEY = "auth_token";
-    private static final String BEARER_PREFIX = "Bearer ";
 
     private final MutableLiveData<List<Label>> labelListData;
     private final WebServiceApi webServiceApi;
-    private final SharedPreferences prefs;
+    private final SingleFlight singleFlight = new SingleFlight();
 
     public LabelApi(MutableLiveData<List<Label>> labelListData, @NonNull Context context) {
         this.labelListData = labelListData;
-        Context appContext = context.getApplicationContext();
-        this.prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        this.webServiceApi = createWebServiceApi(appContext);
-    }
-
-    @NonNull
-    private WebServiceApi createWebServiceApi(@NonNull Context context) {
-        Gson gson = new GsonBuilder()
-                .excludeFieldsWithoutExposeAnnotation()
-                .create();
-
-        Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl(context.getString(R.string.api))
-                .addConverterFactory(GsonConverterFactory.create(gson))
-                .build();
-
-        return retrofit.create(WebServiceApi.class);
-    }
-
-    private String getToken() {
-        return prefs.getString(TOKEN_KEY, null);
+        this.webServiceApi = ApiClient.authenticatedApi(context.getApplicationContext());
     }
 
     public void loadLabels() {
-        String token = getToken();
-        Log.i(TAG, "Token: " + token);
-
-        Call<List<Label>> call = webServiceApi.getLabels(BEARER_PREFIX + token);
-        call.enqueue(new Callback<>() {
-            @Override
-            public void onResponse(@NonNull Call<List<Label>> call, @NonNull Response<List<Label>> response) {
-                if (response.isSuccessful() && response.body() != null) {
-                    List<Label> labels = response.body();
-                    Log.i(TAG, "Labels loaded successfully: " + labels.size() + " labels found.");
-                    labelListData.postValue(labels);
-                } else {
-                    Log.e(TAG, "Failed to load labels: " + response.message());
-                    labelListData.postValue(null);
-                }
-            }
+        loadLabels(null);
+    }
 
-            @Override
-            public void onFailure(@NonNull Call<List<Label>> call, @NonNull Throwable t) {
-                Log.e(TAG, "Network error: ", t);
-                labelListData.postValue(null);
-            }
-        });
+    /**
+     * @brief Loads the labels and reports when they were stored.
+     * @param onDone Receives true once the labels were posted, false if loading failed.
+     */
+    public void loadLabels(@Nullable Consumer<Boolean> onDone) {
+        // onActive and an explicit refresh often ask at the same time
+        singleFlight.enqueue("labels", () -> webServiceApi.getLabels(),
+                new Callback<>() {
+                    @Override
+                    public void onResponse(@NonNull Call<List<Label>> call, @NonNull Response<List<Label>> response) {
+                        if (response.isSuccessful() && response.body() != null) {
+                            List<Label> labels = response.body();
+                            AppLog.i(TAG, "Labels loaded successfully: " + labels.size() + " labels found.");
+                            labelListData.postValue(labels);
+                            if (onDone != null) onDone.accept(true);
+                        } else {
+                            // keep showing the labels loaded before
+                            AppLog.e(TAG, "Failed to load labels: " + response.message());
+                            if (onDone != null) onDone.accept(false);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(@NonNull Call<List<Label>> call, @NonNull Throwable t) {
+                        AppLog.e(TAG, "Network error: ", t);
+                        if (onDone != null) onDone.accept(false);
+                    }
+                });
     }
 
 
@@ -89,9 +70,7 @@ public class LabelApi {
      * @param callback The callback to handle the response.
      */
     public void createLabel(CreateLabelRequest labelRequest, retrofit2.Callback<Void> callback) {
-        String token = getToken();
-        Log.i(TAG, "Creating label with token: " + token);
-        Call<Void> call = webServiceApi.createLabel(BEARER_PREFIX + token, labelRequest);
+        Call<Void> call = webServiceApi.createLabel(labelRequest);
         call.enqueue(callback);
     }
 
@@ -101,9 +80,8 @@ public class LabelApi {
      * @param callback The callback to handle the response.
      */
     public void deleteLabel(String labelId, retrofit2.Callback<Void> callback) {
-        String token = getToken();
-        Log.i(TAG, "Deleting label with ID: " + labelId + " using token: " + token);
-        Call<Void> call = webServiceApi.deleteLabel(BEARER_PREFIX + token, labelId);
+        AppLog.i(TAG, "Deleting label with ID: " + labelId);
+        Call<Void> call = webServiceApi.deleteLabel(labelId);
         call.enqueue(callback);
     }
 
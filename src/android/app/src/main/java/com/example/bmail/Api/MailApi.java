@@ -1,186 +1,200 @@
 package com.example.bmail.Api;
 
 import android.content.Context;
-import android.content.SharedPreferences;
-import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.lifecycle.MutableLiveData;
 
 import com.example.bmail.Entities.AttachLabelRequest;
 import com.example.bmail.Entities.ClientMail;
 import com.example.bmail.Entities.ServerMail;
-import com.example.bmail.R;
 import com.example.bmail.db.MailDao;
+import com.example.bmail.Utils.AppLog;
+import com.example.bmail.core.MailSearch;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
-import retrofit2.Retrofit;
-import retrofit2.converter.gson.GsonConverterFactory;
 
 public class MailApi {
+    // list responses carry a snippet instead of the body, bodies are fetched when a mail is opened
+    private static final String VIEW_SUMMARY = "summary";
     private final MailDao mailDao;
     private final MutableLiveData<List<ServerMail>> mailListData;
-    WebServiceApi webServiceApi;
-    private final Context context;
+    private final WebServiceApi webServiceApi;
     private final Gson gson;
+    private final MailRemoteMediator mailMediator;
+    private final SingleFlight singleFlight = new SingleFlight();
+    @Nullable
+    private volatile MailRemoteMediator.OnMailsChanged onMailsChanged;
 
     public MailApi(MailDao mailDao, MutableLiveData<List<ServerMail>> mailListData, @NonNull Context context) {
+        this(mailDao, mailListData, ApiClient.authenticatedApi(context));
+    }
+
+    /**
+     * @brief Creates the API against another server, e.g. an in-process mock in tests.
+     * @param baseUrl The server URL to use instead of R.string.api.
+     */
+    @VisibleForTesting
+    MailApi(MailDao mailDao, MutableLiveData<List<ServerMail>> mailListData,
+            @NonNull Context context, @NonNull String baseUrl) {
+        this(mailDao, mailListData, ApiClient.create(baseUrl, ApiClient.authenticated(context)));
+    }
+
+    private MailApi(MailDao mailDao, MutableLiveData<List<ServerMail>> mailListData,
+                    @NonNull WebServiceApi webServiceApi) {
         this.mailDao = mailDao;
         this.mailListData = mailListData;
-        this.context = context.getApplicationContext();
-
-        gson = new GsonBuilder()
-                .excludeFieldsWithoutExposeAnnotation()
-                .setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'") // ISO 8601 format
-                .create();
-
-        Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl(context.getString(R.string.api))
-                .addConverterFactory(GsonConverterFactory.create(gson))
-                .build();
-        webServiceApi = retrofit.create(WebServiceApi.class);
+        this.webServiceApi = webServiceApi;
+        gson = ApiClient.gson();
+        mailMediator = new MailRemoteMediator(mailDao, mailListData, this::createPageCall,
+                singleFlight);
     }
 
     /**
-     * @brief Retrieves the authentication token from SharedPreferences.
-     * @return The authentication token, or null if not found.
+     * @brief Sets a listener for the mails stored from every page of the server.
+     * @param listener Receives the mails of a page, on a background thread.
      */
-    public String getToken() {
-        SharedPreferences prefs = context.getSharedPreferences("user_prefs",
-                Context.MODE_PRIVATE);
-        return prefs.getString("auth_token", null);
+    public void setOnMailsStored(@Nullable Consumer<List<ServerMail>> listener) {
+        mailMediator.setOnMailsStored(listener);
     }
 
     /**
-     * @brief Loads all mails from the server and updates the local database.
-     * This method fetches all mails from the server, clears the existing mails in the database,
-     * and inserts the new mails. It also updates the live data to notify observers of the changes.
+     * @brief Sets a listener for the mails each change stores or removes, so the list
+     * can be patched. Without one, the whole list is read again and posted instead.
+     * @param listener Receives the changed mails, on a background thread.
      */
-    public void loadAllMails(){
-        String token = getToken();
-        Log.i("MailApi", "Token: " + token);
-        // log the token being used
-        Log.i("MailApi", "Loading all mails with token: " + token);
-
-        Call<List<ServerMail>> call = webServiceApi.getAllMails("Bearer " + token);
-        call.enqueue(
-                new Callback<>() {
-
-                    @Override
-                    public void onResponse(@NonNull Call<List<ServerMail>> call,
-                                           @NonNull Response<List<ServerMail>> response) {
-                        new Thread(() -> {
-                            if (response.body() == null) {
-                                Log.e("MailApi", "Response body is null");
-                                mailListData.postValue(null);
-                                return;
-                            }
-                            Log.i("MailApi", "Fetched all mails successfully");
-                            List<ServerMail> mails = response.body();
-                            // Clear the existing mails in the database
-                            mailDao.clear();
-                            mailDao.insertList(mails);
-
-                            List<ServerMail> dbMails = mailDao.getAllMails();
-                            mailListData.postValue(dbMails);
-                            // log the number of mails fetched
-                            Log.i("MailApi", "Number of mails fetched: " + mails.size());
-                        }).start();
+    public void setOnMailsChanged(@Nullable MailRemoteMediator.OnMailsChanged listener) {
+        onMailsChanged = listener;
+        mailMediator.setOnMailsChanged(listener);
+    }
 
-                    }
+    /**
+     * @brief Publishes a change already stored in the local database. Call it off the
+     * main thread; only the changed mails are read back.
+     * @param changedIds The IDs of the mails that were updated.
+     * @param removedIds The IDs of the mails that were deleted.
+     */
+    private void publishChanges(@NonNull List<String> changedIds,
+                                @NonNull List<String> removedIds) {
+        MailRemoteMediator.OnMailsChanged listener = onMailsChanged;
+        if (listener == null) {
+            mailListData.postValue(mailDao.getAllMails());
+            return;
+        }
+        List<ServerMail> stored = new ArrayList<>(changedIds.size());
+        for (int start = 0; start < changedIds.size(); start += MailDao.MAX_IN_LIST) {
+            stored.addAll(mailDao.getByIds(changedIds.subList(start,
+                    Math.min(changedIds.size(), start + MailDao.MAX_IN_LIST))));
+        }
+        listener.onMailsChanged(stored, removedIds);
+    }
 
-                    @Override
-                    public void onFailure(@NonNull Call<List<ServerMail>> call,
-                                          @NonNull Throwable t) {
-                        Log.e("MailApi", "Network error: " + t.getMessage());
-                        mailListData.setValue(null);
-                    }
-                }
-        );
+    /**
+     * @brief Loads the newest page of all mails from the server into the local database.
+     * Older mails are fetched page by page through loadNextPage().
+     */
+    public void loadAllMails(){
+        AppLog.i("MailApi", "Loading all mails");
+        mailMediator.refresh(null);
     }
+
     /**
-     * @brief Fetches mails for a specific label from the server and updates the local database.
+     * @brief Loads the newest page of mails for a specific label into the local database.
      * @param label The label for which to fetch mails.
      */
     public void reload(@NonNull String label) {
-        String token = getToken();
-        Log.i("MailApi", "Token: " + token);
-        // log the label being fetched
-        Log.i("MailApi", "Fetching mails for label: " + label);
-
-        Call<List<ServerMail>> call = webServiceApi.getMails("Bearer " + token,
-                label.toLowerCase());
-        call.enqueue(
-                new Callback<>() {
+        AppLog.i("MailApi", "Fetching mails for label: " + label);
+        mailMediator.refresh(label);
+    }
 
-                    @Override
-                    public void onResponse(@NonNull Call<List<ServerMail>> call,
-                                           @NonNull Response<List<ServerMail>> response) {
-                        new Thread(() -> {
-                            if (response.body() == null) {
-                                Log.e("MailApi", "Response body is null");
-                                mailListData.postValue(null);
-                                return;
-                            }
-                            Log.i("MailApi", "Fetched mails successfully");
-                            // log the response body size
-                            // log the first mail if available
-                            List<ServerMail> mails = response.body();
-                            // log the first mail's title if available
-                            if (!mails.isEmpty()) {
-                                Log.i("MailApi", "First mail: " + mails.get(0));
-                            }
-                            // Clear the existing mails in the database
-                            mailDao.clear();
-                            mailDao.insertList(mails);
-
-                            List<ServerMail> dbMails = mailDao.getAllMails();
-                            mailListData.postValue(dbMails);
-                            // log the number of mails fetched
-                            Log.i("MailApi", "Number of mails fetched: " + mails.size());
-                        }).start();
+    /**
+     * @brief Loads the newest page of mails for a label and reports when it was stored.
+     * @param label The label for which to fetch mails.
+     * @param onDone Receives true once the page was stored and posted, false if it failed.
+     */
+    public void reload(@NonNull String label, @Nullable Consumer<Boolean> onDone) {
+        AppLog.i("MailApi", "Fetching mails for label: " + label);
+        mailMediator.refresh(label, onDone);
+    }
 
-                    }
+    /**
+     * @brief Loads the next page of the label currently shown, if there is one.
+     */
+    public void loadNextPage() {
+        mailMediator.loadNextPage();
+    }
 
-                    @Override
-                    public void onFailure(@NonNull Call<List<ServerMail>> call,
-                                          @NonNull Throwable t) {
-                        Log.e("MailApi", "Network error: " + t.getMessage());
-                        mailListData.setValue(null);
-                    }
-                }
-        );
+    /**
+     * @brief Checks whether the list is close enough to its end to load the next page.
+     * @param lastVisiblePosition The adapter position of the last visible row.
+     * @param itemCount The number of rows in the list.
+     * @return true if the next page should be loaded.
+     */
+    public boolean shouldLoadMore(int lastVisiblePosition, int itemCount) {
+        return mailMediator.shouldLoadMore(lastVisiblePosition, itemCount);
+    }
 
+    /**
+     * @brief Creates the call for one page of mails.
+     * @param label The label to page, or null for all mail.
+     * @param before The keyset cursor, or null for the newest page.
+     * @param limit The page size.
+     * @return The call fetching the page.
+     */
+    private Call<List<ServerMail>> createPageCall(String label, String before, int limit) {
+        if (label == null) {
+            return webServiceApi.getAllMails(before, limit, VIEW_SUMMARY);
+        }
+        return webServiceApi.getMails(label.toLowerCase(), before, limit, VIEW_SUMMARY);
     }
 
     /**
-     * @brief Fetches all mails from the server and updates the local database.
+     * @brief Fetches a single mail with its full body and stores the body locally.
+     * @param mailId The ID of the mail to fetch.
+     * @param callback The callback receiving the full mail.
      */
-    public void sendMail(ClientMail mail, Callback<Void> callback) {
-        String token = getToken();
-        Log.i("MailApi", "Sending mail with token: " + token);
-        String json = gson.toJson(mail);
-        // log the mail object being sent
-        Log.i("MailApi", "Mail object: " + json);
+    public void loadMail(String mailId, Callback<ServerMail> callback) {
+        singleFlight.enqueue("mail/" + mailId,
+                () -> webServiceApi.getMail(mailId), new Callback<>() {
+                    @Override
+                    public void onResponse(@NonNull Call<ServerMail> call,
+                                           @NonNull Response<ServerMail> response) {
+                        ServerMail mail = response.body();
+                        if (response.isSuccessful() && mail != null) {
+                            // stored so reopening the mail needs no request, see
+                            // MailRepository.loadFullMail; the list in memory is immutable
+                            new Thread(() -> mailDao.updateBody(mailId, mail.getBody())).start();
+                        } else {
+                            AppLog.e("MailApi", "Failed to load mail: " + response.message());
+                        }
+                        callback.onResponse(call, response);
+                    }
 
-        Call<Void> call = webServiceApi.sendMail("Bearer " + token, mail);
-        call.enqueue(callback);
+                    @Override
+                    public void onFailure(@NonNull Call<ServerMail> call, @NonNull Throwable t) {
+                        AppLog.e("MailApi", "Network error while loading mail: " + t.getMessage());
+                        callback.onFailure(call, t);
+                    }
+                });
     }
 
     /**
      * @brief Fetches all mails from the server and updates the local database.
      */
-    public void updateDraft(ServerMail mail, String mailId, Callback<Void> callback) {
-        String token = getToken();
-        Log.i("MailApi", "Updating draft with token: " + token);
-        Call<Void> call = webServiceApi.updateDraft("Bearer " + token, mail, mailId);
+    public void sendMail(ClientMail mail, Callback<Void> callback) {
+        // serializing the mail only to log it is debug-only work
+        if (AppLog.DEBUG) AppLog.d("MailApi", "Mail object: " + gson.toJson(mail));
+
+        Call<Void> call = webServiceApi.sendMail(mail);
         call.enqueue(callback);
     }
 
@@ -189,30 +203,34 @@ public class MailApi {
      * @param query The search query.
      */
     public void searchMail(String query) {
-        String token = getToken();
-        Log.i("MailApi", "Searching mail with token: " + token);
+        AppLog.i("MailApi", "Searching mail: " + query);
+        // search results are not paged, stop paging the label until the next reload
+        mailMediator.suspend();
 
-        Call<List<ServerMail>> call = webServiceApi.searchMails("Bearer " + token, query);
-        call.enqueue(new Callback<>() {
-            @Override
-            public void onResponse(@NonNull Call<List<ServerMail>> call,
-                                   @NonNull Response<List<ServerMail>> response) {
-                if (response.isSuccessful() && response.body() != null) {
-                    Log.i("MailApi", "Search completed successfully");
-                    List<ServerMail> mails = response.body();
-                    mailListData.postValue(mails);
-                } else {
-                    Log.e("MailApi", "Search failed: " + response.message());
-                    mailListData.postValue(null);
-                }
-            }
+        singleFlight.enqueue("search/" + query,
+                () -> webServiceApi.searchMails(query, VIEW_SUMMARY),
+                new Callback<>() {
+                    @Override
+                    public void onResponse(@NonNull Call<List<ServerMail>> call,
+                                           @NonNull Response<List<ServerMail>> response) {
+                        if (response.isSuccessful() && response.body() != null) {
+                            AppLog.i("MailApi", "Search completed successfully");
+                            List<ServerMail> mails = response.body();
+                            mailListData.postValue(mails);
+                        } else {
+                            // leave the current list on screen
+                            AppLog.e("MailApi", "Search failed: " + response.message());
+                        }
+                    }
 
-            @Override
-            public void onFailure(@NonNull Call<List<ServerMail>> call, @NonNull Throwable t) {
-                Log.e("MailApi", "Network error during search: " + t.getMessage());
-                mailListData.setValue(null);
-            }
-        });
+                    @Override
+                    public void onFailure(@NonNull Call<List<ServerMail>> call, @NonNull Throwable t) {
+                        AppLog.e("MailApi", "Network error during search: " + t.getMessage());
+                        // search the stored mails instead
+                        new Thread(() -> mailListData.postValue(
+                                MailSearch.filter(mailDao.getAllMails(), query))).start();
+                    }
+                });
     }
 
     /**
@@ -222,21 +240,17 @@ public class MailApi {
      */
     public void addLabelToMail(String mailId, String labelId) {
         AttachLabelRequest attachLabelRequest = new AttachLabelRequest(labelId);
-        String json = gson.toJson(attachLabelRequest);
-        // log the json object being sent
-        Log.i("MailApi", "Adding label to mail with ID: " + mailId + " and label ID: " + labelId);
-        Log.i("MailApi", "Label request JSON: " + json);
+        AppLog.i("MailApi", "Adding label to mail with ID: " + mailId + " and label ID: " + labelId);
 
-        String token = getToken();
 
-        Call<Void> call = webServiceApi.addLabelToMail("Bearer " + token, mailId,
-                attachLabelRequest);
+        Call<Void> call = webServiceApi.addLabelToMail(mailId, attachLabelRequest,
+                RequestPriority.VISIBLE);
         call.enqueue(new Callback<>() {
             @Override
             public void onResponse(@NonNull Call<Void> call,
                                    @NonNull Response<Void> response) {
                 if (response.isSuccessful()) {
-                    Log.i("MailApi", "Label added successfully");
+                    AppLog.i("MailApi", "Label added successfully");
                     new Thread(() -> {
                         ServerMail mail = mailDao.getById(mailId);
                         if (mail != null) {
@@ -244,25 +258,24 @@ public class MailApi {
                             updatedLabels.add(labelId);
                             mailDao.updateMailLabels(mailId, updatedLabels);
 
-                            List<ServerMail> updatedMails = mailDao.getAllMails();
-                            mailListData.postValue(updatedMails);
-                            Log.i("MailApi", "Label added to local database");
+                            publishChanges(List.of(mailId), List.of());
+                            AppLog.i("MailApi", "Label added to local database");
                         }
                     }).start();
                 } else {
-                    Log.e("MailApi", "Failed to add label: " + response.message());
+                    AppLog.e("MailApi", "Failed to add label: " + response.message());
                     // get the error message from the response body
                     try (okhttp3.ResponseBody errorBody = response.errorBody()) {
-                        Log.e("MailApi", "Error body: " + errorBody);
+                        AppLog.e("MailApi", "Error body: " + errorBody);
                     } catch (Exception e) {
-                        Log.e("MailApi", "Error reading error body: " + e.getMessage());
+                        AppLog.e("MailApi", "Error reading error body: " + e.getMessage());
                     }
                 }
             }
 
             @Override
             public void onFailure(@NonNull Call<Void> call, @NonNull Throwable t) {
-                Log.e("MailApi", "Network error while adding label: " + t.getMessage());
+                AppLog.e("MailApi", "Network error while adding label: " + t.getMessage());
             }
         });
     }
@@ -273,17 +286,17 @@ public class MailApi {
      * @param labelId The ID of the label to be removed.
      */
     public void removeLabelFromMail(String mailId, String labelId) {
-        String token = getToken();
-        Log.i("MailApi", "Removing label from mail with ID: "
+        AppLog.i("MailApi", "Removing label from mail with ID: "
                 + mailId + " and label ID: " + labelId);
 
-        Call<Void> call = webServiceApi.removeLabelFromMail("Bearer " + token, mailId, labelId);
+        Call<Void> call = webServiceApi.removeLabelFromMail(mailId, labelId,
+                RequestPriority.VISIBLE);
         call.enqueue(new Callback<>() {
             @Override
             public void onResponse(@NonNull Call<Void> call,
                                    @NonNull Response<Void> response) {
                 if (response.isSuccessful()) {
-                    Log.i("MailApi", "Label removed successfully");
+                    AppLog.i("MailApi", "Label removed successfully");
                     // Remove the label from the local database
                     new Thread(() -> {
                         ServerMail mail = mailDao.getById(mailId);
@@ -292,19 +305,18 @@ public class MailApi {
                             updatedLabels.remove(labelId);
                             mailDao.updateMailLabels(mailId, updatedLabels);
 
-                            List<ServerMail> updatedMails = mailDao.getAllMails();
-                            mailListData.postValue(updatedMails);
-                            Log.i("MailApi", "Label removed from local database");
+                            publishChanges(List.of(mailId), List.of());
+                            AppLog.i("MailApi", "Label removed from local database");
                         }
                     }).start();
                 } else {
-                    Log.e("MailApi", "Failed to remove label: " + response.message());
+                    AppLog.e("MailApi", "Failed to remove label: " + response.message());
                 }
             }
 
             @Override
             public void onFailure(@NonNull Call<Void> call, @NonNull Throwable t) {
-                Log.e("MailApi", "Network error while removing label: " + t.getMessage());
+                AppLog.e("MailApi", "Network error while removing label: " + t.getMessage());
             }
         });
 
@@ -315,33 +327,87 @@ public class MailApi {
      * @param mailId The ID of the mail to be deleted.
      */
     public void deleteMail(String mailId) {
-        String token = getToken();
-        Log.i("MailApi", "Deleting mail with ID: " + mailId);
+        AppLog.i("MailApi", "Deleting mail with ID: " + mailId);
 
-        Call<Void> call = webServiceApi.deleteMail("Bearer " + token, mailId);
+        Call<Void> call = webServiceApi.deleteMail(mailId, RequestPriority.VISIBLE);
         call.enqueue(new Callback<>() {
             @Override
             public void onResponse(@NonNull Call<Void> call,
                                    @NonNull Response<Void> response) {
                 if (response.isSuccessful()) {
-                    Log.i("MailApi", "Mail deleted successfully");
+                    AppLog.i("MailApi", "Mail deleted successfully");
                     // Remove the mail from the local database
                     new Thread(() -> {
                         mailDao.deleteById(mailId);
-                        List<ServerMail> updatedMails = mailDao.getAllMails();
-                        mailListData.postValue(updatedMails);
-                        Log.i("MailApi", "Mail removed from local database");
-                    });
+                        publishChanges(List.of(), List.of(mailId));
+                        AppLog.i("MailApi", "Mail removed from local database");
+                    }).start();
                 } else {
-                    Log.e("MailApi", "Failed to delete mail: " + response.message());
+                    AppLog.e("MailApi", "Failed to delete mail: " + response.message());
                 }
             }
 
             @Override
             public void onFailure(@NonNull Call<Void> call, @NonNull Throwable t) {
-                Log.e("MailApi", "Network error while deleting mail: " + t.getMessage());
+                AppLog.e("MailApi", "Network error while deleting mail: " + t.getMessage());
             }
         });
 
     }
+
+    /**
+     * @brief Deletes several mails, see FanOut for how the requests are sent.
+     * The mails the server deleted are removed locally in one transaction and from the
+     * list in one change.
+     * @param mailIds The IDs of the mails to delete.
+     * @param onDone Receives the results once the local database is updated.
+     */
+    public void deleteMails(@NonNull List<String> mailIds,
+                            @NonNull Consumer<FanOut.Result> onDone) {
+        AppLog.i("MailApi", "Deleting " + mailIds.size() + " mails");
+        FanOut.run(mailIds,
+                mailId -> webServiceApi.deleteMail(mailId, FanOut.PRIORITY),
+                result -> new Thread(() -> {
+                    mailDao.deleteByIds(result.getSucceeded());
+                    publishChanges(List.of(), result.getSucceeded());
+                    logBulkResult("Deleted", result);
+                    onDone.accept(result);
+                }).start());
+    }
+
+    /**
+     * @brief Adds a label to or removes it from several mails, see FanOut for how the
+     * requests are sent. The mails the server updated are changed locally in one
+     * transaction and in the list in one change.
+     * @param mailIds The IDs of the mails.
+     * @param labelId The ID of the label.
+     * @param attach true to add the label, false to remove it.
+     * @param onDone Receives the results once the local database is updated.
+     */
+    public void setLabel(@NonNull List<String> mailIds, @NonNull String labelId, boolean attach,
+                         @NonNull Consumer<FanOut.Result> onDone) {
+        AppLog.i("MailApi", (attach ? "Adding label " : "Removing label ") + labelId
+                + " for " + mailIds.size() + " mails");
+        AttachLabelRequest attachLabelRequest = new AttachLabelRequest(labelId);
+        FanOut.run(mailIds,
+                mailId -> attach
+                        ? webServiceApi.addLabelToMail(mailId, attachLabelRequest,
+                                FanOut.PRIORITY)
+                        : webServiceApi.removeLabelFromMail(mailId, labelId, FanOut.PRIORITY),
+                result -> new Thread(() -> {
+                    mailDao.setLabel(result.getSucceeded(), labelId, attach);
+                    publishChanges(result.getSucceeded(), List.of());
+                    logBulkResult(attach ? "Labeled" : "Unlabeled", result);
+                    onDone.accept(result);
+                }).start());
+    }
+
+    private static void logBulkResult(String action, FanOut.Result result) {
+        if (result.getFailed().isEmpty()) {
+            AppLog.i("MailApi", action + " " + result.getSucceeded().size() + " mails");
+        } else {
+            AppLog.e("MailApi", action + " " + result.getSucceeded().size() + " mails, "
+                    + result.getFailed().size() + " failed");
+        }
+    }
 }
@@ -0,0 +1,321 @@
+package com.example.bmail.Api;
+
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.bmail.Entities.ServerMail;
+import com.example.bmail.Metrics.Tracer;
+import com.example.bmail.db.MailDao;
+import com.example.bmail.Utils.AppLog;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * @brief Pages the mails of the current label from the server into the local database.
+ * The server returns mails newest first, so the mediator keeps a keyset cursor
+ * ("updatedAt,id" of the oldest mail loaded so far) and asks for the next page when
+ * the list is scrolled close to its end.
+ * Refreshing the label already shown merges its first page into the stored mails and
+ * keeps the pages loaded below it, so returning to the list does not lose the place.
+ * That merge also brings in mails edited while the user paged: the server sorts by
+ * updatedAt, so an edited mail moves above the cursor where later pages never list it.
+ */
+public class MailRemoteMediator {
+    public static final int PAGE_SIZE = 50;
+    // number of rows left below the last visible one before the next page is requested
+    public static final int PREFETCH_DISTANCE = 10;
+    private static final String TAG = "MailRemoteMediator";
+
+    /**
+     * @brief Creates the call that fetches one page.
+     */
+    public interface PageSource {
+        /**
+         * @param label The label to page, or null for all mail.
+         * @param before The cursor of the oldest mail already loaded, or null for the first page.
+         * @param limit The maximum number of mails to return.
+         * @return The call fetching the page.
+         */
+        Call<List<ServerMail>> createCall(@Nullable String label, @Nullable String before,
+                                          int limit);
+    }
+
+    /**
+     * @brief Receives the mails a change stored or removed, instead of the whole list.
+     */
+    public interface OnMailsChanged {
+        /**
+         * @param stored The changed mails as they are stored now.
+         * @param removedIds The IDs of the mails that were removed.
+         */
+        void onMailsChanged(@NonNull List<ServerMail> stored, @NonNull List<String> removedIds);
+    }
+
+    private final MailDao mailDao;
+    private final MutableLiveData<List<ServerMail>> mailListData;
+    private final PageSource pageSource;
+    private final SingleFlight singleFlight;
+    @Nullable
+    private volatile Consumer<List<ServerMail>> onMailsStored;
+    @Nullable
+    private volatile OnMailsChanged onMailsChanged;
+
+    private String label;
+    private String cursor;
+    private boolean endReached = true;
+    private boolean loading;
+    // incremented on every refresh so responses for a previous label are dropped
+    private int generation;
+
+    public MailRemoteMediator(MailDao mailDao, MutableLiveData<List<ServerMail>> mailListData,
+                              PageSource pageSource, SingleFlight singleFlight) {
+        this.mailDao = mailDao;
+        this.mailListData = mailListData;
+        this.pageSource = pageSource;
+        this.singleFlight = singleFlight;
+    }
+
+    /**
+     * @brief Sets a listener for every page stored in the local database.
+     * @param listener Receives the mails of the page, on a background thread.
+     */
+    public void setOnMailsStored(@Nullable Consumer<List<ServerMail>> listener) {
+        onMailsStored = listener;
+    }
+
+    /**
+     * @brief Sets a listener for pages added to the stored mails. Without one, the
+     * whole list is read again and posted after every page.
+     * @param listener Receives the mails of the page, on a background thread.
+     */
+    public void setOnMailsChanged(@Nullable OnMailsChanged listener) {
+        onMailsChanged = listener;
+    }
+
+    /**
+     * @brief Replaces the local mails with the first page of a label, or merges it into
+     * them if the label is the one shown.
+     * @param label The label to load, or null for all mail.
+     */
+    public void refresh(@Nullable String label) {
+        refresh(label, null);
+    }
+
+    /**
+     * @brief Replaces the local mails with the first page of a label, or merges it into
+     * them if the label is the one shown, and reports when the page was stored and posted.
+     * @param label The label to load, or null for all mail.
+     * @param onDone Receives true once the page was posted, false if it could not be loaded.
+     */
+    public void refresh(@Nullable String label, @Nullable Consumer<Boolean> onDone) {
+        int requestGeneration;
+        boolean merge;
+        synchronized (this) {
+            // the label is shown with its pages: the cursor and the paging state stay
+            merge = cursor != null && Objects.equals(label, this.label);
+            if (!merge) {
+                this.label = label;
+                this.cursor = null;
+                this.endReached = false;
+                this.loading = true;
+                ++generation;
+            }
+            requestGeneration = generation;
+        }
+        fetch(label, null, requestGeneration, merge, onDone);
+    }
+
+    /**
+     * @brief Fetches the page after the oldest loaded mail, unless one is already loading
+     * or the end of the label was reached.
+     */
+    public void loadNextPage() {
+        String pageLabel;
+        String before;
+        int requestGeneration;
+        synchronized (this) {
+            if (loading || endReached || cursor == null) {
+                return;
+            }
+            loading = true;
+            pageLabel = label;
+            before = cursor;
+            requestGeneration = generation;
+        }
+        AppLog.i(TAG, "Loading page before " + before);
+        fetch(pageLabel, before, requestGeneration, false, null);
+    }
+
+    /**
+     * @brief Stops paging until the next refresh, e.g. while search results are shown.
+     */
+    public synchronized void suspend() {
+        generation++;
+        // the list shows something else now, the next refresh replaces it
+        cursor = null;
+        endReached = true;
+        loading = false;
+    }
+
+    /**
+     * @brief Checks whether the list should request more mails.
+     * @param lastVisiblePosition The adapter position of the last visible row.
+     * @param itemCount The number of rows in the list.
+     * @return true if the next page should be loaded.
+     */
+    public synchronized boolean shouldLoadMore(int lastVisiblePosition, int itemCount) {
+        return !loading && !endReached && lastVisiblePosition >= itemCount - PREFETCH_DISTANCE;
+    }
+
+    /**
+     * @param merge true to merge a first page into the stored mails, without moving the
+     *              cursor, instead of replacing them.
+     */
+    private void fetch(@Nullable String pageLabel, @Nullable String before, int requestGeneration,
+                       boolean merge, @Nullable Consumer<Boolean> onDone) {
+        boolean isRefresh = before == null && !merge;
+        // a refresh fired twice (socket and swipe) joins the request already in flight
+        String key = "mails/" + (pageLabel == null ? "" : pageLabel.toLowerCase())
+                + "?before=" + before;
+        long fetchStart = System.nanoTime();
+        singleFlight.enqueue(key, () -> pageSource.createCall(pageLabel, before, PAGE_SIZE),
+                new Callback<>() {
+                    @Override
+                    public void onResponse(@NonNull Call<List<ServerMail>> call,
+                                           @NonNull Response<List<ServerMail>> response) {
+                        // network round trip and decoding, see "Api.decode" for the latter
+                        Tracer.record("MailRemoteMediator.fetch", fetchStart);
+                        new Thread(() -> {
+                            List<ServerMail> mails = response.body();
+                            if (!isCurrent(requestGeneration)) {
+                                AppLog.i(TAG, "Dropping page of a previous label");
+                                if (onDone != null) onDone.accept(false);
+                                return;
+                            }
+                            if (mails == null) {
+                                AppLog.e(TAG, "Failed to load mails: " + response.code());
+                                if (merge) {
+                                    // the stored pages are still shown
+                                    if (onDone != null) onDone.accept(false);
+                                    return;
+                                }
+                                finishPage(requestGeneration, null);
+                                if (isRefresh) {
+                                    showCachedMails();
+                                }
+                                if (onDone != null) onDone.accept(false);
+                                return;
+                            }
+
+                            List<String> removedIds = Collections.emptyList();
+                            if (merge) {
+                                removedIds = mailDao.mergeFirstPage(mails,
+                                        mails.size() < PAGE_SIZE);
+                            } else if (isRefresh) {
+                                // Replace the existing mails in the database
+                                mailDao.replaceAll(mails, mails.size() < PAGE_SIZE);
+                            } else {
+                                mailDao.insertList(mails);
+                            }
+                            Consumer<List<ServerMail>> listener = onMailsStored;
+                            if (listener != null) {
+                                listener.accept(mails);
+                            }
+                            if (!merge) {
+                                finishPage(requestGeneration, mails);
+                            }
+
+                            OnMailsChanged changeListener = onMailsChanged;
+                            if (!isRefresh && changeListener != null) {
+                                // a later page only adds to the list, a merged first page
+                                // also removes the mails the server no longer lists
+                                changeListener.onMailsChanged(mails, removedIds);
+                                AppLog.i(TAG, "Number of mails fetched: " + mails.size());
+                                if (onDone != null) onDone.accept(true);
+                                return;
+                            }
+                            List<ServerMail> dbMails;
+                            try (Tracer.Section ignored = Tracer.begin("MailDao.getAllMails")) {
+                                dbMails = mailDao.getAllMails();
+                            }
+                            try (Tracer.Section ignored =
+                                         Tracer.begin("MailRemoteMediator.postValue")) {
+                                mailListData.postValue(dbMails);
+                            }
+                            AppLog.i(TAG, "Number of mails fetched: " + mails.size());
+                            if (onDone != null) onDone.accept(true);
+                        }).start();
+                    }
+
+                    @Override
+                    public void onFailure(@NonNull Call<List<ServerMail>> call, @NonNull Throwable t) {
+                        AppLog.e(TAG, "Network error: " + t.getMessage());
+                        if (merge) {
+                            if (onDone != null) onDone.accept(false);
+                            return;
+                        }
+                        finishPage(requestGeneration, null);
+                        if (isRefresh && isCurrent(requestGeneration)) {
+                            new Thread(this::showCachedMails).start();
+                        }
+                        if (onDone != null) onDone.accept(false);
+                    }
+                });
+    }
+
+    /**
+     * @brief Shows the mails already stored locally when a refresh failed, so a
+     * transient error or an unavailable server does not blank the list.
+     */
+    private void showCachedMails() {
+        mailListData.postValue(mailDao.getAllMails());
+    }
+
+    private synchronized boolean isCurrent(int requestGeneration) {
+        return requestGeneration == generation;
+    }
+
+    /**
+     * @brief Moves the cursor past a loaded page.
+     * @param requestGeneration The generation the page was requested for.
+     * @param mails The loaded page, or null if loading failed.
+     */
+    private synchronized void finishPage(int requestGeneration, @Nullable List<ServerMail> mails) {
+        if (requestGeneration != generation) {
+            return;
+        }
+        loading = false;
+        if (mails == null) {
+            return;
+        }
+        if (mails.size() < PAGE_SIZE) {
+            endReached = true;
+        }
+        if (!mails.isEmpty()) {
+            String next = formatCursor(mails.get(mails.size() - 1));
+            // a server that ignores the cursor keeps answering with the same page
+            if (next == null || next.equals(cursor)) {
+                endReached = true;
+            }
+            cursor = next;
+        }
+    }
+
+    @Nullable
+    private String formatCursor(@NonNull ServerMail mail) {
+        if (mail.getUpdatedAt() == null) {
+            return null;
+        }
+        // in UTC like the server's dates, so the cursor round-trips the server value
+        return IsoDateAdapter.format(mail.getUpdatedAt()) + "," + mail.getId();
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.bmail.Api;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import com.example.bmail.Utils.AppLog;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.Call;
+
+/**
+ * @brief Decides which request goes on the wire next, by priority.
+ * At most MAX_IN_FLIGHT requests run at a time, and each class at most its own limit.
+ * One of the slots is kept for USER_BLOCKING requests, and a waiting request is only
+ * let through when no request of a higher class waits, so opening a mail never queues
+ * behind a sync or an image. A USER_BLOCKING request that finds every slot taken
+ * cancels the newest PREFETCH or BACKGROUND GET in flight instead of waiting for it.
+ * OkHttp's own dispatcher is FIFO per host, so ApiClient raises its limits above
+ * these and leaves the ordering to this gate.
+ */
+public class PriorityGate {
+    private static final String TAG = "PriorityGate";
+    // what OkHttp allows per host by default, the server handled this well so far
+    static final int MAX_IN_FLIGHT = 5;
+    // how often a waiting request checks whether its call was canceled
+    private static final long CANCEL_POLL_MILLIS = 100;
+
+    private static final RequestPriority[] PRIORITIES = RequestPriority.values();
+
+    /**
+     * @brief A request on the wire, returned by acquire and passed back to release.
+     */
+    public static final class Ticket {
+        private final RequestPriority priority;
+        private final Call call;
+        private final boolean readOnly;
+
+        private Ticket(RequestPriority priority, Call call, boolean readOnly) {
+            this.priority = priority;
+            this.call = call;
+            this.readOnly = readOnly;
+        }
+    }
+
+    private final int[] running = new int[PRIORITIES.length];
+    private final int[] waiting = new int[PRIORITIES.length];
+    // guarded by this, oldest first
+    private final List<Ticket> inFlight = new ArrayList<>();
+
+    /**
+     * @brief Waits until a request of the given class may be sent.
+     * @param priority The class of the request.
+     * @param call The call, canceled if it is preempted.
+     * @param readOnly true if the request only reads, e.g. a GET, so canceling it
+     * loses nothing but the response.
+     * @return A ticket to pass to release once the response was read.
+     * @throws IOException if the call was canceled or the thread interrupted meanwhile.
+     */
+    @NonNull
+    public Ticket acquire(@NonNull RequestPriority priority, @NonNull Call call,
+                          boolean readOnly) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        synchronized (this) {
+            waiting[priority.ordinal()]++;
+            try {
+                while (!canRun(priority)) {
+                    if (call.isCanceled()) {
+                        throw new IOException("Canceled");
+                    }
+                    if (priority == RequestPriority.USER_BLOCKING) {
+                        preemptFor(priority);
+                    }
+                    wait(CANCEL_POLL_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to be sent");
+            } finally {
+                waiting[priority.ordinal()]--;
+            }
+            running[priority.ordinal()]++;
+            Ticket ticket = new Ticket(priority, call, readOnly);
+            inFlight.add(ticket);
+            long waited = SystemClock.elapsedRealtime() - start;
+            if (AppLog.DEBUG && waited > 0) {
+                AppLog.d(TAG, priority + " request waited " + waited + " ms");
+            }
+            return ticket;
+        }
+    }
+
+    /**
+     * @brief Frees the slot of a request that completed or failed.
+     * @param ticket The ticket returned by acquire.
+     */
+    public synchronized void release(@NonNull Ticket ticket) {
+        if (inFlight.remove(ticket)) {
+            running[ticket.priority.ordinal()]--;
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return true if a request of the class may start now, which is never the case
+     * while one of a higher class waits.
+     */
+    private boolean canRun(RequestPriority priority) {
+        for (int i = 0; i < priority.ordinal(); i++) {
+            if (waiting[i] > 0) {
+                return false;
+            }
+        }
+        int total = inFlight.size();
+        int reserved = priority == RequestPriority.USER_BLOCKING ? 0 : 1;
+        return total < MAX_IN_FLIGHT - reserved
+                && running[priority.ordinal()] < priority.getLimit();
+    }
+
+    /**
+     * @brief Cancels the newest preemptible request so a more urgent one can start.
+     * Its caller sees a failed call, like when the network drops. Requests that change
+     * something, e.g. the DELETEs of a bulk action, are never canceled: the server may
+     * already have applied them.
+     */
+    private void preemptFor(RequestPriority priority) {
+        if (inFlight.size() < MAX_IN_FLIGHT) {
+            // a slot is free, the request only waits for its class limit
+            return;
+        }
+        for (Ticket ticket : inFlight) {
+            if (ticket.call.isCanceled()) {
+                // its slot is about to be released
+                return;
+            }
+        }
+        for (int i = PRIORITIES.length - 1; i > priority.ordinal(); i--) {
+            for (int j = inFlight.size() - 1; j >= 0; j--) {
+                Ticket ticket = inFlight.get(j);
+                if (ticket.priority.ordinal() == i && ticket.priority.isPreemptible()
+                        && ticket.readOnly && !ticket.call.isCanceled()) {
+                    AppLog.i(TAG, "Canceling " + ticket.priority + " "
+                            + ResilienceInterceptor.endpointName(ticket.call.request())
+                            + " for a " + priority + " request");
+                    ticket.call.cancel();
+                    return;
+                }
+            }
+        }
+    }
+}
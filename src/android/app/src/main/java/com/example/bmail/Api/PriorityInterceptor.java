@@ -0,0 +1,58 @@
+package com.example.bmail.Api;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import retrofit2.Invocation;
+
+/**
+ * @brief Holds every attempt of a request until the PriorityGate lets it through.
+ * Runs inside the retry loop of ResilienceInterceptor, so a request waiting for its
+ * backoff does not keep a slot. The slot is freed once the response headers arrived;
+ * Retrofit reads the small bodies of this API right after.
+ */
+public class PriorityInterceptor implements Interceptor {
+    private final PriorityGate gate;
+
+    public PriorityInterceptor(@NonNull PriorityGate gate) {
+        this.gate = gate;
+    }
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        Request request = chain.request();
+        PriorityGate.Ticket ticket = gate.acquire(priorityOf(request), chain.call(),
+                "GET".equals(request.method()));
+        try {
+            return chain.proceed(request);
+        } finally {
+            gate.release(ticket);
+        }
+    }
+
+    /**
+     * @return The priority passed with the call, else the one declared on the
+     * WebServiceApi method, VISIBLE if none.
+     */
+    @NonNull
+    static RequestPriority priorityOf(@NonNull Request request) {
+        RequestPriority passed = request.tag(RequestPriority.class);
+        if (passed != null) {
+            return passed;
+        }
+        Invocation invocation = request.tag(Invocation.class);
+        if (invocation != null) {
+            RequestPriority.Of declared =
+                    invocation.method().getAnnotation(RequestPriority.Of.class);
+            if (declared != null) {
+                return declared.value();
+            }
+        }
+        return RequestPriority.VISIBLE;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.bmail.Api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @brief How urgent a request is, see PriorityGate for how it is scheduled.
+ * Declared per WebServiceApi method with @RequestPriority.Of, or per call with a
+ * RequestPriority parameter annotated with @Tag; requests without either are VISIBLE.
+ * Each class has its own limit of requests on the wire, so e.g. image and bulk traffic
+ * can never take all the connections.
+ */
+public enum RequestPriority {
+    // the user waits for it, e.g. opening a mail or sending one
+    USER_BLOCKING(PriorityGate.MAX_IN_FLIGHT),
+    // fills what is on screen, e.g. the mail list or the labels
+    VISIBLE(3),
+    // the user started it and sees the outcome, but the screen does not wait for it,
+    // e.g. a bulk action. One below what the gate allows besides USER_BLOCKING, so the
+    // list or an image can still load meanwhile.
+    USER_INITIATED(PriorityGate.MAX_IN_FLIGHT - 2),
+    // may be shown soon, e.g. the next page of the list
+    PREFETCH(2),
+    // nobody waits for it, e.g. images and draft autosave
+    BACKGROUND(2);
+
+    /**
+     * @brief Sets the priority of a WebServiceApi method.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.METHOD)
+    public @interface Of {
+        RequestPriority value();
+    }
+
+    private final int limit;
+
+    RequestPriority(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * @return The maximum number of requests of this class on the wire at a time.
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return true if a GET of this class may be canceled to let a USER_BLOCKING one
+     * through. Only for requests that are cheap to lose and safe to send again.
+     */
+    boolean isPreemptible() {
+        return this == PREFETCH || this == BACKGROUND;
+    }
+}
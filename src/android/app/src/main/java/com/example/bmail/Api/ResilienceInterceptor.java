@@ -0,0 +1,194 @@
+package com.example.bmail.Api;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.bmail.Utils.AppLog;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import retrofit2.Invocation;
+
+/**
+ * @brief Retries failed requests with jittered exponential backoff and feeds the
+ * circuit breaker.
+ * Idempotent methods are retried on network errors and on 429/502/503/504.
+ * POST and PATCH are only retried when the connection could not be opened, since
+ * the server never saw them. Every endpoint has a retry budget, so a degraded
+ * server gets at most a fraction of extra traffic instead of a retry storm.
+ * A canceled call is neither retried nor counted as a failure.
+ */
+public class ResilienceInterceptor implements Interceptor {
+    private static final String TAG = "ResilienceInterceptor";
+    static final int MAX_ATTEMPTS = 3;
+    static final long BASE_BACKOFF_MILLIS = 250;
+    static final long MAX_BACKOFF_MILLIS = 4_000;
+
+    private final CircuitBreaker circuitBreaker;
+    private final Map<String, RetryBudget> budgets = new HashMap<>();
+
+    public ResilienceInterceptor(@NonNull CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * @brief Token bucket limiting the retries of one endpoint.
+     * Every request deposits RATIO of a token and every retry takes a whole one,
+     * so in the long run retries add at most 20% to the endpoint's traffic.
+     */
+    static class RetryBudget {
+        static final double RATIO = 0.2;
+        static final double MAX_TOKENS = 10;
+        private double tokens = MAX_TOKENS;
+
+        synchronized void onRequest() {
+            tokens = Math.min(MAX_TOKENS, tokens + RATIO);
+        }
+
+        synchronized boolean tryRetry() {
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+    }
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        Request request = chain.request();
+        String endpoint = endpointName(request);
+        RetryBudget budget = budgetFor(endpoint);
+        budget.onRequest();
+
+        for (int attempt = 1; ; attempt++) {
+            circuitBreaker.acquire();
+
+            Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException e) {
+                if (chain.call().isCanceled()) {
+                    // preempted by the PriorityGate or dropped by the caller, this says
+                    // nothing about the server and must not be sent again
+                    circuitBreaker.onCanceled();
+                    throw e;
+                }
+                circuitBreaker.onFailure();
+                if (!shouldRetry(chain, request, e, attempt, budget)) {
+                    throw e;
+                }
+                AppLog.w(TAG, endpoint + " failed (" + e.getMessage() + "), retry " + attempt);
+                sleep(backoffMillis(attempt, null));
+                continue;
+            }
+
+            if (response.code() < 500) {
+                circuitBreaker.onSuccess();
+            } else {
+                circuitBreaker.onFailure();
+            }
+            if (!isRetryableStatus(response.code()) || !isIdempotent(request)
+                    || !canRetry(chain, attempt, budget)) {
+                return response;
+            }
+            AppLog.w(TAG, endpoint + " returned " + response.code() + ", retry " + attempt);
+            String retryAfter = response.header("Retry-After");
+            response.close();
+            sleep(backoffMillis(attempt, retryAfter));
+        }
+    }
+
+    private boolean shouldRetry(@NonNull Chain chain, @NonNull Request request,
+                                @NonNull IOException e, int attempt,
+                                @NonNull RetryBudget budget) {
+        if (e instanceof CircuitBreaker.OpenException) {
+            return false;
+        }
+        // the request never left the device, so even a POST can be sent again
+        boolean notSent = e instanceof ConnectException || e instanceof UnknownHostException;
+        if (!notSent && !isIdempotent(request)) {
+            return false;
+        }
+        return canRetry(chain, attempt, budget);
+    }
+
+    private boolean canRetry(@NonNull Chain chain, int attempt, @NonNull RetryBudget budget) {
+        return attempt < MAX_ATTEMPTS && !chain.call().isCanceled() && budget.tryRetry();
+    }
+
+    static boolean isIdempotent(@NonNull Request request) {
+        switch (request.method()) {
+            case "GET":
+            case "HEAD":
+            case "PUT":
+            case "DELETE":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    static boolean isRetryableStatus(int code) {
+        return code == 429 || code == 502 || code == 503 || code == 504;
+    }
+
+    /**
+     * @brief Computes the delay before the next attempt ("full jitter").
+     * @param attempt The attempt that just failed, starting at 1.
+     * @param retryAfter The Retry-After header of the response, if any.
+     * @return The delay in milliseconds.
+     */
+    static long backoffMillis(int attempt, @Nullable String retryAfter) {
+        if (retryAfter != null) {
+            try {
+                long seconds = Long.parseLong(retryAfter.trim());
+                return Math.min(seconds * 1000, MAX_BACKOFF_MILLIS);
+            } catch (NumberFormatException ignored) {
+                // HTTP dates are not worth parsing here, fall back to the backoff
+            }
+        }
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (attempt - 1));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * @brief Names the endpoint of a request after its WebServiceApi method.
+     */
+    @NonNull
+    public static String endpointName(@NonNull Request request) {
+        Invocation invocation = request.tag(Invocation.class);
+        if (invocation != null) {
+            return invocation.method().getName();
+        }
+        return request.method() + " " + request.url().encodedPath();
+    }
+
+    private synchronized RetryBudget budgetFor(@NonNull String endpoint) {
+        RetryBudget budget = budgets.get(endpoint);
+        if (budget == null) {
+            budget = new RetryBudget();
+            budgets.put(endpoint, budget);
+        }
+        return budget;
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during retry backoff");
+        }
+    }
+}
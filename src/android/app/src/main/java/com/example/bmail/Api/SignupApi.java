@@ -1,22 +1,19 @@
 package com.example.bmail.Api;
 
 import android.content.Context;
-import android.content.SharedPreferences;
-import android.util.Log;
 
 import androidx.annotation.NonNull;
 
 import com.example.bmail.Entities.LoginRequest;
 import com.example.bmail.Entities.LoginResponse;
-import com.example.bmail.R;
+import com.example.bmail.Repositories.SessionBootstrap;
+import com.example.bmail.Utils.AppLog;
 import com.example.bmail.Utils.ImageUtils;
 
 import okhttp3.MultipartBody;
 import okhttp3.RequestBody;
 import retrofit2.Call;
 import retrofit2.Response;
-import retrofit2.Retrofit;
-import retrofit2.converter.gson.GsonConverterFactory;
 
 public class SignupApi {
 
@@ -28,16 +25,11 @@ public class SignupApi {
 
     private final WebServiceApi webServiceApi;
     private final Context context;
-    private final String PREFS_NAME = "user_prefs";
     private final String TAG = "SignupApi";
 
     public SignupApi(@NonNull Context context) {
         this.context = context.getApplicationContext();
-        Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl(context.getString(R.string.api))
-                .addConverterFactory(GsonConverterFactory.create())
-                .build();
-        webServiceApi = retrofit.create(WebServiceApi.class);
+        webServiceApi = ApiClient.anonymousApi(this.context);
     }
 
     /**
@@ -55,14 +47,15 @@ public class SignupApi {
                 if (response.isSuccessful() && response.body() != null) {
                     String token = response.body().getToken();
                     String userId = response.body().getId();
-                    Log.i(TAG, "Token: " + token);
-                    Log.i(TAG, "User ID: " + userId);
+                    AppLog.i(TAG, "Logged in");
                     saveToken(token);
                     saveUserId(userId);
+                    // fetch what the main screen shows while the login screen is still up
+                    SessionBootstrap.start();
                     loginCallback.onSuccess("Login successful");
                 } else {
                     String errorMsg = "Login failed: " + response.message();
-                    Log.e(TAG, errorMsg);
+                    AppLog.e(TAG, errorMsg);
                     loginCallback.onFailure(errorMsg);
                 }
             }
@@ -70,7 +63,7 @@ public class SignupApi {
             @Override
             public void onFailure(@NonNull Call<LoginResponse> call, @NonNull Throwable t) {
                 String errorMsg = "Network error: " + t.getMessage();
-                Log.e(TAG, "Login request failed", t);
+                AppLog.e(TAG, "Login request failed", t);
                 loginCallback.onFailure(errorMsg);
             }
         });
@@ -99,7 +92,7 @@ public class SignupApi {
                     signupCallback.onSuccess("Signup successful");
                 } else {
                     String errorMsg = "Signup failed: " + response.message();
-                    Log.e(TAG, errorMsg);
+                    AppLog.e(TAG, errorMsg);
                     signupCallback.onFailure(errorMsg);
                 }
             }
@@ -107,31 +100,25 @@ public class SignupApi {
             @Override
             public void onFailure(@NonNull Call<Void> call, @NonNull Throwable t) {
                 String errorMsg = "Network error: " + t.getMessage();
-                Log.e(TAG, errorMsg);
+                AppLog.e(TAG, errorMsg);
                 signupCallback.onFailure(errorMsg);
             }
         });
     }
 
     /**
-     * @brief Saves the authentication token in SharedPreferences.
+     * @brief Saves the authentication token, in memory and in SharedPreferences.
      * @param token The authentication token to save.
      */
     private void saveToken(String token) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-        editor.putString("auth_token", token);
-        editor.apply();
+        TokenHolder.getInstance(context).setToken(token);
     }
 
     /**
-     * @brief Saves the user ID in SharedPreferences.
+     * @brief Saves the user ID, in memory and in SharedPreferences.
      * @param userId The user ID to save.
      */
     private void saveUserId(String userId) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-        editor.putString("user_id", userId);
-        editor.apply();
+        TokenHolder.getInstance(context).setUserId(userId);
     }
 }
@@ -0,0 +1,103 @@
+package com.example.bmail.Api;
+
+import androidx.annotation.NonNull;
+
+import com.example.bmail.Utils.AppLog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * @brief Coalesces concurrent GET requests for the same resource.
+ * While a call for a key is in flight, later callers for that key are attached to it
+ * and receive the same response instead of issuing another request.
+ * Only use it for idempotent requests whose response can be shared between callers.
+ */
+public class SingleFlight {
+    private static final String TAG = "SingleFlight";
+
+    private final Map<String, List<Callback<?>>> inFlight = new HashMap<>();
+
+    /**
+     * @brief Enqueues the call for a key, or joins the call already in flight for it.
+     * @param key Identifies the resource, e.g. the path and query of the request.
+     * @param callFactory Creates the call; only invoked if no call is in flight for the key.
+     * @param callback Receives the shared response.
+     */
+    public <T> void enqueue(@NonNull String key, @NonNull Supplier<Call<T>> callFactory,
+                            @NonNull Callback<T> callback) {
+        synchronized (inFlight) {
+            List<Callback<?>> waiters = inFlight.get(key);
+            if (waiters != null) {
+                if (AppLog.DEBUG) AppLog.d(TAG, "Joining request in flight: " + key);
+                waiters.add(callback);
+                return;
+            }
+            waiters = new ArrayList<>();
+            waiters.add(callback);
+            inFlight.put(key, waiters);
+        }
+
+        Call<T> call;
+        try {
+            call = callFactory.get();
+        } catch (RuntimeException e) {
+            synchronized (inFlight) {
+                inFlight.remove(key);
+            }
+            throw e;
+        }
+        call.enqueue(new Callback<>() {
+            @Override
+            public void onResponse(@NonNull Call<T> call, @NonNull Response<T> response) {
+                for (Callback<T> waiter : SingleFlight.this.<T>take(key)) {
+                    waiter.onResponse(call, response);
+                }
+            }
+
+            @Override
+            public void onFailure(@NonNull Call<T> call, @NonNull Throwable t) {
+                for (Callback<T> waiter : SingleFlight.this.<T>take(key)) {
+                    waiter.onFailure(call, t);
+                }
+            }
+        });
+    }
+
+    /**
+     * @brief Removes the waiters of a completed call.
+     * @param key The key of the call.
+     * @return The callbacks attached to the call.
+     */
+    @SuppressWarnings("unchecked")
+    private <R> List<Callback<R>> take(@NonNull String key) {
+        synchronized (inFlight) {
+            List<Callback<?>> waiters = inFlight.remove(key);
+            List<Callback<R>> typed = new ArrayList<>();
+            if (waiters != null) {
+                for (Callback<?> waiter : waiters) {
+                    typed.add((Callback<R>) waiter);
+                }
+            }
+            return typed;
+        }
+    }
+
+    /**
+     * @brief Checks whether a call for a key is currently in flight.
+     * @param key The key passed to enqueue.
+     * @return true if a call for the key has not completed yet.
+     */
+    public boolean isInFlight(@NonNull String key) {
+        synchronized (inFlight) {
+            return inFlight.containsKey(key);
+        }
+    }
+}
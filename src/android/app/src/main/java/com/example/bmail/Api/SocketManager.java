@@ -1,12 +1,12 @@
 package com.example.bmail.Api;
 
 import android.content.Context;
-import android.util.Log;
 
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
 import com.example.bmail.R;
+import com.example.bmail.Utils.AppLog;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -20,6 +20,8 @@ public class SocketManager {
     private static final String TAG = "SocketManager";
     private static Socket mSocket;
     private static final MutableLiveData<String> newMailId = new MutableLiveData<>();
+    // registered again on every (re)connect, the socket connects after the first frame
+    private static String registeredUser;
 
     public static synchronized void init(Context context) {
         if (mSocket == null) {
@@ -27,8 +29,9 @@ public class SocketManager {
                 String serverUrl = context.getString(R.string.api);
                 mSocket = IO.socket(serverUrl);
                 listenForNewMails();
+                mSocket.on(Socket.EVENT_CONNECT, args -> emitRegister());
             } catch (URISyntaxException e) {
-                Log.e(TAG, "Error initializing socket", e);
+                AppLog.e(TAG, "Error initializing socket", e);
             }
         }
     }
@@ -46,29 +49,39 @@ public class SocketManager {
                         String mailId = data.getString("mailId");
                         newMailId.postValue(mailId);
                     } catch (JSONException e) {
-                        Log.e(TAG, "Error parsing newMail event", e);
+                        AppLog.e(TAG, "Error parsing newMail event", e);
                     }
                 }
             });
         }
     }
 
-    public static void connect() {
+    /**
+     * @brief Creates the socket if needed and connects it.
+     * @param context Any context, used for the server URL.
+     */
+    public static synchronized void connect(Context context) {
+        init(context);
         if (mSocket != null && !mSocket.connected()) {
             mSocket.connect();
         }
     }
 
-    public static void disconnect() {
+    public static synchronized void disconnect() {
+        // the newMail listener stays, it is only added when the socket is created
         if (mSocket != null && mSocket.connected()) {
             mSocket.disconnect();
-            mSocket.off("newMail");
         }
     }
 
-    public static void registerUser(String userId) {
-        if (mSocket != null && mSocket.connected()) {
-            mSocket.emit("register", userId);
+    public static synchronized void registerUser(String userId) {
+        registeredUser = userId;
+        emitRegister();
+    }
+
+    private static synchronized void emitRegister() {
+        if (mSocket != null && mSocket.connected() && registeredUser != null) {
+            mSocket.emit("register", registeredUser);
         }
     }
 }
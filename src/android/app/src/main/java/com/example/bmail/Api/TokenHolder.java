@@ -0,0 +1,112 @@
+package com.example.bmail.Api;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.bmail.Utils.AppLog;
+
+/**
+ * @brief Keeps the authentication token and user ID in memory.
+ * SharedPreferences are only read once; every change goes through this class so the
+ * in-memory copy and the stored copy never disagree.
+ */
+public class TokenHolder {
+    private static final String TAG = "TokenHolder";
+    private static final String PREFS_NAME = "user_prefs";
+    private static final String TOKEN_KEY = "auth_token";
+    private static final String USER_ID_KEY = "user_id";
+    private static TokenHolder instance;
+
+    private final SharedPreferences prefs;
+    private final MutableLiveData<Boolean> sessionExpired = new MutableLiveData<>(false);
+    private volatile String token;
+    private volatile String userId;
+
+    private TokenHolder(@NonNull Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        token = prefs.getString(TOKEN_KEY, null);
+        userId = prefs.getString(USER_ID_KEY, null);
+    }
+
+    public static synchronized TokenHolder getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new TokenHolder(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    @Nullable
+    public String getToken() {
+        return token;
+    }
+
+    @Nullable
+    public String getUserId() {
+        return userId;
+    }
+
+    /**
+     * @brief Stores the token of a new session.
+     * @param token The authentication token returned by the login.
+     */
+    public synchronized void setToken(@Nullable String token) {
+        this.token = token;
+        prefs.edit().putString(TOKEN_KEY, token).apply();
+        if (token != null) {
+            sessionExpired.postValue(false);
+        }
+    }
+
+    /**
+     * @brief Stores the ID of the logged in user.
+     * @param userId The user ID returned by the login.
+     */
+    public synchronized void setUserId(@Nullable String userId) {
+        this.userId = userId;
+        prefs.edit().putString(USER_ID_KEY, userId).apply();
+    }
+
+    /**
+     * @brief Forgets the session, e.g. on logout.
+     */
+    public synchronized void clear() {
+        token = null;
+        userId = null;
+        prefs.edit().clear().apply();
+    }
+
+    /**
+     * @brief Handles a 401 for a request that was sent with the given token.
+     * Only the first request rejected with the current token expires the session;
+     * requests that were already in flight just pick up whatever token is current now.
+     * @param rejectedToken The token the rejected request was sent with.
+     * @return The token to retry with, or null if the request should fail.
+     */
+    @Nullable
+    public synchronized String onUnauthorized(@NonNull String rejectedToken) {
+        if (token == null) {
+            return null;
+        }
+        if (!rejectedToken.equals(token)) {
+            // a new login happened while the request was in flight
+            return token;
+        }
+        AppLog.i(TAG, "Session expired, asking the user to log in again");
+        token = null;
+        prefs.edit().remove(TOKEN_KEY).apply();
+        sessionExpired.postValue(true);
+        return null;
+    }
+
+    /**
+     * @brief Emits true once the server rejected the token and the user has to log in again.
+     */
+    public LiveData<Boolean> getSessionExpired() {
+        return sessionExpired;
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.bmail.Api;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.bmail.Metrics.Tracer;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+/**
+ * @brief Times the response body decoding of the converters after it, in a trace
+ * section named "Api.decode &lt;type&gt;", e.g. "Api.decode List&lt;ServerMail&gt;".
+ * Must be the first converter factory.
+ */
+public final class TracingConverterFactory extends Converter.Factory {
+
+    private TracingConverterFactory() {
+    }
+
+    @NonNull
+    public static TracingConverterFactory create() {
+        return new TracingConverterFactory();
+    }
+
+    @Nullable
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(@NonNull Type type,
+                                                            @NonNull Annotation[] annotations,
+                                                            @NonNull Retrofit retrofit) {
+        Converter<ResponseBody, Object> delegate =
+                retrofit.nextResponseBodyConverter(this, type, annotations);
+        String typeName = type instanceof Class ? ((Class<?>) type).getSimpleName()
+                : type.toString().replaceAll("[\\w$]+\\.", "");
+        String section = "Api.decode " + typeName;
+        return body -> {
+            try (Tracer.Section ignored = Tracer.begin(section)) {
+                return delegate.convert(body);
+            }
+        };
+    }
+}
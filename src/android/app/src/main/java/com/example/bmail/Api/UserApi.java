@@ -1,24 +1,25 @@
 package com.example.bmail.Api;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.graphics.Bitmap;
-import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.lifecycle.MutableLiveData;
 
 import com.example.bmail.Entities.User;
 import com.example.bmail.Repositories.UserRepository.UserData;
-import com.example.bmail.R;
 import com.example.bmail.Utils.ImageUtils;
+import com.example.bmail.Utils.AppLog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 
 import okhttp3.MultipartBody;
 import okhttp3.RequestBody;
 import retrofit2.Call;
 import retrofit2.Response;
-import retrofit2.Retrofit;
-import retrofit2.converter.gson.GsonConverterFactory;
 
 public class UserApi {
 
@@ -27,65 +28,68 @@ public class UserApi {
     private final UserData userData;
     private final MutableLiveData<Bitmap> userImage;
     private final String TAG = "UserApi";
+    private final TokenHolder tokenHolder;
+    private final SingleFlight singleFlight = new SingleFlight();
+    // url of the profile image being downloaded, its result is posted to userImage for everyone
+    private String imageUrlInFlight;
+    // callers waiting for the download of imageUrlInFlight
+    private final List<Consumer<Boolean>> imageWaiters = new ArrayList<>();
+    // url of the image currently in userImage, it is not downloaded again
+    private String loadedImageUrl;
 
     public UserApi(@NonNull Context context, UserData userData, MutableLiveData<Bitmap> userImage) {
         this.context = context.getApplicationContext();
         this.userData = userData;
         this.userImage = userImage;
-        Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl(context.getString(R.string.api))
-                .addConverterFactory(GsonConverterFactory.create())
-                .build();
-        webServiceApi = retrofit.create(WebServiceApi.class);
+        this.tokenHolder = TokenHolder.getInstance(context);
+        webServiceApi = ApiClient.authenticatedApi(this.context);
     }
 
 
     /**
-     * @brief Retrieves the authentication token from shared preferences.
-     * @return the authentication token, or null if not found
-     */
-    public String getToken() {
-        SharedPreferences prefs = context.getSharedPreferences("user_prefs",
-                Context.MODE_PRIVATE);
-        return prefs.getString("auth_token", null);
-    }
-
-    /**
-     * @brief Retrieves the user ID from shared preferences.
+     * @brief Retrieves the ID of the logged in user.
      * @return the user ID, or null if not found
      */
     public String getUserId() {
-        SharedPreferences prefs = context.getSharedPreferences("user_prefs",
-                Context.MODE_PRIVATE);
-        return prefs.getString("user_id", null);
+        return tokenHolder.getUserId();
     }
 
     /**
      * @brief Loads the user's details from the server and updates the userData LiveData.
      */
     public void loadUserDetails() {
-        String token = getToken();
+        loadUserDetails(null);
+    }
+
+    /**
+     * @brief Loads the user's details and reports when they were posted.
+     * @param onDone Receives the loaded user, or null if loading failed.
+     */
+    public void loadUserDetails(@Nullable Consumer<User> onDone) {
         String userID = getUserId();
 
-        Call<User> call = webServiceApi.getUserDetails(token, userID);
-        call.enqueue(new retrofit2.Callback<>() {
-            @Override
-            public void onResponse(@NonNull Call<User> call, @NonNull Response<User> response) {
-                if (response.isSuccessful() && response.body() != null) {
-                    User user = response.body();
-                    userData.postValue(user);
-                    Log.i(TAG, "User details loaded: " + user);
-                    // Handle the loaded user details as needed
-                } else {
-                    Log.e(TAG, "Failed to load user details: " + response.message());
-                }
-            }
+        // onActive and an explicit refresh often ask at the same time
+        singleFlight.enqueue("user/" + userID, () -> webServiceApi.getUserDetails(userID),
+                new retrofit2.Callback<>() {
+                    @Override
+                    public void onResponse(@NonNull Call<User> call, @NonNull Response<User> response) {
+                        if (response.isSuccessful() && response.body() != null) {
+                            User user = response.body();
+                            userData.postValue(user);
+                            AppLog.i(TAG, "User details loaded: " + user);
+                            if (onDone != null) onDone.accept(user);
+                        } else {
+                            AppLog.e(TAG, "Failed to load user details: " + response.message());
+                            if (onDone != null) onDone.accept(null);
+                        }
+                    }
 
-            @Override
-            public void onFailure(@NonNull Call<User> call, @NonNull Throwable t) {
-                Log.e(TAG, "Error loading user details", t);
-            }
-        });
+                    @Override
+                    public void onFailure(@NonNull Call<User> call, @NonNull Throwable t) {
+                        AppLog.e(TAG, "Error loading user details", t);
+                        if (onDone != null) onDone.accept(null);
+                    }
+                });
     }
 
     /**
@@ -93,20 +97,62 @@ public class UserApi {
      * @param url the URL of the profile image to load
      */
     public void loadCurrentUserImage(String url) {
-        String token = getToken();
-        ImageUtils.downloadImage(webServiceApi, token, url, new ImageUtils.ImageDownloadCallback() {
+        loadCurrentUserImage(url, null);
+    }
+
+    /**
+     * @brief Loads the user's profile image and reports when it was posted.
+     * The image already shown is not downloaded again, and a caller asking for the
+     * image being downloaded waits for that download.
+     * @param url the URL of the profile image to load
+     * @param onDone receives true once the image was posted, false if loading failed
+     */
+    public void loadCurrentUserImage(String url, @Nullable Consumer<Boolean> onDone) {
+        synchronized (this) {
+            if (url != null && url.equals(loadedImageUrl) && userImage.getValue() != null) {
+                if (onDone != null) onDone.accept(true);
+                return;
+            }
+            if (url != null && url.equals(imageUrlInFlight)) {
+                if (onDone != null) imageWaiters.add(onDone);
+                return;
+            }
+            imageUrlInFlight = url;
+            if (onDone != null) imageWaiters.add(onDone);
+        }
+        ImageUtils.downloadImage(webServiceApi, url, new ImageUtils.ImageDownloadCallback() {
             @Override
             public void onSuccess(Bitmap bitmap) {
                 userImage.postValue(bitmap);
-                Log.i(TAG, "Profile image loaded successfully.");
+                AppLog.i(TAG, "Profile image loaded successfully.");
+                imageDownloadFinished(url, true);
             }
             @Override
             public void onFailure(Throwable t) {
-                Log.e(TAG, "Error loading profile image", t);
+                AppLog.e(TAG, "Error loading profile image", t);
+                imageDownloadFinished(url, false);
             }
         });
     }
 
+    private void imageDownloadFinished(String url, boolean loaded) {
+        List<Consumer<Boolean>> waiters;
+        synchronized (this) {
+            if (url == null || !url.equals(imageUrlInFlight)) {
+                return;
+            }
+            imageUrlInFlight = null;
+            if (loaded) {
+                loadedImageUrl = url;
+            }
+            waiters = new ArrayList<>(imageWaiters);
+            imageWaiters.clear();
+        }
+        for (Consumer<Boolean> waiter : waiters) {
+            waiter.accept(loaded);
+        }
+    }
+
     /**
      * @brief Updates the user's profile with the provided details.
      * @param firstName the first name of the user
@@ -114,41 +160,39 @@ public class UserApi {
      * @param imageUri the URI of the profile image to upload
      */
     public void updateProfile(RequestBody firstName, RequestBody lastName, String imageUri) {
-        String token = getToken();
-
-        if (token == null) {
-            Log.e("UserApi", "No authentication token found");
+        if (tokenHolder.getToken() == null) {
+            AppLog.e("UserApi", "No authentication token found");
             return;
         }
-        Log.i(TAG, "Updating profile with token: " + token);
-        Log.i(TAG, "First Name: " + firstName);
-        Log.i(TAG, "Last Name: " + lastName);
 
         // Create MultipartBody.Part for the image
         MultipartBody.Part imagePart = imageUri == null ? null:
                 ImageUtils.createImagePart(context, imageUri, "image");
 
-        Call <Void> call = webServiceApi.updateProfile("Bearer " + token, firstName,
-                lastName, imagePart);
+        Call <Void> call = webServiceApi.updateProfile(firstName, lastName, imagePart);
 
         call.enqueue(new retrofit2.Callback<>() {
             @Override
             public void onResponse(@NonNull Call<Void> call, @NonNull Response<Void> response) {
                 if (response.isSuccessful()) {
-                    Log.i(TAG, "Profile updated successfully");
+                    AppLog.i(TAG, "Profile updated successfully");
+                    synchronized (UserApi.this) {
+                        // the new image may be served under the same url
+                        loadedImageUrl = null;
+                    }
                     loadUserDetails();
                 } else {
                     try(okhttp3.ResponseBody errorBody = response.errorBody()) {
-                        Log.e(TAG, "Failed to update profile. Code: " + response.code() +
+                        AppLog.e(TAG, "Failed to update profile. Code: " + response.code() +
                                 ", Message: " + response.message() + ", Error: " + errorBody);
                     } catch (Exception e) {
-                        Log.e(TAG, "Failed to update profile: " + response.message(), e);
+                        AppLog.e(TAG, "Failed to update profile: " + response.message(), e);
                     }
                 }
             }
             @Override
             public void onFailure(@NonNull Call<Void> call, @NonNull Throwable t) {
-                Log.e(TAG, "Network error updating profile", t);
+                AppLog.e(TAG, "Network error updating profile", t);
             }
         });
     }
@@ -2,6 +2,7 @@ package com.example.bmail.Api;
 
 import com.example.bmail.Entities.AttachLabelRequest;
 import com.example.bmail.Entities.ClientMail;
+import com.example.bmail.Entities.DraftPatch;
 import com.example.bmail.Entities.CreateLabelRequest;
 import com.example.bmail.Entities.LoginRequest;
 import com.example.bmail.Entities.LoginResponse;
@@ -18,19 +19,28 @@ import retrofit2.Call;
 import retrofit2.http.Body;
 import retrofit2.http.DELETE;
 import retrofit2.http.GET;
-import retrofit2.http.Header;
+import retrofit2.http.Headers;
 import retrofit2.http.Multipart;
 import retrofit2.http.PATCH;
 import retrofit2.http.POST;
 import retrofit2.http.Part;
 import retrofit2.http.Path;
+import retrofit2.http.Query;
+import retrofit2.http.Tag;
 import retrofit2.http.Url;
 
 public interface WebServiceApi {
+    // the Authorization header is added by AuthInterceptor
+    // list endpoints prefer the compact binary format, JSON stays the fallback
+    String ACCEPT_COMPACT_LISTS = "Accept: " + CompactConverterFactory.MEDIA_TYPE
+            + ", application/json;q=0.5";
+
+    // without @RequestPriority.Of or a @Tag priority a request is VISIBLE, see PriorityGate
+    @RequestPriority.Of(RequestPriority.BACKGROUND)
     @GET
-    Call<ResponseBody> downloadImage(@Header("Authorization") String token,
-                                       @Url String url);
+    Call<ResponseBody> downloadImage(@Url String url);
 
+    @RequestPriority.Of(RequestPriority.USER_BLOCKING)
     @Multipart
     @POST("/api/users")
     Call<Void> signup(@Part("firstName") RequestBody firstName,
@@ -38,50 +48,78 @@ public interface WebServiceApi {
                               @Part("username") RequestBody username,
                               @Part("password") RequestBody password,
                               @Part MultipartBody.Part image);
+    @RequestPriority.Of(RequestPriority.USER_BLOCKING)
     @Multipart
     @PATCH("/api/users")
-    Call<Void> updateProfile(@Header("Authorization") String token,
-                             @Part("firstName") RequestBody firstName,
+    Call<Void> updateProfile(@Part("firstName") RequestBody firstName,
                              @Part("lastName") RequestBody lastName,
                              @Part MultipartBody.Part image
     );
 
     @GET("/api/users/{id}")
-    Call<User> getUserDetails(@Header("Authorization") String token, @Path("id") String userId);
+    Call<User> getUserDetails(@Path("id") String userId);
 
+    @RequestPriority.Of(RequestPriority.USER_BLOCKING)
     @POST("/api/tokens")
     Call<LoginResponse> login(@Body LoginRequest request);
 
+    // before is a keyset cursor "<updatedAt>,<id>", null for the newest page.
+    // view "summary" returns a body snippet instead of the body, null returns full mails.
+    @Headers(ACCEPT_COMPACT_LISTS)
     @GET("/api/mails/byLabel/{label}")
-
-    Call<List<ServerMail>> getMails(@Header("Authorization") String token, @Path ("label") String label);
+    Call<List<ServerMail>> getMails(@Path ("label") String label,
+                                    @Query("before") String before, @Query("limit") Integer limit,
+                                    @Query("view") String view);
+    @Headers(ACCEPT_COMPACT_LISTS)
     @GET("/api/mails")
-    Call<List<ServerMail>> getAllMails(@Header("Authorization") String token);
+    Call<List<ServerMail>> getAllMails(@Query("before") String before, @Query("limit") Integer limit,
+                                       @Query("view") String view);
 
+    @RequestPriority.Of(RequestPriority.USER_BLOCKING)
+    @GET("/api/mails/{id}")
+    Call<ServerMail> getMail(@Path("id") String id);
+
+    @RequestPriority.Of(RequestPriority.USER_BLOCKING)
     @POST("/api/mails")
-    Call<Void> sendMail(@Header("Authorization") String token, @Body ClientMail mail);
+    Call<Void> sendMail(@Body ClientMail mail);
+
+    @RequestPriority.Of(RequestPriority.BACKGROUND)
+    @POST("/api/mails")
+    Call<ServerMail> createDraft(@Body ClientMail mail);
+
+    @RequestPriority.Of(RequestPriority.BACKGROUND)
+    @PATCH("/api/mails/{id}")
+    Call<Void> patchDraft(@Body DraftPatch patch, @Path("id") String id);
 
+    // sending a draft, which the user waits for unlike the autosave above
+    @RequestPriority.Of(RequestPriority.USER_BLOCKING)
     @PATCH("/api/mails/{id}")
-    Call<Void> updateDraft(@Header("Authorization") String token, @Body ServerMail mail,
-                           @Path("id") String id);
+    Call<Void> sendDraft(@Body DraftPatch patch, @Path("id") String id);
 
+    @Headers(ACCEPT_COMPACT_LISTS)
     @GET("/api/mails/search/{query}")
-    Call<List<ServerMail>> searchMails(@Header("Authorization") String token,
-                                       @Path ("query") String query);
+    Call<List<ServerMail>> searchMails(@Path ("query") String query,
+                                       @Query("view") String view);
 
+    @Headers(ACCEPT_COMPACT_LISTS)
     @GET("/api/labels")
-    Call <List<Label>> getLabels(@Header("Authorization") String token);
+    Call <List<Label>> getLabels();
+    @RequestPriority.Of(RequestPriority.USER_BLOCKING)
     @POST("/api/labels")
-    Call<Void> createLabel(@Header("Authorization") String token, @Body CreateLabelRequest request);
+    Call<Void> createLabel(@Body CreateLabelRequest request);
+    @RequestPriority.Of(RequestPriority.USER_BLOCKING)
     @DELETE("/api/labels/{id}")
-    Call<Void> deleteLabel(@Header("Authorization") String token, @Path("id") String labelId);
+    Call<Void> deleteLabel(@Path("id") String labelId);
 
+    // bulk actions pass their own priority, see FanOut; single ones pass VISIBLE
     @POST("/api/mails/{id}/labels")
-    Call<Void> addLabelToMail(@Header("Authorization") String token, @Path("id") String mailId,
-                              @Body AttachLabelRequest request);
+    Call<Void> addLabelToMail(@Path("id") String mailId,
+                              @Body AttachLabelRequest request,
+                              @Tag RequestPriority priority);
     @DELETE("/api/mails/{id}/labels/{labelId}")
-    Call<Void> removeLabelFromMail(@Header("Authorization") String token, @Path("id") String mailId,
-                                   @Path("labelId") String labelId);
+    Call<Void> removeLabelFromMail(@Path("id") String mailId,
+                                   @Path("labelId") String labelId,
+                                   @Tag RequestPriority priority);
     @DELETE("/api/mails/{id}")
-    Call<Void> deleteMail(@Header("Authorization") String token, @Path("id") String mailId);
+    Call<Void> deleteMail(@Path("id") String mailId, @Tag RequestPriority priority);
 }
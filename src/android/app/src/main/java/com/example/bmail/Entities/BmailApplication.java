@@ -1,26 +1,190 @@
 package com.example.bmail.Entities;
 
+import android.app.Activity;
 import android.app.Application;
+import android.os.Bundle;
 
-import com.example.bmail.Api.SocketManager;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.Room;
+
+import com.example.bmail.Api.ApiClient;
+import com.example.bmail.Api.TokenHolder;
+import com.example.bmail.Metrics.StartupMilestones;
+import com.example.bmail.Repositories.DraftRepository;
 import com.example.bmail.Repositories.LabelRepository;
 import com.example.bmail.Repositories.MailRepository;
 import com.example.bmail.Repositories.UserRepository;
+import com.example.bmail.Utils.AppLog;
+import com.example.bmail.Utils.DrawCallbacks;
+import com.example.bmail.Utils.Lazy;
+import com.example.bmail.Utils.MemoryGovernor;
+import com.example.bmail.db.AppDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * @brief Holds the app-wide objects and creates them on first use.
+ * Nothing but the crash handler is set up in onCreate. Once the first activity has
+ * drawn its first frame, a background thread creates what the next screens will
+ * need (database, HTTP services, socket), so they do not slow down the first frame.
+ * Memory pressure reported by the system is passed on to the MemoryGovernor, which
+ * trims the caches the repositories registered.
+ */
 public class BmailApplication extends Application {
+    private static final String TAG = "BmailApplication";
     private static BmailApplication instance;
-    private MailRepository mailRepository;
-    private LabelRepository labelRepository;
-    private UserRepository userRepository;
+
+    private final Lazy<AppDatabase> database = new Lazy<>(() ->
+            Room.databaseBuilder(this, AppDatabase.class, "mail_database")
+                    .addMigrations(AppDatabase.MIGRATION_4_5, AppDatabase.MIGRATION_5_6,
+                            AppDatabase.MIGRATION_6_7)
+                    // before version 5 the database only cached the server and is simply
+                    // refilled; from then on it holds drafts not sent yet, so every later
+                    // schema needs a migration and a missing one fails instead of wiping them
+                    .fallbackToDestructiveMigrationFrom(true, 1, 2, 3)
+                    .build());
+    private final Lazy<MailRepository> mailRepository =
+            new Lazy<>(() -> new MailRepository(this, database.get()));
+    private final Lazy<LabelRepository> labelRepository =
+            new Lazy<>(() -> new LabelRepository(this));
+    private final Lazy<UserRepository> userRepository =
+            new Lazy<>(() -> new UserRepository(this));
+    private final Lazy<DraftRepository> draftRepository =
+            new Lazy<>(() -> new DraftRepository(this, database.get()));
+
+    // tasks waiting for the first frame, null once it was drawn
+    @Nullable
+    private List<Runnable> afterFirstFrame = new ArrayList<>();
 
     @Override
     public void onCreate() {
         super.onCreate();
+        StartupMilestones.mark(StartupMilestones.APPLICATION_ON_CREATE);
         instance = this;
-        mailRepository = new MailRepository(this);
-        labelRepository = new LabelRepository(this);
-        userRepository = new UserRepository(this);
-        SocketManager.init(this);
+        installCrashDump();
+        registerActivityLifecycleCallbacks(new FirstFrameCallbacks());
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        MemoryGovernor.getInstance().onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        MemoryGovernor.getInstance().onLowMemory();
+    }
+
+    /**
+     * @brief Writes the recent log messages to logcat before the app crashes, so the
+     * crash report carries the context that led to it.
+     */
+    private void installCrashDump() {
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((thread, e) -> {
+            AppLog.dumpRecent("BmailCrash");
+            if (previous != null) {
+                previous.uncaughtException(thread, e);
+            }
+        });
+    }
+
+    /**
+     * @brief Runs a task on a background thread once the first frame has been drawn,
+     * or right away if it already was.
+     * @param task The task, e.g. connecting the socket.
+     */
+    public void runAfterFirstFrame(@NonNull Runnable task) {
+        synchronized (this) {
+            if (afterFirstFrame != null) {
+                afterFirstFrame.add(task);
+                return;
+            }
+        }
+        new Thread(task).start();
+    }
+
+    private void onFirstFrame() {
+        StartupMilestones.mark(StartupMilestones.FIRST_FRAME);
+        List<Runnable> tasks;
+        synchronized (this) {
+            tasks = afterFirstFrame;
+            afterFirstFrame = null;
+        }
+        new Thread(() -> {
+            prewarm();
+            if (tasks != null) {
+                for (Runnable task : tasks) {
+                    task.run();
+                }
+            }
+        }, "Prewarm").start();
+    }
+
+    /**
+     * @brief Creates what the next screens need, off the main thread.
+     * A logged out user only gets the login service.
+     */
+    private void prewarm() {
+        long start = System.nanoTime();
+        if (TokenHolder.getInstance(this).getToken() == null) {
+            ApiClient.anonymousApi(this);
+        } else {
+            // opening the file and checking the schema happens on the first query
+            database.get().getOpenHelper().getWritableDatabase();
+            mailRepository.get();
+            labelRepository.get();
+            userRepository.get();
+            // drafts a crash or a failed request left behind
+            draftRepository.get().flushPending();
+        }
+        AppLog.i(TAG, "Prewarmed in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * @brief Waits for the first frame of the first resumed activity.
+     */
+    private class FirstFrameCallbacks implements ActivityLifecycleCallbacks {
+        private boolean seen;
+
+        @Override
+        public void onActivityResumed(@NonNull Activity activity) {
+            if (seen) {
+                return;
+            }
+            seen = true;
+            DrawCallbacks.afterNextDraw(activity.getWindow().getDecorView(),
+                    BmailApplication.this::onFirstFrame);
+        }
+
+        @Override
+        public void onActivityCreated(@NonNull Activity activity, @Nullable Bundle state) {
+        }
+
+        @Override
+        public void onActivityStarted(@NonNull Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(@NonNull Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(@NonNull Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(@NonNull Activity activity,
+                                                @NonNull Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(@NonNull Activity activity) {
+        }
     }
 
     public static BmailApplication getInstance() {
@@ -28,12 +192,15 @@ public class BmailApplication extends Application {
     }
 
     public MailRepository getMailRepository() {
-        return mailRepository;
+        return mailRepository.get();
     }
     public LabelRepository getLabelRepository() {
-        return labelRepository;
+        return labelRepository.get();
     }
     public UserRepository getUserRepository() {
-        return userRepository;
+        return userRepository.get();
+    }
+    public DraftRepository getDraftRepository() {
+        return draftRepository.get();
     }
 }
@@ -0,0 +1,61 @@
+package com.example.bmail.Entities;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @brief A mail the label counters include, with the labels it is counted in.
+ * ServerMail only caches the pages of the label on screen and is cleared when another
+ * label is opened, while the counters cover every label. This table remembers what
+ * the counters hold, so a mail stored again is moved between labels instead of being
+ * counted twice, and a mail the server stopped listing can be taken out again.
+ */
+// reconciled against the first page of a label, newest first, see MailDao.uncountMissing
+@Entity(indices = {@Index(value = {"updatedAt"})})
+public class CountedMail {
+
+    @PrimaryKey
+    @NonNull
+    private String mailId = "";
+    private List<String> labels;
+    private Date updatedAt;
+
+    public CountedMail() {
+    }
+
+    public CountedMail(@NonNull ServerMail mail) {
+        this.mailId = mail.getId();
+        this.labels = mail.getLabels();
+        this.updatedAt = mail.getUpdatedAt();
+    }
+
+    @NonNull
+    public String getMailId() {
+        return mailId;
+    }
+
+    public void setMailId(@NonNull String mailId) {
+        this.mailId = mailId;
+    }
+
+    public List<String> getLabels() {
+        return labels;
+    }
+
+    public void setLabels(List<String> labels) {
+        this.labels = labels;
+    }
+
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Date updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
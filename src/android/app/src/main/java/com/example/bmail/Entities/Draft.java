@@ -0,0 +1,209 @@
+package com.example.bmail.Entities;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * @brief A draft being composed, stored on the device as it is typed.
+ * Besides the current fields the row keeps the values the server last acknowledged,
+ * so a sync only sends the fields that differ from them.
+ */
+@Entity(indices = {@Index(value = {"serverId"}, unique = true)})
+public class Draft {
+
+    // generated on the device, so the screen knows the row before it was written
+    @PrimaryKey
+    @NonNull
+    private String localId = "";
+
+    // id of the mail on the server, null until the draft was created there
+    @Nullable
+    private String serverId;
+
+    @NonNull
+    private String to = "";
+    @NonNull
+    private String title = "";
+    @NonNull
+    private String body = "";
+
+    // last values acknowledged by the server
+    @NonNull
+    private String syncedTo = "";
+    @NonNull
+    private String syncedTitle = "";
+    @NonNull
+    private String syncedBody = "";
+
+    // the compose screen was left, the row is deleted once it is in sync
+    private boolean closed;
+
+    private long updatedAt;
+
+    public Draft() {
+    }
+
+    /**
+     * @brief Creates the local copy of a draft already stored on the server.
+     * @param localId The id of the row.
+     * @param serverId The id of the mail on the server.
+     */
+    public static Draft fromServer(@NonNull String localId, @NonNull String serverId,
+                                   @NonNull String to, @NonNull String title,
+                                   @NonNull String body) {
+        Draft draft = new Draft();
+        draft.localId = localId;
+        draft.serverId = serverId;
+        draft.to = to;
+        draft.title = title;
+        draft.body = body;
+        draft.markSynced(to, title, body);
+        draft.updatedAt = System.currentTimeMillis();
+        return draft;
+    }
+
+    /**
+     * @brief Records the values the server acknowledged.
+     */
+    public void markSynced(@NonNull String to, @NonNull String title, @NonNull String body) {
+        syncedTo = to;
+        syncedTitle = title;
+        syncedBody = body;
+    }
+
+    /**
+     * @brief Takes newer server values for the fields that were not edited locally.
+     */
+    public void mergeServer(@NonNull String to, @NonNull String title, @NonNull String body) {
+        if (this.to.equals(syncedTo)) this.to = to;
+        if (this.title.equals(syncedTitle)) this.title = title;
+        if (this.body.equals(syncedBody)) this.body = body;
+        markSynced(to, title, body);
+    }
+
+    /**
+     * @return true if a field was changed since the last acknowledged sync.
+     */
+    public boolean isDirty() {
+        return serverId == null ? hasContent()
+                : !to.equals(syncedTo) || !title.equals(syncedTitle) || !body.equals(syncedBody);
+    }
+
+    /**
+     * @return true if the draft has anything the server would store.
+     */
+    public boolean hasContent() {
+        return !to.isEmpty() || !title.isEmpty() || !body.isEmpty();
+    }
+
+    /**
+     * @return true if the current fields have the given values.
+     */
+    public boolean sameFields(@NonNull String to, @NonNull String title, @NonNull String body) {
+        return this.to.equals(to) && this.title.equals(title) && this.body.equals(body);
+    }
+
+    @NonNull
+    public String getLocalId() {
+        return localId;
+    }
+
+    public void setLocalId(@NonNull String localId) {
+        this.localId = localId;
+    }
+
+    @Nullable
+    public String getServerId() {
+        return serverId;
+    }
+
+    public void setServerId(@Nullable String serverId) {
+        this.serverId = serverId;
+    }
+
+    @NonNull
+    public String getTo() {
+        return to;
+    }
+
+    public void setTo(@NonNull String to) {
+        this.to = to;
+    }
+
+    @NonNull
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(@NonNull String title) {
+        this.title = title;
+    }
+
+    @NonNull
+    public String getBody() {
+        return body;
+    }
+
+    public void setBody(@NonNull String body) {
+        this.body = body;
+    }
+
+    @NonNull
+    public String getSyncedTo() {
+        return syncedTo;
+    }
+
+    public void setSyncedTo(@NonNull String syncedTo) {
+        this.syncedTo = syncedTo;
+    }
+
+    @NonNull
+    public String getSyncedTitle() {
+        return syncedTitle;
+    }
+
+    public void setSyncedTitle(@NonNull String syncedTitle) {
+        this.syncedTitle = syncedTitle;
+    }
+
+    @NonNull
+    public String getSyncedBody() {
+        return syncedBody;
+    }
+
+    public void setSyncedBody(@NonNull String syncedBody) {
+        this.syncedBody = syncedBody;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public void setClosed(boolean closed) {
+        this.closed = closed;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "Draft{" +
+                "localId='" + localId + '\'' +
+                ", serverId='" + serverId + '\'' +
+                ", to='" + to + '\'' +
+                ", title='" + title + '\'' +
+                ", dirty=" + isDirty() +
+                ", closed=" + closed +
+                '}';
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.bmail.Entities;
+
+import androidx.annotation.NonNull;
+
+import com.google.gson.annotations.Expose;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @brief Body of a draft PATCH holding only the fields that changed.
+ * Gson leaves out null fields, so the server keeps the values it already has.
+ */
+public class DraftPatch {
+    @Expose
+    private String title;
+    @Expose
+    private String body;
+    @Expose
+    private List<String> to;
+    @Expose
+    private Boolean draft;
+
+    /**
+     * @brief Collects the fields of a draft that differ from the last synced values.
+     * @param draft The local draft.
+     * @return The patch, empty if nothing changed.
+     */
+    @NonNull
+    public static DraftPatch changedFields(@NonNull Draft draft) {
+        DraftPatch patch = new DraftPatch();
+        if (!draft.getTitle().equals(draft.getSyncedTitle())) patch.title = draft.getTitle();
+        if (!draft.getBody().equals(draft.getSyncedBody())) patch.body = draft.getBody();
+        if (!draft.getTo().equals(draft.getSyncedTo())) patch.to = recipients(draft.getTo());
+        return patch;
+    }
+
+    /**
+     * @brief The recipients field as the server expects it, it splits the addresses itself.
+     */
+    @NonNull
+    public static List<String> recipients(@NonNull String to) {
+        List<String> list = new ArrayList<>();
+        if (!to.isEmpty()) {
+            list.add(to);
+        }
+        return list;
+    }
+
+    public boolean isEmpty() {
+        return title == null && body == null && to == null && draft == null;
+    }
+
+    public void setDraft(Boolean draft) {
+        this.draft = draft;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "DraftPatch{" +
+                "title=" + (title != null) +
+                ", body=" + (body == null ? "null" : body.length() + " chars") +
+                ", to=" + to +
+                ", draft=" + draft +
+                '}';
+    }
+}
@@ -4,12 +4,13 @@ import androidx.annotation.NonNull;
 import androidx.room.Entity;
 import androidx.room.PrimaryKey;
 
+import com.example.bmail.core.MutableLabel;
 import com.google.gson.annotations.Expose;
 
 import java.util.List;
 
 @Entity
-public class Label {
+public class Label implements MutableLabel {
 
     @PrimaryKey
     @Expose(serialize = false) // Exclude when sending, include when receiving
@@ -0,0 +1,62 @@
+package com.example.bmail.Entities;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * @brief Aggregated mail counts for a single label.
+ * Rows are maintained incrementally by MailDao whenever mails are inserted,
+ * deleted or relabeled, so reading them never requires scanning the mailbox.
+ */
+@Entity
+public class LabelCounter {
+
+    @PrimaryKey
+    @NonNull
+    private String labelId = "";
+    private int total;
+    private int unread;
+
+    public LabelCounter() {
+    }
+
+    public LabelCounter(@NonNull String labelId) {
+        this.labelId = labelId;
+    }
+
+    @NonNull
+    public String getLabelId() {
+        return labelId;
+    }
+
+    public void setLabelId(@NonNull String labelId) {
+        this.labelId = labelId;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    public int getUnread() {
+        return unread;
+    }
+
+    public void setUnread(int unread) {
+        this.unread = unread;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "LabelCounter{" +
+                "labelId='" + labelId + '\'' +
+                ", total=" + total +
+                ", unread=" + unread +
+                '}';
+    }
+}
@@ -1,7 +1,11 @@
 package com.example.bmail.Entities;
 
+import com.google.gson.annotations.Expose;
+
 public class LoginRequest {
+    @Expose
     private String username;
+    @Expose
     private String password;
     public LoginRequest(String username, String password) {
         this.username = username;
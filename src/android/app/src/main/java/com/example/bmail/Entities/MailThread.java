@@ -0,0 +1,74 @@
+package com.example.bmail.Entities;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * @brief One conversation of the stored mails, see ThreadKey for what groups mails.
+ * Rows are maintained by MailDao for the conversations touched by every insert, delete
+ * or clear, so the conversation list is read without grouping the mailbox.
+ */
+// the conversation list is read newest first, see MailDao.getThreads
+@Entity(indices = {@Index(value = {"latestAt", "latestMailId"})})
+public class MailThread {
+
+    @PrimaryKey
+    @NonNull
+    private String threadKey = "";
+    private int messageCount;
+    // updatedAt of the newest mail, in milliseconds
+    private long latestAt;
+    // the newest mail, shown as the row of the conversation
+    @NonNull
+    private String latestMailId = "";
+
+    public MailThread() {
+    }
+
+    @NonNull
+    public String getThreadKey() {
+        return threadKey;
+    }
+
+    public void setThreadKey(@NonNull String threadKey) {
+        this.threadKey = threadKey;
+    }
+
+    public int getMessageCount() {
+        return messageCount;
+    }
+
+    public void setMessageCount(int messageCount) {
+        this.messageCount = messageCount;
+    }
+
+    public long getLatestAt() {
+        return latestAt;
+    }
+
+    public void setLatestAt(long latestAt) {
+        this.latestAt = latestAt;
+    }
+
+    @NonNull
+    public String getLatestMailId() {
+        return latestMailId;
+    }
+
+    public void setLatestMailId(@NonNull String latestMailId) {
+        this.latestMailId = latestMailId;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "MailThread{" +
+                "threadKey='" + threadKey + '\'' +
+                ", messageCount=" + messageCount +
+                ", latestAt=" + latestAt +
+                ", latestMailId='" + latestMailId + '\'' +
+                '}';
+    }
+}
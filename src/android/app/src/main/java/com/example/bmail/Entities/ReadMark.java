@@ -0,0 +1,34 @@
+package com.example.bmail.Entities;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * @brief Marks a mail as read on this device.
+ * Kept in its own table so the read state survives the cache being cleared and
+ * refilled from the server.
+ */
+@Entity
+public class ReadMark {
+
+    @PrimaryKey
+    @NonNull
+    private String mailId = "";
+
+    public ReadMark() {
+    }
+
+    public ReadMark(@NonNull String mailId) {
+        this.mailId = mailId;
+    }
+
+    @NonNull
+    public String getMailId() {
+        return mailId;
+    }
+
+    public void setMailId(@NonNull String mailId) {
+        this.mailId = mailId;
+    }
+}
@@ -2,14 +2,21 @@ package com.example.bmail.Entities;
 
 import androidx.annotation.NonNull;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
+import com.example.bmail.core.MailRecord;
+import com.example.bmail.core.MutableMail;
 import com.google.gson.annotations.Expose;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
-@Entity
-public class ServerMail {
+// the list is read newest first, see MailDao.getAllMails; the thread index finds the
+// newest mail of a conversation, see MailDao.refreshThreads
+@Entity(indices = {@Index(value = {"updatedAt", "id"}),
+        @Index(value = {"threadKey", "updatedAt"})})
+public class ServerMail implements MutableMail {
 
     @NonNull
     @Override
@@ -18,6 +25,7 @@ public class ServerMail {
                 "id='" + id + '\'' +
                 ", title='" + title + '\'' +
                 ", body='" + body + '\'' +
+                ", snippet='" + snippet + '\'' +
                 ", from='" + from + '\'' +
                 ", to=" + to +
                 ", draft=" + draft +
@@ -36,6 +44,9 @@ public class ServerMail {
     private String title;
     @Expose
     private String body;
+    // short preview sent by list endpoints instead of the body
+    @Expose
+    private String snippet;
     @Expose
     private String from;
     @Expose
@@ -48,6 +59,8 @@ public class ServerMail {
     private Date updatedAt;
     @Expose
     private String userImage;
+    // conversation of the mail, set by MailDao when the mail is stored, see ThreadKey
+    private String threadKey;
 
     public ServerMail() {
     }
@@ -62,6 +75,26 @@ public class ServerMail {
         this.labels = labels;
     }
 
+    /**
+     * @brief Copies a mail read from another representation, e.g. a CompactMailList.
+     * The conversation is not copied, the thread index keeps it. The lists are copied
+     * too, since callers may change them in place.
+     * @param record The mail.
+     * @return A new entity with the same fields.
+     */
+    @NonNull
+    public static ServerMail copyOf(@NonNull MailRecord record) {
+        ServerMail mail = new ServerMail(record.getTitle(), record.getBody(), record.getFrom(),
+                record.getTo() == null ? null : new ArrayList<>(record.getTo()),
+                record.getDraft(),
+                record.getLabels() == null ? null : new ArrayList<>(record.getLabels()));
+        mail.setId(record.getId());
+        mail.setSnippet(record.getSnippet());
+        mail.setUpdatedAt(record.getUpdatedAt());
+        mail.setUserImage(record.getUserImage());
+        return mail;
+    }
+
     public Boolean getDraft() {
         return draft;
     }
@@ -94,6 +127,22 @@ public class ServerMail {
         this.body = body;
     }
 
+    public String getSnippet() {
+        return snippet;
+    }
+
+    public void setSnippet(String snippet) {
+        this.snippet = snippet;
+    }
+
+    /**
+     * @brief Returns the text to show in a list row.
+     * @return The snippet if the mail was loaded as a summary, otherwise the body.
+     */
+    public String getPreview() {
+        return snippet != null ? snippet : body;
+    }
+
     public String getTitle() {
         return title;
     }
@@ -133,4 +182,12 @@ public class ServerMail {
         this.userImage = userImage;
     }
 
+    public String getThreadKey() {
+        return threadKey;
+    }
+
+    public void setThreadKey(String threadKey) {
+        this.threadKey = threadKey;
+    }
+
 }
@@ -0,0 +1,86 @@
+package com.example.bmail.Entities;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.bmail.core.CompactMailList;
+import com.example.bmail.core.MailChangeSet;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * @brief The mail list kept in memory, backed by a CompactMailList.
+ * Each get() creates a new ServerMail from the columns, so only the rows being shown
+ * or looked at exist as objects. The list is immutable; changing a mail it returns
+ * does not change the list, store the change and post a new list instead.
+ * Every posted list has a version. A list patched from the previous one also carries
+ * what changed, so an observer still showing that version can apply only the change.
+ */
+public class ServerMailList extends AbstractList<ServerMail> implements RandomAccess {
+    private final CompactMailList mails;
+    private final long version;
+    private final long baseVersion;
+    @Nullable
+    private final MailChangeSet changes;
+
+    /**
+     * @brief A list that replaces whatever was shown before.
+     */
+    public ServerMailList(@NonNull CompactMailList mails, long version) {
+        this(mails, version, -1, null);
+    }
+
+    /**
+     * @brief A list derived from the list with baseVersion by the given changes.
+     */
+    public ServerMailList(@NonNull CompactMailList mails, long version, long baseVersion,
+                          @Nullable MailChangeSet changes) {
+        this.mails = mails;
+        this.version = version;
+        this.baseVersion = baseVersion;
+        this.changes = changes;
+    }
+
+    @Override
+    public ServerMail get(int index) {
+        return ServerMail.copyOf(mails.get(index));
+    }
+
+    @Override
+    public int size() {
+        return mails.size();
+    }
+
+    /**
+     * @return The compact list, e.g. to patch it.
+     */
+    @NonNull
+    public CompactMailList getCompact() {
+        return mails;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @param shownVersion The version of the list an observer shows.
+     * @return The changes that turn that list into this one, or null if the observer
+     * missed a version or this list replaces everything.
+     */
+    @Nullable
+    public MailChangeSet changesSince(long shownVersion) {
+        return shownVersion == baseVersion ? changes : null;
+    }
+
+    /**
+     * @brief Finds a mail without creating the rows before it.
+     * @param id The ID of the mail.
+     * @return The mail, or null if it is not in the list.
+     */
+    public ServerMail findById(@NonNull String id) {
+        int index = mails.indexOfId(id);
+        return index < 0 ? null : get(index);
+    }
+}
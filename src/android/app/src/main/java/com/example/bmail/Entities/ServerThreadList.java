@@ -0,0 +1,69 @@
+package com.example.bmail.Entities;
+
+import androidx.annotation.NonNull;
+
+import com.example.bmail.core.CompactMailList;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * @brief The conversation list kept in memory: the newest mail of every conversation,
+ * backed by a CompactMailList, and the number of mails in each.
+ * Like ServerMailList, each get() creates a new ServerMail from the columns. The mails
+ * have no body and no recipients, see MailDao.getThreads.
+ */
+public class ServerThreadList extends AbstractList<ServerMail> implements RandomAccess {
+    private final CompactMailList mails;
+    private final String[] threadKeys;
+    private final int[] messageCounts;
+
+    /**
+     * @param mails The newest mail of every conversation, in the order shown.
+     * @param threadKeys The conversation of every row.
+     * @param messageCounts The number of mails of every row's conversation.
+     */
+    public ServerThreadList(@NonNull CompactMailList mails, @NonNull String[] threadKeys,
+                            @NonNull int[] messageCounts) {
+        this.mails = mails;
+        this.threadKeys = threadKeys;
+        this.messageCounts = messageCounts;
+    }
+
+    @Override
+    public ServerMail get(int index) {
+        ServerMail mail = ServerMail.copyOf(mails.get(index));
+        mail.setThreadKey(threadKeys[index]);
+        return mail;
+    }
+
+    @Override
+    public int size() {
+        return mails.size();
+    }
+
+    @NonNull
+    public CompactMailList getCompact() {
+        return mails;
+    }
+
+    public String getThreadKey(int index) {
+        return threadKeys[index];
+    }
+
+    public int getMessageCount(int index) {
+        return messageCounts[index];
+    }
+
+    /**
+     * @return An estimate of the bytes this list holds, not counting pooled strings.
+     */
+    public long estimateBytes() {
+        long bytes = mails.estimateBytes() + 4L * messageCounts.length;
+        for (String threadKey : threadKeys) {
+            // reference and a compact string, see CompactMailList.estimateBytes
+            bytes += threadKey == null ? 4 : 48 + threadKey.length();
+        }
+        return bytes;
+    }
+}
@@ -2,10 +2,17 @@ package com.example.bmail.Entities;
 
 import androidx.annotation.NonNull;
 
+import com.google.gson.annotations.Expose;
+
+// fields are @Expose since the shared Gson (ApiClient.gson()) skips the others
 public class User {
+    @Expose
     private String firstName;
+    @Expose
     private String lastName;
+    @Expose
     private String username;
+    @Expose
     private String image;
 
     @NonNull
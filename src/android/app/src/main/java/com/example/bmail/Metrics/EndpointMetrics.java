@@ -0,0 +1,60 @@
+package com.example.bmail.Metrics;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @brief Latency, size and status statistics of one WebServiceApi endpoint.
+ * Durations are recorded in microseconds, sizes in bytes.
+ */
+public class EndpointMetrics {
+    public final Histogram dns = new Histogram();
+    public final Histogram connect = new Histogram();
+    public final Histogram tls = new Histogram();
+    public final Histogram ttfb = new Histogram();
+    public final Histogram total = new Histogram();
+    public final Histogram bytesOut = new Histogram();
+    public final Histogram bytesIn = new Histogram();
+    // status code -> number of responses, 0 counts calls that failed without a response
+    private final Map<Integer, Long> statuses = new TreeMap<>();
+
+    synchronized void recordStatus(int code) {
+        Long current = statuses.get(code);
+        statuses.put(code, current == null ? 1 : current + 1);
+    }
+
+    public synchronized Map<Integer, Long> getStatuses() {
+        return new TreeMap<>(statuses);
+    }
+
+    synchronized void reset() {
+        dns.reset();
+        connect.reset();
+        tls.reset();
+        ttfb.reset();
+        total.reset();
+        bytesOut.reset();
+        bytesIn.reset();
+        statuses.clear();
+    }
+
+    JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("dnsMs", dns.toJson(1000));
+        json.put("connectMs", connect.toJson(1000));
+        json.put("tlsMs", tls.toJson(1000));
+        json.put("ttfbMs", ttfb.toJson(1000));
+        json.put("totalMs", total.toJson(1000));
+        json.put("bytesOut", bytesOut.toJson(1));
+        json.put("bytesIn", bytesIn.toJson(1));
+        JSONObject statusJson = new JSONObject();
+        for (Map.Entry<Integer, Long> entry : getStatuses().entrySet()) {
+            statusJson.put(String.valueOf(entry.getKey()), entry.getValue());
+        }
+        json.put("statuses", statusJson);
+        return json;
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.bmail.Metrics;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+
+/**
+ * @brief Log-linear histogram in the style of HdrHistogram.
+ * Every power of two is split into SUB_BUCKETS linear buckets, so recorded values
+ * keep about 6% precision from 1 to 2^MAX_EXPONENT with a fixed, small array and
+ * no allocation per record.
+ */
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // 2^40 µs is about 12 days, 2^40 bytes is a terabyte
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * @brief Records one value; negative values are recorded as 0.
+     * @param value The value to record.
+     */
+    public synchronized void record(long value) {
+        value = Math.max(0, value);
+        counts[bucketIndex(value)]++;
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * @brief Returns the value at a percentile.
+     * @param percentile The percentile, between 0 and 100.
+     * @return The highest value of the bucket holding the percentile, capped at the
+     * maximum recorded value, or 0 if nothing was recorded.
+     */
+    public synchronized long percentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(max, highestValueIn(i));
+            }
+        }
+        return max;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    public synchronized double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /**
+     * @brief Serializes the summary statistics of the histogram.
+     * @param scale Divisor applied to every value, e.g. 1000 to turn µs into ms.
+     * @return The statistics as JSON.
+     */
+    public synchronized JSONObject toJson(double scale) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("count", count);
+        json.put("min", count == 0 ? 0 : min / scale);
+        json.put("mean", getMean() / scale);
+        json.put("p50", percentile(50) / scale);
+        json.put("p90", percentile(90) / scale);
+        json.put("p99", percentile(99) / scale);
+        json.put("max", max / scale);
+        return json;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_EXPONENT);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) Math.min((value >> shift) - SUB_BUCKETS, SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueIn(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.bmail.Metrics;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.bmail.Api.ResilienceInterceptor;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Response;
+
+/**
+ * @brief Times the phases of one OkHttp call and records them in RequestMetrics.
+ * A call that is retried reports every DNS lookup, connection and response of
+ * its attempts, and one total for the whole call.
+ */
+public class MetricsEventListener extends EventListener {
+    public static final Factory FACTORY = call -> new MetricsEventListener(
+            RequestMetrics.getInstance().forEndpoint(
+                    ResilienceInterceptor.endpointName(call.request())));
+
+    private final EndpointMetrics metrics;
+    private long callStart;
+    private long dnsStart;
+    private long connectStart;
+    private long secureConnectStart;
+    private long requestStart;
+    private int status;
+
+    MetricsEventListener(@NonNull EndpointMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void callStart(@NonNull Call call) {
+        callStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsStart(@NonNull Call call, @NonNull String domainName) {
+        dnsStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(@NonNull Call call, @NonNull String domainName,
+                       @NonNull List<InetAddress> inetAddressList) {
+        metrics.dns.record(micros(dnsStart));
+    }
+
+    @Override
+    public void connectStart(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress,
+                             @NonNull Proxy proxy) {
+        connectStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectStart(@NonNull Call call) {
+        secureConnectStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectEnd(@NonNull Call call, @Nullable Handshake handshake) {
+        metrics.tls.record(micros(secureConnectStart));
+    }
+
+    @Override
+    public void connectEnd(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress,
+                           @NonNull Proxy proxy, @Nullable Protocol protocol) {
+        metrics.connect.record(micros(connectStart));
+    }
+
+    @Override
+    public void requestHeadersStart(@NonNull Call call) {
+        requestStart = System.nanoTime();
+    }
+
+    @Override
+    public void requestBodyEnd(@NonNull Call call, long byteCount) {
+        metrics.bytesOut.record(byteCount);
+    }
+
+    @Override
+    public void responseHeadersStart(@NonNull Call call) {
+        // time to first byte, measured from the request leaving the client
+        metrics.ttfb.record(micros(requestStart));
+    }
+
+    @Override
+    public void responseHeadersEnd(@NonNull Call call, @NonNull Response response) {
+        status = response.code();
+    }
+
+    @Override
+    public void responseBodyEnd(@NonNull Call call, long byteCount) {
+        metrics.bytesIn.record(byteCount);
+    }
+
+    @Override
+    public void callEnd(@NonNull Call call) {
+        metrics.total.record(micros(callStart));
+        metrics.recordStatus(status);
+    }
+
+    @Override
+    public void callFailed(@NonNull Call call, @NonNull IOException ioe) {
+        metrics.total.record(micros(callStart));
+        metrics.recordStatus(0);
+    }
+
+    private static long micros(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1000;
+    }
+}
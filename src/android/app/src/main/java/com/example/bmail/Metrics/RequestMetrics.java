@@ -0,0 +1,79 @@
+package com.example.bmail.Metrics;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @brief Process-wide registry of the network metrics, keyed by endpoint name.
+ * Filled by MetricsEventListener and read by the debug screen.
+ */
+public class RequestMetrics {
+    private static final RequestMetrics instance = new RequestMetrics();
+
+    private final Map<String, EndpointMetrics> endpoints = new TreeMap<>();
+    private long since = System.currentTimeMillis();
+
+    private RequestMetrics() {
+    }
+
+    public static RequestMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * @brief Returns the metrics of an endpoint, creating them on first use.
+     * @param endpoint The endpoint name, the WebServiceApi method name.
+     */
+    @NonNull
+    public synchronized EndpointMetrics forEndpoint(@NonNull String endpoint) {
+        EndpointMetrics metrics = endpoints.get(endpoint);
+        if (metrics == null) {
+            metrics = new EndpointMetrics();
+            endpoints.put(endpoint, metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * @return A copy of the endpoint map, sorted by endpoint name.
+     */
+    public synchronized Map<String, EndpointMetrics> getEndpoints() {
+        return new TreeMap<>(endpoints);
+    }
+
+    public synchronized void reset() {
+        for (EndpointMetrics metrics : endpoints.values()) {
+            metrics.reset();
+        }
+        since = System.currentTimeMillis();
+    }
+
+    /**
+     * @brief Dumps all metrics as JSON, tagged with the app build so dumps of
+     * different builds can be compared.
+     * @param appVersion The version name of the app.
+     * @param server The base URL the requests were sent to.
+     * @return The JSON dump.
+     */
+    @NonNull
+    public JSONObject toJson(String appVersion, String server) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("appVersion", appVersion);
+        json.put("server", server);
+        synchronized (this) {
+            json.put("since", since);
+        }
+        json.put("dumpedAt", System.currentTimeMillis());
+        JSONObject endpointJson = new JSONObject();
+        for (Map.Entry<String, EndpointMetrics> entry : getEndpoints().entrySet()) {
+            endpointJson.put(entry.getKey(), entry.getValue().toJson());
+        }
+        json.put("endpoints", endpointJson);
+        return json;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.bmail.Metrics;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import com.example.bmail.Utils.AppLog;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @brief Cold-start milestones in ms since the process started.
+ * Each milestone is kept the first time it is reached, later marks (e.g. the list
+ * drawn again after rotation) are ignored.
+ */
+public final class StartupMilestones {
+    public static final String APPLICATION_ON_CREATE = "applicationOnCreate";
+    public static final String FIRST_FRAME = "firstFrame";
+    public static final String FIRST_LIST_FRAME = "firstListFrame";
+    private static final String TAG = "Startup";
+
+    private static final Map<String, Long> milestones = new LinkedHashMap<>();
+
+    private StartupMilestones() {
+    }
+
+    /**
+     * @brief Records a milestone, unless it was already reached.
+     * @param name The milestone.
+     */
+    public static void mark(@NonNull String name) {
+        long sinceStart = SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime();
+        synchronized (milestones) {
+            if (milestones.containsKey(name)) {
+                return;
+            }
+            milestones.put(name, sinceStart);
+        }
+        AppLog.i(TAG, name + " at " + sinceStart + " ms");
+    }
+
+    /**
+     * @return The reached milestones in the order they were reached.
+     */
+    @NonNull
+    public static Map<String, Long> getMilestones() {
+        synchronized (milestones) {
+            return new LinkedHashMap<>(milestones);
+        }
+    }
+
+    @NonNull
+    public static JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, Long> milestone : getMilestones().entrySet()) {
+            json.put(milestone.getKey(), milestone.getValue());
+        }
+        return json;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.bmail.Metrics;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @brief In-process table of the durations recorded by Tracer, one histogram (µs)
+ * per section name. Plain Java, so unit tests can run a code path and assert on
+ * how often and how long its sections ran.
+ */
+public class TraceStats {
+    private static final TraceStats instance = new TraceStats();
+
+    private final Map<String, Histogram> sections = new TreeMap<>();
+
+    private TraceStats() {
+    }
+
+    public static TraceStats getInstance() {
+        return instance;
+    }
+
+    /**
+     * @brief Records one run of a section.
+     * @param name The section name.
+     * @param nanos How long the section took.
+     */
+    public void record(@NonNull String name, long nanos) {
+        Histogram histogram;
+        synchronized (this) {
+            histogram = sections.get(name);
+            if (histogram == null) {
+                histogram = new Histogram();
+                sections.put(name, histogram);
+            }
+        }
+        histogram.record(nanos / 1000);
+    }
+
+    /**
+     * @return How many times the section ran since the last reset.
+     */
+    public long count(@NonNull String name) {
+        Histogram histogram = get(name);
+        return histogram == null ? 0 : histogram.getCount();
+    }
+
+    /**
+     * @return The durations of a section in µs, or null if it never ran.
+     */
+    @Nullable
+    public synchronized Histogram get(@NonNull String name) {
+        return sections.get(name);
+    }
+
+    /**
+     * @return A copy of the table, sorted by section name.
+     */
+    public synchronized Map<String, Histogram> getSections() {
+        return new TreeMap<>(sections);
+    }
+
+    public synchronized void reset() {
+        sections.clear();
+    }
+
+    @NonNull
+    public JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, Histogram> entry : getSections().entrySet()) {
+            json.put(entry.getKey(), entry.getValue().toJson(1000));
+        }
+        return json;
+    }
+}
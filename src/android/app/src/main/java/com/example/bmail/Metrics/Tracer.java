@@ -0,0 +1,72 @@
+package com.example.bmail.Metrics;
+
+import android.os.Trace;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * @brief Named trace sections for the hot paths.
+ * Each section shows up in system traces (Perfetto, Android Studio profiler) and its
+ * duration is added to TraceStats. Use it with try-with-resources:
+ * <pre>
+ * try (Tracer.Section ignored = Tracer.begin("MailDao.insertList")) {
+ *     ...
+ * }
+ * </pre>
+ */
+public final class Tracer {
+    // android.os.Trace is a stub in local unit tests
+    private static volatile boolean systemTrace = true;
+
+    private Tracer() {
+    }
+
+    /**
+     * @brief Opens a section; it must be closed on the same thread.
+     * @param name The section name, "Class.phase" by convention.
+     * @return The open section.
+     */
+    @NonNull
+    public static Section begin(@NonNull String name) {
+        if (systemTrace) {
+            Trace.beginSection(name);
+        }
+        return new Section(name, System.nanoTime());
+    }
+
+    /**
+     * @brief Records a phase that started on another thread, e.g. a network round trip
+     * measured from enqueue to callback. Only goes to TraceStats, since system trace
+     * sections cannot span threads.
+     * @param name The section name.
+     * @param startNanos The System.nanoTime() when the phase started.
+     */
+    public static void record(@NonNull String name, long startNanos) {
+        TraceStats.getInstance().record(name, System.nanoTime() - startNanos);
+    }
+
+    @VisibleForTesting
+    public static void setSystemTraceEnabled(boolean enabled) {
+        systemTrace = enabled;
+    }
+
+    public static final class Section implements AutoCloseable {
+        private final String name;
+        private final long startNanos;
+
+        private Section(String name, long startNanos) {
+            this.name = name;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public void close() {
+            long nanos = System.nanoTime() - startNanos;
+            if (systemTrace) {
+                Trace.endSection();
+            }
+            TraceStats.getInstance().record(name, nanos);
+        }
+    }
+}
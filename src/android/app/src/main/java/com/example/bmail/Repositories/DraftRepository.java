@@ -0,0 +1,68 @@
+package com.example.bmail.Repositories;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.example.bmail.Api.DraftApi;
+import com.example.bmail.Entities.ClientMail;
+import com.example.bmail.Entities.Draft;
+import com.example.bmail.db.AppDatabase;
+
+import java.util.function.Consumer;
+
+public class DraftRepository {
+
+    private final DraftApi draftApi;
+
+    public DraftRepository(@NonNull Context context, @NonNull AppDatabase db) {
+        draftApi = new DraftApi(db.draftDao(), context);
+    }
+
+    /**
+     * @brief Stores the typed fields of a draft, the server is updated in the background.
+     * @param localId The id of the draft on this device.
+     */
+    public void save(@NonNull String localId, @NonNull String to, @NonNull String title,
+                     @NonNull String body) {
+        draftApi.save(localId, to, title, body);
+    }
+
+    /**
+     * @brief Opens a draft stored on the server for editing.
+     * @param localId The id of the draft on this device.
+     * @param serverId The id of the mail on the server.
+     * @param onOpened Receives the fields to show, on the main thread.
+     */
+    public void open(@NonNull String localId, @NonNull String serverId, @NonNull String to,
+                     @NonNull String title, @NonNull String body,
+                     @NonNull Consumer<Draft> onOpened) {
+        draftApi.open(localId, serverId, to, title, body, onOpened);
+    }
+
+    /**
+     * @brief Syncs a draft whose screen was left.
+     * @param localId The id of the draft on this device.
+     */
+    public void close(@NonNull String localId) {
+        draftApi.close(localId);
+    }
+
+    /**
+     * @brief Sends a draft as a mail.
+     * @param localId The id of the draft on this device.
+     * @param mail The mail to send.
+     * @param callback The callback to handle the response.
+     */
+    public void send(@NonNull String localId, @NonNull ClientMail mail,
+                     retrofit2.Callback<Void> callback) {
+        draftApi.send(localId, mail, callback);
+    }
+
+    /**
+     * @brief Syncs drafts left unsynced by a crash or a failed request.
+     */
+    public void flushPending() {
+        draftApi.flushPending();
+    }
+}
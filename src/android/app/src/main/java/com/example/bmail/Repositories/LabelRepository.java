@@ -4,6 +4,7 @@ import android.content.Context;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
@@ -13,6 +14,7 @@ import com.example.bmail.Entities.CreateLabelRequest;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class LabelRepository {
 
@@ -21,16 +23,22 @@ public class LabelRepository {
 
     class LabelListData extends MutableLiveData<List<Label>> {
         public LabelListData() {
-            super();
-            List<Label> labels = new LinkedList<>();
-            setValue(labels);
+            // not setValue(), the repository may be created off the main thread
+            super(new LinkedList<>());
         }
 
+        // set once the first observer requested the labels, later refreshes are explicit
+        private boolean requested;
+
         @Override
         protected void onActive() {
             super.onActive();
             Log.d("LabelListData", "LabelListData is now active");
-            labelApi.loadLabels();
+            // a screen rotating re-attaches its observer, labels prefetched at login are current
+            if (!requested && !SessionBootstrap.isPrefetched()) {
+                labelApi.loadLabels();
+            }
+            requested = true;
         }
     }
 
@@ -47,6 +55,14 @@ public class LabelRepository {
         labelApi.loadLabels();
     }
 
+    /**
+     * @brief Loads the labels and reports when they were posted.
+     * @param onDone Receives true once the labels were posted, false if loading failed.
+     */
+    public void loadLabels(@Nullable Consumer<Boolean> onDone) {
+        labelApi.loadLabels(onDone);
+    }
+
     public void createLabel(String name, retrofit2.Callback<Void> callback) {
         CreateLabelRequest labelRequest = new CreateLabelRequest(name);
         labelApi.createLabel(labelRequest, callback);
@@ -1,37 +1,192 @@
 package com.example.bmail.Repositories;
 
 import android.content.Context;
-import android.util.Log;
+import android.os.Handler;
+import android.os.Looper;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
-import androidx.room.Room;
+import androidx.room.InvalidationTracker;
 
+import com.example.bmail.Api.FanOut;
 import com.example.bmail.Api.MailApi;
 import com.example.bmail.Entities.ClientMail;
+import com.example.bmail.Entities.LabelCounter;
 import com.example.bmail.Entities.ServerMail;
+import com.example.bmail.Entities.ServerMailList;
+import com.example.bmail.Entities.ServerThreadList;
+import com.example.bmail.Metrics.Tracer;
 import com.example.bmail.db.AppDatabase;
 import com.example.bmail.db.MailDao;
+import com.example.bmail.Utils.AppLog;
+import com.example.bmail.Utils.MemoryGovernor;
+import com.example.bmail.core.CompactMailList;
+import com.example.bmail.core.ContactIndex;
+import com.example.bmail.core.StringPool;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public class MailRepository {
+    // mails kept below the last one seen when the list is trimmed
+    private static final int KEPT_BEYOND_VISIBLE = 20;
+
     private final MailDao mailDao;
     private final MailListData mailListData;
     private final MailApi mailApi;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // guarded by itself, snapshots are published through contacts
+    private final ContactIndex.Builder contactBuilder = new ContactIndex.Builder();
+    private volatile ContactIndex contacts = ContactIndex.EMPTY;
+    private boolean contactsRequested;
+    // the list shows search results, which are not in the database to be read again
+    private volatile boolean searching;
+    // the mail of the last visible row; the rows are conversations, so positions in the
+    // list view say nothing about positions in the mail list
+    private volatile String lastVisibleMailId;
+    // shared by the mail list and the conversation list, see CompactMailList
+    private final StringPool addressPool = new StringPool();
+    private final StringPool labelPool = new StringPool();
+    private final ThreadListData threadListData;
+
+    /**
+     * @brief Holds the mails shown in the list, compacted when they are posted.
+     * Addresses and label IDs are interned in the pools of the repository, so every
+     * list posted after a sync shares them, see CompactMailList.
+     * A change to a few mails patches the last list instead of reading all mails again;
+     * the posted ServerMailList carries the change for observers that can apply it.
+     * Under memory pressure a list nobody observes is cut to the rows that were visible,
+     * and read from the database again once it is observed.
+     */
+    class MailListData extends MutableLiveData<List<ServerMail>>
+            implements MemoryGovernor.Cache {
+        // the last list posted, which getValue() only returns once the post ran
+        private ServerMailList latest;
+        private long version;
 
-    class MailListData extends MutableLiveData<List<ServerMail>> {
         public MailListData() {
-            super();
-            List<ServerMail> mails = new LinkedList<>();
-            setValue(mails);
+            // not setValue(), the repository may be created off the main thread
+            super(new LinkedList<>());
+        }
+        // set once the stored mails were read for the first observer
+        private boolean restored;
+
+        @Override
+        public synchronized void postValue(List<ServerMail> value) {
+            // compacted on the posting thread, which is never the main thread
+            super.postValue(compact(value));
+        }
+
+        @Override
+        public void setValue(List<ServerMail> value) {
+            // also runs on the main thread for every postValue, with the list compacted
+            // already; only take the lock for lists that still need it
+            if (value == null || value instanceof ServerMailList) {
+                super.setValue(value);
+                return;
+            }
+            List<ServerMail> compacted;
+            synchronized (this) {
+                compacted = compact(value);
+            }
+            super.setValue(compacted);
+        }
+
+        /**
+         * @brief Applies stored changes to the last list and posts the result.
+         * @param stored The changed mails as they are stored now.
+         * @param removedIds The IDs of the mails that were removed.
+         */
+        synchronized void postChanges(@NonNull List<ServerMail> stored,
+                                      @NonNull List<String> removedIds) {
+            if (latest == null) {
+                postValue(mailDao.getAllMails());
+                return;
+            }
+            CompactMailList.Patch patch;
+            try (Tracer.Section ignored = Tracer.begin("MailListData.patch")) {
+                patch = latest.getCompact().patch(stored, removedIds, addressPool, labelPool);
+            }
+            if (patch.getChanges().isEmpty()) {
+                return;
+            }
+            latest = new ServerMailList(patch.getList(), ++version, latest.getVersion(),
+                    patch.getChanges());
+            super.postValue(latest);
+        }
+
+        private List<ServerMail> compact(List<ServerMail> mails) {
+            if (mails == null || mails instanceof ServerMailList) {
+                return mails;
+            }
+            try (Tracer.Section ignored = Tracer.begin("MailListData.compact")) {
+                latest = new ServerMailList(CompactMailList.of(mails, addressPool, labelPool),
+                        ++version);
+                return latest;
+            }
+        }
+
+        @NonNull
+        @Override
+        public String getName() {
+            return "mailList";
+        }
+
+        @NonNull
+        @Override
+        public MemoryGovernor.Kind getKind() {
+            return MemoryGovernor.Kind.LIST;
+        }
+
+        @Override
+        public synchronized long getSizeBytes() {
+            return latest == null ? 0 : latest.getCompact().estimateBytes();
+        }
+
+        @Override
+        public void trim() {
+            // e.g. the open mail still looks up mails in the list
+            if (hasActiveObservers() || searching) {
+                return;
+            }
+            ServerMailList trimmed;
+            synchronized (this) {
+                if (latest == null) {
+                    return;
+                }
+                String seenId = lastVisibleMailId;
+                int seen = seenId == null ? 0 : latest.getCompact().indexOfId(seenId);
+                if (seen < 0) {
+                    // not a mail of this list, keep it rather than guess
+                    return;
+                }
+                CompactMailList head = latest.getCompact().head(seen + 1 + KEPT_BEYOND_VISIBLE);
+                if (head == latest.getCompact()) {
+                    return;
+                }
+                latest = new ServerMailList(head, ++version);
+                trimmed = latest;
+                restored = false;
+            }
+            // onTrimMemory runs on the main thread
+            super.setValue(trimmed);
         }
+
         @Override
         protected void onActive() {
             super.onActive();
-            Log.d("MailListData", "MailListData is now active");
+            if (AppLog.DEBUG) AppLog.d("MailListData", "MailListData is now active");
+            // afterwards the value is kept up to date, an observer re-attached after a
+            // configuration change gets it without another query
+            if (restored) {
+                return;
+            }
+            restored = true;
             new Thread(() ->
                     mailListData.postValue(mailDao.getAllMails())
             ).start();
@@ -39,13 +194,118 @@ public class MailRepository {
     }
 
 
-    public MailRepository(@NonNull Context context) {
-        AppDatabase db = Room.databaseBuilder(context.getApplicationContext(),
-                        AppDatabase.class, "mail_database")
-                .build();
+    /**
+     * @brief Holds the conversation list, read from the thread index and compacted
+     * into a ServerThreadList. Room's LiveData would keep the rows it read next to the
+     * compact copy, so this one reads the index itself whenever its tables change
+     * while it is observed, and once it is observed again after a change it missed.
+     */
+    class ThreadListData extends LiveData<ServerThreadList> {
+        private final InvalidationTracker tracker;
+        private final InvalidationTracker.Observer onTablesChanged =
+                new InvalidationTracker.Observer("MailThread", "ServerMail") {
+                    @Override
+                    public void onInvalidated(@NonNull Set<String> tables) {
+                        if (active) {
+                            reload();
+                        } else {
+                            stale = true;
+                        }
+                    }
+                };
+        private volatile boolean active;
+        private volatile boolean stale = true;
+        private boolean tracking;
+
+        ThreadListData(@NonNull InvalidationTracker tracker) {
+            this.tracker = tracker;
+        }
+
+        @Override
+        protected void onActive() {
+            active = true;
+            if (stale) {
+                reload();
+            }
+        }
+
+        @Override
+        protected void onInactive() {
+            active = false;
+        }
+
+        private void reload() {
+            stale = false;
+            new Thread(this::load).start();
+        }
+
+        // serialized, so the last load posts the rows the database holds last
+        private synchronized void load() {
+            if (!tracking) {
+                // registering syncs Room's triggers, which is database work
+                tracker.addObserver(onTablesChanged);
+                tracking = true;
+            }
+            List<MailDao.ThreadRow> rows;
+            try (Tracer.Section ignored = Tracer.begin("MailDao.getThreads")) {
+                rows = mailDao.getThreads();
+            }
+            try (Tracer.Section ignored = Tracer.begin("ThreadListData.compact")) {
+                String[] threadKeys = new String[rows.size()];
+                int[] messageCounts = new int[rows.size()];
+                for (int i = 0; i < rows.size(); i++) {
+                    threadKeys[i] = rows.get(i).threadKey;
+                    messageCounts[i] = rows.get(i).messageCount;
+                }
+                postValue(new ServerThreadList(CompactMailList.of(rows, addressPool, labelPool),
+                        threadKeys, messageCounts));
+            }
+        }
+    }
+
+    public MailRepository(@NonNull Context context, @NonNull AppDatabase db) {
         mailDao = db.mailDao();
         mailListData = new MailListData();
+        threadListData = new ThreadListData(db.getInvalidationTracker());
         mailApi = new MailApi(mailDao, mailListData, context);
+        mailApi.setOnMailsStored(this::indexContacts);
+        mailApi.setOnMailsChanged(mailListData::postChanges);
+        MemoryGovernor.getInstance().register(mailListData);
+        MemoryGovernor.getInstance().register(new ContactCache());
+    }
+
+    /**
+     * @brief The recipient index as a cache; it is built again from the database the
+     * next time recipients are suggested.
+     */
+    private class ContactCache implements MemoryGovernor.Cache {
+        @NonNull
+        @Override
+        public String getName() {
+            return "contacts";
+        }
+
+        @NonNull
+        @Override
+        public MemoryGovernor.Kind getKind() {
+            return MemoryGovernor.Kind.INDEX;
+        }
+
+        @Override
+        public long getSizeBytes() {
+            synchronized (contactBuilder) {
+                return contactBuilder.estimateBytes();
+            }
+        }
+
+        @Override
+        public void trim() {
+            synchronized (contactBuilder) {
+                contactBuilder.clear();
+                contacts = ContactIndex.EMPTY;
+                contactsRequested = false;
+            }
+        }
     }
 
     /**
@@ -56,12 +316,94 @@ public class MailRepository {
         return mailListData;
     }
 
+    /**
+     * @brief Retrieves the per-label mail counters.
+     * @return A LiveData object with the total and unread count of every label.
+     */
+    public LiveData<List<LabelCounter>> getLabelCounters() {
+        return mailDao.observeLabelCounters();
+    }
+
+    /**
+     * @brief Retrieves the stored mails grouped into conversations.
+     * @return A LiveData object with the newest mail and the size of every conversation.
+     */
+    public LiveData<ServerThreadList> getThreads() {
+        return threadListData;
+    }
+
+    /**
+     * @brief Builds the recipient index from the stored mails, once, off the main thread.
+     * Until then suggestRecipients() finds nothing; afterwards every synced page is
+     * added to the index as it is stored.
+     */
+    public void prepareContacts() {
+        synchronized (contactBuilder) {
+            if (contactsRequested) {
+                return;
+            }
+            contactsRequested = true;
+        }
+        new Thread(() -> {
+            long start = System.nanoTime();
+            List<MailDao.MailParticipants> stored = mailDao.getParticipants();
+            ContactIndex built;
+            synchronized (contactBuilder) {
+                for (MailDao.MailParticipants mail : stored) {
+                    contactBuilder.add(mail.id, mail.from, mail.to, mail.updatedAt);
+                }
+                built = contactBuilder.build();
+                contacts = built;
+            }
+            AppLog.i("MailRepository", "Indexed " + built.size() + " contacts in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }).start();
+    }
+
+    /**
+     * @brief Adds the participants of stored mails to the recipient index.
+     * Mails already indexed, e.g. stored again by a refresh, are skipped.
+     */
+    private void indexContacts(@NonNull List<ServerMail> mails) {
+        synchronized (contactBuilder) {
+            if (!contactsRequested) {
+                // prepareContacts() reads them from the database
+                return;
+            }
+            for (ServerMail mail : mails) {
+                contactBuilder.add(mail);
+            }
+            contacts = contactBuilder.build();
+        }
+    }
+
+    /**
+     * @brief Suggests recipients for what is being typed, without I/O.
+     * @param prefix The start of an address.
+     * @param limit The maximum number of suggestions.
+     * @return Addresses from the mailbox, most frequent and recent contacts first.
+     */
+    public List<String> suggestRecipients(@NonNull String prefix, int limit) {
+        // the index may have been dropped under memory pressure since the screen opened
+        prepareContacts();
+        return contacts.suggest(prefix, limit);
+    }
+
+    /**
+     * @brief Marks a mail as read on this device.
+     * @param id The ID of the mail that was opened.
+     */
+    public void markAsRead(String id) {
+        new Thread(() -> mailDao.markAsRead(id)).start();
+    }
+
     /**
      * @brief Searches for mails based on a query.
      * @param query The search query to filter mails.
      */
     public void searchMail(String query) {
-        Log.d("MailRepository", "Searching for mail with query: " + query);
+        if (AppLog.DEBUG) AppLog.d("MailRepository", "Searching for mail with query: " + query);
+        searching = true;
         mailApi.searchMail(query);
     }
 
@@ -74,16 +416,6 @@ public class MailRepository {
         mailApi.sendMail(mail, callback);
     }
 
-    /**
-     * @brief Updates a draft mail.
-     * @param mail The new draft object
-     * @param mailId the id of the draft
-     */
-    public void updateDraft(ServerMail mail, String mailId, retrofit2.Callback<Void> callback) {
-        Log.d("MailRepository", "Updating draft for mail: " + mail);
-        mailApi.updateDraft(mail, mailId, callback);
-    }
-
     /**
      * @brief Retrieves a mail by its ID.
      * @param id The ID of the mail to be retrieved.
@@ -91,12 +423,11 @@ public class MailRepository {
      */
     public ServerMail getMailById(String id) {
         List<ServerMail> mails = mailListData.getValue();
+        if (mails instanceof ServerMailList) {
+            return ((ServerMailList) mails).findById(id);
+        }
         if (mails != null) {
             for (ServerMail mail : mails) {
-                // log the mail ID for debugging
-               Log.d("MailRepository", "Checking mail ID: " + mail.getId());
-               // log the mail object for debugging
-                Log.d("MailRepository", "Mail object: " + mail);
                 if (mail.getId().equals(id)) {
                     return mail;
                 }
@@ -105,22 +436,101 @@ public class MailRepository {
         return null;
     }
 
+    /**
+     * @brief Loads a mail with its full body, from the local database if it was
+     * opened before and from the server otherwise.
+     * @param id The ID of the mail.
+     * @param onLoaded Receives the mail, or null if it could not be loaded, on the main thread.
+     */
+    public void loadFullMail(String id, @NonNull Consumer<ServerMail> onLoaded) {
+        new Thread(() -> {
+            ServerMail stored = mailDao.getById(id);
+            if (stored != null && stored.getBody() != null) {
+                mainHandler.post(() -> onLoaded.accept(stored));
+                return;
+            }
+            mailApi.loadMail(id, new retrofit2.Callback<>() {
+                @Override
+                public void onResponse(@NonNull retrofit2.Call<ServerMail> call,
+                                       @NonNull retrofit2.Response<ServerMail> response) {
+                    onLoaded.accept(response.isSuccessful() ? response.body() : null);
+                }
+
+                @Override
+                public void onFailure(@NonNull retrofit2.Call<ServerMail> call,
+                                      @NonNull Throwable t) {
+                    onLoaded.accept(null);
+                }
+            });
+        }).start();
+    }
+
+    /**
+     * @brief Fetches a mail with its full body from the server.
+     * List responses only carry a snippet, so this is used when a mail is opened.
+     * @param id The ID of the mail.
+     * @param callback The callback receiving the full mail.
+     */
+    public void fetchMail(String id, retrofit2.Callback<ServerMail> callback) {
+        mailApi.loadMail(id, callback);
+    }
+
     /**
      * @brief Deletes a mail by its ID.
      * @param id The ID of the mail to be deleted.
      */
     public void deleteMail(String id) {
-        Log.d("MailRepository", "Deleting mail with ID: " + id);
+        if (AppLog.DEBUG) AppLog.d("MailRepository", "Deleting mail with ID: " + id);
         mailApi.deleteMail(id);
     }
 
+    /**
+     * @brief Deletes several mails; the list is updated once when all are done.
+     * @param ids The IDs of the mails.
+     * @param onDone Receives which mails were deleted, on the main thread.
+     */
+    public void deleteMails(@NonNull List<String> ids, @NonNull Consumer<FanOut.Result> onDone) {
+        mailApi.deleteMails(ids, result -> mainHandler.post(() -> onDone.accept(result)));
+    }
+
+    /**
+     * @brief Adds a label to or removes it from several mails; the list is updated once
+     * when all are done.
+     * @param ids The IDs of the mails.
+     * @param labelId The ID of the label.
+     * @param attach true to add the label, false to remove it.
+     * @param onDone Receives which mails were updated, on the main thread.
+     */
+    public void setLabel(@NonNull List<String> ids, @NonNull String labelId, boolean attach,
+                         @NonNull Consumer<FanOut.Result> onDone) {
+        mailApi.setLabel(ids, labelId, attach,
+                result -> mainHandler.post(() -> onDone.accept(result)));
+    }
+
+    /**
+     * @brief Collects the mails of the given conversations, off the main thread.
+     * @param threadKeys The keys of the conversations, see ThreadKey.
+     * @param onLoaded Receives the IDs of their mails, on the main thread.
+     */
+    public void loadThreadMailIds(@NonNull List<String> threadKeys,
+                                  @NonNull Consumer<List<String>> onLoaded) {
+        new Thread(() -> {
+            List<String> ids = new ArrayList<>();
+            for (int start = 0; start < threadKeys.size(); start += MailDao.MAX_IN_LIST) {
+                ids.addAll(mailDao.getIdsInThreads(threadKeys.subList(start,
+                        Math.min(threadKeys.size(), start + MailDao.MAX_IN_LIST))));
+            }
+            mainHandler.post(() -> onLoaded.accept(ids));
+        }).start();
+    }
+
     /**
      * @brief Removes a label from a mail.
      * @param mailId The ID of the mail from which the label will be removed.
      * @param labelId The ID of the label to be removed.
      */
     public void removeLabelFromMail(String mailId, String labelId){
-        Log.d("MailRepository", "Removing label " + labelId + " from mail " + mailId);
+        if (AppLog.DEBUG) AppLog.d("MailRepository", "Removing label " + labelId + " from mail " + mailId);
         mailApi.removeLabelFromMail(mailId, labelId);
 
     }
@@ -131,7 +541,7 @@ public class MailRepository {
      * @param labelId The ID of the label to be added.
      */
     public void addLabelToMail(String mailId, String labelId) {
-        Log.d("MailRepository", "Adding label " + labelId + " to mail " + mailId);
+        if (AppLog.DEBUG) AppLog.d("MailRepository", "Adding label " + labelId + " to mail " + mailId);
         mailApi.addLabelToMail(mailId, labelId);
     }
 
@@ -140,11 +550,40 @@ public class MailRepository {
      * @param label The label for which to reload the mails.
      */
     public void reloadMails(String label) {
+        searching = false;
         mailApi.reload(label);
     }
 
+    /**
+     * @brief Reloads the mails for a label and reports when they were stored.
+     * @param label The label for which to reload the mails.
+     * @param onDone Receives true once the mails were stored, false if loading failed.
+     */
+    public void reloadMails(String label, @Nullable Consumer<Boolean> onDone) {
+        searching = false;
+        mailApi.reload(label, onDone);
+    }
+
     public void loadAllMails() {
-        Log.d("MailRepository", "Loading all mails");
+        if (AppLog.DEBUG) AppLog.d("MailRepository", "Loading all mails");
+        searching = false;
         mailApi.loadAllMails();
     }
+
+    /**
+     * @brief Loads the next page of older mails when the list is close to its end.
+     * @param lastVisiblePosition The adapter position of the last visible row.
+     * @param itemCount The number of rows in the list.
+     * @param lastVisibleMailId The ID of the mail shown in that row, where the mail
+     *                          list is cut when it is trimmed; null if unknown.
+     */
+    public void loadMoreIfNeeded(int lastVisiblePosition, int itemCount,
+                                 @Nullable String lastVisibleMailId) {
+        if (lastVisibleMailId != null) {
+            this.lastVisibleMailId = lastVisibleMailId;
+        }
+        if (mailApi.shouldLoadMore(lastVisiblePosition, itemCount)) {
+            mailApi.loadNextPage();
+        }
+    }
 }
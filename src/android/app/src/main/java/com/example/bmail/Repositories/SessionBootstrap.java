@@ -0,0 +1,171 @@
+package com.example.bmail.Repositories;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.bmail.Entities.BmailApplication;
+import com.example.bmail.Utils.AppLog;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @brief Fills the repositories right after a successful login, so the main screen
+ * opens on a populated inbox instead of starting its requests one by one.
+ * The labels, the user details with the profile image and the first inbox page are
+ * requested at the same time. The login screen waits for them through whenReady(),
+ * at most MAX_WAIT_MS, and the main screen skips its own first load if all of them
+ * arrived.
+ */
+public final class SessionBootstrap {
+    private static final String TAG = "SessionBootstrap";
+    // how long the login screen waits for the prefetch before opening the main screen
+    public static final long MAX_WAIT_MS = 2_000;
+    // label the main screen shows first
+    private static final String FIRST_LABEL = "inbox";
+    private static final int FETCHES = 3;
+
+    @Nullable
+    private static SessionBootstrap current;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger pending = new AtomicInteger(FETCHES);
+    private final long start = System.nanoTime();
+    // guarded by this
+    private boolean failed;
+    private boolean finished;
+    private boolean released;
+    private boolean releasedByTimeout;
+    @Nullable
+    private Runnable onReady;
+
+    private SessionBootstrap() {
+    }
+
+    /**
+     * @brief Starts prefetching for the session that was just opened.
+     * Called once the token and user ID are saved.
+     */
+    public static void start() {
+        SessionBootstrap bootstrap = new SessionBootstrap();
+        synchronized (SessionBootstrap.class) {
+            current = bootstrap;
+        }
+        // creating the repositories opens the database, keep it off the main thread
+        new Thread(bootstrap::fetch, TAG).start();
+    }
+
+    /**
+     * @brief Runs an action on the main thread once the prefetch finished or
+     * MAX_WAIT_MS passed, whichever comes first. Runs it right away if no prefetch
+     * was started.
+     * @param action The action, e.g. opening the main screen.
+     */
+    public static void whenReady(@NonNull Runnable action) {
+        SessionBootstrap bootstrap;
+        synchronized (SessionBootstrap.class) {
+            bootstrap = current;
+        }
+        if (bootstrap == null) {
+            new Handler(Looper.getMainLooper()).post(action);
+            return;
+        }
+        bootstrap.setOnReady(action);
+    }
+
+    /**
+     * @brief Tells whether the repositories hold the data prefetched at login, so
+     * loading it again can be skipped.
+     * @return true until the main screen consumed the prefetch.
+     */
+    public static boolean isPrefetched() {
+        synchronized (SessionBootstrap.class) {
+            return current != null && current.isComplete();
+        }
+    }
+
+    /**
+     * @brief Ends the prefetch of the current session.
+     * @return true if all the data was prefetched and the first load can be skipped.
+     */
+    public static boolean consumePrefetched() {
+        synchronized (SessionBootstrap.class) {
+            boolean prefetched = current != null && current.isComplete();
+            current = null;
+            return prefetched;
+        }
+    }
+
+    private void fetch() {
+        BmailApplication app = BmailApplication.getInstance();
+        app.getLabelRepository().loadLabels(this::fetchDone);
+        app.getUserRepository().loadUserAndImage(this::fetchDone);
+        app.getMailRepository().reloadMails(FIRST_LABEL, this::fetchDone);
+    }
+
+    private void fetchDone(boolean ok) {
+        synchronized (this) {
+            if (!ok) {
+                failed = true;
+            }
+        }
+        if (pending.decrementAndGet() > 0) {
+            return;
+        }
+        boolean complete;
+        synchronized (this) {
+            finished = true;
+            complete = !failed;
+        }
+        AppLog.i(TAG, "Prefetched " + (complete ? "" : "with errors ") + "in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        mainHandler.post(this::release);
+    }
+
+    /**
+     * @brief Only data that arrived before the main screen opened counts, anything
+     * later is loaded by the main screen itself.
+     */
+    private synchronized boolean isComplete() {
+        return finished && !failed && !releasedByTimeout;
+    }
+
+    private void setOnReady(@NonNull Runnable action) {
+        synchronized (this) {
+            onReady = action;
+            if (!finished) {
+                long waitedMs = (System.nanoTime() - start) / 1_000_000;
+                mainHandler.postDelayed(this::timeout, Math.max(0, MAX_WAIT_MS - waitedMs));
+                return;
+            }
+        }
+        mainHandler.post(this::release);
+    }
+
+    private void timeout() {
+        synchronized (this) {
+            if (released) {
+                return;
+            }
+            releasedByTimeout = true;
+        }
+        AppLog.w(TAG, "Prefetch took longer than " + MAX_WAIT_MS + " ms");
+        release();
+    }
+
+    private void release() {
+        Runnable action;
+        synchronized (this) {
+            if (released || onReady == null) {
+                return;
+            }
+            released = true;
+            action = onReady;
+            onReady = null;
+        }
+        mainHandler.removeCallbacksAndMessages(null);
+        action.run();
+    }
+}
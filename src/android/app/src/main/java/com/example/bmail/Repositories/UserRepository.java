@@ -5,11 +5,16 @@ import android.graphics.Bitmap;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
+import com.example.bmail.Api.TokenHolder;
 import com.example.bmail.Api.UserApi;
 import com.example.bmail.Entities.User;
+import com.example.bmail.Utils.MemoryGovernor;
+
+import java.util.function.Consumer;
 
 import okhttp3.MediaType;
 import okhttp3.RequestBody;
@@ -18,35 +23,113 @@ public class UserRepository {
 
     private final UserApi userApi;
     private final UserData userData;
+    private final TokenHolder tokenHolder;
 
-    private final MutableLiveData<Bitmap> userImage = new MutableLiveData<>();
+    private final UserImage userImage = new UserImage();
 
 
     public class UserData extends MutableLiveData<User>{
         public UserData() {
-            super();
-            // Initialize with an empty User object or null
-            setValue(null);
+            // starts out null, not setValue(), the repository may be created off the main thread
+            super(null);
         }
 
+        // set once the first observer requested the details, later refreshes are explicit
+        private boolean requested;
+
         @Override
         protected void onActive() {
             super.onActive();
-            // Load user details when the LiveData becomes active
-            userApi.loadUserDetails();
+            // Load user details when the LiveData first becomes active,
+            // unless they were just prefetched at login
+            if (!requested && !SessionBootstrap.isPrefetched()) {
+                userApi.loadUserDetails();
+            }
+            requested = true;
         }
 
     }
 
+    /**
+     * @brief Holds the full-size profile image. It is dropped under memory pressure
+     * while nothing shows it, and downloaded again once something does.
+     */
+    class UserImage extends MutableLiveData<Bitmap> implements MemoryGovernor.Cache {
+        // set when the image was dropped, main thread only
+        private boolean trimmed;
+
+        @Override
+        protected void onActive() {
+            super.onActive();
+            if (!trimmed) {
+                return;
+            }
+            trimmed = false;
+            User user = userData.getValue();
+            if (user != null && user.getImage() != null && !user.getImage().isEmpty()) {
+                userApi.loadCurrentUserImage(user.getImage());
+            }
+        }
+
+        @NonNull
+        @Override
+        public String getName() {
+            return "userImage";
+        }
+
+        @NonNull
+        @Override
+        public MemoryGovernor.Kind getKind() {
+            return MemoryGovernor.Kind.BITMAP;
+        }
+
+        @Override
+        public long getSizeBytes() {
+            Bitmap bitmap = getValue();
+            return bitmap == null ? 0 : bitmap.getAllocationByteCount();
+        }
+
+        @Override
+        public void trim() {
+            if (hasActiveObservers() || getValue() == null) {
+                return;
+            }
+            trimmed = true;
+            setValue(null);
+        }
+    }
+
     public UserRepository(@NonNull Context context) {
         userData = new UserData();
         userApi = new UserApi(context, userData, userImage);
+        tokenHolder = TokenHolder.getInstance(context);
+        MemoryGovernor.getInstance().register(userImage);
     }
 
     public void loadUserDetails() {
         userApi.loadUserDetails();
     }
 
+    /**
+     * @brief Loads the user details and then the profile image, one after the other
+     * since the image url is part of the details.
+     * @param onDone Receives true once both were posted, false if either failed.
+     */
+    public void loadUserAndImage(@Nullable Consumer<Boolean> onDone) {
+        userApi.loadUserDetails(user -> {
+            if (user == null) {
+                if (onDone != null) onDone.accept(false);
+                return;
+            }
+            String image = user.getImage();
+            if (image == null || image.isEmpty()) {
+                if (onDone != null) onDone.accept(true);
+                return;
+            }
+            userApi.loadCurrentUserImage(image, onDone);
+        });
+    }
+
     public LiveData<User> getUserData() {
         return userData;
     }
@@ -74,4 +157,19 @@ public class UserRepository {
         userApi.updateProfile(firstNameBody, lastNameBody, imageUri);
     }
 
+    /**
+     * @brief Emits true once the server rejected the token and the user has to log in again.
+     */
+    public LiveData<Boolean> getSessionExpired() {
+        return tokenHolder.getSessionExpired();
+    }
+
+    /**
+     * @brief Forgets the token and user ID of the current session.
+     */
+    public void logout() {
+        tokenHolder.clear();
+        userData.postValue(null);
+    }
+
 }
@@ -0,0 +1,134 @@
+package com.example.bmail.Utils;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.bmail.BuildConfig;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @brief Level-gated logging facade.
+ * Debug and verbose messages only exist in debug builds: guard them with the DEBUG
+ * constant so the message is never built in release builds, e.g.
+ * <pre>
+ * if (AppLog.DEBUG) AppLog.d(TAG, "Binding mail at position " + position);
+ * </pre>
+ * Per-row events go through a Sampler so only one in N is logged.
+ * The last RING_SIZE messages at info level and above are kept in memory, also in
+ * release builds, and can be written to logcat with dumpRecent() when an error needs
+ * its context.
+ */
+public final class AppLog {
+    // false in release builds, so guarded messages are never built there
+    public static final boolean DEBUG = BuildConfig.DEBUG;
+    static final int RING_SIZE = 256;
+
+    private static final String[] ring = new String[RING_SIZE];
+    private static final long[] ringTimes = new long[RING_SIZE];
+    private static int next;
+    private static boolean wrapped;
+
+    private AppLog() {
+    }
+
+    /**
+     * @brief Lets one in every N events through.
+     */
+    public static final class Sampler {
+        private final int every;
+        private final AtomicLong events = new AtomicLong();
+
+        private Sampler(int every) {
+            this.every = Math.max(1, every);
+        }
+
+        /**
+         * @return true for the first event and then for every N-th one.
+         */
+        public boolean shouldLog() {
+            return events.getAndIncrement() % every == 0;
+        }
+    }
+
+    /**
+     * @param every Log one event out of this many.
+     * @return A sampler, meant to be kept in a static field per call site.
+     */
+    @NonNull
+    public static Sampler sampler(int every) {
+        return new Sampler(every);
+    }
+
+    public static void v(@NonNull String tag, @NonNull String message) {
+        if (DEBUG) {
+            Log.v(tag, message);
+        }
+    }
+
+    public static void d(@NonNull String tag, @NonNull String message) {
+        if (DEBUG) {
+            Log.d(tag, message);
+        }
+    }
+
+    public static void i(@NonNull String tag, @NonNull String message) {
+        record("I", tag, message);
+        Log.i(tag, message);
+    }
+
+    public static void w(@NonNull String tag, @NonNull String message) {
+        record("W", tag, message);
+        Log.w(tag, message);
+    }
+
+    public static void e(@NonNull String tag, @NonNull String message) {
+        e(tag, message, null);
+    }
+
+    public static void e(@NonNull String tag, @NonNull String message, @Nullable Throwable t) {
+        record("E", tag, t == null ? message : message + ": " + t);
+        Log.e(tag, message, t);
+    }
+
+    /**
+     * @brief Writes the buffered recent messages to logcat, oldest first.
+     * @param tag The tag to write them under.
+     */
+    public static void dumpRecent(@NonNull String tag) {
+        for (String line : recent()) {
+            Log.e(tag, line);
+        }
+    }
+
+    /**
+     * @return The buffered recent messages, oldest first.
+     */
+    @NonNull
+    public static synchronized String[] recent() {
+        int size = wrapped ? RING_SIZE : next;
+        String[] lines = new String[size];
+        int start = wrapped ? next : 0;
+        // formatting is deferred to the dump, recording only stores the message
+        SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS", Locale.US);
+        for (int i = 0; i < size; i++) {
+            int index = (start + i) % RING_SIZE;
+            lines[i] = format.format(new Date(ringTimes[index])) + " " + ring[index];
+        }
+        return lines;
+    }
+
+    private static synchronized void record(String level, String tag, String message) {
+        ringTimes[next] = System.currentTimeMillis();
+        ring[next] = level + "/" + tag + ": " + message;
+        next = (next + 1) % RING_SIZE;
+        if (next == 0) {
+            wrapped = true;
+        }
+    }
+}
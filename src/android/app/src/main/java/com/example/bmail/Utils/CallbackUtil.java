@@ -1,6 +1,5 @@
 package com.example.bmail.Utils;
 
-import android.util.Log;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
@@ -26,7 +25,7 @@ public class CallbackUtil implements retrofit2.Callback<Void> {
     @Override
     public void onResponse(@NonNull retrofit2.Call<Void> call, @NonNull retrofit2.Response<Void> response) {
         if (response.isSuccessful()) {
-            Log.i(TAG, successMessage);
+            AppLog.i(TAG, successMessage);
             Toast.makeText(activity, successMessage, Toast.LENGTH_SHORT).show();
             if (finishOnSuccess) {
                 activity.finish();
@@ -38,7 +37,7 @@ public class CallbackUtil implements retrofit2.Callback<Void> {
 
     @Override
     public void onFailure(@NonNull retrofit2.Call<Void> call, @NonNull Throwable t) {
-        Log.e(TAG, "Error: " + t.getMessage());
+        AppLog.e(TAG, "Error: " + t.getMessage());
         Toast.makeText(activity, t.getMessage(), Toast.LENGTH_SHORT).show();
     }
 
@@ -49,13 +48,13 @@ public class CallbackUtil implements retrofit2.Callback<Void> {
         try (okhttp3.ResponseBody errorBody = response.errorBody()) {
             if (errorBody != null) {
                 String errorMessage = errorBody.string();
-                Log.e(TAG, initialErrorMessage + errorMessage);
+                AppLog.e(TAG, initialErrorMessage + response.code());
                 Toast.makeText(activity, initialErrorMessage + errorMessage, Toast.LENGTH_SHORT).show();
             } else {
                 Toast.makeText(activity, initialErrorMessage + response.message(), Toast.LENGTH_SHORT).show();
             }
         } catch (Exception e) {
-            Log.e(TAG, "Error reading error body", e);
+            AppLog.e(TAG, "Error reading error body", e);
             Toast.makeText(activity, initialErrorMessage + response.message(), Toast.LENGTH_SHORT).show();
         }
     }
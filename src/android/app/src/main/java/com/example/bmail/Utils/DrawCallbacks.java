@@ -0,0 +1,45 @@
+package com.example.bmail.Utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import androidx.annotation.NonNull;
+
+/**
+ * @brief Runs code once a view has been drawn.
+ */
+public final class DrawCallbacks {
+
+    private DrawCallbacks() {
+    }
+
+    /**
+     * @brief Runs a task on the main thread right after the next frame of a view.
+     * A plain View.post() from onResume can run before the first frame, so this waits
+     * for the draw pass and then posts.
+     * @param view The view to watch.
+     * @param task The task to run.
+     */
+    public static void afterNextDraw(@NonNull View view, @NonNull Runnable task) {
+        Handler handler = new Handler(Looper.getMainLooper());
+        ViewTreeObserver.OnDrawListener listener = new ViewTreeObserver.OnDrawListener() {
+            private boolean fired;
+
+            @Override
+            public void onDraw() {
+                if (fired) {
+                    return;
+                }
+                fired = true;
+                // listeners cannot be removed while the draw pass is running
+                handler.post(() -> {
+                    view.getViewTreeObserver().removeOnDrawListener(this);
+                    task.run();
+                });
+            }
+        };
+        view.getViewTreeObserver().addOnDrawListener(listener);
+    }
+}
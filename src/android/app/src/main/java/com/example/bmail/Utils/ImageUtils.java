@@ -5,12 +5,12 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
-import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.example.bmail.Api.WebServiceApi;
+import com.example.bmail.Metrics.Tracer;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -43,7 +43,7 @@ public class ImageUtils {
                     return MultipartBody.Part.createFormData(paramName, "image.jpg", imageBody);
                 }
             } catch (IOException e) {
-                Log.e(TAG, "Error reading image file", e);
+                AppLog.e(TAG, "Error reading image file", e);
             }
         }
         return null;
@@ -75,46 +75,41 @@ public class ImageUtils {
 
 
     /**
-     * Downloads an image from a given URL using the provided WebServiceApi and token.
+     * Downloads an image from a given URL using the provided WebServiceApi.
      * @param webServiceApi The WebServiceApi instance to use for the request.
-     * @param token The authentication token to include in the request header.
      * @param url The URL of the image to download.
      * @param callback The callback to handle the success or failure of the image download.
      */
    public static void downloadImage(
            @NonNull WebServiceApi webServiceApi,
-           String token,
            String url,
            ImageDownloadCallback callback
    ) {
 
-       Call<ResponseBody> call = webServiceApi.downloadImage("Bearer " + token, url);
+       Call<ResponseBody> call = webServiceApi.downloadImage(url);
        call.enqueue(new retrofit2.Callback<>() {
            @Override
            public void onResponse(@NonNull Call<okhttp3.ResponseBody> call, @NonNull Response<okhttp3.ResponseBody> response) {
                if (!response.isSuccessful()) {
-                   Log.e(TAG, "Failed to load profile image: " + response.message());
-                   Log.e(TAG, "Response code: " + response.code());
-
-                   try (okhttp3.ResponseBody errorBody = response.errorBody()) {
-                       if (errorBody != null) {
-                           Log.e(TAG, "Error body: " + errorBody.string());
-                       } else {
-                           Log.e(TAG, "No error body available.");
-                       }
-                   } catch (Exception e) {
-                       Log.e(TAG, "Error reading error body", e);
+                   // the status only, the error body is whatever the server sent
+                   AppLog.e(TAG, "Failed to load profile image: " + response.code());
+                   okhttp3.ResponseBody errorBody = response.errorBody();
+                   if (errorBody != null) {
+                       errorBody.close();
                    }
                    return;
                }
 
                try (okhttp3.ResponseBody responseBody = response.body()) {
                    if (responseBody == null) {
-                       Log.e(TAG, "Response body is null.");
+                       AppLog.e(TAG, "Response body is null.");
                        return;
                    }
 
-                   Bitmap bitmap = BitmapFactory.decodeStream(responseBody.byteStream());
+                   Bitmap bitmap;
+                   try (Tracer.Section ignored = Tracer.begin("ImageUtils.decodeStream")) {
+                       bitmap = BitmapFactory.decodeStream(responseBody.byteStream());
+                   }
                    if (bitmap != null) {
                        callback.onSuccess(bitmap);
                    } else {
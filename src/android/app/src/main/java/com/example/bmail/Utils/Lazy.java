@@ -0,0 +1,42 @@
+package com.example.bmail.Utils;
+
+import androidx.annotation.NonNull;
+
+import java.util.function.Supplier;
+
+/**
+ * @brief Creates a value on first use and keeps it.
+ * Safe to call from several threads: a background pre-warm and the main thread may
+ * race, the value is still created once and the loser waits for it.
+ */
+public final class Lazy<T> implements Supplier<T> {
+    private final Supplier<T> factory;
+    private volatile T value;
+
+    public Lazy(@NonNull Supplier<T> factory) {
+        this.factory = factory;
+    }
+
+    @NonNull
+    @Override
+    public T get() {
+        T result = value;
+        if (result == null) {
+            synchronized (this) {
+                result = value;
+                if (result == null) {
+                    result = factory.get();
+                    value = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the value was already created.
+     */
+    public boolean isInitialized() {
+        return value != null;
+    }
+}
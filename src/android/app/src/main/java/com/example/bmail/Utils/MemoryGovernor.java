@@ -0,0 +1,153 @@
+package com.example.bmail.Utils;
+
+import android.content.ComponentCallbacks2;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * @brief Frees in-memory caches when the system runs short of memory.
+ * Caches register when they are created; BmailApplication forwards onTrimMemory and
+ * onLowMemory. The level decides which kinds of caches are trimmed, see policy():
+ * indexes that are quick to rebuild go first, lists and bitmaps once the user cannot
+ * see them. A cache never drops what an observer is showing, it rebuilds what it
+ * dropped when it is used again.
+ */
+public final class MemoryGovernor {
+    private static final String TAG = "MemoryGovernor";
+    private static final MemoryGovernor instance = new MemoryGovernor();
+
+    /**
+     * @brief What a cache holds, which decides at which levels it is trimmed.
+     */
+    public enum Kind {
+        // e.g. the recipient suggestions, rebuilt from the database
+        INDEX,
+        // e.g. the mail list, shrunk to the rows that were visible
+        LIST,
+        // e.g. the profile image, downloaded again
+        BITMAP
+    }
+
+    /**
+     * @brief A cache that can give memory back.
+     */
+    public interface Cache {
+        /**
+         * @return The name shown in the diagnostics.
+         */
+        @NonNull
+        String getName();
+
+        @NonNull
+        Kind getKind();
+
+        /**
+         * @return An estimate of the bytes the cache holds now.
+         */
+        long getSizeBytes();
+
+        /**
+         * @brief Frees what is not shown, on the main thread.
+         */
+        void trim();
+    }
+
+    private final List<Cache> caches = new CopyOnWriteArrayList<>();
+
+    private MemoryGovernor() {
+    }
+
+    public static MemoryGovernor getInstance() {
+        return instance;
+    }
+
+    /**
+     * @brief Adds a cache, which is kept for the life of the process.
+     * @param cache The cache.
+     */
+    public void register(@NonNull Cache cache) {
+        caches.add(cache);
+    }
+
+    /**
+     * @brief Trims the caches the level calls for.
+     * @param level One of the ComponentCallbacks2.TRIM_MEMORY_* levels.
+     */
+    public void onTrimMemory(int level) {
+        Set<Kind> kinds = policy(level);
+        if (kinds.isEmpty()) {
+            return;
+        }
+        long freed = 0;
+        for (Cache cache : caches) {
+            if (!kinds.contains(cache.getKind())) {
+                continue;
+            }
+            long before = cache.getSizeBytes();
+            cache.trim();
+            freed += before - cache.getSizeBytes();
+        }
+        AppLog.i(TAG, "Trim level " + level + " " + kinds + " freed about "
+                + freed / 1024 + " KiB");
+    }
+
+    /**
+     * @brief Trims every cache, for onLowMemory.
+     */
+    public void onLowMemory() {
+        onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+
+    /**
+     * @param level One of the ComponentCallbacks2.TRIM_MEMORY_* levels.
+     * @return The kinds of caches to trim at the level.
+     */
+    @NonNull
+    static Set<Kind> policy(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            // the process is on the list to be killed, the less it holds the later it goes
+            return EnumSet.allOf(Kind.class);
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            return EnumSet.of(Kind.LIST, Kind.BITMAP);
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            return EnumSet.of(Kind.INDEX, Kind.LIST);
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return EnumSet.of(Kind.INDEX);
+        }
+        return EnumSet.noneOf(Kind.class);
+    }
+
+    /**
+     * @return The estimated size of every cache in bytes, by name.
+     */
+    @NonNull
+    public Map<String, Long> getSizes() {
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        for (Cache cache : caches) {
+            sizes.put(cache.getName(), cache.getSizeBytes());
+        }
+        return sizes;
+    }
+
+    @NonNull
+    public JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, Long> size : getSizes().entrySet()) {
+            json.put(size.getKey(), size.getValue());
+        }
+        return json;
+    }
+}
@@ -1,30 +1,139 @@
 package com.example.bmail.ViewModels;
 
-import android.util.Log;
+import android.os.Handler;
+import android.os.Looper;
 
 import androidx.annotation.NonNull;
+import androidx.lifecycle.SavedStateHandle;
 
-import com.example.bmail.Adapters.MailsAdapter;
 import com.example.bmail.Entities.BmailApplication;
 import com.example.bmail.Entities.ClientMail;
+import com.example.bmail.Entities.Draft;
 import com.example.bmail.Entities.ServerMail;
+import com.example.bmail.Entities.User;
+import com.example.bmail.Repositories.DraftRepository;
 import com.example.bmail.Repositories.MailRepository;
 import com.example.bmail.Repositories.UserRepository;
+import com.example.bmail.Utils.AppLog;
+import com.example.bmail.core.QuoteBuilder;
 
 import java.util.ArrayList;
 import java.util.List;
-
+import java.util.Locale;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * @brief State of the compose screen.
+ * What is typed is stored as a local draft on every change and synced to the server
+ * in the background, see DraftApi. The id of the local draft is kept in the saved
+ * state, so a recreated screen keeps editing the same draft.
+ */
 public class ComposeViewModel extends androidx.lifecycle.ViewModel {
+    private static final String KEY_DRAFT_ID = "draftLocalId";
+    private static final int MAX_SUGGESTIONS = 8;
 
-    private final MailRepository mailRepository = BmailApplication.getInstance().getMailRepository();
+    private final DraftRepository draftRepository = BmailApplication.getInstance().getDraftRepository();
     private final UserRepository userRepository = BmailApplication.getInstance().getUserRepository();
+    private final MailRepository mailRepository = BmailApplication.getInstance().getMailRepository();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final String draftLocalId;
+    private boolean sent;
+
+    public ComposeViewModel(@NonNull SavedStateHandle state){
+        String id = state.get(KEY_DRAFT_ID);
+        if (id == null) {
+            id = UUID.randomUUID().toString();
+            state.set(KEY_DRAFT_ID, id);
+        }
+        draftLocalId = id;
+        mailRepository.prepareContacts();
+    }
 
-    public ComposeViewModel(){
+    /**
+     * @brief Suggests recipients for the address being typed, leaving out the user.
+     * Fast enough to run for every keystroke; called by the filter of the dropdown.
+     * @param prefix The start of the address.
+     * @return Up to MAX_SUGGESTIONS addresses.
+     */
+    @NonNull
+    public List<String> suggestRecipients(@NonNull String prefix) {
+        List<String> found = mailRepository.suggestRecipients(prefix, MAX_SUGGESTIONS + 1);
+        User user = userRepository.getUserData().getValue();
+        String self = user == null ? null
+                : (user.getUsername() + "@bmail.com").toLowerCase(Locale.ROOT);
+        List<String> suggestions = new ArrayList<>(MAX_SUGGESTIONS);
+        for (String address : found) {
+            if (!address.equals(self) && suggestions.size() < MAX_SUGGESTIONS) {
+                suggestions.add(address);
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * @brief Stores the fields of the compose screen as they are typed.
+     * @param to      The recipients as typed.
+     * @param subject The subject of the email.
+     * @param message The body of the email.
+     */
+    public void onFieldsChanged(@NonNull String to, @NonNull String subject,
+                                @NonNull String message) {
+        if (sent) {
+            return;
+        }
+        draftRepository.save(draftLocalId, to, subject, message);
+    }
+
+    /**
+     * @brief Starts editing a draft stored on the server.
+     * @param mail The draft; the list only holds a snippet, so call again with the full body.
+     * @param onOpened Receives the fields to show, which keep unsynced local edits.
+     */
+    public void openDraft(@NonNull ServerMail mail, @NonNull Consumer<Draft> onOpened) {
+        String to = mail.getTo() == null ? "" : String.join(", ", mail.getTo());
+        draftRepository.open(draftLocalId, mail.getId(), to,
+                mail.getTitle() == null ? "" : mail.getTitle(),
+                mail.getBody() == null ? "" : mail.getBody(), onOpened);
+    }
+
+    /**
+     * @brief Prepares a reply or forward of a stored mail.
+     * The quote is built off the main thread from the local copy of the mail, see
+     * QuoteBuilder for how long threads are shortened.
+     * @param sourceMailId The ID of the mail to respond to.
+     * @param mode The kind of response.
+     * @param onReady Receives the recipients, subject and quoted body, on the main thread.
+     */
+    public void prepareResponse(@NonNull String sourceMailId, @NonNull QuoteBuilder.Mode mode,
+                                @NonNull Consumer<ClientMail> onReady) {
+        mailRepository.loadFullMail(sourceMailId, source -> {
+            if (source == null) {
+                AppLog.e("ComposeViewModel", "Mail to respond to not found: " + sourceMailId);
+                return;
+            }
+            new Thread(() -> {
+                String to = QuoteBuilder.recipients(source, mode);
+                ClientMail response = new ClientMail(QuoteBuilder.subject(source, mode),
+                        QuoteBuilder.body(source, mode), null,
+                        to.isEmpty() ? List.of() : List.of(to), false);
+                mainHandler.post(() -> onReady.accept(response));
+            }).start();
+        });
+    }
 
+    /**
+     * @brief Leaves the compose screen; the draft is synced right away.
+     */
+    public void closeDraft() {
+        if (!sent) {
+            draftRepository.close(draftLocalId);
+        }
     }
 
     /**
      * @brief Sends an email with the provided details.
+     * A draft already on the server is sent with only the fields that changed.
      * @param to      The recipient's email address.
      * @param subject The subject of the email.
      * @param message The body of the email.
@@ -50,59 +159,38 @@ public class ComposeViewModel extends androidx.lifecycle.ViewModel {
                 userRepository.getUserData().getValue().getUsername() :
                 "Me";
         ClientMail mail = new ClientMail(subject, message, username, List.of(to), false);
-        // log the sent mail for debugging
-        Log.d("ComposeViewModel", "Sending mail: " + mail);
-        mailRepository.sendMail(mail, callback);
-    }
-
-    /**
-     * @brief Creates a draft email with the provided details.
-     * @param to      The recipient's email address.
-     * @param subject The subject of the email.
-     * @param message The body of the email.
-     * @param callback The callback to handle the response.
-     */
-    public void createDraft(String to, String subject, String message, retrofit2.Callback<Void> callback) {
-        List<String> toList;
-        if (to != null && !to.isEmpty()) {
-            toList = List.of(to);
-        } else {
-            toList = new ArrayList<>();
+        // the recipients and lengths only, the text of a mail stays out of the logs
+        if (AppLog.DEBUG) {
+            AppLog.d("ComposeViewModel", "Sending mail to " + mail.getTo().size()
+                    + " recipients, " + message.length() + " characters");
         }
-
-        // get the username from the user repository
-        String username = userRepository.getUserData().getValue() != null ?
-                userRepository.getUserData().getValue().getUsername() :
-                "Me";
-        ClientMail mail = new ClientMail(subject, message, username, toList, true);
-        // log the sent mail for debugging
-        Log.d("ComposeViewModel", "Creating draft: " + mail);
-        mailRepository.sendMail(mail, callback);
+        sent = true;
+        String typedTo = to;
+        String typedSubject = subject;
+        String typedMessage = message;
+        draftRepository.send(draftLocalId, mail, new retrofit2.Callback<>() {
+            @Override
+            public void onResponse(@NonNull retrofit2.Call<Void> call,
+                                   @NonNull retrofit2.Response<Void> response) {
+                if (!response.isSuccessful()) {
+                    keepDraft(typedTo, typedSubject, typedMessage);
+                }
+                callback.onResponse(call, response);
+            }
+
+            @Override
+            public void onFailure(@NonNull retrofit2.Call<Void> call, @NonNull Throwable t) {
+                keepDraft(typedTo, typedSubject, typedMessage);
+                callback.onFailure(call, t);
+            }
+        });
     }
 
     /**
-     * @brief Updates an existing draft with the provided details.
-     * @param to      The recipient's email address.
-     * @param subject The subject of the email.
-     * @param message The body of the email.
-     * @param mailId  The ID of the draft to update.
-     * @param draft   Indicates whether this is a draft.
-     * @param callback The callback to handle the response.
+     * @brief Goes back to editing after the mail could not be sent.
      */
-    public void updateDraft(String to, String subject, String message,
-                            String mailId, Boolean draft, retrofit2.Callback<Void> callback) {
-        // print the to address for debugging
-        Log.d("ComposeViewModel", "Updating draft for mailId: " + mailId +
-                " with to: " + to);
-
-        // get the username from the user repository
-        String username = userRepository.getUserData().getValue() != null ?
-                userRepository.getUserData().getValue().getUsername() :
-                "Me";
-        ServerMail mail = new ServerMail(subject, message, username,
-                List.of(to), draft, null);
-        // log the draft being updated for debugging
-        Log.d("ComposeViewModel", "Updating draft: " + mail);
-        mailRepository.updateDraft(mail, mailId, callback);
+    private void keepDraft(String to, String subject, String message) {
+        sent = false;
+        draftRepository.save(draftLocalId, to, subject, message);
     }
 }
@@ -1,6 +1,5 @@
 package com.example.bmail.ViewModels;
 
-import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.lifecycle.LiveData;
@@ -11,8 +10,12 @@ import androidx.lifecycle.ViewModel;
 import com.example.bmail.Entities.BmailApplication;
 import com.example.bmail.Entities.Label;
 import com.example.bmail.Entities.ServerMail;
+import com.example.bmail.Entities.ServerMailList;
 import com.example.bmail.Repositories.LabelRepository;
 import com.example.bmail.Repositories.MailRepository;
+import com.example.bmail.Utils.AppLog;
+import com.example.bmail.core.LabelDiff;
+import com.example.bmail.core.MailChangeSet;
 
 import java.util.HashMap;
 import java.util.List;
@@ -36,6 +39,9 @@ public class MailContentViewModel extends ViewModel {
     private String spamLabelId = "";
 
     private Observer<List<Label>> labelsObserver;
+    private final Observer<List<ServerMail>> mailsObserver = this::onMailsChanged;
+    // version of the mail list last seen, see ServerMailList
+    private long seenListVersion = -1;
 
     /**
      * @brief Constructor for MailContentViewModel.
@@ -45,6 +51,31 @@ public class MailContentViewModel extends ViewModel {
         mailRepository = BmailApplication.getInstance().getMailRepository();
         labelRepository = BmailApplication.getInstance().getLabelRepository();
         setupLabelsObserver();
+        mailRepository.getMails().observeForever(mailsObserver);
+    }
+
+    /**
+     * @brief Picks up changes to the shown mail made elsewhere, e.g. a label added from
+     * the list or confirmed by the server, from the change set of the list.
+     */
+    private void onMailsChanged(List<ServerMail> mails) {
+        if (!(mails instanceof ServerMailList)) {
+            return;
+        }
+        ServerMailList list = (ServerMailList) mails;
+        MailChangeSet changes = list.changesSince(seenListVersion);
+        seenListVersion = list.getVersion();
+        ServerMail current = mail.getValue();
+        if (changes == null || current == null || !changes.isUpdated(current.getId())) {
+            return;
+        }
+        ServerMail updated = list.findById(current.getId());
+        if (updated != null) {
+            // the list holds a snippet, keep the body already shown
+            current.setLabels(updated.getLabels());
+            mail.setValue(current);
+            updateLabelStates(current);
+        }
     }
 
     /**
@@ -60,7 +91,7 @@ public class MailContentViewModel extends ViewModel {
                         .filter(label -> !label.isDefault())
                         .collect(Collectors.toList());
 
-                Log.d("MailContentViewModel", "Manageable labels: " + manageable);
+                if (AppLog.DEBUG) AppLog.d("MailContentViewModel", "Manageable labels: " + manageable);
                 userManageableLabels.setValue(manageable);
 
                 ServerMail currentMail = mail.getValue();
@@ -83,6 +114,7 @@ public class MailContentViewModel extends ViewModel {
         if (labelsObserver != null) {
             labelRepository.getLabels().removeObserver(labelsObserver);
         }
+        mailRepository.getMails().removeObserver(mailsObserver);
     }
 
     /**
@@ -135,6 +167,27 @@ public class MailContentViewModel extends ViewModel {
             mail.setValue(mailData);
             updateLabelStates(mailData);
         }
+        mailRepository.markAsRead(mailId);
+
+        // the list only holds a snippet, fetch the full body
+        if (mailData == null || mailData.getBody() == null) {
+            fetchFullMail(mailId);
+        }
+    }
+
+    /**
+     * @param mailId The ID of the mail to fetch.
+     * @brief Loads the full mail, stored if it was opened before, and shows it.
+     */
+    private void fetchFullMail(String mailId) {
+        mailRepository.loadFullMail(mailId, fullMail -> {
+            if (fullMail != null) {
+                mail.setValue(fullMail);
+                updateLabelStates(fullMail);
+            } else {
+                AppLog.e("MailContentViewModel", "Failed to load mail: " + mailId);
+            }
+        });
     }
 
     /**
@@ -264,30 +317,22 @@ public class MailContentViewModel extends ViewModel {
         ServerMail currentMail = mail.getValue();
         if (currentMail == null) return;
 
-        List<String> currentUserLabelIds =
+        List<String> manageableIds =
                 Objects.requireNonNull(userManageableLabels.getValue()).stream()
                         .map(Label::getId)
-                        .filter(id -> currentMail.getLabels().contains(id))
                         .collect(Collectors.toList());
+        // only the labels that changed are sent, the rest are already on the mail
+        LabelDiff diff = LabelDiff.compute(currentMail.getLabels(), selectedLabelIds,
+                manageableIds);
 
-        // Add new labels
-        for (String labelId : selectedLabelIds) {
+        for (String labelId : diff.getAdded()) {
             mailRepository.addLabelToMail(currentMail.getId(), labelId);
-            // add the label to the mail if it is selected
-            if (!currentMail.getLabels().contains(labelId)) {
-                currentMail.getLabels().add(labelId);
-            }
+            currentMail.getLabels().add(labelId);
         }
-
-        // Remove unselected labels
-        for (String labelId : currentUserLabelIds) {
-            if (!selectedLabelIds.contains(labelId)) {
-                mailRepository.removeLabelFromMail(currentMail.getId(), labelId);
-                // remove the label from the mail if it is not selected
-                currentMail.getLabels().remove(labelId);
-            }
+        for (String labelId : diff.getRemoved()) {
+            mailRepository.removeLabelFromMail(currentMail.getId(), labelId);
+            currentMail.getLabels().remove(labelId);
         }
-
     }
 
 }
\ No newline at end of file
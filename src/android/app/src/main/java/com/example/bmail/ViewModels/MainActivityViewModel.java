@@ -1,35 +1,81 @@
 package com.example.bmail.ViewModels;
 
 import android.graphics.Bitmap;
-import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.Observer;
+import androidx.lifecycle.SavedStateHandle;
 
+import com.example.bmail.Api.FanOut;
 import com.example.bmail.Api.SocketManager;
 import com.example.bmail.Entities.BmailApplication;
 import com.example.bmail.Entities.Label;
+import com.example.bmail.Entities.LabelCounter;
 import com.example.bmail.Entities.ServerMail;
+import com.example.bmail.Entities.ServerThreadList;
 import com.example.bmail.Entities.User;
 import com.example.bmail.Repositories.LabelRepository;
 import com.example.bmail.Repositories.MailRepository;
 import com.example.bmail.Repositories.UserRepository;
+import com.example.bmail.Utils.AppLog;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Consumer;
 
+/**
+ * @brief State of the main screen, retained over configuration changes.
+ * Obtain it through ViewModelProvider so a rotation reuses the instance, its socket
+ * connection and its observers. The label and the search query are kept in the saved
+ * state, so they also survive the process being killed in the background.
+ */
 public class MainActivityViewModel extends androidx.lifecycle.ViewModel {
+    private static final String KEY_CURRENT_LABEL = "currentLabel";
+    private static final String KEY_SEARCH_QUERY = "searchQuery";
+
+    /**
+     * @brief What can be done to the mails selected in the list.
+     */
+    public enum BulkAction {
+        TRASH, SPAM, STAR, DELETE
+    }
+
+    private final SavedStateHandle state;
     private final MailRepository mailRepository;
     private final LabelRepository labelRepository;
     private final UserRepository userRepository;
     private final LiveData<List<ServerMail>> mails;
-    private String currentLabel = "";
+    private final Observer<User> registerUserObserver;
+    private final Observer<String> newMailObserver;
+    // set once the screen data was requested for this instance
+    private boolean loaded;
 
 
-    public MainActivityViewModel(){
+    public MainActivityViewModel(@NonNull SavedStateHandle state){
+        this.state = state;
         this.mailRepository = BmailApplication.getInstance().getMailRepository();
         mails = mailRepository.getMails();
         this.labelRepository = BmailApplication.getInstance().getLabelRepository();
         this.userRepository = BmailApplication.getInstance().getUserRepository();
+        registerUserObserver = user -> {
+            if (user != null) {
+                if (AppLog.DEBUG) AppLog.d("MainActivityViewModel", "Registering user: " + user.getUsername());
+                SocketManager.registerUser(user.getUsername() + "@bmail.com");
+            }
+        };
+        // the new mail id is sticky, the one already there was handled by an earlier screen
+        String handledMailId = SocketManager.getNewMailId().getValue();
+        newMailObserver = mailId -> {
+            if (mailId != null && !mailId.equals(handledMailId)) {
+                if (AppLog.DEBUG) AppLog.d("MainActivityViewModel", "New mail received: " + mailId);
+                loadMails();
+            }
+        };
         connectToSocket();
         listenForNewMails();
     }
@@ -37,17 +83,16 @@ public class MainActivityViewModel extends androidx.lifecycle.ViewModel {
     @Override
     protected void onCleared() {
         super.onCleared();
+        userRepository.getUserData().removeObserver(registerUserObserver);
+        SocketManager.getNewMailId().removeObserver(newMailObserver);
         disconnectFromSocket();
     }
 
     public void connectToSocket() {
-        SocketManager.connect();
-        userRepository.getUserData().observeForever(user -> {
-            if (user != null) {
-                Log.d("MainActivityViewModel", "Registering user: " + user.getUsername());
-                SocketManager.registerUser(user.getUsername() + "@bmail.com");
-            }
-        });
+        // creating and connecting the socket can wait until the list is on screen
+        BmailApplication app = BmailApplication.getInstance();
+        app.runAfterFirstFrame(() -> SocketManager.connect(app));
+        userRepository.getUserData().observeForever(registerUserObserver);
     }
 
     public void disconnectFromSocket() {
@@ -55,19 +100,82 @@ public class MainActivityViewModel extends androidx.lifecycle.ViewModel {
     }
 
     private void listenForNewMails() {
-        SocketManager.getNewMailId().observeForever(mailId -> {
-            if (mailId != null) {
-                Log.d("MainActivityViewModel", "New mail received: " + mailId);
-                loadMails();
-            }
-        });
+        SocketManager.getNewMailId().observeForever(newMailObserver);
+    }
+
+    /**
+     * @brief Tells whether this instance already requested what the screen shows.
+     * A ViewModel retained over a configuration change has, a new one has not.
+     * @return true if the screen data was loaded or prefetched.
+     */
+    public boolean hasLoaded() {
+        return loaded;
     }
 
+    /**
+     * @brief Records that the repositories were filled elsewhere, e.g. at login.
+     */
+    public void markLoaded() {
+        loaded = true;
+    }
+
+    /**
+     * @brief Loads the user, the labels and the mails of the current label or search.
+     */
+    public void loadAll() {
+        loaded = true;
+        loadUserDetails();
+        loadLabels();
+        String query = getSearchQuery();
+        if (query.isEmpty()) {
+            loadMails();
+        } else {
+            searchMail(query);
+        }
+    }
+
+    /**
+     * @brief Applies the text of the search bar, unless it did not change.
+     * Restoring the search bar after a configuration change reports the same text again.
+     * @param text The trimmed search text.
+     */
+    public void onSearchTextChanged(@NonNull String text) {
+        if (text.equals(getSearchQuery())) {
+            return;
+        }
+        state.set(KEY_SEARCH_QUERY, text);
+        if (text.isEmpty()) {
+            loadMails();
+        } else {
+            searchMail(text);
+        }
+    }
+
+    /**
+     * @return true while search results are shown instead of the conversations.
+     */
+    public boolean isSearching() {
+        return !getSearchQuery().isEmpty();
+    }
+
+    @NonNull
+    private String getSearchQuery() {
+        String query = state.get(KEY_SEARCH_QUERY);
+        return query == null ? "" : query;
+    }
 
     public LiveData<List<ServerMail>> getMails() {
         return mails;
     }
 
+    /**
+     * @brief Retrieves the stored mails grouped into conversations.
+     * @return A LiveData object with one row per conversation, newest first.
+     */
+    public LiveData<ServerThreadList> getThreads() {
+        return mailRepository.getThreads();
+    }
+
     /**
      * @brief get the user data.
      * @return A LiveData object containing the user data.
@@ -84,6 +192,21 @@ public class MainActivityViewModel extends androidx.lifecycle.ViewModel {
         return userRepository.getUserImage();
     }
 
+    /**
+     * @brief Tells whether the session expired and the user has to log in again.
+     * @return A LiveData object that becomes true when the token was rejected.
+     */
+    public LiveData<Boolean> getSessionExpired() {
+        return userRepository.getSessionExpired();
+    }
+
+    /**
+     * @brief Ends the current session.
+     */
+    public void logout() {
+        userRepository.logout();
+    }
+
     /**
      * @brief Searches for mails based on the given query.
      */
@@ -99,6 +222,14 @@ public class MainActivityViewModel extends androidx.lifecycle.ViewModel {
         return labelRepository.getLabels();
     }
 
+    /**
+     * @brief Retrieves the per-label mail counters.
+     * @return A LiveData object containing the counters of every label.
+     */
+    public LiveData<List<LabelCounter>> getLabelCounters() {
+        return mailRepository.getLabelCounters();
+    }
+
     /**
      * @brief Loads the labels from the repository.
      */
@@ -110,16 +241,28 @@ public class MainActivityViewModel extends androidx.lifecycle.ViewModel {
      * @brief Loads the mails for the given label.
      */
     public void loadMails(){
-        Log.d("MainActivityViewModel", "Loading mails for label: " + this.currentLabel);
-        if (this.currentLabel.equals("All mail")){
-            Log.d("MainActivityViewModel", "Loading all mails");
+        String currentLabel = getCurrentLabel();
+        if (AppLog.DEBUG) AppLog.d("MainActivityViewModel", "Loading mails for label: " + currentLabel);
+        if (currentLabel.equals("All mail")){
+            if (AppLog.DEBUG) AppLog.d("MainActivityViewModel", "Loading all mails");
             mailRepository.loadAllMails();
         }
         else {
-            mailRepository.reloadMails(this.currentLabel);
+            mailRepository.reloadMails(currentLabel);
         }
     }
 
+    /**
+     * @brief Requests older mails once the list is scrolled close to its end.
+     * @param lastVisiblePosition The adapter position of the last visible row.
+     * @param itemCount The number of rows in the list.
+     * @param lastVisibleMailId The ID of the mail shown in that row, may be null.
+     */
+    public void onListScrolled(int lastVisiblePosition, int itemCount,
+                               @Nullable String lastVisibleMailId) {
+        mailRepository.loadMoreIfNeeded(lastVisiblePosition, itemCount, lastVisibleMailId);
+    }
+
     /**
      * @brief Loads the user details.
      */
@@ -153,11 +296,123 @@ public class MainActivityViewModel extends androidx.lifecycle.ViewModel {
         labelRepository.deleteLabel(labelId, callback);
     }
 
+    /**
+     * @brief Applies an action to the selected rows, as one bulk operation.
+     * A conversation row stands for every stored mail of the conversation. Star removes
+     * the star when every selected row is starred, otherwise it stars them all.
+     * @param selected The selected rows.
+     * @param action The action.
+     * @param onDone Receives which mails were updated, on the main thread.
+     */
+    public void applyToSelection(@NonNull List<ServerMail> selected, @NonNull BulkAction action,
+                                 @NonNull Consumer<FanOut.Result> onDone) {
+        if (action == BulkAction.DELETE) {
+            withSelectedIds(selected, ids -> mailRepository.deleteMails(ids, onDone));
+            return;
+        }
+        String labelId = defaultLabelId(action == BulkAction.STAR ? "starred"
+                : action.name().toLowerCase(Locale.ROOT));
+        if (labelId == null) {
+            AppLog.w("MainActivityViewModel", "No default label for " + action);
+            onDone.accept(failedAll(selected));
+            return;
+        }
+        boolean attach = action != BulkAction.STAR || !allHaveLabel(selected, labelId);
+        withSelectedIds(selected,
+                ids -> mailRepository.setLabel(ids, labelId, attach, onDone));
+    }
+
+    /**
+     * @brief Adds a label to the selected rows, as one bulk operation.
+     * @param selected The selected rows.
+     * @param labelId The ID of the label.
+     * @param onDone Receives which mails were updated, on the main thread.
+     */
+    public void labelSelection(@NonNull List<ServerMail> selected, @NonNull String labelId,
+                               @NonNull Consumer<FanOut.Result> onDone) {
+        withSelectedIds(selected, ids -> mailRepository.setLabel(ids, labelId, true, onDone));
+    }
+
+    /**
+     * @return The labels the user created, which can be added to mails.
+     */
+    @NonNull
+    public List<Label> getManageableLabels() {
+        List<Label> manageable = new ArrayList<>();
+        List<Label> labels = labelRepository.getLabels().getValue();
+        if (labels != null) {
+            for (Label label : labels) {
+                if (label.isAttachable() && !label.isDefault()) {
+                    manageable.add(label);
+                }
+            }
+        }
+        return manageable;
+    }
+
+    /**
+     * @brief Resolves the selected rows to mail IDs, expanding conversations.
+     * Search results are single mails, so they are used as they are.
+     */
+    private void withSelectedIds(List<ServerMail> selected, Consumer<List<String>> action) {
+        Set<String> ids = new LinkedHashSet<>();
+        Set<String> threadKeys = new LinkedHashSet<>();
+        for (ServerMail mail : selected) {
+            ids.add(mail.getId());
+            if (mail.getThreadKey() != null) {
+                threadKeys.add(mail.getThreadKey());
+            }
+        }
+        if (isSearching() || threadKeys.isEmpty()) {
+            action.accept(new ArrayList<>(ids));
+            return;
+        }
+        mailRepository.loadThreadMailIds(new ArrayList<>(threadKeys), threadIds -> {
+            ids.addAll(threadIds);
+            action.accept(new ArrayList<>(ids));
+        });
+    }
+
+    /**
+     * @return The ID of the default label with the given name, or null before the
+     * labels were loaded.
+     */
+    private String defaultLabelId(String name) {
+        List<Label> labels = labelRepository.getLabels().getValue();
+        if (labels != null) {
+            for (Label label : labels) {
+                if (label.isDefault() && name.equalsIgnoreCase(label.getName())) {
+                    return label.getId();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean allHaveLabel(List<ServerMail> mails, String labelId) {
+        for (ServerMail mail : mails) {
+            if (mail.getLabels() == null || !mail.getLabels().contains(labelId)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static FanOut.Result failedAll(List<ServerMail> selected) {
+        List<String> ids = new ArrayList<>(selected.size());
+        for (ServerMail mail : selected) {
+            ids.add(mail.getId());
+        }
+        return new FanOut.Result(new ArrayList<>(), ids);
+    }
+
+    @NonNull
     public String getCurrentLabel() {
-        return currentLabel;
+        String label = state.get(KEY_CURRENT_LABEL);
+        return label == null ? "" : label;
     }
 
     public void setCurrentLabel(String currentLabel) {
-        this.currentLabel = currentLabel;
+        state.set(KEY_CURRENT_LABEL, currentLabel);
     }
 }
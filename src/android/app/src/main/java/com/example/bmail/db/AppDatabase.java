@@ -1,13 +1,129 @@
 package com.example.bmail.db;
 
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
+import com.example.bmail.Entities.CountedMail;
+import com.example.bmail.Entities.Draft;
+import com.example.bmail.Entities.LabelCounter;
+import com.example.bmail.Entities.MailThread;
+import com.example.bmail.Entities.ReadMark;
 import com.example.bmail.Entities.ServerMail;
+import com.example.bmail.core.CounterDeltas;
+import com.example.bmail.core.ThreadKey;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-@Database(entities = {ServerMail.class}, version = 1, exportSchema = false)
+@Database(entities = {ServerMail.class, LabelCounter.class, ReadMark.class, Draft.class,
+        MailThread.class, CountedMail.class},
+        version = 7,
+        exportSchema = false)
 @TypeConverters({Converters.class})
 public abstract class AppDatabase extends RoomDatabase {
+    /**
+     * @brief Adds the drafts table. Drafts are not a cache of the server, so this step
+     * keeps the existing tables instead of falling back to a destructive migration, and
+     * so must every later version: BmailApplication only allows that fallback below 4.
+     */
+    public static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `Draft` ("
+                    + "`localId` TEXT NOT NULL, `serverId` TEXT, "
+                    + "`to` TEXT NOT NULL, `title` TEXT NOT NULL, `body` TEXT NOT NULL, "
+                    + "`syncedTo` TEXT NOT NULL, `syncedTitle` TEXT NOT NULL, "
+                    + "`syncedBody` TEXT NOT NULL, `closed` INTEGER NOT NULL, "
+                    + "`updatedAt` INTEGER NOT NULL, PRIMARY KEY(`localId`))");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_Draft_serverId` "
+                    + "ON `Draft` (`serverId`)");
+        }
+    };
+
+    /**
+     * @brief Adds the thread index. The keys of the stored mails are computed here
+     * instead of dropping them, which would also lose the label counters until the
+     * next sync.
+     */
+    public static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `ServerMail` ADD COLUMN `threadKey` TEXT");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_ServerMail_threadKey_updatedAt` "
+                    + "ON `ServerMail` (`threadKey`, `updatedAt`)");
+            db.execSQL("CREATE TABLE IF NOT EXISTS `MailThread` ("
+                    + "`threadKey` TEXT NOT NULL, `messageCount` INTEGER NOT NULL, "
+                    + "`latestAt` INTEGER NOT NULL, `latestMailId` TEXT NOT NULL, "
+                    + "PRIMARY KEY(`threadKey`))");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_MailThread_latestAt_latestMailId` "
+                    + "ON `MailThread` (`latestAt`, `latestMailId`)");
+
+            // read everything first, the rows are updated below
+            List<String[]> keys = new ArrayList<>();
+            try (Cursor cursor = db.query("SELECT `id`, `title`, `from`, `to` FROM `ServerMail`")) {
+                while (cursor.moveToNext()) {
+                    String key = ThreadKey.of(cursor.getString(1), cursor.getString(2),
+                            Converters.fromString(cursor.getString(3)));
+                    keys.add(new String[]{key, cursor.getString(0)});
+                }
+            }
+            for (String[] key : keys) {
+                db.execSQL("UPDATE `ServerMail` SET `threadKey` = ? WHERE `id` = ?", key);
+            }
+            // same summary as MailDao.summarizeThread, for every conversation at once
+            db.execSQL("INSERT INTO `MailThread` "
+                    + "SELECT `threadKey`, COUNT(*), IFNULL(MAX(`updatedAt`), 0), `id` "
+                    + "FROM `ServerMail` GROUP BY `threadKey`");
+        }
+    };
+
+    /**
+     * @brief Adds the record of counted mails, filled with the stored ones. Counters kept
+     * across earlier refreshes may hold mails no longer stored, twice or after they were
+     * deleted, so they are recomputed from the record they are now kept in line with.
+     */
+    public static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `CountedMail` ("
+                    + "`mailId` TEXT NOT NULL, `labels` TEXT, `updatedAt` INTEGER, "
+                    + "PRIMARY KEY(`mailId`))");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_CountedMail_updatedAt` "
+                    + "ON `CountedMail` (`updatedAt`)");
+            db.execSQL("INSERT INTO `CountedMail` SELECT `id`, `labels`, `updatedAt` "
+                    + "FROM `ServerMail`");
+
+            Set<String> readIds = new HashSet<>();
+            try (Cursor cursor = db.query("SELECT `mailId` FROM `ReadMark`")) {
+                while (cursor.moveToNext()) {
+                    readIds.add(cursor.getString(0));
+                }
+            }
+            CounterDeltas counters = new CounterDeltas();
+            try (Cursor cursor = db.query("SELECT `mailId`, `labels` FROM `CountedMail`")) {
+                while (cursor.moveToNext()) {
+                    counters.add(Converters.fromString(cursor.getString(1)), 1,
+                            !readIds.contains(cursor.getString(0)));
+                }
+            }
+            db.execSQL("DELETE FROM `LabelCounter`");
+            for (Map.Entry<String, int[]> counter : counters.asMap().entrySet()) {
+                db.execSQL("INSERT INTO `LabelCounter` (`labelId`, `total`, `unread`) "
+                        + "VALUES (?, ?, ?)", new Object[]{counter.getKey(),
+                        counter.getValue()[0], counter.getValue()[1]});
+            }
+        }
+    };
+
     public abstract MailDao mailDao();
+    public abstract DraftDao draftDao();
 }
@@ -0,0 +1,50 @@
+package com.example.bmail.db;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+import androidx.room.Update;
+
+import com.example.bmail.Entities.Draft;
+
+import java.util.List;
+
+@Dao
+public interface DraftDao {
+
+    @Query("SELECT * FROM Draft WHERE localId = :localId")
+    Draft getById(String localId);
+
+    @Query("SELECT * FROM Draft WHERE serverId = :serverId")
+    Draft getByServerId(String serverId);
+
+    // drafts left behind by a crash or a failed sync, synced again on the next start
+    @Query("SELECT * FROM Draft")
+    List<Draft> getAll();
+
+    @Insert
+    void insert(Draft draft);
+
+    @Update
+    void update(Draft draft);
+
+    /**
+     * @brief Stores the typed fields without touching the sync state.
+     */
+    @Query("UPDATE Draft SET `to` = :to, title = :title, body = :body, updatedAt = :updatedAt "
+            + "WHERE localId = :localId")
+    void updateFields(String localId, String to, String title, String body, long updatedAt);
+
+    /**
+     * @brief Records what the server acknowledged, the fields may have changed meanwhile.
+     */
+    @Query("UPDATE Draft SET serverId = :serverId, syncedTo = :to, syncedTitle = :title, "
+            + "syncedBody = :body WHERE localId = :localId")
+    void markSynced(String localId, String serverId, String to, String title, String body);
+
+    @Query("UPDATE Draft SET closed = 1 WHERE localId = :localId")
+    void close(String localId);
+
+    @Query("DELETE FROM Draft WHERE localId = :localId")
+    void delete(String localId);
+}
@@ -1,35 +1,617 @@
 package com.example.bmail.db;
 
 
+import androidx.lifecycle.LiveData;
 import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.Transaction;
 import androidx.room.Update;
 
+import com.example.bmail.Entities.CountedMail;
+import com.example.bmail.Entities.LabelCounter;
+import com.example.bmail.Entities.MailThread;
+import com.example.bmail.Entities.ReadMark;
 import com.example.bmail.Entities.ServerMail;
+import com.example.bmail.Metrics.Tracer;
+import com.example.bmail.core.CounterDeltas;
+import com.example.bmail.core.MailRecord;
+import com.example.bmail.core.ThreadKey;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Dao
 public interface MailDao {
-    @Query("SELECT * from ServerMail")
+    // ids per IN (:ids) list, below the 999 variables older SQLite versions accept
+    int MAX_IN_LIST = 500;
+
+    /**
+     * @brief Id, labels and conversation of a stored mail, used to adjust the label
+     * counters and the thread index without loading the whole row.
+     */
+    class MailLabels {
+        public String id;
+        public List<String> labels;
+        public String threadKey;
+    }
+
+    /**
+     * @brief Sender and recipients of a stored mail, used to build the recipient index.
+     */
+    class MailParticipants {
+        public String id;
+        public String from;
+        public List<String> to;
+        public Date updatedAt;
+    }
+
+    /**
+     * @brief A row of the conversation list: the columns the list shows of the newest
+     * mail of a conversation, and the size of the conversation. The body and the
+     * recipients are not read, the mail screen loads them.
+     */
+    class ThreadRow implements MailRecord {
+        public String id;
+        public String title;
+        public String from;
+        public String snippet;
+        public List<String> labels;
+        public Boolean draft;
+        public Date updatedAt;
+        public String threadKey;
+        public int messageCount;
+        public long latestAt;
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public String getTitle() {
+            return title;
+        }
+
+        @Override
+        public String getBody() {
+            return null;
+        }
+
+        @Override
+        public String getSnippet() {
+            return snippet;
+        }
+
+        @Override
+        public String getFrom() {
+            return from;
+        }
+
+        @Override
+        public List<String> getTo() {
+            return null;
+        }
+
+        @Override
+        public Boolean getDraft() {
+            return draft;
+        }
+
+        @Override
+        public List<String> getLabels() {
+            return labels;
+        }
+
+        @Override
+        public Date getUpdatedAt() {
+            return updatedAt;
+        }
+
+        @Override
+        public String getUserImage() {
+            return null;
+        }
+    }
+
+    // newest first, the same order the server pages in
+    @Query("SELECT * from ServerMail ORDER BY updatedAt DESC, id DESC")
     List<ServerMail> getAllMails();
     @Query("SELECT * from ServerMail WHERE id = :id")
     ServerMail getById(String id);
 
+    @Query("SELECT * FROM ServerMail WHERE id IN (:ids)")
+    List<ServerMail> getByIds(List<String> ids);
+
+    @Query("SELECT id FROM ServerMail WHERE threadKey IN (:threadKeys)")
+    List<String> getIdsInThreads(List<String> threadKeys);
+
+    // read once when the recipient index is built, see MailRepository.prepareContacts
+    @Query("SELECT id, `from`, `to`, updatedAt FROM ServerMail")
+    List<MailParticipants> getParticipants();
+
     @Update
     void update(ServerMail mail);
 
-    @Query("DELETE FROM ServerMail WHERE id = :id")
-    void deleteById(String id);
+    @Query("UPDATE ServerMail SET body = :body WHERE id = :id")
+    void updateBody(String id, String body);
+
+    /**
+     * @brief Deletes a mail and removes it from the label counters.
+     * @param id The ID of the mail to delete.
+     */
+    @Transaction
+    default void deleteById(String id) {
+        try (Tracer.Section ignored = Tracer.begin("MailDao.deleteById")) {
+            List<MailLabels> existing = getLabelsByIds(List.of(id));
+            if (existing.isEmpty()) {
+                return;
+            }
+            boolean unread = getReadIds(List.of(id)).isEmpty();
+            CounterDeltas deltas = new CounterDeltas();
+            deltas.add(existing.get(0).labels, -1, unread);
+            deleteRow(id);
+            deleteCounted(List.of(id));
+            applyCounterDeltas(deltas.asMap());
+            refreshThreads(Collections.singleton(existing.get(0).threadKey));
+        }
+    }
+
+    /**
+     * @brief Deletes mails and removes them from the label counters and the thread
+     * index, all in one transaction.
+     * @param ids The IDs of the mails to delete.
+     */
+    @Transaction
+    default void deleteByIds(List<String> ids) {
+        try (Tracer.Section ignored = Tracer.begin("MailDao.deleteByIds")) {
+            CounterDeltas deltas = new CounterDeltas();
+            Set<String> threadKeys = new HashSet<>();
+            for (int start = 0; start < ids.size(); start += MAX_IN_LIST) {
+                List<String> chunk = ids.subList(start, Math.min(ids.size(), start + MAX_IN_LIST));
+                Set<String> readIds = new HashSet<>(getReadIds(chunk));
+                for (MailLabels old : getLabelsByIds(chunk)) {
+                    deltas.add(old.labels, -1, !readIds.contains(old.id));
+                    threadKeys.add(old.threadKey);
+                }
+                deleteRows(chunk);
+                deleteCounted(chunk);
+            }
+            applyCounterDeltas(deltas.asMap());
+            refreshThreads(threadKeys);
+        }
+    }
+
     // delete all mails
-    @Query("DELETE FROM ServerMail")
-    void clear();
+    @Transaction
+    default void clear() {
+        try (Tracer.Section ignored = Tracer.begin("MailDao.clear")) {
+            clearRows();
+            clearCounted();
+            clearCounters();
+            clearThreads();
+        }
+    }
+
+    /**
+     * @brief Replaces all stored mails with the first page of a label, in one transaction
+     * so observers of the thread index never see the empty table in between.
+     * The label counters are kept, since the page only holds one label. They are
+     * adjusted through CountedMail rather than the rows: a mail counted while another
+     * label was shown is moved to its new labels instead of being counted again, and
+     * the mails the server no longer lists in the label are taken out, see uncountMissing.
+     * @param mails The mails to store, newest first.
+     * @param complete true if the page holds every mail of the label.
+     */
+    @Transaction
+    default void replaceAll(List<ServerMail> mails, boolean complete) {
+        try (Tracer.Section ignored = Tracer.begin("MailDao.replaceAll")) {
+            CounterDeltas deltas = countedDeltas(mails);
+            uncountMissing(mails, complete, deltas);
+            Set<String> threadKeys = new HashSet<>();
+            for (ServerMail mail : mails) {
+                mail.setThreadKey(ThreadKey.of(mail));
+                threadKeys.add(mail.getThreadKey());
+            }
+
+            clearRows();
+            clearThreads();
+            insertRows(mails);
+            insertCounted(counted(mails));
+            applyCounterDeltas(deltas.asMap());
+            refreshThreads(threadKeys);
+        }
+    }
+
+    /**
+     * @brief Merges the first page of the label shown into the stored mails, which keep
+     * the older pages loaded below it. New and edited mails are stored like insertList
+     * does; the stored mails the page should list but does not are deleted, see
+     * uncountMissing.
+     * @param mails The mails of the page, newest first.
+     * @param complete true if the page holds every mail of the label.
+     * @return The IDs of the mails deleted.
+     */
+    @Transaction
+    default List<String> mergeFirstPage(List<ServerMail> mails, boolean complete) {
+        try (Tracer.Section ignored = Tracer.begin("MailDao.mergeFirstPage")) {
+            CounterDeltas deltas = countedDeltas(mails);
+            List<String> missing = uncountMissing(mails, complete, deltas);
+            List<String> ids = new ArrayList<>(missing);
+            for (ServerMail mail : mails) {
+                ids.add(mail.getId());
+            }
+            Set<String> threadKeys = new HashSet<>();
+            List<String> removedIds = new ArrayList<>();
+            Set<String> missingIds = new HashSet<>(missing);
+            for (int start = 0; start < ids.size(); start += MAX_IN_LIST) {
+                List<String> chunk = ids.subList(start, Math.min(ids.size(), start + MAX_IN_LIST));
+                for (MailLabels old : getLabelsByIds(chunk)) {
+                    threadKeys.add(old.threadKey);
+                    if (missingIds.contains(old.id)) {
+                        removedIds.add(old.id);
+                    }
+                }
+            }
+            for (ServerMail mail : mails) {
+                mail.setThreadKey(ThreadKey.of(mail));
+                threadKeys.add(mail.getThreadKey());
+            }
+
+            for (int start = 0; start < removedIds.size(); start += MAX_IN_LIST) {
+                deleteRows(removedIds.subList(start,
+                        Math.min(removedIds.size(), start + MAX_IN_LIST)));
+            }
+            insertRows(mails);
+            insertCounted(counted(mails));
+            applyCounterDeltas(deltas.asMap());
+            refreshThreads(threadKeys);
+            return removedIds;
+        }
+    }
+
+    /**
+     * @brief Inserts or replaces mails and updates the label counters with the difference.
+     * The conversations the mails left or joined are updated in the thread index.
+     * @param mails The mails to store.
+     */
+    @Transaction
+    default void insertList(List<ServerMail> mails) {
+        try (Tracer.Section ignored = Tracer.begin("MailDao.insertList")) {
+            if (mails == null || mails.isEmpty()) {
+                return;
+            }
+            List<String> ids = new ArrayList<>(mails.size());
+            for (ServerMail mail : mails) {
+                ids.add(mail.getId());
+            }
+            Set<String> threadKeys = new HashSet<>();
+            for (MailLabels old : getLabelsByIds(ids)) {
+                threadKeys.add(old.threadKey);
+            }
+            // a mail counted while another label was shown is not stored, but counted
+            CounterDeltas deltas = countedDeltas(mails);
+            for (ServerMail mail : mails) {
+                mail.setThreadKey(ThreadKey.of(mail));
+                threadKeys.add(mail.getThreadKey());
+            }
+
+            insertRows(mails);
+            insertCounted(counted(mails));
+            applyCounterDeltas(deltas.asMap());
+            refreshThreads(threadKeys);
+        }
+    }
+
+    /**
+     * @brief Replaces the labels of a mail and moves its counts to the new labels.
+     * @param mailId The ID of the mail.
+     * @param labels The new list of label IDs.
+     */
+    @Transaction
+    default void updateMailLabels(String mailId, List<String> labels) {
+        try (Tracer.Section ignored = Tracer.begin("MailDao.updateMailLabels")) {
+            List<MailLabels> existing = getLabelsByIds(List.of(mailId));
+            if (existing.isEmpty()) {
+                return;
+            }
+            boolean unread = getReadIds(List.of(mailId)).isEmpty();
+            CounterDeltas deltas = new CounterDeltas();
+            deltas.add(existing.get(0).labels, -1, unread);
+            deltas.add(labels, 1, unread);
+            updateLabelsRow(mailId, labels);
+            updateCountedLabels(mailId, labels);
+            applyCounterDeltas(deltas.asMap());
+        }
+    }
+
+    /**
+     * @brief Adds a label to or removes it from several mails in one transaction and
+     * moves their counts accordingly.
+     * @param ids The IDs of the mails.
+     * @param labelId The ID of the label.
+     * @param attach true to add the label, false to remove it.
+     */
+    @Transaction
+    default void setLabel(List<String> ids, String labelId, boolean attach) {
+        try (Tracer.Section ignored = Tracer.begin("MailDao.setLabel")) {
+            CounterDeltas deltas = new CounterDeltas();
+            for (int start = 0; start < ids.size(); start += MAX_IN_LIST) {
+                List<String> chunk = ids.subList(start, Math.min(ids.size(), start + MAX_IN_LIST));
+                Set<String> readIds = new HashSet<>(getReadIds(chunk));
+                for (MailLabels old : getLabelsByIds(chunk)) {
+                    List<String> labels = new ArrayList<>(nonNull(old.labels));
+                    if (attach == labels.contains(labelId)) {
+                        continue;
+                    }
+                    if (attach) {
+                        labels.add(labelId);
+                    } else {
+                        labels.remove(labelId);
+                    }
+                    boolean unread = !readIds.contains(old.id);
+                    deltas.add(old.labels, -1, unread);
+                    deltas.add(labels, 1, unread);
+                    updateLabelsRow(old.id, labels);
+                    updateCountedLabels(old.id, labels);
+                }
+            }
+            applyCounterDeltas(deltas.asMap());
+        }
+    }
+
+    /**
+     * @brief Marks a mail as read and decrements the unread counters of its labels.
+     * @param mailId The ID of the mail that was read.
+     */
+    @Transaction
+    default void markAsRead(String mailId) {
+        try (Tracer.Section ignored = Tracer.begin("MailDao.markAsRead")) {
+            if (insertReadMark(new ReadMark(mailId)) == -1) {
+                // already read
+                return;
+            }
+            List<MailLabels> existing = getLabelsByIds(List.of(mailId));
+            if (existing.isEmpty()) {
+                return;
+            }
+            for (String labelId : new HashSet<>(nonNull(existing.get(0).labels))) {
+                adjustCounter(labelId, 0, -1);
+            }
+        }
+    }
+
+    @Query("SELECT * FROM LabelCounter")
+    LiveData<List<LabelCounter>> observeLabelCounters();
 
+    @Query("SELECT * FROM LabelCounter WHERE labelId = :labelId")
+    LabelCounter getLabelCounter(String labelId);
+
+    /**
+     * @brief The conversation list, newest first, with one row per conversation.
+     * A mail stored without a snippet is previewed by the start of its body, the
+     * length the server cuts snippets to.
+     * @return The rows, see ThreadRow for the columns that are read.
+     */
+    @Query("SELECT ServerMail.id, ServerMail.title, ServerMail.`from`, " +
+            "IFNULL(ServerMail.snippet, SUBSTR(ServerMail.body, 1, 120)) AS snippet, " +
+            "ServerMail.labels, ServerMail.draft, ServerMail.updatedAt, ServerMail.threadKey, " +
+            "MailThread.messageCount, MailThread.latestAt FROM MailThread " +
+            "JOIN ServerMail ON ServerMail.id = MailThread.latestMailId " +
+            "ORDER BY MailThread.latestAt DESC, MailThread.latestMailId DESC")
+    List<ThreadRow> getThreads();
+
+    // raw row access, callers should go through the methods above to keep the counters in sync
     @Insert(onConflict = OnConflictStrategy.REPLACE)
-    void insertList(List<ServerMail> mails);
+    void insertRows(List<ServerMail> mails);
+
+    @Query("DELETE FROM ServerMail WHERE id = :id")
+    void deleteRow(String id);
+
+    @Query("DELETE FROM ServerMail WHERE id IN (:ids)")
+    void deleteRows(List<String> ids);
+
+    @Query("DELETE FROM ServerMail")
+    void clearRows();
 
     @Query("UPDATE ServerMail SET labels = :labels WHERE id = :mailId")
-    void updateMailLabels(String mailId, List<String> labels);
+    void updateLabelsRow(String mailId, List<String> labels);
+
+    @Query("SELECT id, labels, threadKey FROM ServerMail WHERE id IN (:ids)")
+    List<MailLabels> getLabelsByIds(List<String> ids);
+
+    @Query("SELECT mailId FROM ReadMark WHERE mailId IN (:ids)")
+    List<String> getReadIds(List<String> ids);
+
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    long insertReadMark(ReadMark mark);
+
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    void insertCounter(LabelCounter counter);
+
+    @Query("UPDATE LabelCounter SET total = total + :total, unread = unread + :unread " +
+            "WHERE labelId = :labelId")
+    void adjustCounter(String labelId, int total, int unread);
+
+    @Query("DELETE FROM LabelCounter")
+    void clearCounters();
+
+    // the rows of a stored mail and its CountedMail always carry the same labels
+    @Query("SELECT * FROM CountedMail WHERE mailId IN (:ids)")
+    List<CountedMail> getCounted(List<String> ids);
+
+    /**
+     * @return The counted mails with the label, updated at or after the given date, or
+     * all of them for a null date. Labels are stored as a JSON array, see Converters.
+     */
+    @Query("SELECT * FROM CountedMail WHERE labels LIKE '%\"' || :labelId || '\"%' " +
+            "AND (:since IS NULL OR updatedAt >= :since)")
+    List<CountedMail> getCountedWithLabel(String labelId, Date since);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertCounted(List<CountedMail> mails);
+
+    @Query("UPDATE CountedMail SET labels = :labels WHERE mailId = :mailId")
+    void updateCountedLabels(String mailId, List<String> labels);
+
+    @Query("DELETE FROM CountedMail WHERE mailId IN (:ids)")
+    void deleteCounted(List<String> ids);
+
+    @Query("DELETE FROM CountedMail")
+    void clearCounted();
+
+    // the newest mail is the one MAX() picks, see "bare columns" in the SQLite docs
+    @Query("SELECT threadKey, COUNT(*) AS messageCount, " +
+            "IFNULL(MAX(updatedAt), 0) AS latestAt, id AS latestMailId " +
+            "FROM ServerMail WHERE threadKey = :threadKey GROUP BY threadKey")
+    MailThread summarizeThread(String threadKey);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertThread(MailThread thread);
+
+    @Query("DELETE FROM MailThread WHERE threadKey = :threadKey")
+    void deleteThread(String threadKey);
+
+    @Query("DELETE FROM MailThread")
+    void clearThreads();
+
+    /**
+     * @brief Applies the accumulated per-label deltas, creating missing counter rows.
+     * @param deltas Map from label ID to {total delta, unread delta}.
+     */
+    default void applyCounterDeltas(Map<String, int[]> deltas) {
+        for (Map.Entry<String, int[]> entry : deltas.entrySet()) {
+            int[] delta = entry.getValue();
+            if (delta[0] == 0 && delta[1] == 0) {
+                continue;
+            }
+            insertCounter(new LabelCounter(entry.getKey()));
+            adjustCounter(entry.getKey(), delta[0], delta[1]);
+        }
+    }
+
+    /**
+     * @brief Computes the deltas of counting mails with their new labels, moving the
+     * ones already counted from the labels they were counted in.
+     * @param mails The mails about to be stored.
+     * @return The deltas, to apply once the mails were stored.
+     */
+    default CounterDeltas countedDeltas(List<ServerMail> mails) {
+        Map<String, List<String>> counted = new HashMap<>();
+        Set<String> readIds = new HashSet<>();
+        for (int start = 0; start < mails.size(); start += MAX_IN_LIST) {
+            List<String> chunk = new ArrayList<>();
+            for (ServerMail mail : mails.subList(start, Math.min(mails.size(), start + MAX_IN_LIST))) {
+                chunk.add(mail.getId());
+            }
+            readIds.addAll(getReadIds(chunk));
+            for (CountedMail old : getCounted(chunk)) {
+                counted.put(old.getMailId(), old.getLabels());
+            }
+        }
+        return CounterDeltas.forMerge(counted, mails, readIds);
+    }
+
+    /**
+     * @brief Takes out of the counters the mails the first page of a label should list
+     * but does not, because they were deleted or moved on the server.
+     * The label is one every mail of the page carries; with several, a mail is only
+     * taken out if it carries all of them, so it is surely in the label shown. A page
+     * without a common label, e.g. of all mail, or without mails, takes nothing out.
+     * A mail taken out is counted again once a page lists it.
+     * @param page The first page, newest first like the server sends it.
+     * @param complete true if the page holds every mail of the label, so older mails
+     *                 are checked too; otherwise only those as new as the last one.
+     * @param deltas Receives the counts taken out.
+     * @return The IDs of the mails taken out.
+     */
+    default List<String> uncountMissing(List<ServerMail> page, boolean complete,
+                                        CounterDeltas deltas) {
+        if (page.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Set<String> common = null;
+        Set<String> listed = new HashSet<>();
+        for (ServerMail mail : page) {
+            listed.add(mail.getId());
+            Set<String> labels = new HashSet<>(nonNull(mail.getLabels()));
+            if (common == null) {
+                common = labels;
+            } else {
+                common.retainAll(labels);
+            }
+        }
+        if (common.isEmpty()) {
+            return Collections.emptyList();
+        }
+        ServerMail last = page.get(page.size() - 1);
+        Date since = complete ? null : last.getUpdatedAt();
+        if (!complete && since == null) {
+            return Collections.emptyList();
+        }
+        List<CountedMail> missing = new ArrayList<>();
+        for (CountedMail mail : getCountedWithLabel(common.iterator().next(), since)) {
+            if (listed.contains(mail.getMailId())
+                    || !nonNull(mail.getLabels()).containsAll(common)) {
+                continue;
+            }
+            // the same date as the last mail of the page, but after it in the order
+            if (since != null && mail.getUpdatedAt().equals(since)
+                    && mail.getMailId().compareTo(last.getId()) < 0) {
+                continue;
+            }
+            missing.add(mail);
+        }
+        List<String> ids = new ArrayList<>(missing.size());
+        for (CountedMail mail : missing) {
+            ids.add(mail.getMailId());
+        }
+        for (int start = 0; start < ids.size(); start += MAX_IN_LIST) {
+            List<String> chunk = ids.subList(start, Math.min(ids.size(), start + MAX_IN_LIST));
+            Set<String> readIds = new HashSet<>(getReadIds(chunk));
+            for (CountedMail mail : missing.subList(start, start + chunk.size())) {
+                deltas.add(mail.getLabels(), -1, !readIds.contains(mail.getMailId()));
+            }
+            deleteCounted(chunk);
+        }
+        return ids;
+    }
+
+    static List<CountedMail> counted(List<ServerMail> mails) {
+        List<CountedMail> counted = new ArrayList<>(mails.size());
+        for (ServerMail mail : mails) {
+            counted.add(new CountedMail(mail));
+        }
+        return counted;
+    }
+
+    /**
+     * @brief Recomputes the given conversations from their mails, through the threadKey
+     * index, and drops the ones left without mails.
+     * @param threadKeys The conversations mails were added to or removed from.
+     */
+    default void refreshThreads(Set<String> threadKeys) {
+        for (String threadKey : threadKeys) {
+            if (threadKey == null) {
+                continue;
+            }
+            MailThread thread = summarizeThread(threadKey);
+            if (thread == null) {
+                deleteThread(threadKey);
+            } else {
+                insertThread(thread);
+            }
+        }
+    }
+
+    static List<String> nonNull(List<String> labels) {
+        return labels == null ? List.of() : labels;
+    }
 }
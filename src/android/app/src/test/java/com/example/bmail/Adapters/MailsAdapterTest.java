@@ -0,0 +1,114 @@
+package com.example.bmail.Adapters;
+
+import static org.junit.Assert.assertEquals;
+
+import android.app.Application;
+import android.content.Context;
+
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.example.bmail.Entities.ServerThreadList;
+import com.example.bmail.core.CompactMailList;
+import com.example.bmail.core.StringPool;
+import com.example.bmail.core.fixtures.SimpleMail;
+import com.example.bmail.core.fixtures.SyntheticMailbox;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @brief Posts conversation lists to the adapter and counts what it notifies, which
+ * is what the RecyclerView rebinds.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(application = Application.class)
+public class MailsAdapterTest {
+    private static final int THREADS = 50;
+
+    private final StringPool addressPool = new StringPool();
+    private final StringPool labelPool = new StringPool();
+    private final List<int[]> changed = new ArrayList<>();
+    private final List<int[]> inserted = new ArrayList<>();
+    private final List<int[]> removed = new ArrayList<>();
+    private MailsAdapter adapter;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        adapter = new MailsAdapter(context, view -> { }, count -> { });
+        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                changed.add(new int[]{positionStart, itemCount});
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                inserted.add(new int[]{positionStart, itemCount});
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                removed.add(new int[]{positionStart, itemCount});
+            }
+        });
+    }
+
+    @Test
+    public void setThreads_rebindsOnlyTheChangedRow() {
+        List<SimpleMail> mails = SyntheticMailbox.generate(THREADS).getMails();
+        adapter.setThreads(threads(mails));
+        clearEvents();
+
+        // a label added on this device, which keeps the date of the mail
+        List<SimpleMail> relabeled = SyntheticMailbox.generate(THREADS).getMails();
+        List<String> labels = new ArrayList<>(relabeled.get(7).getLabels());
+        labels.add("starred");
+        relabeled.get(7).setLabels(labels);
+        adapter.setThreads(threads(relabeled));
+
+        assertEquals(1, changed.size());
+        assertEquals(7, changed.get(0)[0]);
+        assertEquals(1, changed.get(0)[1]);
+        assertEquals(0, inserted.size());
+        assertEquals(0, removed.size());
+        assertEquals(THREADS, adapter.getItemCount());
+    }
+
+    @Test
+    public void setThreads_sameRowsNotifyNothing() {
+        adapter.setThreads(threads(SyntheticMailbox.generate(THREADS).getMails()));
+        clearEvents();
+
+        adapter.setThreads(threads(SyntheticMailbox.generate(THREADS).getMails()));
+
+        assertEquals(0, changed.size() + inserted.size() + removed.size());
+    }
+
+    /**
+     * @return One conversation per mail, as MailRepository compacts the thread index.
+     */
+    private ServerThreadList threads(List<SimpleMail> mails) {
+        String[] threadKeys = new String[mails.size()];
+        int[] messageCounts = new int[mails.size()];
+        for (int i = 0; i < mails.size(); i++) {
+            threadKeys[i] = "thread-" + mails.get(i).getId();
+            messageCounts[i] = 1 + i % 3;
+        }
+        return new ServerThreadList(CompactMailList.of(mails, addressPool, labelPool),
+                threadKeys, messageCounts);
+    }
+
+    private void clearEvents() {
+        changed.clear();
+        inserted.clear();
+        removed.clear();
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.bmail.Api;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @brief Approximates the bytes allocated by all threads while it runs.
+ * The work under test hops between the test thread, OkHttp threads and short-lived
+ * database threads, so the allocation counters of all threads are sampled every
+ * millisecond. Only a thread that starts and ends between two samples is missed.
+ */
+class AllocationMeter implements AutoCloseable {
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    // thread ID -> {allocated bytes when first seen, last sampled allocated bytes}
+    private final Map<Long, long[]> samples = new HashMap<>();
+    private final Thread sampler;
+    private volatile long samplerId = -1;
+    private volatile boolean running = true;
+
+    AllocationMeter() {
+        threads.setThreadAllocatedMemoryEnabled(true);
+        sample(true);
+        sampler = new Thread(() -> {
+            while (running) {
+                sample(false);
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "AllocationMeter");
+        sampler.setDaemon(true);
+        samplerId = sampler.getId();
+        sampler.start();
+    }
+
+    /**
+     * @param baseline true to count only what existing threads allocate from now on.
+     */
+    private synchronized void sample(boolean baseline) {
+        long[] ids = threads.getAllThreadIds();
+        long[] bytes = threads.getThreadAllocatedBytes(ids);
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes[i] < 0 || ids[i] == samplerId) {
+                continue;
+            }
+            long[] sample = samples.get(ids[i]);
+            if (sample == null) {
+                // a thread started after the baseline counts from its first allocation
+                samples.put(ids[i], new long[]{baseline ? bytes[i] : 0, bytes[i]});
+            } else {
+                sample[1] = bytes[i];
+            }
+        }
+    }
+
+    /**
+     * @return The bytes allocated since the meter was created.
+     */
+    synchronized long getAllocatedBytes() {
+        long total = 0;
+        for (long[] sample : samples.values()) {
+            total += sample[1] - sample[0];
+        }
+        return total;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        sampler.join();
+        sample(false);
+    }
+}
@@ -0,0 +1,253 @@
+package com.example.bmail.Api;
+
+import androidx.annotation.NonNull;
+
+import com.example.bmail.core.CompactCodec;
+import com.example.bmail.core.fixtures.SimpleLabel;
+import com.example.bmail.core.fixtures.SimpleMail;
+import com.example.bmail.core.fixtures.SyntheticMailbox;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+/**
+ * @brief In-process stand-in for the Node backend, serving a synthetic mailbox.
+ * Implements the mail list, search and mail label endpoints the way the server does
+ * (newest first, keyset paging by "before", summary view, compact list format) and
+ * can add latency to every response or fail requests with 503.
+ */
+class FakeMailServer extends Dispatcher {
+    private static final Pattern LABEL_ID = Pattern.compile("\"labelId\"\\s*:\\s*\"([^\"]+)\"");
+    private final MockWebServer server = new MockWebServer();
+    private final List<SimpleMail> mails;
+    private final List<SimpleLabel> labels;
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private volatile long latencyMillis;
+    private volatile int failEvery;
+
+    FakeMailServer(@NonNull SyntheticMailbox mailbox) {
+        mails = mailbox.getMails();
+        labels = mailbox.getLabels();
+        for (int i = 0; i < mails.size(); i++) {
+            positions.put(mails.get(i).getId(), i);
+        }
+        server.setDispatcher(this);
+    }
+
+    void start() throws IOException {
+        server.start();
+    }
+
+    void shutdown() throws IOException {
+        server.shutdown();
+    }
+
+    @NonNull
+    String getBaseUrl() {
+        return server.url("/").toString();
+    }
+
+    /**
+     * @param millis Delay before the headers of every response.
+     */
+    void setLatency(long millis) {
+        latencyMillis = millis;
+    }
+
+    /**
+     * @param count Number of upcoming requests to answer with 503.
+     */
+    void failNext(int count) {
+        failuresLeft.set(count);
+    }
+
+    /**
+     * @param every Answer every N-th request with 503 if it is a GET, which the client
+     * retries, 0 to disable.
+     */
+    void setFailEvery(int every) {
+        failEvery = every;
+    }
+
+    /**
+     * @return Number of requests received, including failed ones and retries.
+     */
+    int getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * @param query The search query.
+     * @return Number of mails the search endpoint returns for it.
+     */
+    int countMatches(@NonNull String query) {
+        int count = 0;
+        for (SimpleMail mail : mails) {
+            if (matches(mail, query.toLowerCase(Locale.ROOT))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @NonNull
+    @Override
+    public MockResponse dispatch(@NonNull RecordedRequest request) {
+        int n = requests.incrementAndGet();
+        MockResponse response;
+        if (failuresLeft.getAndUpdate(left -> Math.max(0, left - 1)) > 0
+                || (failEvery > 0 && n % failEvery == 0 && "GET".equals(request.getMethod()))) {
+            response = new MockResponse().setResponseCode(503).setHeader("Retry-After", "0");
+        } else {
+            response = route(request);
+        }
+        if (latencyMillis > 0) {
+            response.setHeadersDelay(latencyMillis, TimeUnit.MILLISECONDS);
+        }
+        return response;
+    }
+
+    @NonNull
+    private MockResponse route(@NonNull RecordedRequest request) {
+        HttpUrl url = request.getRequestUrl();
+        if (url == null) {
+            return new MockResponse().setResponseCode(400);
+        }
+        List<String> path = url.pathSegments();
+        String method = request.getMethod();
+        if ("GET".equals(method) && path.size() == 2 && path.get(1).equals("mails")) {
+            return page(mails, url);
+        }
+        if ("GET".equals(method) && path.size() == 4 && path.get(2).equals("byLabel")) {
+            String labelId = resolveLabel(path.get(3));
+            List<SimpleMail> labelled = new ArrayList<>();
+            for (SimpleMail mail : mails) {
+                if (mail.getLabels().contains(labelId)) {
+                    labelled.add(mail);
+                }
+            }
+            return page(labelled, url);
+        }
+        if ("GET".equals(method) && path.size() == 4 && path.get(2).equals("search")) {
+            String query = path.get(3).toLowerCase(Locale.ROOT);
+            List<SimpleMail> found = new ArrayList<>();
+            for (SimpleMail mail : mails) {
+                if (matches(mail, query)) {
+                    found.add(summary(mail));
+                }
+            }
+            return compact(found);
+        }
+        if (path.size() >= 4 && path.get(3).equals("labels")) {
+            return updateLabels(method, path, request.getBody().readUtf8());
+        }
+        return new MockResponse().setResponseCode(404);
+    }
+
+    /**
+     * @brief Returns the page of mails after the "before" cursor, as summaries.
+     */
+    @NonNull
+    private MockResponse page(@NonNull List<SimpleMail> source, @NonNull HttpUrl url) {
+        int start = 0;
+        String before = url.queryParameter("before");
+        if (before != null) {
+            // "<updatedAt>,<id>": the id alone locates the mail in the newest-first list
+            String id = before.substring(before.lastIndexOf(',') + 1);
+            Integer position = positions.get(id);
+            int oldest = position == null ? -1 : position;
+            while (start < source.size() && positions.get(source.get(start).getId()) <= oldest) {
+                start++;
+            }
+        }
+        String limitParam = url.queryParameter("limit");
+        int limit = limitParam == null ? 50 : Integer.parseInt(limitParam);
+        List<SimpleMail> page = new ArrayList<>();
+        for (int i = start; i < source.size() && page.size() < limit; i++) {
+            page.add(summary(source.get(i)));
+        }
+        return compact(page);
+    }
+
+    @NonNull
+    private MockResponse updateLabels(@NonNull String method, @NonNull List<String> path,
+                                      @NonNull String body) {
+        Integer position = positions.get(path.get(2));
+        if (position == null) {
+            return new MockResponse().setResponseCode(404);
+        }
+        SimpleMail mail = mails.get(position);
+        synchronized (mail) {
+            if ("DELETE".equals(method) && path.size() == 5) {
+                mail.getLabels().remove(path.get(4));
+                return new MockResponse().setResponseCode(204);
+            }
+            Matcher labelId = LABEL_ID.matcher(body);
+            if ("POST".equals(method) && labelId.find()) {
+                if (!mail.getLabels().contains(labelId.group(1))) {
+                    mail.getLabels().add(labelId.group(1));
+                }
+                return new MockResponse().setResponseCode(204);
+            }
+        }
+        return new MockResponse().setResponseCode(405);
+    }
+
+    @NonNull
+    private String resolveLabel(@NonNull String nameOrId) {
+        for (SimpleLabel label : labels) {
+            if (label.getId().equals(nameOrId) || label.getName().equalsIgnoreCase(nameOrId)) {
+                return label.getId();
+            }
+        }
+        return nameOrId;
+    }
+
+    @NonNull
+    private static MockResponse compact(@NonNull List<SimpleMail> list) {
+        return new MockResponse()
+                .setHeader("Content-Type", CompactCodec.MEDIA_TYPE)
+                .setBody(new Buffer().write(CompactCodec.encodeMails(list)));
+    }
+
+    /**
+     * @brief Copies a mail the way the summary view sends it, with a snippet instead
+     * of the body.
+     */
+    @NonNull
+    private static SimpleMail summary(@NonNull SimpleMail mail) {
+        SimpleMail summary = new SimpleMail();
+        summary.setId(mail.getId());
+        summary.setTitle(mail.getTitle());
+        summary.setSnippet(mail.getSnippet());
+        summary.setFrom(mail.getFrom());
+        summary.setTo(mail.getTo());
+        summary.setDraft(mail.getDraft());
+        summary.setLabels(mail.getLabels());
+        summary.setUpdatedAt(mail.getUpdatedAt());
+        summary.setUserImage(mail.getUserImage());
+        return summary;
+    }
+
+    private static boolean matches(@NonNull SimpleMail mail, @NonNull String query) {
+        return mail.getTitle().toLowerCase(Locale.ROOT).contains(query)
+                || mail.getBody().toLowerCase(Locale.ROOT).contains(query);
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.bmail.Api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import android.app.Application;
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Observer;
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.example.bmail.Entities.ServerMail;
+import com.example.bmail.db.AppDatabase;
+import com.example.bmail.db.MailDao;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * @brief Pages a mailbox through MailRemoteMediator against a server that, like
+ * parseMailCursor in mailServices.js, reads the date of the "before" cursor as UTC.
+ * The device runs in a zone far from UTC, so a cursor written in local time would
+ * skip or repeat mails.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(application = Application.class)
+public class MailRemoteMediatorTest {
+    private static final int MAILS = MailRemoteMediator.PAGE_SIZE * 3 + 7;
+    private static final long START_MS = 1_735_689_600_000L; // 2025-01-01T00:00:00Z
+
+    @Rule
+    public InstantTaskExecutorRule instantTaskExecutor = new InstantTaskExecutorRule();
+
+    private final MockWebServer server = new MockWebServer();
+    private final LinkedBlockingQueue<List<ServerMail>> emissions = new LinkedBlockingQueue<>();
+    private final Observer<List<ServerMail>> observer = emissions::add;
+    // newest first, as the server sorts them
+    private final List<long[]> mails = new ArrayList<>();
+    private TimeZone defaultZone;
+    private AppDatabase db;
+    private MutableLiveData<List<ServerMail>> mailListData;
+    private MailApi mailApi;
+
+    @Before
+    public void setUp() throws Exception {
+        defaultZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("America/Los_Angeles"));
+
+        for (int i = MAILS - 1; i >= 0; i--) {
+            // pairs of mails share a timestamp, so the id has to break the tie
+            mails.add(new long[]{START_MS + (i / 2) * 37_000L, i});
+        }
+        server.setDispatcher(new Dispatcher() {
+            @NonNull
+            @Override
+            public MockResponse dispatch(@NonNull RecordedRequest request) {
+                return page(request.getRequestUrl());
+            }
+        });
+        server.start();
+
+        Context context = ApplicationProvider.getApplicationContext();
+        TokenHolder.getInstance(context).setToken("mediator-test");
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .allowMainThreadQueries()
+                .build();
+        mailListData = new MutableLiveData<>();
+        mailListData.observeForever(observer);
+        mailApi = new MailApi(db.mailDao(), mailListData, context, server.url("/").toString());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mailListData.removeObserver(observer);
+        db.close();
+        server.shutdown();
+        TimeZone.setDefault(defaultZone);
+    }
+
+    @Test
+    public void loadNextPage_pagesEveryMailOnceOutsideUtc() throws Exception {
+        mailApi.loadAllMails();
+        List<ServerMail> shown = awaitEmission();
+        int pages = 1;
+        while (shown.size() < MAILS && pages <= MAILS / MailRemoteMediator.PAGE_SIZE + 1) {
+            mailApi.loadNextPage();
+            shown = awaitEmission();
+            pages++;
+        }
+
+        MailDao mailDao = db.mailDao();
+        List<ServerMail> stored = mailDao.getAllMails();
+        Set<String> ids = new HashSet<>();
+        for (ServerMail mail : stored) {
+            ids.add(mail.getId());
+        }
+        assertEquals("mails stored", MAILS, stored.size());
+        assertEquals("distinct mails", MAILS, ids.size());
+        for (int i = 0; i < MAILS; i++) {
+            assertEquals(id(mails.get(i)[1]), stored.get(i).getId());
+            assertEquals(mails.get(i)[0], stored.get(i).getUpdatedAt().getTime());
+        }
+    }
+
+    @Test
+    public void refresh_ofTheShownLabelKeepsTheLoadedPages() throws Exception {
+        mailApi.loadAllMails();
+        awaitEmission();
+        mailApi.loadNextPage();
+        awaitEmission();
+        mailApi.loadNextPage();
+        int loaded = awaitEmission().size();
+        assertEquals(MailRemoteMediator.PAGE_SIZE * 3, loaded);
+
+        // a mail of the third page is edited on the server and moves above the cursor
+        long[] edited = mails.remove(MailRemoteMediator.PAGE_SIZE * 2 + 5);
+        mails.add(0, new long[]{mails.get(0)[0] + 60_000L, edited[1]});
+        // returning to the list refreshes the label it shows
+        mailApi.loadAllMails();
+        List<ServerMail> shown = awaitEmission();
+
+        assertEquals(loaded, shown.size());
+        assertEquals(loaded, db.mailDao().getAllMails().size());
+        assertEquals(id(edited[1]), db.mailDao().getAllMails().get(0).getId());
+        // the cursor was kept, the next page continues after the third
+        mailApi.loadNextPage();
+        assertEquals(MAILS, awaitEmission().size());
+    }
+
+    @Test
+    public void isoDateAdapter_writesUtcWhateverTheDeviceZone() throws ParseException {
+        assertEquals("2025-01-01T00:00:37.000Z",
+                IsoDateAdapter.format(new Date(START_MS + 37_000L)));
+        assertEquals(START_MS, IsoDateAdapter.parse("2025-01-01T00:00:00.000Z").getTime());
+    }
+
+    /**
+     * @brief The mails older than the cursor, compared by (updatedAt, id) like the server.
+     */
+    @NonNull
+    private MockResponse page(HttpUrl url) {
+        long beforeMs = Long.MAX_VALUE;
+        long beforeId = Long.MAX_VALUE;
+        String before = url == null ? null : url.queryParameter("before");
+        if (before != null) {
+            int comma = before.lastIndexOf(',');
+            try {
+                beforeMs = IsoUtc.parse(before.substring(0, comma));
+            } catch (ParseException e) {
+                return new MockResponse().setResponseCode(400);
+            }
+            beforeId = Long.parseLong(before.substring(comma + 1 + "mail".length()));
+        }
+        String limitParam = url == null ? null : url.queryParameter("limit");
+        int limit = limitParam == null ? 50 : Integer.parseInt(limitParam);
+        StringBuilder json = new StringBuilder("[");
+        int count = 0;
+        for (long[] mail : mails) {
+            boolean older = mail[0] < beforeMs || (mail[0] == beforeMs && mail[1] < beforeId);
+            if (!older || count == limit) {
+                continue;
+            }
+            if (count++ > 0) {
+                json.append(',');
+            }
+            json.append(String.format(Locale.US,
+                    "{\"id\":\"%s\",\"title\":\"Mail %d\",\"snippet\":\"\",\"from\":"
+                            + "\"alice@bmail.com\",\"to\":[\"bob@bmail.com\"],\"draft\":false,"
+                            + "\"labels\":[],\"updatedAt\":\"%s\"}",
+                    id(mail[1]), mail[1], IsoUtc.format(mail[0])));
+        }
+        json.append(']');
+        return new MockResponse().setHeader("Content-Type", "application/json")
+                .setBody(json.toString());
+    }
+
+    /**
+     * @return An id that sorts like the number, as ObjectIds of the same second do.
+     */
+    private static String id(long number) {
+        return String.format(Locale.US, "mail%06d", number);
+    }
+
+    private List<ServerMail> awaitEmission() throws InterruptedException {
+        List<ServerMail> value = emissions.poll(30, TimeUnit.SECONDS);
+        assertNotNull("no mail list was posted", value);
+        return value;
+    }
+
+    /**
+     * @brief The server's side of the format, kept apart from IsoDateAdapter so a bug
+     * there cannot cancel itself out.
+     */
+    private static final class IsoUtc {
+        private static final SimpleDateFormat FORMAT;
+
+        static {
+            FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+            FORMAT.setTimeZone(TimeZone.getTimeZone("UTC"));
+        }
+
+        static synchronized String format(long ms) {
+            return FORMAT.format(new Date(ms));
+        }
+
+        static synchronized long parse(String text) throws ParseException {
+            return FORMAT.parse(text).getTime();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.example.bmail.Api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Application;
+import android.content.Context;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Observer;
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.example.bmail.Entities.ServerMail;
+import com.example.bmail.core.fixtures.SimpleMail;
+import com.example.bmail.core.fixtures.SyntheticMailbox;
+import com.example.bmail.db.AppDatabase;
+import com.example.bmail.db.MailDao;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @brief End-to-end sync scenarios of MailApi against FakeMailServer and an in-memory
+ * Room database, with budgets on time, allocations, requests and list emissions.
+ * Every scenario prints one "sync-bench" line so runs can be compared. The mailbox
+ * and the network can be changed from the command line, e.g.
+ * <pre>
+ * ./gradlew :app:testDebugUnitTest --tests '*MailSyncBenchmarkTest' \
+ *     -Dbmail.sync.mails=100000 -Dbmail.sync.latencyMs=200 -Dbmail.sync.failEvery=4
+ * </pre>
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(application = Application.class)
+public class MailSyncBenchmarkTest {
+    private static final int MAILS = Integer.getInteger("bmail.sync.mails", 10_000);
+    private static final long LATENCY_MS = Long.getLong("bmail.sync.latencyMs", 20);
+    private static final int FAIL_EVERY = Integer.getInteger("bmail.sync.failEvery", 0);
+    // wall time allowed per request on top of the simulated latency
+    private static final long BUDGET_MS_PER_REQUEST =
+            Long.getLong("bmail.sync.budgetMsPerRequest", 1_000);
+    // allocation allowed per page of PAGE_SIZE mails
+    private static final long BUDGET_BYTES_PER_PAGE =
+            Long.getLong("bmail.sync.budgetBytesPerPage", 8L << 20);
+    private static final int PAGES = 10;
+    private static final String SEARCH_QUERY = "weekly review";
+
+    @Rule
+    public InstantTaskExecutorRule instantTaskExecutor = new InstantTaskExecutorRule();
+
+    private static SyntheticMailbox mailbox;
+    private FakeMailServer server;
+    private AppDatabase db;
+    private MailDao mailDao;
+    private MutableLiveData<List<ServerMail>> mailListData;
+    private final LinkedBlockingQueue<List<ServerMail>> emissions = new LinkedBlockingQueue<>();
+    private final Observer<List<ServerMail>> observer = emissions::add;
+    private MailApi mailApi;
+
+    @Before
+    public void setUp() throws Exception {
+        if (mailbox == null) {
+            mailbox = SyntheticMailbox.generate(MAILS);
+        }
+        server = new FakeMailServer(mailbox);
+        server.setLatency(LATENCY_MS);
+        server.setFailEvery(FAIL_EVERY);
+        server.start();
+
+        Context context = ApplicationProvider.getApplicationContext();
+        TokenHolder.getInstance(context).setToken("sync-bench");
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                // the instant executor makes every thread look like the main thread
+                .allowMainThreadQueries()
+                .build();
+        mailDao = db.mailDao();
+        mailListData = new MutableLiveData<>();
+        mailListData.observeForever(observer);
+        mailApi = new MailApi(mailDao, mailListData, context, server.getBaseUrl());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mailListData.removeObserver(observer);
+        db.close();
+        server.shutdown();
+    }
+
+    @Test
+    public void loadAllMails_storesFirstPageInOneRequest() throws Exception {
+        Run run = new Run("loadAllMails");
+        mailApi.loadAllMails();
+        List<ServerMail> shown = run.awaitEmissions(1);
+        run.finish(1);
+
+        assertEquals(MailRemoteMediator.PAGE_SIZE, shown.size());
+        assertEquals(mailbox.getMails().get(0).getId(), shown.get(0).getId());
+        assertNull("list rows are summaries", shown.get(0).getBody());
+    }
+
+    @Test
+    public void loadNextPage_appendsOnePagePerRequest() throws Exception {
+        mailApi.loadAllMails();
+        awaitEmission();
+
+        Run run = new Run("loadNextPage x" + PAGES);
+        List<ServerMail> shown = null;
+        for (int page = 0; page < PAGES; page++) {
+            mailApi.loadNextPage();
+            shown = run.awaitEmissions(1);
+        }
+        run.finish(PAGES);
+
+        assertNotNull(shown);
+        assertEquals(MailRemoteMediator.PAGE_SIZE * (PAGES + 1), shown.size());
+        List<SimpleMail> expected = mailbox.getMails();
+        assertEquals(expected.get(shown.size() - 1).getId(), shown.get(shown.size() - 1).getId());
+    }
+
+    @Test
+    public void reload_replacesListWithLabelPage() throws Exception {
+        mailApi.loadAllMails();
+        awaitEmission();
+
+        Run run = new Run("reload starred");
+        mailApi.reload("Starred");
+        List<ServerMail> shown = run.awaitEmissions(1);
+        run.finish(1);
+
+        String starredId = mailbox.getLabels().get(2).getId();
+        assertEquals(MailRemoteMediator.PAGE_SIZE, shown.size());
+        for (ServerMail mail : shown) {
+            assertTrue(mail.getLabels().contains(starredId));
+        }
+    }
+
+    @Test
+    public void searchMail_showsEveryMatch() throws Exception {
+        Run run = new Run("searchMail");
+        mailApi.searchMail(SEARCH_QUERY);
+        List<ServerMail> shown = run.awaitEmissions(1);
+        int matches = server.countMatches(SEARCH_QUERY);
+        // search is not paged, so the budget grows with the result
+        run.finish(1, Math.max(1, matches / MailRemoteMediator.PAGE_SIZE));
+
+        assertEquals(matches, shown.size());
+    }
+
+    @Test
+    public void labelOperations_updateStoredMail() throws Exception {
+        mailApi.loadAllMails();
+        List<ServerMail> loaded = awaitEmission();
+        String labelId = mailbox.getLabels().get(SyntheticMailbox.DEFAULT_LABELS.length).getId();
+        // adding and then removing the label leaves the shared mailbox as it was
+        String mailId = null;
+        for (ServerMail mail : loaded) {
+            if (!mail.getLabels().contains(labelId)) {
+                mailId = mail.getId();
+                break;
+            }
+        }
+        assertNotNull(mailId);
+
+        Run run = new Run("add+remove label");
+        mailApi.addLabelToMail(mailId, labelId);
+        run.awaitEmissions(1);
+        assertTrue(mailDao.getById(mailId).getLabels().contains(labelId));
+        mailApi.removeLabelFromMail(mailId, labelId);
+        List<ServerMail> shown = run.awaitEmissions(1);
+        run.finish(2);
+
+        assertFalse(mailDao.getById(mailId).getLabels().contains(labelId));
+        assertEquals(MailRemoteMediator.PAGE_SIZE, shown.size());
+    }
+
+    @Test
+    public void loadAllMails_retriesFailedRequests() throws Exception {
+        server.failNext(2);
+
+        Run run = new Run("loadAllMails after 2x 503");
+        mailApi.loadAllMails();
+        List<ServerMail> shown = run.awaitEmissions(1);
+        // both failures are retried by ResilienceInterceptor within the one call
+        run.finish(3);
+
+        assertEquals(MailRemoteMediator.PAGE_SIZE, shown.size());
+    }
+
+    private List<ServerMail> awaitEmission() throws InterruptedException {
+        List<ServerMail> value = emissions.poll(30, TimeUnit.SECONDS);
+        assertNotNull("no mail list was posted", value);
+        return value;
+    }
+
+    /**
+     * @brief Measures one scenario from its creation to finish().
+     */
+    private class Run {
+        private final String name;
+        private final int requestsBefore;
+        private final long start;
+        private final AllocationMeter allocations;
+        private int emitted;
+
+        Run(String name) {
+            this.name = name;
+            emissions.clear();
+            requestsBefore = server.getRequestCount();
+            allocations = new AllocationMeter();
+            start = System.nanoTime();
+        }
+
+        /**
+         * @param count Number of further emissions to wait for.
+         * @return The last of them.
+         */
+        List<ServerMail> awaitEmissions(int count) throws InterruptedException {
+            List<ServerMail> last = null;
+            for (int i = 0; i < count; i++) {
+                last = awaitEmission();
+                emitted++;
+            }
+            return last;
+        }
+
+        void finish(int expectedRequests) throws Exception {
+            finish(expectedRequests, expectedRequests);
+        }
+
+        /**
+         * @brief Checks the budgets and that nothing else is posted afterwards.
+         * @param expectedRequests Requests the scenario should make without injected failures.
+         * @param pages Pages of mails the scenario transfers, for the allocation budget.
+         */
+        void finish(int expectedRequests, int pages) throws Exception {
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            allocations.close();
+            long allocated = allocations.getAllocatedBytes();
+            int requests = server.getRequestCount() - requestsBefore;
+
+            // a late duplicate post would redraw the list for nothing
+            List<ServerMail> extra = emissions.poll(LATENCY_MS + 300, TimeUnit.MILLISECONDS);
+            System.out.println(String.format(Locale.US,
+                    "sync-bench %-28s mails=%d latencyMs=%d ms=%d allocMB=%.1f requests=%d emissions=%d",
+                    name, MAILS, LATENCY_MS, elapsedMs, allocated / 1048576.0, requests,
+                    emitted + (extra == null ? 0 : 1)));
+
+            assertNull(name + ": unexpected extra emission", extra);
+            if (FAIL_EVERY == 0) {
+                assertEquals(name + ": requests", expectedRequests, requests);
+            } else {
+                assertTrue(name + ": requests", requests >= expectedRequests);
+            }
+            long budgetMs = requests * (LATENCY_MS + BUDGET_MS_PER_REQUEST);
+            assertTrue(name + ": took " + elapsedMs + " ms, budget " + budgetMs,
+                    elapsedMs <= budgetMs);
+            long budgetBytes = pages * BUDGET_BYTES_PER_PAGE;
+            assertTrue(name + ": allocated " + allocated + " B, budget " + budgetBytes,
+                    allocated <= budgetBytes);
+        }
+    }
+}
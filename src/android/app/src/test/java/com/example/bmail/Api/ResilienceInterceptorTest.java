@@ -0,0 +1,221 @@
+package com.example.bmail.Api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Application;
+
+import androidx.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowSystemClock;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.http.DELETE;
+import retrofit2.http.GET;
+import retrofit2.http.Tag;
+
+/**
+ * @brief Preempts a PREFETCH call through the PriorityGate and checks that the
+ * cancellation is neither retried nor counted against the server, and that requests
+ * which change something are never preempted.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(application = Application.class)
+public class ResilienceInterceptorTest {
+    private static final long TIMEOUT_SECONDS = 10;
+
+    interface TestApi {
+        @GET("slow")
+        Call<ResponseBody> visible();
+
+        @RequestPriority.Of(RequestPriority.PREFETCH)
+        @GET("slow")
+        Call<ResponseBody> prefetch();
+
+        @RequestPriority.Of(RequestPriority.USER_BLOCKING)
+        @GET("slow")
+        Call<ResponseBody> blockingSlow();
+
+        @DELETE("slow")
+        Call<ResponseBody> delete(@Tag RequestPriority priority);
+
+        @RequestPriority.Of(RequestPriority.USER_BLOCKING)
+        @GET("open")
+        Call<ResponseBody> blocking();
+    }
+
+    /**
+     * @brief Counts what the interceptor reports.
+     */
+    private static final class CountingBreaker extends CircuitBreaker {
+        final AtomicInteger failures = new AtomicInteger();
+
+        @Override
+        public synchronized void onFailure() {
+            failures.incrementAndGet();
+            super.onFailure();
+        }
+    }
+
+    private final MockWebServer server = new MockWebServer();
+    // the slow requests hang until the test is over
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final Semaphore received = new Semaphore(0);
+    private final AtomicInteger requests = new AtomicInteger();
+    private final CountingBreaker breaker = new CountingBreaker();
+    private TestApi api;
+
+    @Before
+    public void setUp() throws IOException {
+        server.setDispatcher(new okhttp3.mockwebserver.Dispatcher() {
+            @NonNull
+            @Override
+            public MockResponse dispatch(@NonNull RecordedRequest request)
+                    throws InterruptedException {
+                requests.incrementAndGet();
+                received.release();
+                if ("/slow".equals(request.getPath())) {
+                    release.await(TIMEOUT_SECONDS * 3, TimeUnit.SECONDS);
+                }
+                return new MockResponse().setBody("{}");
+            }
+        });
+        server.start();
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(16);
+        dispatcher.setMaxRequestsPerHost(16);
+        OkHttpClient client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .addInterceptor(new ResilienceInterceptor(breaker))
+                .addInterceptor(new PriorityInterceptor(new PriorityGate()))
+                .build();
+        api = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .client(client)
+                // Retrofit would post the callbacks to the paused main looper
+                .callbackExecutor(Runnable::run)
+                .build()
+                .create(TestApi.class);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        release.countDown();
+        server.shutdown();
+    }
+
+    @Test
+    public void preemptedCall_isNotRetriedAndKeepsTheBreakerClosed() throws Exception {
+        LinkedBlockingQueue<Throwable> prefetchFailures = new LinkedBlockingQueue<>();
+        // the non-blocking classes may take all slots but the reserved one
+        enqueueAndAwait(api.visible(), null);
+        enqueueAndAwait(api.visible(), null);
+        enqueueAndAwait(api.prefetch(), prefetchFailures);
+        Call<ResponseBody> newestPrefetch = api.prefetch();
+        enqueueAndAwait(newestPrefetch, prefetchFailures);
+        enqueueAndAwait(api.blockingSlow(), null);
+
+        // every slot is taken, so this cancels the newest PREFETCH call
+        Response<ResponseBody> response = api.blocking().execute();
+        assertTrue(response.isSuccessful());
+        response.body().close();
+        Throwable failure = prefetchFailures.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull("the PREFETCH call was not preempted", failure);
+        assertTrue(failure instanceof IOException);
+        assertTrue(newestPrefetch.isCanceled());
+
+        assertEquals("the preempted call was sent again", 6, requests.get());
+        assertEquals("cancellations counted as failures", 0, breaker.failures.get());
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    public void preemption_skipsRequestsThatChangeSomething() throws Exception {
+        LinkedBlockingQueue<Throwable> failures = new LinkedBlockingQueue<>();
+        enqueueAndAwait(api.visible(), null);
+        enqueueAndAwait(api.visible(), null);
+        Call<ResponseBody> prefetch = api.prefetch();
+        enqueueAndAwait(prefetch, failures);
+        // the lowest class and the newest call, but the server may have applied it
+        Call<ResponseBody> delete = api.delete(RequestPriority.BACKGROUND);
+        enqueueAndAwait(delete, failures);
+        enqueueAndAwait(api.blockingSlow(), null);
+
+        Response<ResponseBody> response = api.blocking().execute();
+        assertTrue(response.isSuccessful());
+        response.body().close();
+        assertNotNull("no call was preempted", failures.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(prefetch.isCanceled());
+        assertFalse(delete.isCanceled());
+        assertEquals(RequestPriority.BACKGROUND,
+                PriorityInterceptor.priorityOf(delete.request()));
+    }
+
+    @Test
+    public void canceledProbe_letsTheNextRequestProbe() throws IOException {
+        for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+            breaker.onFailure();
+        }
+        assertTrue(breaker.isOpen());
+        ShadowSystemClock.advanceBy(Duration.ofMillis(CircuitBreaker.MIN_OPEN_MILLIS));
+
+        breaker.acquire();
+        breaker.onCanceled();
+        // would throw OpenException if the breaker waited for the canceled probe
+        breaker.acquire();
+        breaker.onSuccess();
+        assertFalse(breaker.isOpen());
+    }
+
+    /**
+     * @brief Enqueues a call and waits until the server received it, so the calls are
+     * in flight in the order they were enqueued.
+     */
+    private void enqueueAndAwait(Call<ResponseBody> call, LinkedBlockingQueue<Throwable> failures)
+            throws InterruptedException {
+        call.enqueue(new Callback<ResponseBody>() {
+            @Override
+            public void onResponse(@NonNull Call<ResponseBody> call,
+                                   @NonNull Response<ResponseBody> response) {
+                if (response.body() != null) {
+                    response.body().close();
+                }
+            }
+
+            @Override
+            public void onFailure(@NonNull Call<ResponseBody> call, @NonNull Throwable t) {
+                if (failures != null) {
+                    failures.add(t);
+                }
+            }
+        });
+        assertTrue("the request did not reach the server",
+                received.tryAcquire(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.bmail.Metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Application;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+
+/**
+ * @brief Records sections with known durations and checks what TraceStats reports.
+ * Percentiles are the upper bound of their histogram bucket, capped at the maximum.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(application = Application.class)
+public class TraceStatsTest {
+    private final TraceStats stats = TraceStats.getInstance();
+
+    @Before
+    public void setUp() {
+        stats.reset();
+        Tracer.setSystemTraceEnabled(false);
+    }
+
+    @After
+    public void tearDown() {
+        Tracer.setSystemTraceEnabled(true);
+        stats.reset();
+    }
+
+    @Test
+    public void record_countsAndBucketsEachSection() {
+        // 1 to 100 µs once each
+        for (int micros = 1; micros <= 100; micros++) {
+            stats.record("MailDao.insertList", micros * 1000L);
+        }
+        stats.record("MailListData.compact", 7_000);
+
+        Histogram insert = stats.get("MailDao.insertList");
+        assertEquals(100, stats.count("MailDao.insertList"));
+        assertEquals(1, stats.count("MailListData.compact"));
+        assertEquals(0, stats.count("MailsAdapter.diffThreads"));
+        // below 16 µs every value has a bucket of its own
+        assertEquals(10, insert.percentile(10));
+        // 50 is in the bucket 50..51, 90 in 88..91, 99 in 96..99
+        assertEquals(51, insert.percentile(50));
+        assertEquals(91, insert.percentile(90));
+        assertEquals(99, insert.percentile(99));
+        assertEquals(100, insert.percentile(100));
+        assertEquals(100, insert.getMax());
+        assertEquals(50.5, insert.getMean(), 0.001);
+        assertEquals(List.of("MailDao.insertList", "MailListData.compact"),
+                List.copyOf(stats.getSections().keySet()));
+    }
+
+    @Test
+    public void percentile_aSlowOutlierOnlyMovesTheTop() {
+        for (int i = 0; i < 99; i++) {
+            stats.record("MailApi.sync", 1_000_000);
+        }
+        stats.record("MailApi.sync", 250_000_000);
+
+        Histogram sync = stats.get("MailApi.sync");
+        // 1000 µs is in the bucket 992..1023
+        assertEquals(1023, sync.percentile(50));
+        assertEquals(1023, sync.percentile(99));
+        assertEquals(250_000, sync.percentile(100));
+    }
+
+    @Test
+    public void tracer_recordsSectionsAndCrossThreadPhases() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            try (Tracer.Section ignored = Tracer.begin("TraceStatsTest.section")) {
+                Thread.sleep(2);
+            }
+        }
+        Tracer.record("TraceStatsTest.roundTrip", System.nanoTime() - 5_000_000);
+
+        assertEquals(3, stats.count("TraceStatsTest.section"));
+        assertTrue(stats.get("TraceStatsTest.section").percentile(0) >= 1_900);
+        assertEquals(1, stats.count("TraceStatsTest.roundTrip"));
+        assertTrue(stats.get("TraceStatsTest.roundTrip").getMax() >= 5_000);
+    }
+
+    @Test
+    public void reset_forgetsEverySection() throws Exception {
+        stats.record("MailDao.insertList", 1_000);
+        try (Tracer.Section ignored = Tracer.begin("TraceStatsTest.section")) {
+            // nothing
+        }
+
+        stats.reset();
+
+        assertEquals(0, stats.count("MailDao.insertList"));
+        assertNull(stats.get("TraceStatsTest.section"));
+        assertTrue(stats.getSections().isEmpty());
+        assertEquals(0, stats.toJson().length());
+        stats.record("MailDao.insertList", 3_000);
+        assertEquals(1, stats.count("MailDao.insertList"));
+    }
+
+    @Test
+    public void toJson_reportsMilliseconds() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            stats.record("MailDao.insertList", 4_000_000);
+        }
+
+        JSONObject section = stats.toJson().getJSONObject("MailDao.insertList");
+
+        assertEquals(10, section.getLong("count"));
+        assertEquals(4.0, section.getDouble("p50"), 0.001);
+        assertEquals(4.0, section.getDouble("max"), 0.001);
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.bmail.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import android.app.Application;
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.example.bmail.Entities.LabelCounter;
+import com.example.bmail.Entities.ServerMail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @brief Refreshes labels through MailDao.replaceAll and checks what happens to the
+ * label counters of the refreshed label and of the others.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(application = Application.class)
+public class MailDaoCountersTest {
+    private AppDatabase db;
+    private MailDao mailDao;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .allowMainThreadQueries()
+                .build();
+        mailDao = db.mailDao();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void replaceAll_keepsTheCountersOfOtherLabels() {
+        List<ServerMail> stored = new ArrayList<>();
+        stored.add(mail("a1", "inbox"));
+        stored.add(mail("a2", "inbox", "work"));
+        stored.add(mail("b1", "work"));
+        stored.add(mail("b2", "work"));
+        stored.add(mail("b3", "work"));
+        mailDao.insertList(stored);
+        mailDao.markAsRead("b1");
+        assertCounter("work", 4, 3);
+
+        // the first page of the inbox: a2 lost "work", a3 is new
+        List<ServerMail> page = new ArrayList<>();
+        page.add(mail("a3", "inbox"));
+        page.add(mail("a2", "inbox"));
+        page.add(mail("a1", "inbox"));
+        mailDao.replaceAll(page, true);
+
+        assertEquals(3, mailDao.getAllMails().size());
+        assertCounter("inbox", 3, 3);
+        // b1 to b3 are no longer stored but still in the label, only a2 left it
+        assertCounter("work", 3, 2);
+    }
+
+    @Test
+    public void replaceAll_countsAReplacedMailOnce() {
+        List<ServerMail> stored = new ArrayList<>();
+        stored.add(mail("a1", "inbox"));
+        stored.add(mail("b1", "work"));
+        mailDao.insertList(stored);
+        mailDao.markAsRead("a1");
+
+        List<ServerMail> page = new ArrayList<>();
+        page.add(mail("a1", "inbox"));
+        mailDao.replaceAll(page, true);
+        mailDao.replaceAll(page, true);
+
+        assertCounter("inbox", 1, 0);
+        assertCounter("work", 1, 1);
+    }
+
+    @Test
+    public void replaceAll_switchingLabelsCountsEveryMailOnce() {
+        List<ServerMail> inbox = new ArrayList<>();
+        inbox.add(mail("a1", "inbox"));
+        inbox.add(mail("a2", "inbox", "work"));
+        List<ServerMail> work = new ArrayList<>();
+        work.add(mail("b1", "work"));
+        work.add(mail("a2", "inbox", "work"));
+        mailDao.markAsRead("a1");
+
+        mailDao.replaceAll(copy(inbox), true);
+        mailDao.replaceAll(copy(work), true);
+        // the inbox mails are no longer stored when the inbox is opened again
+        mailDao.replaceAll(copy(inbox), true);
+
+        assertCounter("inbox", 2, 1);
+        assertCounter("work", 2, 2);
+        mailDao.replaceAll(copy(work), true);
+        assertCounter("inbox", 2, 1);
+        assertCounter("work", 2, 2);
+    }
+
+    @Test
+    public void replaceAll_takesOutMailsTheServerNoLongerLists() {
+        List<ServerMail> inbox = new ArrayList<>();
+        inbox.add(mail("a1", "inbox"));
+        inbox.add(mail("a2", "inbox", "work"));
+        List<ServerMail> work = new ArrayList<>();
+        work.add(mail("b1", "work"));
+        work.add(mail("a2", "inbox", "work"));
+        mailDao.replaceAll(copy(inbox), true);
+        mailDao.replaceAll(copy(work), true);
+
+        // a2 was deleted on another device while the work label was shown
+        mailDao.replaceAll(List.of(mail("a1", "inbox")), true);
+
+        assertCounter("inbox", 1, 1);
+        assertCounter("work", 1, 1);
+    }
+
+    @Test
+    public void replaceAll_partialPageOnlyChecksItsOwnDates() {
+        ServerMail newest = mail("a1", "inbox");
+        newest.setUpdatedAt(new Date(3_000));
+        ServerMail deleted = mail("a2", "inbox");
+        deleted.setUpdatedAt(new Date(2_000));
+        ServerMail older = mail("a3", "inbox");
+        older.setUpdatedAt(new Date(1_000));
+        mailDao.insertList(List.of(newest, deleted, older));
+
+        // a full page that ends at a4, between a2 and a3: a2 would be on it
+        ServerMail received = mail("a4", "inbox");
+        received.setUpdatedAt(new Date(1_500));
+        mailDao.replaceAll(List.of(copy(List.of(newest)).get(0), received), false);
+
+        // a4 is new, a2 is gone, a3 is older than the page and still counted
+        assertCounter("inbox", 3, 3);
+        assertEquals(1, mailDao.getCounted(List.of("a2", "a3")).size());
+        assertEquals("a3", mailDao.getCounted(List.of("a2", "a3")).get(0).getMailId());
+    }
+
+    private void assertCounter(String labelId, int total, int unread) {
+        LabelCounter counter = mailDao.getLabelCounter(labelId);
+        assertNotNull("no counter for " + labelId, counter);
+        assertEquals(labelId + " total", total, counter.getTotal());
+        assertEquals(labelId + " unread", unread, counter.getUnread());
+    }
+
+    /**
+     * @return The mails as a new response would bring them, since storing sets fields.
+     */
+    private static List<ServerMail> copy(List<ServerMail> mails) {
+        List<ServerMail> copies = new ArrayList<>();
+        for (ServerMail mail : mails) {
+            ServerMail copy = mail(mail.getId(), mail.getLabels().toArray(new String[0]));
+            copy.setUpdatedAt(mail.getUpdatedAt());
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    private static ServerMail mail(String id, String... labels) {
+        ServerMail mail = new ServerMail("Subject " + id, "Body", "alice@bmail.com",
+                List.of("bob@bmail.com"), false, new ArrayList<>(List.of(labels)));
+        mail.setId(id);
+        mail.setUpdatedAt(new Date(1_735_689_600_000L + id.hashCode()));
+        return mail;
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.bmail.db;
+
+import static org.junit.Assert.assertTrue;
+
+import android.app.Application;
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.example.bmail.Api.MailRemoteMediator;
+import com.example.bmail.Entities.ReadMark;
+import com.example.bmail.Entities.ServerMail;
+import com.example.bmail.core.fixtures.SimpleMail;
+import com.example.bmail.core.fixtures.SyntheticMailbox;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @brief Runs EXPLAIN QUERY PLAN for every @Query of MailDao against a seeded database
+ * and fails when one scans a table without an index or sorts in a temp B-tree.
+ * The queries are read from the MailDao source, so new ones are audited without
+ * touching this test. Deliberate full reads go in ALLOWED_SCANS with the reason.
+ * The median time of every query is written to build/reports/dao-queries/baseline.tsv
+ * and compared with the previous run.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(application = Application.class)
+public class MailDaoQueryPlanTest {
+    private static final int MAILS = Integer.getInteger("bmail.queryPlan.mails", 20_000);
+    private static final int RUNS = 5;
+    // the usual length of an IN (:ids) list
+    private static final int IN_LIST_SIZE = MailRemoteMediator.PAGE_SIZE;
+    private static final File DAO_SOURCE =
+            new File("src/main/java/com/example/bmail/db/MailDao.java");
+    private static final File BASELINE = new File("build/reports/dao-queries/baseline.tsv");
+    private static final Map<String, String> ALLOWED_SCANS = Map.of(
+            "observeLabelCounters", "one row per label, shown whole in the drawer",
+            "clearRows", "deletes every row",
+            "clearCounters", "deletes every row",
+            "clearThreads", "deletes every row",
+            "getParticipants", "read once to build the recipient index");
+    private static final Pattern QUERY = Pattern.compile(
+            "@Query\\(((?:\\s*\"(?:[^\"\\\\]|\\\\.)*\"\\s*\\+?)+)\\)\\s*[^;{]*?(\\w+)\\s*\\(");
+    private static final Pattern LITERAL = Pattern.compile("\"((?:[^\"\\\\]|\\\\.)*)\"");
+    private static final Pattern PARAMETER = Pattern.compile("\\(:(\\w+)\\)|:(\\w+)");
+
+    private AppDatabase db;
+    private SupportSQLiteDatabase sqlite;
+    private List<String> mailIds;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .allowMainThreadQueries()
+                .build();
+        MailDao mailDao = db.mailDao();
+        List<ServerMail> mails = new ArrayList<>(MAILS);
+        mailIds = new ArrayList<>(MAILS);
+        for (SimpleMail source : SyntheticMailbox.generate(MAILS).getMails()) {
+            mails.add(toServerMail(source));
+            mailIds.add(source.getId());
+        }
+        mailDao.insertList(mails);
+        for (int i = 0; i < mailIds.size(); i += 3) {
+            mailDao.insertReadMark(new ReadMark(mailIds.get(i)));
+        }
+        sqlite = db.getOpenHelper().getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void everyQueryUsesAnIndex() throws IOException {
+        Map<String, String> queries = readQueries();
+        assertTrue("no @Query found in " + DAO_SOURCE, queries.size() >= 10);
+
+        Map<String, Long> previous = readBaseline();
+        List<String> violations = new ArrayList<>();
+        StringBuilder baseline = new StringBuilder();
+        for (Map.Entry<String, String> query : queries.entrySet()) {
+            String method = query.getKey();
+            List<Object> args = new ArrayList<>();
+            String sql = bind(query.getValue(), args);
+
+            List<String> plan = explain(sql, args.toArray());
+            for (String step : plan) {
+                if (isFullScan(step) && !ALLOWED_SCANS.containsKey(method)) {
+                    violations.add(method + ": " + step);
+                }
+                if (step.contains("TEMP B-TREE")) {
+                    violations.add(method + ": " + step);
+                }
+            }
+
+            long micros = medianMicros(sql, args.toArray());
+            Long before = previous.get(method);
+            System.out.println(String.format(Locale.US, "query-plan %-22s %7d us%s  %s",
+                    method, micros,
+                    before == null ? "" : String.format(Locale.US, " (was %d us)", before),
+                    String.join(" | ", plan)));
+            baseline.append(method).append('\t').append(micros).append('\t')
+                    .append(String.join(" | ", plan)).append('\n');
+        }
+        writeBaseline(baseline.toString());
+
+        assertTrue("Queries without a usable index (add an @Index or list the query in "
+                        + "ALLOWED_SCANS):\n" + String.join("\n", violations),
+                violations.isEmpty());
+    }
+
+    /**
+     * @return Query SQL by DAO method name, in source order.
+     */
+    private static Map<String, String> readQueries() throws IOException {
+        String source = new String(Files.readAllBytes(DAO_SOURCE.toPath()),
+                StandardCharsets.UTF_8);
+        Map<String, String> queries = new LinkedHashMap<>();
+        Matcher query = QUERY.matcher(source);
+        while (query.find()) {
+            StringBuilder sql = new StringBuilder();
+            Matcher literal = LITERAL.matcher(query.group(1));
+            while (literal.find()) {
+                sql.append(literal.group(1));
+            }
+            queries.put(query.group(2), sql.toString());
+        }
+        return queries;
+    }
+
+    /**
+     * @brief Replaces the :name parameters with placeholders and picks a value for each.
+     * @param sql The query as written in the DAO.
+     * @param args Receives the argument values.
+     * @return The SQL to execute.
+     */
+    private String bind(String sql, List<Object> args) {
+        Matcher parameter = PARAMETER.matcher(sql);
+        StringBuffer bound = new StringBuffer();
+        while (parameter.find()) {
+            if (parameter.group(1) != null) {
+                // a list parameter, expanded like Room does
+                List<String> ids = mailIds.subList(mailIds.size() / 2,
+                        mailIds.size() / 2 + IN_LIST_SIZE);
+                args.addAll(ids);
+                String[] marks = new String[ids.size()];
+                Arrays.fill(marks, "?");
+                parameter.appendReplacement(bound, "(" + String.join(",", marks) + ")");
+            } else {
+                args.add(valueFor(parameter.group(2)));
+                parameter.appendReplacement(bound, "?");
+            }
+        }
+        parameter.appendTail(bound);
+        return bound.toString();
+    }
+
+    private Object valueFor(String name) {
+        switch (name) {
+            case "id":
+            case "mailId":
+                return mailIds.get(mailIds.size() / 2);
+            case "labelId":
+                return "l0";
+            case "labels":
+                return Converters.fromStringList(List.of("l0", "l5"));
+            case "total":
+            case "unread":
+                return 0;
+            default:
+                return name;
+        }
+    }
+
+    private List<String> explain(String sql, Object[] args) {
+        List<String> plan = new ArrayList<>();
+        try (Cursor cursor = sqlite.query("EXPLAIN QUERY PLAN " + sql, args)) {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.add(cursor.getString(detail));
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * @return true for a step reading a whole table, e.g. "SCAN ServerMail" but not
+     * "SCAN ServerMail USING INDEX ...".
+     */
+    private static boolean isFullScan(String step) {
+        return step.startsWith("SCAN") && !step.contains(" USING ");
+    }
+
+    /**
+     * @brief Times a query; writes are rolled back so every run sees the same data.
+     */
+    private long medianMicros(String sql, Object[] args) {
+        long[] times = new long[RUNS];
+        boolean read = sql.trim().toUpperCase(Locale.ROOT).startsWith("SELECT");
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            if (read) {
+                try (Cursor cursor = sqlite.query(sql, args)) {
+                    while (cursor.moveToNext()) {
+                        // read every row like the DAO would
+                    }
+                }
+            } else {
+                sqlite.beginTransaction();
+                try {
+                    sqlite.execSQL(sql, args);
+                } finally {
+                    sqlite.endTransaction();
+                }
+            }
+            times[i] = (System.nanoTime() - start) / 1000;
+        }
+        Arrays.sort(times);
+        return times[RUNS / 2];
+    }
+
+    private static Map<String, Long> readBaseline() throws IOException {
+        Map<String, Long> baseline = new HashMap<>();
+        if (!BASELINE.exists()) {
+            return baseline;
+        }
+        for (String line : Files.readAllLines(BASELINE.toPath(), StandardCharsets.UTF_8)) {
+            String[] columns = line.split("\t");
+            if (columns.length >= 2) {
+                baseline.put(columns[0], Long.parseLong(columns[1]));
+            }
+        }
+        return baseline;
+    }
+
+    private static void writeBaseline(String content) throws IOException {
+        File dir = BASELINE.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        Files.write(BASELINE.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ServerMail toServerMail(SimpleMail source) {
+        ServerMail mail = new ServerMail(source.getTitle(), null, source.getFrom(),
+                source.getTo(), source.getDraft(), new ArrayList<>(source.getLabels()));
+        mail.setId(source.getId());
+        mail.setSnippet(source.getSnippet());
+        mail.setUpdatedAt(source.getUpdatedAt());
+        mail.setUserImage(source.getUserImage());
+        return mail;
+    }
+}
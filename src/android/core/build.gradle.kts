@@ -0,0 +1,24 @@
+// Plain Java mail/label domain logic, kept free of Android classes so it can be
+// benchmarked on any JVM: ./gradlew :core:jmh
+plugins {
+    `java-library`
+    `java-test-fixtures`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
+
+jmh {
+    // short runs so a CI job over all mailbox sizes stays within a few minutes
+    warmupIterations.set(2)
+    iterations.set(3)
+    fork.set(1)
+    resultFormat.set("JSON")
+}
@@ -0,0 +1,51 @@
+package com.example.bmail.core.bench;
+
+import com.example.bmail.core.CompactCodec;
+import com.example.bmail.core.fixtures.SimpleLabel;
+import com.example.bmail.core.fixtures.SimpleMail;
+import com.example.bmail.core.fixtures.SyntheticMailbox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * @brief Throughput of the compact list format, the way the app decodes a sync response.
+ */
+@State(Scope.Benchmark)
+public class CompactCodecBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int mails;
+
+    private List<SimpleMail> mailList;
+    private byte[] mailPayload;
+    private byte[] labelPayload;
+
+    @Setup
+    public void setUp() {
+        SyntheticMailbox mailbox = SyntheticMailbox.generate(mails);
+        mailList = mailbox.getMails();
+        mailPayload = CompactCodec.encodeMails(mailList);
+        labelPayload = CompactCodec.encodeLabels(mailbox.getLabels());
+    }
+
+    @Benchmark
+    public List<SimpleMail> decodeMails() throws IOException {
+        return CompactCodec.decodeMails(mailPayload, SimpleMail::new);
+    }
+
+    @Benchmark
+    public List<SimpleLabel> decodeLabels() throws IOException {
+        return CompactCodec.decodeLabels(labelPayload, SimpleLabel::new);
+    }
+
+    @Benchmark
+    public byte[] encodeMails() {
+        return CompactCodec.encodeMails(mailList);
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.bmail.core.bench;
+
+import com.example.bmail.core.CompactMailList;
+import com.example.bmail.core.MailRecord;
+import com.example.bmail.core.StringPool;
+import com.example.bmail.core.fixtures.SimpleMail;
+import com.example.bmail.core.fixtures.SyntheticMailbox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @brief Cost of compacting the list the app posts after every sync, of reading
+ * the rows of one screen back from it, and of patching it after a label change.
+ */
+@State(Scope.Benchmark)
+public class CompactMailListBenchmark {
+    // rows of the mail list on a phone screen
+    private static final int SCREEN_ROWS = 12;
+
+    @Param({"1000", "10000"})
+    public int mails;
+
+    private List<SimpleMail> mailList;
+    private CompactMailList compact;
+    private StringPool addressPool;
+    private StringPool labelPool;
+    private List<SimpleMail> relabeled;
+
+    @Setup
+    public void setUp() {
+        mailList = SyntheticMailbox.generate(mails).getMails();
+        // list endpoints send a snippet instead of the body
+        for (SimpleMail mail : mailList) {
+            mail.setBody(null);
+        }
+        addressPool = new StringPool();
+        labelPool = new StringPool();
+        compact = CompactMailList.of(mailList, addressPool, labelPool);
+        SimpleMail mail = SyntheticMailbox.generate(mails).getMails().get(mails / 2);
+        mail.setBody(null);
+        mail.setLabels(List.of("starred"));
+        relabeled = List.of(mail);
+    }
+
+    @Benchmark
+    public CompactMailList compact() {
+        // pools already filled, like every post after the first
+        return CompactMailList.of(mailList, addressPool, labelPool);
+    }
+
+    @Benchmark
+    public CompactMailList.Patch patchOneLabel() {
+        // what a star from the mail screen publishes instead of the whole list
+        return compact.patch(relabeled, Collections.emptyList(), addressPool, labelPool);
+    }
+
+    @Benchmark
+    public void bindScreen(Blackhole blackhole) {
+        for (int i = 0; i < SCREEN_ROWS; i++) {
+            MailRecord mail = compact.get(i);
+            blackhole.consume(mail.getFrom());
+            blackhole.consume(mail.getTitle());
+            blackhole.consume(mail.getSnippet());
+            blackhole.consume(mail.getUpdatedAt());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.bmail.core.bench;
+
+import com.example.bmail.core.ContactIndex;
+import com.example.bmail.core.fixtures.SimpleMail;
+import com.example.bmail.core.fixtures.SyntheticMailbox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @brief Recipient suggestions for a broad and a narrow prefix, and adding one sync page,
+ * over mailboxes with tens of thousands of distinct addresses.
+ */
+@State(Scope.Benchmark)
+public class ContactIndexBenchmark {
+    @Param({"1000", "10000", "50000"})
+    public int contacts;
+
+    private ContactIndex index;
+    private ContactIndex.Builder builder;
+    private List<SimpleMail> page;
+    private int pageNumber;
+
+    @Setup
+    public void setUp() {
+        builder = new ContactIndex.Builder();
+        for (SimpleMail mail : SyntheticMailbox.generate(contacts * 2, contacts, 5, 42L)
+                .getMails()) {
+            builder.add(mail);
+        }
+        index = builder.build();
+        page = SyntheticMailbox.generate(50, contacts, 5, 7L).getMails();
+    }
+
+    @Benchmark
+    public List<String> suggestOneLetter() {
+        // every synthetic address starts with "user"
+        return index.suggest("u", 8);
+    }
+
+    @Benchmark
+    public List<String> suggestNarrow() {
+        return index.suggest("user12", 8);
+    }
+
+    @Benchmark
+    public ContactIndex addPage() {
+        // fresh IDs, a page seen before would be skipped
+        pageNumber++;
+        for (SimpleMail mail : page) {
+            builder.add(pageNumber + "/" + mail.getId(), mail.getFrom(), mail.getTo(),
+                    new Date(mail.getUpdatedAt().getTime() + pageNumber));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.bmail.core.bench;
+
+import com.example.bmail.core.LabelDiff;
+import com.example.bmail.core.fixtures.SimpleLabel;
+import com.example.bmail.core.fixtures.SimpleMail;
+import com.example.bmail.core.fixtures.SyntheticMailbox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @brief Diffing the label selection of every mail in a mailbox against a new selection,
+ * which moves one user label in and one out.
+ */
+@State(Scope.Benchmark)
+public class LabelDiffBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int mails;
+
+    private List<SimpleMail> mailList;
+    private List<List<String>> selections;
+    private List<String> manageable;
+
+    @Setup
+    public void setUp() {
+        SyntheticMailbox mailbox = SyntheticMailbox.generate(mails);
+        mailList = mailbox.getMails();
+        manageable = new ArrayList<>();
+        for (SimpleLabel label : mailbox.getLabels()) {
+            if (label.isAttachable()) {
+                manageable.add(label.getId());
+            }
+        }
+        selections = new ArrayList<>(mailList.size());
+        for (int i = 0; i < mailList.size(); i++) {
+            List<String> selected = new ArrayList<>(mailList.get(i).getLabels());
+            selected.remove(selected.size() - 1);
+            selected.add(manageable.get(i % manageable.size()));
+            selections.add(selected);
+        }
+    }
+
+    @Benchmark
+    public void diffEveryMail(Blackhole blackhole) {
+        for (int i = 0; i < mailList.size(); i++) {
+            blackhole.consume(LabelDiff.compute(mailList.get(i).getLabels(), selections.get(i),
+                    manageable));
+        }
+    }
+}
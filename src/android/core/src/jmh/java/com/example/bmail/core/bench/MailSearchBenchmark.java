@@ -0,0 +1,40 @@
+package com.example.bmail.core.bench;
+
+import com.example.bmail.core.MailSearch;
+import com.example.bmail.core.fixtures.SimpleMail;
+import com.example.bmail.core.fixtures.SyntheticMailbox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * @brief Offline search over a whole mailbox, with a query matching most mails and one
+ * matching none (which scans every body to the end).
+ */
+@State(Scope.Benchmark)
+public class MailSearchBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int mails;
+
+    private List<SimpleMail> mailList;
+
+    @Setup
+    public void setUp() {
+        mailList = SyntheticMailbox.generate(mails).getMails();
+    }
+
+    @Benchmark
+    public List<SimpleMail> commonWord() {
+        return MailSearch.filter(mailList, SyntheticMailbox.commonWord().toUpperCase());
+    }
+
+    @Benchmark
+    public List<SimpleMail> noMatch() {
+        return MailSearch.filter(mailList, "quarterly");
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.bmail.core.bench;
+
+import com.example.bmail.core.QuoteBuilder;
+import com.example.bmail.core.fixtures.SimpleMail;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * @brief Reply bodies for threads of growing depth, each message quoting all earlier ones.
+ */
+@State(Scope.Benchmark)
+public class QuoteBuilderBenchmark {
+    @Param({"10", "100", "1000"})
+    public int messages;
+
+    private SimpleMail mail;
+
+    @Setup
+    public void setUp() {
+        // as sent by clients that quote the whole thread on every reply
+        StringBuilder thread = new StringBuilder("First message of the thread.");
+        for (int i = 1; i < messages; i++) {
+            String sender = i % 2 == 0 ? "alice" : "bob";
+            thread.insert(0, "Answer number " + i + ".\n\n"
+                    + "---------- Original Message ----------\n"
+                    + "From: " + sender + "\nSubject: Re: weekly review\n"
+                    + "To: " + sender + "@bmail.com\n\n");
+        }
+        mail = new SimpleMail();
+        mail.setFrom("alice");
+        mail.setTo(List.of("bob@bmail.com"));
+        mail.setTitle("Re: weekly review");
+        mail.setBody(thread.toString());
+    }
+
+    @Benchmark
+    public String reply() {
+        return QuoteBuilder.body(mail, QuoteBuilder.Mode.REPLY);
+    }
+
+    @Benchmark
+    public String forward() {
+        return QuoteBuilder.body(mail, QuoteBuilder.Mode.FORWARD);
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.bmail.core.bench;
+
+import com.example.bmail.core.CounterDeltas;
+import com.example.bmail.core.fixtures.SimpleMail;
+import com.example.bmail.core.fixtures.SyntheticMailbox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @brief Counter deltas of merging a full resync into the stored mailbox, the work
+ * MailDao.insertList does besides the row writes. Every stored mail is replaced, a
+ * tenth of them with a moved label, and a third of the mailbox is read.
+ */
+@State(Scope.Benchmark)
+public class SyncMergeBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int mails;
+
+    private Map<String, List<String>> stored;
+    private List<SimpleMail> incoming;
+    private Set<String> readIds;
+
+    @Setup
+    public void setUp() {
+        List<SimpleMail> mailList = SyntheticMailbox.generate(mails).getMails();
+        stored = new HashMap<>();
+        readIds = new HashSet<>();
+        incoming = new ArrayList<>(mailList.size());
+        for (int i = 0; i < mailList.size(); i++) {
+            SimpleMail mail = mailList.get(i);
+            stored.put(mail.getId(), mail.getLabels());
+            if (i % 3 == 0) {
+                readIds.add(mail.getId());
+            }
+            SimpleMail fresh = new SimpleMail();
+            fresh.setId(mail.getId());
+            List<String> labels = new ArrayList<>(mail.getLabels());
+            if (i % 10 == 0) {
+                labels.set(0, "l4");
+            }
+            fresh.setLabels(labels);
+            incoming.add(fresh);
+        }
+    }
+
+    @Benchmark
+    public Map<String, int[]> merge() {
+        return CounterDeltas.forMerge(stored, incoming, readIds).asMap();
+    }
+}
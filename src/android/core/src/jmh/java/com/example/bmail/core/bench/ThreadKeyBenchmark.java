@@ -0,0 +1,43 @@
+package com.example.bmail.core.bench;
+
+import com.example.bmail.core.ThreadKey;
+import com.example.bmail.core.fixtures.SimpleMail;
+import com.example.bmail.core.fixtures.SyntheticMailbox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+
+/**
+ * @brief Thread keys of a whole sync page and of a whole mailbox, the work MailDao
+ * does on insert instead of grouping the list on every render.
+ */
+@State(Scope.Benchmark)
+public class ThreadKeyBenchmark {
+    @Param({"50", "1000", "10000"})
+    public int mails;
+
+    private List<SimpleMail> mailList;
+
+    @Setup
+    public void setUp() {
+        mailList = SyntheticMailbox.generate(mails).getMails();
+        // every third mail answers an earlier one
+        for (int i = 0; i < mailList.size(); i += 3) {
+            SimpleMail mail = mailList.get(i);
+            mail.setTitle((i % 2 == 0 ? "Re: " : "Fwd: RE: ") + mail.getTitle());
+        }
+    }
+
+    @Benchmark
+    public void keys(Blackhole blackhole) {
+        for (SimpleMail mail : mailList) {
+            blackhole.consume(ThreadKey.of(mail));
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.example.bmail.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * @brief Codec for the compact binary list format served as application/x-bmail-compact.
+ * The format carries the same fields as the JSON DTOs (see MailRecord and LabelRecord).
+ * Integers are unsigned LEB128 varints and strings are a varint length followed by
+ * UTF-8 bytes. Senders, recipients and label ids are written once in a string table
+ * and referenced by index from the records. The encoder matches the server's
+ * utils/compactCodec.js and is used by benchmarks and tests.
+ */
+public final class CompactCodec {
+    public static final String MEDIA_TYPE = "application/x-bmail-compact";
+    public static final int KIND_MAILS = 0;
+    public static final int KIND_LABELS = 1;
+    private static final int VERSION = 1;
+
+    // mail presence bits, in field order
+    private static final int M_ID = 1;
+    private static final int M_TITLE = 1 << 1;
+    private static final int M_BODY = 1 << 2;
+    private static final int M_SNIPPET = 1 << 3;
+    private static final int M_FROM = 1 << 4;
+    private static final int M_TO = 1 << 5;
+    private static final int M_DRAFT = 1 << 6;
+    private static final int M_DRAFT_VALUE = 1 << 7;
+    private static final int M_LABELS = 1 << 8;
+    private static final int M_UPDATED_AT = 1 << 9;
+    private static final int M_USER_IMAGE = 1 << 10;
+
+    // label presence bits, in field order
+    private static final int L_ID = 1;
+    private static final int L_NAME = 1 << 1;
+    private static final int L_DEFAULT = 1 << 2;
+    private static final int L_ATTACHABLE = 1 << 3;
+    private static final int L_MAIL_IDS = 1 << 4;
+
+    private CompactCodec() {
+    }
+
+    /**
+     * @brief Decodes a mail list payload.
+     * @param data The response bytes.
+     * @param factory Creates the mail objects to fill in.
+     * @return The decoded mails.
+     * @throws IOException If the payload is malformed or not a mail list.
+     */
+    public static <M extends MutableMail> List<M> decodeMails(byte[] data, Supplier<M> factory)
+            throws IOException {
+        Reader in = new Reader(data);
+        String[] table = in.header(KIND_MAILS);
+        int count = in.count();
+        List<M> mails = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int bits = (int) in.varint();
+            M mail = factory.get();
+            if ((bits & M_ID) != 0) mail.setId(in.string());
+            if ((bits & M_TITLE) != 0) mail.setTitle(in.string());
+            if ((bits & M_BODY) != 0) mail.setBody(in.string());
+            if ((bits & M_SNIPPET) != 0) mail.setSnippet(in.string());
+            if ((bits & M_FROM) != 0) mail.setFrom(in.ref(table));
+            if ((bits & M_TO) != 0) mail.setTo(in.refList(table));
+            if ((bits & M_DRAFT) != 0) mail.setDraft((bits & M_DRAFT_VALUE) != 0);
+            if ((bits & M_LABELS) != 0) mail.setLabels(in.refList(table));
+            if ((bits & M_UPDATED_AT) != 0) mail.setUpdatedAt(new Date(in.varint()));
+            if ((bits & M_USER_IMAGE) != 0) mail.setUserImage(in.string());
+            mails.add(mail);
+        }
+        return mails;
+    }
+
+    /**
+     * @brief Decodes a label list payload.
+     * @param data The response bytes.
+     * @param factory Creates the label objects to fill in.
+     * @return The decoded labels.
+     * @throws IOException If the payload is malformed or not a label list.
+     */
+    public static <L extends MutableLabel> List<L> decodeLabels(byte[] data, Supplier<L> factory)
+            throws IOException {
+        Reader in = new Reader(data);
+        in.header(KIND_LABELS);
+        int count = in.count();
+        List<L> labels = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int bits = (int) in.varint();
+            L label = factory.get();
+            if ((bits & L_ID) != 0) label.setId(in.string());
+            if ((bits & L_NAME) != 0) label.setName(in.string());
+            label.setDefault((bits & L_DEFAULT) != 0);
+            label.setAttachable((bits & L_ATTACHABLE) != 0);
+            if ((bits & L_MAIL_IDS) != 0) {
+                int n = in.count();
+                List<String> mailIds = new ArrayList<>(n);
+                for (int j = 0; j < n; j++) {
+                    mailIds.add(in.string());
+                }
+                label.setMailIds(mailIds);
+            }
+            labels.add(label);
+        }
+        return labels;
+    }
+
+    /**
+     * @brief Encodes a mail list the same way the server does.
+     * @param mails The mails to encode.
+     * @return The payload.
+     */
+    public static byte[] encodeMails(List<? extends MailRecord> mails) {
+        StringTable table = new StringTable();
+        Writer body = new Writer();
+        body.varint(mails.size());
+        for (MailRecord m : mails) {
+            int bits = 0;
+            if (m.getId() != null) bits |= M_ID;
+            if (m.getTitle() != null) bits |= M_TITLE;
+            if (m.getBody() != null) bits |= M_BODY;
+            if (m.getSnippet() != null) bits |= M_SNIPPET;
+            if (m.getFrom() != null) bits |= M_FROM;
+            if (m.getTo() != null) bits |= M_TO;
+            if (m.getDraft() != null) bits |= M_DRAFT | (m.getDraft() ? M_DRAFT_VALUE : 0);
+            if (m.getLabels() != null) bits |= M_LABELS;
+            if (m.getUpdatedAt() != null) bits |= M_UPDATED_AT;
+            if (m.getUserImage() != null) bits |= M_USER_IMAGE;
+
+            body.varint(bits);
+            if ((bits & M_ID) != 0) body.string(m.getId());
+            if ((bits & M_TITLE) != 0) body.string(m.getTitle());
+            if ((bits & M_BODY) != 0) body.string(m.getBody());
+            if ((bits & M_SNIPPET) != 0) body.string(m.getSnippet());
+            if ((bits & M_FROM) != 0) body.varint(table.ref(m.getFrom()));
+            if ((bits & M_TO) != 0) body.refList(table, m.getTo());
+            if ((bits & M_LABELS) != 0) body.refList(table, m.getLabels());
+            if ((bits & M_UPDATED_AT) != 0) body.varint(m.getUpdatedAt().getTime());
+            if ((bits & M_USER_IMAGE) != 0) body.string(m.getUserImage());
+        }
+        return frame(KIND_MAILS, table, body);
+    }
+
+    /**
+     * @brief Encodes a label list the same way the server does.
+     * @param labels The labels to encode.
+     * @return The payload.
+     */
+    public static byte[] encodeLabels(List<? extends LabelRecord> labels) {
+        StringTable table = new StringTable();
+        Writer body = new Writer();
+        body.varint(labels.size());
+        for (LabelRecord l : labels) {
+            int bits = 0;
+            if (l.getId() != null) bits |= L_ID;
+            if (l.getName() != null) bits |= L_NAME;
+            if (l.isDefault()) bits |= L_DEFAULT;
+            if (l.isAttachable()) bits |= L_ATTACHABLE;
+            if (l.getMailIds() != null) bits |= L_MAIL_IDS;
+
+            body.varint(bits);
+            if ((bits & L_ID) != 0) body.string(l.getId());
+            if ((bits & L_NAME) != 0) body.string(l.getName());
+            if ((bits & L_MAIL_IDS) != 0) {
+                body.varint(l.getMailIds().size());
+                for (String id : l.getMailIds()) {
+                    body.string(id);
+                }
+            }
+        }
+        return frame(KIND_LABELS, table, body);
+    }
+
+    private static byte[] frame(int kind, StringTable table, Writer body) {
+        Writer head = new Writer();
+        head.write('B');
+        head.write('M');
+        head.write('C');
+        head.write(VERSION);
+        head.write(kind);
+        head.varint(table.values.size());
+        for (String value : table.values) {
+            head.string(value);
+        }
+        body.writeTo(head);
+        return head.toByteArray();
+    }
+
+    /**
+     * @brief Interns repeated strings into the table written ahead of the records.
+     */
+    private static final class StringTable {
+        private final Map<String, Integer> index = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int ref(String value) {
+            Integer i = index.get(value);
+            if (i == null) {
+                i = values.size();
+                index.put(value, i);
+                values.add(value);
+            }
+            return i;
+        }
+    }
+
+    /**
+     * @brief Byte buffer with varint and string writers.
+     */
+    private static final class Writer extends ByteArrayOutputStream {
+        Writer() {
+            super(1024);
+        }
+
+        void varint(long value) {
+            long v = Math.max(0, value);
+            while (v >= 0x80) {
+                write((int) (v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            write((int) v);
+        }
+
+        void string(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        void refList(StringTable table, List<String> values) {
+            varint(values.size());
+            for (String value : values) {
+                varint(table.ref(value));
+            }
+        }
+
+        void writeTo(Writer out) {
+            out.write(buf, 0, count);
+        }
+    }
+
+    /**
+     * @brief Sequential reader over a payload.
+     */
+    private static final class Reader {
+        private final byte[] data;
+        private int pos;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        /**
+         * @brief Checks the magic, version and kind, then reads the string table.
+         * @param expectedKind The kind of list the caller expects.
+         * @return The string table.
+         */
+        String[] header(int expectedKind) throws IOException {
+            if (data.length < 5 || data[0] != 'B' || data[1] != 'M' || data[2] != 'C') {
+                throw new IOException("Not a compact payload");
+            }
+            if (data[3] != VERSION) {
+                throw new IOException("Unsupported compact version " + data[3]);
+            }
+            if (data[4] != expectedKind) {
+                throw new IOException("Unexpected compact kind " + data[4]);
+            }
+            pos = 5;
+            String[] table = new String[count()];
+            for (int i = 0; i < table.length; i++) {
+                table[i] = string();
+            }
+            return table;
+        }
+
+        long varint() throws IOException {
+            long result = 0;
+            int shift = 0;
+            while (pos < data.length && shift < 64) {
+                byte b = data[pos++];
+                result |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+                shift += 7;
+            }
+            throw new IOException("Truncated varint");
+        }
+
+        /**
+         * @brief Reads a length or count, bounded by the remaining bytes.
+         */
+        int count() throws IOException {
+            long n = varint();
+            if (n > data.length - pos) {
+                throw new IOException("Invalid length " + n);
+            }
+            return (int) n;
+        }
+
+        String string() throws IOException {
+            int length = count();
+            String s = new String(data, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+
+        String ref(String[] table) throws IOException {
+            long index = varint();
+            if (index >= table.length) {
+                throw new IOException("Invalid string reference " + index);
+            }
+            return table[(int) index];
+        }
+
+        List<String> refList(String[] table) throws IOException {
+            int n = count();
+            List<String> values = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                values.add(ref(table));
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,531 @@
+package com.example.bmail.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * @brief An immutable list of mails stored as columns, for lists kept in memory.
+ * A list of entities holds a dozen objects per mail: the strings, an ArrayList for the
+ * recipients and one for the labels, a Date, and copies of the same addresses and
+ * label IDs in every mail. Here addresses and user images are indices into one
+ * StringPool and label IDs into another, the recipients and labels of all mails are
+ * two int arrays, the dates a long array, and the texts one UTF-8 byte array.
+ * get() returns a light view of a row; its texts are decoded when they are read, so
+ * only the rows that are shown cost strings. patch() derives the next version from a
+ * few changed mails, copying the other rows column by column without decoding them.
+ */
+public final class CompactMailList extends AbstractList<MailRecord> implements RandomAccess {
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final int NONE = -1;
+
+    // texts of a row in the blob, in this order
+    private static final int TITLE = 0;
+    private static final int BODY = 1;
+    private static final int SNIPPET = 2;
+    private static final int TEXTS = 3;
+
+    // per row flags
+    private static final byte NULL_TITLE = 1;
+    private static final byte NULL_BODY = 1 << 1;
+    private static final byte NULL_SNIPPET = 1 << 2;
+    private static final byte NULL_TO = 1 << 3;
+    private static final byte NULL_LABELS = 1 << 4;
+    private static final byte HAS_DRAFT = 1 << 5;
+    private static final byte DRAFT = (byte) (1 << 6);
+
+    private final String[] ids;
+    private final long[] updatedAt;
+    private final byte[] flags;
+    private final int[] from;
+    private final int[] userImage;
+    // the recipients of row i are toRefs[toStart[i]] until toRefs[toStart[i + 1]]
+    private final int[] toStart;
+    private final int[] toRefs;
+    private final int[] labelStart;
+    private final int[] labelRefs;
+    // start of each text of each row in text, TEXTS per row and one for the end
+    private final int[] textStart;
+    private final byte[] text;
+    private final String[] addresses;
+    private final String[] labels;
+
+    private CompactMailList(Builder builder, StringPool addressPool, StringPool labelPool) {
+        // taken after every intern, so they cover all indices of this list
+        this(builder, addressPool.snapshot(), labelPool.snapshot());
+    }
+
+    private CompactMailList(Builder builder, String[] addresses, String[] labels) {
+        int count = builder.count;
+        ids = Arrays.copyOf(builder.ids, count);
+        updatedAt = Arrays.copyOf(builder.updatedAt, count);
+        flags = Arrays.copyOf(builder.flags, count);
+        from = Arrays.copyOf(builder.from, count);
+        userImage = Arrays.copyOf(builder.userImage, count);
+        toStart = Arrays.copyOf(builder.toStart, count + 1);
+        toRefs = builder.toRefs.toArray();
+        labelStart = Arrays.copyOf(builder.labelStart, count + 1);
+        labelRefs = builder.labelRefs.toArray();
+        textStart = Arrays.copyOf(builder.textStart, count * TEXTS + 1);
+        text = Arrays.copyOf(builder.text, builder.textLength);
+        this.addresses = addresses;
+        this.labels = labels;
+    }
+
+    /**
+     * @brief Compacts a list of mails.
+     * @param mails The mails, e.g. as read from the database.
+     * @param addressPool Interns senders, recipients and user images; share it between
+     *                    lists so they share the strings.
+     * @param labelPool Interns label IDs.
+     * @return The compact copy, in the same order.
+     */
+    public static CompactMailList of(List<? extends MailRecord> mails, StringPool addressPool,
+                                     StringPool labelPool) {
+        Builder builder = new Builder(mails.size());
+        for (MailRecord mail : mails) {
+            builder.add(mail, addressPool, labelPool);
+        }
+        return new CompactMailList(builder, addressPool, labelPool);
+    }
+
+    /**
+     * @brief The next version of a list and how it differs from the previous one.
+     */
+    public static final class Patch {
+        private final CompactMailList list;
+        private final MailChangeSet changes;
+
+        Patch(CompactMailList list, MailChangeSet changes) {
+            this.list = list;
+            this.changes = changes;
+        }
+
+        public CompactMailList getList() {
+            return list;
+        }
+
+        public MailChangeSet getChanges() {
+            return changes;
+        }
+    }
+
+    /**
+     * @brief Applies stored changes to the list, newest first like MailDao.getAllMails.
+     * A changed mail keeps its row if its date is the same, otherwise it moves to where
+     * the date sorts it; a mail not in the list yet is inserted there. Only the changed
+     * mails are read as objects, the other rows are copied as they are.
+     * @param upserts The mails as they are stored now.
+     * @param removedIds The IDs of mails that are gone; removal wins over an upsert.
+     * @param addressPool The pool this list was created with.
+     * @param labelPool The pool this list was created with.
+     * @return The new list and the changes by position.
+     */
+    public Patch patch(Collection<? extends MailRecord> upserts, Collection<String> removedIds,
+                       StringPool addressPool, StringPool labelPool) {
+        Set<String> removed = new HashSet<>(removedIds);
+        Map<String, MailRecord> pending = new HashMap<>();
+        for (MailRecord mail : upserts) {
+            if (!removed.contains(mail.getId())) {
+                pending.put(mail.getId(), mail);
+            }
+        }
+        MailChangeSet.Builder changes = new MailChangeSet.Builder();
+        // rows kept in place with new content, and rows that are dropped from here
+        MailRecord[] replaced = new MailRecord[ids.length];
+        boolean[] dropped = new boolean[ids.length];
+        List<MailRecord> placed = new ArrayList<>();
+        int kept = 0;
+        for (int i = 0; i < ids.length; i++) {
+            MailRecord mail = pending.remove(ids[i]);
+            if (removed.contains(ids[i])) {
+                dropped[i] = true;
+                changes.removed(i, ids[i]);
+            } else if (mail != null && dateOf(mail) != updatedAt[i]) {
+                dropped[i] = true;
+                changes.removed(i, ids[i]);
+                placed.add(mail);
+            } else {
+                replaced[i] = mail;
+                kept++;
+            }
+        }
+        placed.addAll(pending.values());
+        placed.sort((a, b) -> compare(dateOf(a), a.getId(), dateOf(b), b.getId()));
+
+        Builder builder = new Builder(kept + placed.size());
+        int row = 0;
+        int next = 0;
+        while (row < ids.length || next < placed.size()) {
+            if (row < ids.length && dropped[row]) {
+                row++;
+                continue;
+            }
+            int position = builder.count;
+            if (next < placed.size() && (row == ids.length || compare(dateOf(placed.get(next)),
+                    placed.get(next).getId(), updatedAt[row], ids[row]) < 0)) {
+                MailRecord mail = placed.get(next++);
+                builder.add(mail, addressPool, labelPool);
+                changes.inserted(position, mail.getId());
+            } else if (replaced[row] != null) {
+                builder.add(replaced[row], addressPool, labelPool);
+                changes.changed(position, ids[row++]);
+            } else {
+                builder.copyRow(this, row++);
+            }
+        }
+        return new Patch(new CompactMailList(builder, addressPool, labelPool), changes.build());
+    }
+
+    /**
+     * @brief Keeps the first rows, e.g. those the user saw, to free the memory of the rest.
+     * @param count The number of rows to keep.
+     * @return This list if it is not longer, otherwise a copy of its first rows.
+     */
+    public CompactMailList head(int count) {
+        if (count >= ids.length) {
+            return this;
+        }
+        Builder builder = new Builder(Math.max(count, 0));
+        for (int row = 0; row < count; row++) {
+            builder.copyRow(this, row);
+        }
+        return new CompactMailList(builder, addresses, labels);
+    }
+
+    /**
+     * @return An estimate of the bytes this list holds, not counting the pooled strings
+     * it shares with other lists.
+     */
+    public long estimateBytes() {
+        long bytes = text.length + flags.length + 8L * updatedAt.length
+                + 4L * (from.length + userImage.length + toStart.length + toRefs.length
+                + labelStart.length + labelRefs.length + textStart.length);
+        for (String id : ids) {
+            // header, array and reference of a compact Latin-1 string
+            bytes += 48 + id.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return Negative if the first mail comes first: newest first, then highest ID,
+     * the order of MailDao.getAllMails.
+     */
+    private static int compare(long date, String id, long otherDate, String otherId) {
+        if (date != otherDate) {
+            return date > otherDate ? -1 : 1;
+        }
+        return otherId.compareTo(id);
+    }
+
+    private static long dateOf(MailRecord mail) {
+        return mail.getUpdatedAt() == null ? NO_DATE : mail.getUpdatedAt().getTime();
+    }
+
+    @Override
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * @return A view of the mail at the index; its strings are read on demand.
+     */
+    @Override
+    public MailRecord get(int index) {
+        if (index < 0 || index >= ids.length) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + ids.length);
+        }
+        return new Row(index);
+    }
+
+    /**
+     * @return The ID of the mail at the index, without creating a row.
+     */
+    public String getId(int index) {
+        return ids[index];
+    }
+
+    /**
+     * @return The index of the mail with the ID, or -1.
+     */
+    public int indexOfId(String id) {
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i].equals(id)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private String text(int row, int field, byte nullFlag) {
+        if ((flags[row] & nullFlag) != 0) {
+            return null;
+        }
+        int start = textStart[row * TEXTS + field];
+        int end = textStart[row * TEXTS + field + 1];
+        return new String(text, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @brief Read-only list of pooled strings, without copying them.
+     */
+    private static final class PooledList extends AbstractList<String> implements RandomAccess {
+        private final String[] pool;
+        private final int[] refs;
+        private final int start;
+        private final int end;
+
+        PooledList(String[] pool, int[] refs, int start, int end) {
+            this.pool = pool;
+            this.refs = refs;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= end - start) {
+                throw new IndexOutOfBoundsException("Index " + index + ", size " + size());
+            }
+            return pool[refs[start + index]];
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+    }
+
+    /**
+     * @brief One mail of the list. Every getter reads the columns again.
+     */
+    private final class Row implements MailRecord {
+        private final int index;
+
+        Row(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String getId() {
+            return ids[index];
+        }
+
+        @Override
+        public String getTitle() {
+            return text(index, TITLE, NULL_TITLE);
+        }
+
+        @Override
+        public String getBody() {
+            return text(index, BODY, NULL_BODY);
+        }
+
+        @Override
+        public String getSnippet() {
+            return text(index, SNIPPET, NULL_SNIPPET);
+        }
+
+        @Override
+        public String getFrom() {
+            return from[index] == NONE ? null : addresses[from[index]];
+        }
+
+        @Override
+        public List<String> getTo() {
+            if ((flags[index] & NULL_TO) != 0) {
+                return null;
+            }
+            return new PooledList(addresses, toRefs, toStart[index], toStart[index + 1]);
+        }
+
+        @Override
+        public Boolean getDraft() {
+            if ((flags[index] & HAS_DRAFT) == 0) {
+                return null;
+            }
+            return (flags[index] & DRAFT) != 0;
+        }
+
+        @Override
+        public List<String> getLabels() {
+            if ((flags[index] & NULL_LABELS) != 0) {
+                return null;
+            }
+            return new PooledList(labels, labelRefs, labelStart[index],
+                    labelStart[index + 1]);
+        }
+
+        @Override
+        public Date getUpdatedAt() {
+            return updatedAt[index] == NO_DATE ? null : new Date(updatedAt[index]);
+        }
+
+        @Override
+        public String getUserImage() {
+            return userImage[index] == NONE ? null : addresses[userImage[index]];
+        }
+    }
+
+    /**
+     * @brief Growable int array, so the references need no boxing while building.
+     */
+    private static final class IntArray {
+        private int[] values;
+        private int size;
+
+        IntArray(int capacity) {
+            values = new int[Math.max(capacity, 4)];
+        }
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * @brief Fills the columns one mail at a time.
+     */
+    private static final class Builder {
+        final String[] ids;
+        final long[] updatedAt;
+        final byte[] flags;
+        final int[] from;
+        final int[] userImage;
+        final int[] toStart;
+        final IntArray toRefs;
+        final int[] labelStart;
+        final IntArray labelRefs;
+        final int[] textStart;
+        byte[] text;
+        int textLength;
+        int count;
+
+        Builder(int capacity) {
+            ids = new String[capacity];
+            updatedAt = new long[capacity];
+            flags = new byte[capacity];
+            from = new int[capacity];
+            userImage = new int[capacity];
+            toStart = new int[capacity + 1];
+            toRefs = new IntArray(capacity * 2);
+            labelStart = new int[capacity + 1];
+            labelRefs = new IntArray(capacity * 2);
+            textStart = new int[capacity * TEXTS + 1];
+            text = new byte[Math.max(capacity * 128, 64)];
+        }
+
+        /**
+         * @brief Copies a row of a list made with the same pools, without decoding it.
+         */
+        void copyRow(CompactMailList source, int row) {
+            int i = count++;
+            ids[i] = source.ids[row];
+            updatedAt[i] = source.updatedAt[row];
+            flags[i] = source.flags[row];
+            from[i] = source.from[row];
+            userImage[i] = source.userImage[row];
+            for (int r = source.toStart[row]; r < source.toStart[row + 1]; r++) {
+                toRefs.add(source.toRefs[r]);
+            }
+            toStart[i + 1] = toRefs.size();
+            for (int r = source.labelStart[row]; r < source.labelStart[row + 1]; r++) {
+                labelRefs.add(source.labelRefs[r]);
+            }
+            labelStart[i + 1] = labelRefs.size();
+            int start = source.textStart[row * TEXTS];
+            int length = source.textStart[(row + 1) * TEXTS] - start;
+            if (textLength + length > text.length) {
+                text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+            }
+            System.arraycopy(source.text, start, text, textLength, length);
+            for (int field = 0; field < TEXTS; field++) {
+                textStart[i * TEXTS + field] =
+                        source.textStart[row * TEXTS + field] - start + textLength;
+            }
+            textLength += length;
+            textStart[(i + 1) * TEXTS] = textLength;
+        }
+
+        void add(MailRecord mail, StringPool addressPool, StringPool labelPool) {
+            int i = count++;
+            ids[i] = mail.getId();
+            updatedAt[i] = dateOf(mail);
+            byte bits = 0;
+            if (mail.getDraft() != null) {
+                bits |= HAS_DRAFT;
+                if (mail.getDraft()) {
+                    bits |= DRAFT;
+                }
+            }
+            from[i] = mail.getFrom() == null ? NONE : addressPool.intern(mail.getFrom());
+            userImage[i] = mail.getUserImage() == null ? NONE
+                    : addressPool.intern(mail.getUserImage());
+
+            List<String> to = mail.getTo();
+            if (to == null) {
+                bits |= NULL_TO;
+            } else {
+                for (String address : to) {
+                    toRefs.add(addressPool.intern(address));
+                }
+            }
+            toStart[i + 1] = toRefs.size();
+
+            List<String> mailLabels = mail.getLabels();
+            if (mailLabels == null) {
+                bits |= NULL_LABELS;
+            } else {
+                for (String label : mailLabels) {
+                    labelRefs.add(labelPool.intern(label));
+                }
+            }
+            labelStart[i + 1] = labelRefs.size();
+
+            bits |= appendText(i, TITLE, mail.getTitle(), NULL_TITLE);
+            bits |= appendText(i, BODY, mail.getBody(), NULL_BODY);
+            bits |= appendText(i, SNIPPET, mail.getSnippet(), NULL_SNIPPET);
+            flags[i] = bits;
+        }
+
+        /**
+         * @return The null flag if the value is null, 0 otherwise.
+         */
+        private byte appendText(int row, int field, String value, byte nullFlag) {
+            int slot = row * TEXTS + field;
+            textStart[slot] = textLength;
+            if (value != null) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                if (textLength + bytes.length > text.length) {
+                    text = Arrays.copyOf(text,
+                            Math.max(text.length * 2, textLength + bytes.length));
+                }
+                System.arraycopy(bytes, 0, text, textLength, bytes.length);
+                textLength += bytes.length;
+            }
+            textStart[slot + 1] = textLength;
+            return value == null ? nullFlag : 0;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.example.bmail.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @brief Addresses seen in the mailbox, ranked for recipient suggestions.
+ * An instance is an immutable snapshot: the addresses in a sorted array, so the ones
+ * starting with what was typed are found with two binary searches, and the same
+ * addresses ordered by score for prefixes that match a large part of the mailbox.
+ * Every mail adds a weight to each of its participants that doubles every HALF_LIFE_MS,
+ * so the sum ranks frequent contacts first while recent mails count more, and scores
+ * never have to be recomputed as time passes. Use a Builder to add mails; each batch
+ * gives a new snapshot, merged in linear time, that readers pick up without locking.
+ */
+public final class ContactIndex {
+    public static final ContactIndex EMPTY = new ContactIndex(new String[0], new double[0]);
+    public static final long HALF_LIFE_MS = 30L * 24 * 60 * 60 * 1000;
+    // weights are relative to this date, 2020-01-01, and stay finite until about 2100
+    private static final long EPOCH_MS = 1_577_836_800_000L;
+    // above this many matches the ranked order is scanned instead of the matches
+    private static final int RANGE_SCAN_LIMIT = 2048;
+
+    private final String[] addresses;
+    private final double[] scores;
+    // indices into addresses, highest score first
+    private final int[] ranked;
+
+    private ContactIndex(String[] addresses, double[] scores) {
+        this.addresses = addresses;
+        this.scores = scores;
+        // score and index packed in one long, so the order is a primitive sort; the log
+        // of the score fits a float, whose bits sort like ints once negatives are flipped
+        long[] order = new long[addresses.length];
+        for (int i = 0; i < order.length; i++) {
+            int bits = Float.floatToIntBits((float) Math.log(scores[i]));
+            bits ^= (bits >> 31) & 0x7fffffff;
+            order[i] = (long) bits << 32 | i;
+        }
+        Arrays.sort(order);
+        ranked = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            ranked[i] = (int) order[order.length - 1 - i];
+        }
+    }
+
+    /**
+     * @return The number of distinct addresses.
+     */
+    public int size() {
+        return addresses.length;
+    }
+
+    /**
+     * @return An estimate of the bytes held by the addresses, scores and ranking.
+     */
+    public long estimateBytes() {
+        long bytes = 12L * addresses.length;
+        for (String address : addresses) {
+            bytes += 48 + address.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * @param prefix What was typed, in any case.
+     * @param limit The maximum number of suggestions.
+     * @return The addresses starting with the prefix, highest score first.
+     */
+    public List<String> suggest(String prefix, int limit) {
+        String key = prefix == null ? "" : prefix.trim().toLowerCase(Locale.ROOT);
+        if (key.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        int from = lowerBound(key);
+        int to = upperBound(key, from);
+        if (from == to) {
+            return Collections.emptyList();
+        }
+        List<String> out = new ArrayList<>(Math.min(limit, to - from));
+        if (to - from > RANGE_SCAN_LIMIT) {
+            // a broad prefix matches densely, the best ones come early in ranked order
+            for (int i = 0; i < ranked.length && out.size() < limit; i++) {
+                int index = ranked[i];
+                if (index >= from && index < to) {
+                    out.add(addresses[index]);
+                }
+            }
+            return out;
+        }
+        // the best `limit` matches, kept sorted by score
+        int[] best = new int[Math.min(limit, to - from)];
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (count == best.length && scores[i] <= scores[best[count - 1]]) {
+                continue;
+            }
+            int at = count < best.length ? count++ : count - 1;
+            while (at > 0 && scores[best[at - 1]] < scores[i]) {
+                best[at] = best[at - 1];
+                at--;
+            }
+            best[at] = i;
+        }
+        for (int i = 0; i < count; i++) {
+            out.add(addresses[best[i]]);
+        }
+        return out;
+    }
+
+    /**
+     * @return The weight a mail sent at the given time adds to its participants.
+     */
+    static double weight(long timeMs) {
+        return Math.pow(2, (double) (timeMs - EPOCH_MS) / HALF_LIFE_MS);
+    }
+
+    /**
+     * @brief Adds score to existing addresses and inserts new ones, in sorted order.
+     * @param deltas Score to add, by normalized address.
+     * @return The new snapshot.
+     */
+    ContactIndex merge(Map<String, Double> deltas) {
+        if (deltas.isEmpty()) {
+            return this;
+        }
+        String[] keys = deltas.keySet().toArray(new String[0]);
+        Arrays.sort(keys);
+        int added = 0;
+        for (String key : keys) {
+            if (Arrays.binarySearch(addresses, key) < 0) {
+                added++;
+            }
+        }
+        String[] mergedAddresses = new String[addresses.length + added];
+        double[] mergedScores = new double[mergedAddresses.length];
+        int i = 0;
+        int k = 0;
+        int out = 0;
+        while (i < addresses.length || k < keys.length) {
+            int cmp = i == addresses.length ? 1
+                    : k == keys.length ? -1 : addresses[i].compareTo(keys[k]);
+            if (cmp < 0) {
+                mergedAddresses[out] = addresses[i];
+                mergedScores[out++] = scores[i++];
+            } else if (cmp > 0) {
+                mergedAddresses[out] = keys[k];
+                mergedScores[out++] = deltas.get(keys[k++]);
+            } else {
+                mergedAddresses[out] = addresses[i];
+                mergedScores[out++] = scores[i++] + deltas.get(keys[k++]);
+            }
+        }
+        return new ContactIndex(mergedAddresses, mergedScores);
+    }
+
+    /**
+     * @return The first index whose address is not before the prefix.
+     */
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = addresses.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (addresses[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return The first index after `from` whose address does not start with the prefix.
+     */
+    private int upperBound(String prefix, int from) {
+        int low = from;
+        int high = addresses.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (addresses[mid].startsWith(prefix)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @brief Collects mails into snapshots. Every mail counts once, however often it is
+     * stored again, e.g. when a label is refreshed. Not thread-safe.
+     */
+    public static final class Builder {
+        private Set<String> seenMailIds = new HashSet<>();
+        private final Map<String, Double> pending = new HashMap<>();
+        private ContactIndex current = EMPTY;
+
+        /**
+         * @brief Adds the participants of a mail, unless it was added before.
+         * @param mailId The ID of the mail.
+         * @param from The sender, may be null.
+         * @param to The recipients, may be null.
+         * @param updatedAt When the mail was sent, may be null.
+         */
+        public void add(String mailId, String from, List<String> to, Date updatedAt) {
+            if (mailId != null && !seenMailIds.add(mailId)) {
+                return;
+            }
+            Set<String> participants = new HashSet<>();
+            ThreadKey.addAddresses(participants, from);
+            if (to != null) {
+                for (String recipients : to) {
+                    ThreadKey.addAddresses(participants, recipients);
+                }
+            }
+            double weight = weight(updatedAt == null ? EPOCH_MS : updatedAt.getTime());
+            for (String address : participants) {
+                Double score = pending.get(address);
+                pending.put(address, score == null ? weight : score + weight);
+            }
+        }
+
+        /**
+         * @brief Adds the participants of a mail, unless it was added before.
+         */
+        public void add(MailRecord mail) {
+            add(mail.getId(), mail.getFrom(), mail.getTo(), mail.getUpdatedAt());
+        }
+
+        /**
+         * @brief Forgets every mail added so far, so they can be added again.
+         */
+        public void clear() {
+            // a new set, clear() would keep the table sized for every mail
+            seenMailIds = new HashSet<>();
+            pending.clear();
+            current = EMPTY;
+        }
+
+        /**
+         * @return An estimate of the bytes held by the last snapshot and the IDs of the
+         * mails added, which every mail costs until clear().
+         */
+        public long estimateBytes() {
+            long bytes = current.estimateBytes();
+            for (String id : seenMailIds) {
+                // the string and its hash set entry
+                bytes += 48 + id.length() + 40;
+            }
+            return bytes;
+        }
+
+        /**
+         * @return A snapshot with every mail added so far.
+         */
+        public ContactIndex build() {
+            current = current.merge(pending);
+            pending.clear();
+            return current;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.bmail.core;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @brief Accumulates the per-label changes to the total and unread counters caused by
+ * storing, relabelling or deleting mails, so they can be applied in one pass.
+ * A mail counts once per label even if the label is listed twice.
+ */
+public final class CounterDeltas {
+    // label ID -> {total delta, unread delta}
+    private final Map<String, int[]> deltas = new HashMap<>();
+
+    /**
+     * @brief Counts a mail in (sign 1) or out of (sign -1) each of its labels.
+     * @param labels The label IDs of the mail, may be null.
+     * @param sign 1 to add the mail, -1 to remove it.
+     * @param unread Whether the mail also counts as unread.
+     */
+    public void add(List<String> labels, int sign, boolean unread) {
+        if (labels == null) {
+            return;
+        }
+        for (String labelId : labels.size() > 1 ? new HashSet<>(labels) : labels) {
+            int[] delta = deltas.get(labelId);
+            if (delta == null) {
+                delta = new int[2];
+                deltas.put(labelId, delta);
+            }
+            delta[0] += sign;
+            if (unread) {
+                delta[1] += sign;
+            }
+        }
+    }
+
+    /**
+     * @brief Computes the deltas of replacing stored mails with a fresh sync page.
+     * @param stored The stored labels of the mails being replaced, by mail ID.
+     * @param incoming The mails received from the server.
+     * @param readIds The IDs of the mails already read.
+     * @return The deltas of the merge.
+     */
+    public static CounterDeltas forMerge(Map<String, List<String>> stored,
+                                         List<? extends MailRecord> incoming,
+                                         Set<String> readIds) {
+        CounterDeltas deltas = new CounterDeltas();
+        // rows being replaced no longer count with their old labels
+        for (Map.Entry<String, List<String>> old : stored.entrySet()) {
+            deltas.add(old.getValue(), -1, !readIds.contains(old.getKey()));
+        }
+        for (MailRecord mail : incoming) {
+            deltas.add(mail.getLabels(), 1, !readIds.contains(mail.getId()));
+        }
+        return deltas;
+    }
+
+    /**
+     * @return Map from label ID to {total delta, unread delta}, including zero entries.
+     */
+    public Map<String, int[]> asMap() {
+        return deltas;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.bmail.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @brief The label IDs to attach to and detach from a mail when the user changes its
+ * selection, so only the labels that actually changed are sent to the server.
+ */
+public final class LabelDiff {
+    private final List<String> added;
+    private final List<String> removed;
+
+    private LabelDiff(List<String> added, List<String> removed) {
+        this.added = added;
+        this.removed = removed;
+    }
+
+    /**
+     * @brief Compares the current labels of a mail with the user's selection.
+     * @param current The label IDs the mail has now, may be null.
+     * @param selected The label IDs the user selected, may be null.
+     * @param manageable The label IDs the user can change, or null for all of them.
+     * Labels outside this set (e.g. inbox or sent) are never removed.
+     * @return The labels to add and to remove, each in input order without duplicates.
+     */
+    public static LabelDiff compute(Collection<String> current, Collection<String> selected,
+                                    Collection<String> manageable) {
+        Set<String> currentSet = current == null ? Set.of() : new HashSet<>(current);
+        Set<String> selectedSet = selected == null ? Set.of() : new HashSet<>(selected);
+        Set<String> manageableSet = manageable == null ? null : new HashSet<>(manageable);
+
+        List<String> added = new ArrayList<>();
+        if (selected != null) {
+            Set<String> seen = new HashSet<>();
+            for (String id : selected) {
+                if (!currentSet.contains(id) && seen.add(id)) {
+                    added.add(id);
+                }
+            }
+        }
+        List<String> removed = new ArrayList<>();
+        if (current != null) {
+            Set<String> seen = new HashSet<>();
+            for (String id : current) {
+                if (!selectedSet.contains(id)
+                        && (manageableSet == null || manageableSet.contains(id))
+                        && seen.add(id)) {
+                    removed.add(id);
+                }
+            }
+        }
+        return new LabelDiff(added, removed);
+    }
+
+    public List<String> getAdded() {
+        return added;
+    }
+
+    public List<String> getRemoved() {
+        return removed;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty();
+    }
+}
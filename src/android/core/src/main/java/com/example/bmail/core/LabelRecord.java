@@ -0,0 +1,18 @@
+package com.example.bmail.core;
+
+import java.util.List;
+
+/**
+ * @brief Read access to a label, implemented by the app's entity (Label).
+ */
+public interface LabelRecord {
+    String getId();
+
+    String getName();
+
+    boolean isDefault();
+
+    boolean isAttachable();
+
+    List<String> getMailIds();
+}
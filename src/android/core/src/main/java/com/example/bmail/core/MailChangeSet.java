@@ -0,0 +1,151 @@
+package com.example.bmail.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @brief What changed between two versions of a mail list, by position.
+ * Removed positions refer to the old list, inserted and changed ones to the new list.
+ * A mail whose place in the order changed, e.g. because it was updated, is removed
+ * and inserted. dispatchTo replays the changes in an order where every position is
+ * valid at the time it is reported, the order RecyclerView expects them in.
+ */
+public final class MailChangeSet {
+    /**
+     * @brief Receives the changes one position at a time, e.g. a list adapter.
+     */
+    public interface Target {
+        void onRemoved(int position);
+
+        void onInserted(int position);
+
+        void onChanged(int position);
+    }
+
+    private final int[] removedPositions;
+    private final List<String> removedIds;
+    private final int[] insertedPositions;
+    private final List<String> insertedIds;
+    private final int[] changedPositions;
+    private final List<String> changedIds;
+
+    MailChangeSet(int[] removedPositions, List<String> removedIds, int[] insertedPositions,
+                  List<String> insertedIds, int[] changedPositions, List<String> changedIds) {
+        this.removedPositions = removedPositions;
+        this.removedIds = Collections.unmodifiableList(removedIds);
+        this.insertedPositions = insertedPositions;
+        this.insertedIds = Collections.unmodifiableList(insertedIds);
+        this.changedPositions = changedPositions;
+        this.changedIds = Collections.unmodifiableList(changedIds);
+    }
+
+    /**
+     * @return true if the two lists are the same.
+     */
+    public boolean isEmpty() {
+        return removedPositions.length == 0 && insertedPositions.length == 0
+                && changedPositions.length == 0;
+    }
+
+    /**
+     * @return The number of positions reported by dispatchTo.
+     */
+    public int size() {
+        return removedPositions.length + insertedPositions.length + changedPositions.length;
+    }
+
+    /**
+     * @return The IDs of the mails removed from their old position.
+     */
+    public List<String> getRemovedIds() {
+        return removedIds;
+    }
+
+    /**
+     * @return The IDs of the mails inserted at a new position.
+     */
+    public List<String> getInsertedIds() {
+        return insertedIds;
+    }
+
+    /**
+     * @return The IDs of the mails changed in place.
+     */
+    public List<String> getChangedIds() {
+        return changedIds;
+    }
+
+    /**
+     * @return true if the mail is gone from the list, not only moved.
+     */
+    public boolean isRemoved(String id) {
+        return removedIds.contains(id) && !insertedIds.contains(id);
+    }
+
+    /**
+     * @return true if the mail is in the new list with new content.
+     */
+    public boolean isUpdated(String id) {
+        return changedIds.contains(id) || insertedIds.contains(id);
+    }
+
+    /**
+     * @brief Reports removals from the last position down, then insertions from the
+     * first position up, then changes.
+     */
+    public void dispatchTo(Target target) {
+        for (int i = removedPositions.length - 1; i >= 0; i--) {
+            target.onRemoved(removedPositions[i]);
+        }
+        for (int position : insertedPositions) {
+            target.onInserted(position);
+        }
+        for (int position : changedPositions) {
+            target.onChanged(position);
+        }
+    }
+
+    /**
+     * @brief Collects positions while a list is patched, in increasing order.
+     */
+    static final class Builder {
+        private final List<String> removedIds = new ArrayList<>();
+        private final List<String> insertedIds = new ArrayList<>();
+        private final List<String> changedIds = new ArrayList<>();
+        private int[] removed = new int[4];
+        private int[] inserted = new int[4];
+        private int[] changed = new int[4];
+
+        void removed(int position, String id) {
+            removed = add(removed, removedIds.size(), position);
+            removedIds.add(id);
+        }
+
+        void inserted(int position, String id) {
+            inserted = add(inserted, insertedIds.size(), position);
+            insertedIds.add(id);
+        }
+
+        void changed(int position, String id) {
+            changed = add(changed, changedIds.size(), position);
+            changedIds.add(id);
+        }
+
+        MailChangeSet build() {
+            return new MailChangeSet(
+                    Arrays.copyOf(removed, removedIds.size()), removedIds,
+                    Arrays.copyOf(inserted, insertedIds.size()), insertedIds,
+                    Arrays.copyOf(changed, changedIds.size()), changedIds);
+        }
+
+        private static int[] add(int[] values, int size, int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size] = value;
+            return values;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.bmail.core;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @brief Read access to a mail, implemented by the app's entity (ServerMail).
+ * Mirrors the fields of the mail DTO the server sends.
+ */
+public interface MailRecord {
+    String getId();
+
+    String getTitle();
+
+    String getBody();
+
+    // short preview sent by list endpoints instead of the body
+    String getSnippet();
+
+    String getFrom();
+
+    List<String> getTo();
+
+    Boolean getDraft();
+
+    // label IDs
+    List<String> getLabels();
+
+    Date getUpdatedAt();
+
+    String getUserImage();
+}
@@ -0,0 +1,60 @@
+package com.example.bmail.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * @brief Local search over stored mails, used when the server cannot be reached.
+ * Matches the server's search: a case-insensitive substring of the title or the body.
+ * Mails stored as summaries have no body, so their snippet is searched instead.
+ */
+public final class MailSearch {
+
+    private MailSearch() {
+    }
+
+    /**
+     * @param mails The mails to search, in display order.
+     * @param query The text to look for.
+     * @return The matching mails in the same order, or all of them for a blank query.
+     */
+    public static <M extends MailRecord> List<M> filter(List<M> mails, String query) {
+        if (query == null || query.trim().isEmpty()) {
+            return new ArrayList<>(mails);
+        }
+        String needle = query.trim().toLowerCase(Locale.ROOT);
+        List<M> result = new ArrayList<>();
+        for (M mail : mails) {
+            if (matches(mail, needle)) {
+                result.add(mail);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param mail The mail to check.
+     * @param needle The query, already lower-cased.
+     * @return true if the title, body or snippet contains the query.
+     */
+    static boolean matches(MailRecord mail, String needle) {
+        return contains(mail.getTitle(), needle)
+                || (mail.getBody() != null ? contains(mail.getBody(), needle)
+                : contains(mail.getSnippet(), needle));
+    }
+
+    private static boolean contains(String text, String needle) {
+        if (text == null || text.length() < needle.length()) {
+            return false;
+        }
+        // regionMatches avoids lower-casing a copy of every body
+        int last = text.length() - needle.length();
+        for (int i = 0; i <= last; i++) {
+            if (text.regionMatches(true, i, needle, 0, needle.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.bmail.core;
+
+import java.util.List;
+
+/**
+ * @brief A label the core logic can fill in, e.g. while decoding a list payload.
+ */
+public interface MutableLabel extends LabelRecord {
+    void setId(String id);
+
+    void setName(String name);
+
+    void setDefault(boolean isDefault);
+
+    void setAttachable(boolean attachable);
+
+    void setMailIds(List<String> mailIds);
+}
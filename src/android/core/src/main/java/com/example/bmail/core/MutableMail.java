@@ -0,0 +1,29 @@
+package com.example.bmail.core;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @brief A mail the core logic can fill in, e.g. while decoding a list payload.
+ */
+public interface MutableMail extends MailRecord {
+    void setId(String id);
+
+    void setTitle(String title);
+
+    void setBody(String body);
+
+    void setSnippet(String snippet);
+
+    void setFrom(String from);
+
+    void setTo(List<String> to);
+
+    void setDraft(Boolean draft);
+
+    void setLabels(List<String> labels);
+
+    void setUpdatedAt(Date updatedAt);
+
+    void setUserImage(String userImage);
+}
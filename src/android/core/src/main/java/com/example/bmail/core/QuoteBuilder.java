@@ -0,0 +1,165 @@
+package com.example.bmail.core;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @brief Builds the prefilled fields of a reply or forward from the original mail.
+ * The quoted body is written in one pass into a single StringBuilder. Earlier messages
+ * quoted inside the body (our own "---------- ... Message ----------" blocks or lines
+ * starting with '>') are kept up to MAX_NESTED_QUOTES levels; deeper ones are replaced
+ * by one line saying how many were left out. The quote is also cut at MAX_QUOTE_CHARS
+ * so a huge thread stays quick to show and edit.
+ */
+public final class QuoteBuilder {
+    public static final int MAX_NESTED_QUOTES = 3;
+    public static final int MAX_QUOTE_CHARS = 64 * 1024;
+    static final String REPLY_HEADER = "---------- Original Message ----------";
+    static final String FORWARD_HEADER = "---------- Forwarded Message ----------";
+
+    /**
+     * @brief What the new mail does with the original one.
+     */
+    public enum Mode {
+        REPLY, REPLY_ALL, FORWARD
+    }
+
+    private QuoteBuilder() {
+    }
+
+    /**
+     * @param mail The original mail.
+     * @param mode The kind of response.
+     * @return The recipients, comma separated, empty for a forward.
+     */
+    public static String recipients(MailRecord mail, Mode mode) {
+        if (mode == Mode.FORWARD) {
+            return "";
+        }
+        // a set so nobody is listed twice
+        Set<String> recipients = new LinkedHashSet<>();
+        if (mail.getFrom() != null) {
+            recipients.add(mail.getFrom());
+        }
+        if (mode == Mode.REPLY_ALL && mail.getTo() != null) {
+            recipients.addAll(mail.getTo());
+        }
+        return String.join(", ", recipients);
+    }
+
+    /**
+     * @param mail The original mail.
+     * @param mode The kind of response.
+     * @return The subject with its "Re: " or "Fwd: " prefix.
+     */
+    public static String subject(MailRecord mail, Mode mode) {
+        String prefix = mode == Mode.FORWARD ? "Fwd: " : "Re: ";
+        String title = mail.getTitle() == null ? "" : mail.getTitle();
+        // replying to a reply keeps a single prefix
+        if (title.regionMatches(true, 0, prefix, 0, prefix.length())) {
+            return title;
+        }
+        return prefix + title;
+    }
+
+    /**
+     * @param mail The original mail, with its full body.
+     * @param mode The kind of response.
+     * @return The body of the new mail: two empty lines for the answer, then the quote.
+     */
+    public static String body(MailRecord mail, Mode mode) {
+        String original = mail.getBody() == null ? "" : mail.getBody();
+        StringBuilder out = new StringBuilder(
+                Math.min(original.length(), MAX_QUOTE_CHARS) + 256);
+        out.append("\n\n").append(mode == Mode.FORWARD ? FORWARD_HEADER : REPLY_HEADER)
+                .append('\n');
+        out.append("From: ").append(nullToEmpty(mail.getFrom())).append('\n');
+        out.append("Subject: ").append(nullToEmpty(mail.getTitle())).append('\n');
+        out.append("To: ");
+        List<String> to = mail.getTo();
+        if (to != null) {
+            for (int i = 0; i < to.size(); i++) {
+                if (i > 0) out.append(", ");
+                out.append(to.get(i));
+            }
+        }
+        out.append("\n\n");
+        appendQuoted(out, original);
+        return out.toString();
+    }
+
+    /**
+     * @brief Copies the original body line by line, dropping what is nested too deep.
+     */
+    static void appendQuoted(StringBuilder out, String body) {
+        int limit = out.length() + MAX_QUOTE_CHARS;
+        int headers = 0;
+        int hiddenHeaders = 0;
+        boolean hiddenLines = false;
+        int length = body.length();
+        int start = 0;
+        while (start < length) {
+            int end = body.indexOf('\n', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (isHeader(body, start, end)) {
+                headers++;
+            }
+            boolean tooDeep = headers > MAX_NESTED_QUOTES
+                    || quoteDepth(body, start, end) > MAX_NESTED_QUOTES;
+            if (tooDeep) {
+                if (isHeader(body, start, end)) {
+                    hiddenHeaders++;
+                }
+                hiddenLines = true;
+            } else if (out.length() + (end - start) >= limit) {
+                out.append("\n[Quoted text truncated]");
+                return;
+            } else {
+                out.append(body, start, end);
+                if (end < length) {
+                    out.append('\n');
+                }
+            }
+            start = end + 1;
+        }
+        if (hiddenHeaders > 0) {
+            out.append("\n[").append(hiddenHeaders)
+                    .append(hiddenHeaders == 1 ? " earlier message" : " earlier messages")
+                    .append(" not shown]");
+        } else if (hiddenLines) {
+            out.append("\n[Deeper quotes not shown]");
+        }
+    }
+
+    private static boolean isHeader(String body, int start, int end) {
+        return matchesLine(body, start, end, REPLY_HEADER)
+                || matchesLine(body, start, end, FORWARD_HEADER);
+    }
+
+    private static boolean matchesLine(String body, int start, int end, String line) {
+        return end - start == line.length() && body.startsWith(line, start);
+    }
+
+    /**
+     * @return The number of leading '>' of a line, spaces between them allowed.
+     */
+    private static int quoteDepth(String body, int start, int end) {
+        int depth = 0;
+        for (int i = start; i < end; i++) {
+            char c = body.charAt(i);
+            if (c == '>') {
+                depth++;
+            } else if (c != ' ') {
+                break;
+            }
+        }
+        return depth;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
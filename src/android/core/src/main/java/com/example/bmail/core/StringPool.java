@@ -0,0 +1,59 @@
+package com.example.bmail.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @brief Interns strings that repeat across mails, such as addresses and label IDs,
+ * and numbers them in the order they were first seen.
+ * Lists keep the small ints instead of the strings, so a sender that wrote a thousand
+ * mails is one String in memory. Entries are only ever appended, so a table returned
+ * by snapshot() stays valid for the indices it had, and readers need no lock.
+ * Thread-safe.
+ */
+public final class StringPool {
+    private final Map<String, Integer> indices = new HashMap<>();
+    private String[] table = new String[64];
+    private int size;
+
+    /**
+     * @param value The string, not null.
+     * @return Its index in the pool, added if it was not there yet.
+     */
+    public synchronized int intern(String value) {
+        Integer index = indices.get(value);
+        if (index != null) {
+            return index;
+        }
+        if (size == table.length) {
+            // a new array, so earlier snapshots keep theirs
+            table = Arrays.copyOf(table, size * 2);
+        }
+        table[size] = value;
+        indices.put(value, size);
+        return size++;
+    }
+
+    /**
+     * @return The index of the string, or -1 if it was never interned.
+     */
+    public synchronized int indexOf(String value) {
+        Integer index = indices.get(value);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return The number of distinct strings.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return The strings by index, valid for every index handed out so far.
+     */
+    synchronized String[] snapshot() {
+        return table;
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.bmail.core;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+
+/**
+ * @brief Computes the conversation a mail belongs to.
+ * Mails are in the same conversation when their subjects are equal once "Re: " and
+ * "Fwd: " prefixes, case and repeated spaces are ignored, and when the same people
+ * take part, sender and recipients together. A reply from bob to alice therefore joins
+ * the mail alice sent to bob. The key is computed once per stored mail, so grouping a
+ * list never compares mails with each other.
+ */
+public final class ThreadKey {
+    // the server stores bare usernames and adds this domain when sending them,
+    // see filterMailForOutput in mailServices.js
+    static final String DEFAULT_DOMAIN = "bmail.com";
+    private static final String[] PREFIXES = {"re:", "fwd:", "fw:"};
+    // between the subject and the participants, cannot be typed in either
+    private static final char SEPARATOR = '\u001f';
+
+    private ThreadKey() {
+    }
+
+    /**
+     * @param mail The mail.
+     * @return The key of its conversation.
+     */
+    public static String of(MailRecord mail) {
+        return of(mail.getTitle(), mail.getFrom(), mail.getTo());
+    }
+
+    /**
+     * @param title The subject.
+     * @param from The sender, may be null for a draft.
+     * @param to The recipients, may be null.
+     * @return The key of the conversation.
+     */
+    public static String of(String title, String from, List<String> to) {
+        return normalizeSubject(title) + SEPARATOR + participants(from, to);
+    }
+
+    /**
+     * @return The subject without reply and forward prefixes, lower case, with single spaces.
+     */
+    public static String normalizeSubject(String title) {
+        if (title == null) {
+            return "";
+        }
+        String subject = title.trim();
+        boolean stripped = true;
+        while (stripped) {
+            stripped = false;
+            for (String prefix : PREFIXES) {
+                if (subject.regionMatches(true, 0, prefix, 0, prefix.length())) {
+                    subject = subject.substring(prefix.length()).trim();
+                    stripped = true;
+                }
+            }
+        }
+        StringBuilder out = new StringBuilder(subject.length());
+        boolean space = false;
+        for (int i = 0; i < subject.length(); i++) {
+            char c = subject.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+            if (space) {
+                out.append(' ');
+                space = false;
+            }
+            out.append(c);
+        }
+        return out.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return The sorted, distinct addresses of the sender and the recipients.
+     */
+    static String participants(String from, List<String> to) {
+        TreeSet<String> addresses = new TreeSet<>();
+        addAddresses(addresses, from);
+        if (to != null) {
+            for (String recipients : to) {
+                addAddresses(addresses, recipients);
+            }
+        }
+        return String.join(",", addresses);
+    }
+
+    /**
+     * @brief Adds every address of a recipient field, which may hold several separated
+     * by spaces, commas or semicolons like the server accepts them.
+     */
+    static void addAddresses(Collection<String> addresses, String field) {
+        if (field == null) {
+            return;
+        }
+        for (String token : field.split("[\\s,;]+")) {
+            if (!token.isEmpty()) {
+                addresses.add(normalizeAddress(token));
+            }
+        }
+    }
+
+    /**
+     * @return The address in lower case with the default domain, so "Bob", "bob@bmail"
+     * and "bob@bmail.com" are the same person.
+     */
+    static String normalizeAddress(String address) {
+        String lower = address.toLowerCase(Locale.ROOT);
+        if (lower.indexOf('@') < 0) {
+            return lower + '@' + DEFAULT_DOMAIN;
+        }
+        if (lower.endsWith("@bmail")) {
+            return lower + ".com";
+        }
+        return lower;
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.bmail.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import com.example.bmail.core.fixtures.SimpleLabel;
+import com.example.bmail.core.fixtures.SimpleMail;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @brief Decodes compact/mails.bin, which the server's utils/compactCodec.js encoded
+ * from compact/mails.json (see tests/compactCodec.test.js of the web server), so the
+ * two codecs cannot drift apart unnoticed.
+ */
+public class CompactCodecTest {
+
+    @Test
+    public void decodeMails_readsWhatTheServerEncoded() throws IOException {
+        List<SimpleMail> mails = CompactCodec.decodeMails(fixture(), SimpleMail::new);
+
+        assertEquals(4, mails.size());
+        SimpleMail full = mails.get(0);
+        assertEquals("66e1f0c2a1b2c3d4e5f60718", full.getId());
+        assertEquals("Überweisung 💸 — 請求書", full.getTitle());
+        assertEquals("Grüße aus Zürich\nЖдём ответа 🙂", full.getBody());
+        assertEquals("Grüße aus Zürich Ждём ответа 🙂", full.getSnippet());
+        assertEquals("zoë@bmail.com", full.getFrom());
+        assertEquals(List.of("bob@bmail.com", "zoë@bmail.com"), full.getTo());
+        assertFalse(full.getDraft());
+        assertEquals(List.of("66e1f0c2a1b2c3d4e5f60001", "66e1f0c2a1b2c3d4e5f60002"),
+                full.getLabels());
+        // 2025-03-01T09:30:00.123Z
+        assertEquals(1_740_821_400_123L, full.getUpdatedAt().getTime());
+        assertEquals("/uploads/zoë.png", full.getUserImage());
+    }
+
+    @Test
+    public void decodeMails_keepsAbsentFieldsNull() throws IOException {
+        SimpleMail idOnly = CompactCodec.decodeMails(fixture(), SimpleMail::new).get(1);
+
+        assertEquals("66e1f0c2a1b2c3d4e5f60719", idOnly.getId());
+        assertNull(idOnly.getTitle());
+        assertNull(idOnly.getBody());
+        assertNull(idOnly.getSnippet());
+        assertNull(idOnly.getFrom());
+        assertNull(idOnly.getTo());
+        assertNull(idOnly.getDraft());
+        assertNull(idOnly.getLabels());
+        assertNull(idOnly.getUpdatedAt());
+        assertNull(idOnly.getUserImage());
+    }
+
+    @Test
+    public void decodeMails_keepsEmptyValuesApartFromNull() throws IOException {
+        SimpleMail empty = CompactCodec.decodeMails(fixture(), SimpleMail::new).get(2);
+
+        assertEquals("", empty.getTitle());
+        assertEquals("", empty.getBody());
+        assertNull(empty.getSnippet());
+        assertEquals(List.of(), empty.getTo());
+        assertEquals(List.of(), empty.getLabels());
+        assertTrue(empty.getDraft());
+        assertEquals(new Date(0), empty.getUpdatedAt());
+    }
+
+    @Test
+    public void decodeMails_readsMultiByteVarints() throws IOException {
+        SimpleMail large = CompactCodec.decodeMails(fixture(), SimpleMail::new).get(3);
+
+        // string table references above 127, a body length above 16383 bytes and a
+        // date that needs 7 varint bytes
+        assertEquals(200, large.getTo().size());
+        assertEquals("r000@bmail.com", large.getTo().get(0));
+        assertEquals("r199@bmail.com", large.getTo().get(199));
+        assertEquals(9000, large.getBody().length());
+        assertTrue(large.getBody().chars().allMatch(c -> c == 'ж'));
+        // 9999-12-31T23:59:59.999Z
+        assertEquals(253_402_300_799_999L, large.getUpdatedAt().getTime());
+        assertEquals("bob@bmail.com", large.getFrom());
+    }
+
+    @Test
+    public void encodeMails_matchesTheServerByteForByte() throws IOException {
+        byte[] server = fixture();
+        List<SimpleMail> mails = CompactCodec.decodeMails(server, SimpleMail::new);
+
+        assertArrayEquals(server, CompactCodec.encodeMails(mails));
+    }
+
+    @Test
+    public void labels_roundTrip() throws IOException {
+        SimpleLabel inbox = new SimpleLabel();
+        inbox.setId("l0");
+        inbox.setName("Inbox");
+        inbox.setDefault(true);
+        inbox.setMailIds(List.of("m1", "m2"));
+        SimpleLabel work = new SimpleLabel();
+        work.setId("l1");
+        work.setName("Wörk");
+        work.setAttachable(true);
+        work.setMailIds(List.of());
+
+        List<SimpleLabel> labels = CompactCodec.decodeLabels(
+                CompactCodec.encodeLabels(List.of(inbox, work)), SimpleLabel::new);
+
+        assertEquals(2, labels.size());
+        assertEquals("Inbox", labels.get(0).getName());
+        assertTrue(labels.get(0).isDefault());
+        assertFalse(labels.get(0).isAttachable());
+        assertEquals(List.of("m1", "m2"), labels.get(0).getMailIds());
+        assertEquals("Wörk", labels.get(1).getName());
+        assertFalse(labels.get(1).isDefault());
+        assertTrue(labels.get(1).isAttachable());
+        assertEquals(List.of(), labels.get(1).getMailIds());
+    }
+
+    @Test
+    public void decode_rejectsMalformedPayloads() throws IOException {
+        byte[] mails = fixture();
+        byte[] labels = CompactCodec.encodeLabels(List.of());
+
+        assertThrows(IOException.class, () -> CompactCodec.decodeMails(
+                "[]".getBytes(StandardCharsets.UTF_8), SimpleMail::new));
+        assertThrows(IOException.class, () -> CompactCodec.decodeMails(
+                new byte[0], SimpleMail::new));
+        // a label list where mails are expected and the other way round
+        assertThrows(IOException.class, () -> CompactCodec.decodeMails(labels, SimpleMail::new));
+        assertThrows(IOException.class, () -> CompactCodec.decodeLabels(mails, SimpleLabel::new));
+        byte[] version = mails.clone();
+        version[3]++;
+        assertThrows(IOException.class, () -> CompactCodec.decodeMails(version, SimpleMail::new));
+        // cut inside the 9000 character body
+        byte[] truncated = Arrays.copyOf(mails, mails.length - 1000);
+        assertThrows(IOException.class,
+                () -> CompactCodec.decodeMails(truncated, SimpleMail::new));
+    }
+
+    private static byte[] fixture() throws IOException {
+        try (InputStream in = CompactCodecTest.class.getResourceAsStream("/compact/mails.bin")) {
+            if (in == null) {
+                throw new IOException("compact/mails.bin is missing from the test resources");
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
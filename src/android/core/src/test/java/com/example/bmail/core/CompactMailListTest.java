@@ -0,0 +1,141 @@
+package com.example.bmail.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.example.bmail.core.fixtures.SimpleMail;
+import com.example.bmail.core.fixtures.SyntheticMailbox;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class CompactMailListTest {
+    private final StringPool addressPool = new StringPool();
+    private final StringPool labelPool = new StringPool();
+
+    @Test
+    public void of_keepsEveryField() {
+        List<SimpleMail> mails = SyntheticMailbox.generate(20).getMails();
+        CompactMailList list = CompactMailList.of(mails, addressPool, labelPool);
+
+        assertEquals(mails.size(), list.size());
+        for (int i = 0; i < mails.size(); i++) {
+            SimpleMail mail = mails.get(i);
+            MailRecord row = list.get(i);
+            assertEquals(mail.getId(), row.getId());
+            assertEquals(mail.getTitle(), row.getTitle());
+            assertEquals(mail.getBody(), row.getBody());
+            assertEquals(mail.getSnippet(), row.getSnippet());
+            assertEquals(mail.getFrom(), row.getFrom());
+            assertEquals(mail.getTo(), row.getTo());
+            assertEquals(mail.getDraft(), row.getDraft());
+            assertEquals(mail.getLabels(), row.getLabels());
+            assertEquals(mail.getUpdatedAt(), row.getUpdatedAt());
+            assertEquals(mail.getUserImage(), row.getUserImage());
+        }
+    }
+
+    @Test
+    public void of_keepsNulls() {
+        SimpleMail bare = new SimpleMail();
+        bare.setId("a");
+        MailRecord row = CompactMailList.of(List.of(bare), addressPool, labelPool).get(0);
+
+        assertNull(row.getTitle());
+        assertNull(row.getBody());
+        assertNull(row.getTo());
+        assertNull(row.getDraft());
+        assertNull(row.getLabels());
+        assertNull(row.getUpdatedAt());
+    }
+
+    @Test
+    public void patch_changesInPlaceMovesAndRemoves() {
+        // e, d, c, b, a from newest to oldest
+        CompactMailList list = CompactMailList.of(List.of(
+                mail("e", 50), mail("d", 40), mail("c", 30), mail("b", 20), mail("a", 10)),
+                addressPool, labelPool);
+
+        SimpleMail relabeled = mail("d", 40, "starred");
+        SimpleMail updated = mail("b", 60);
+        SimpleMail received = mail("f", 35);
+        CompactMailList.Patch patch = list.patch(List.of(relabeled, updated, received),
+                List.of("a"), addressPool, labelPool);
+
+        assertEquals(List.of("b", "e", "d", "f", "c"), ids(patch.getList()));
+        assertEquals(List.of("starred"), patch.getList().get(2).getLabels());
+        MailChangeSet changes = patch.getChanges();
+        assertEquals(List.of("b", "a"), changes.getRemovedIds());
+        assertEquals(List.of("b", "f"), changes.getInsertedIds());
+        assertEquals(List.of("d"), changes.getChangedIds());
+        assertTrue(changes.isRemoved("a"));
+        assertTrue(changes.isUpdated("b"));
+    }
+
+    @Test
+    public void patch_removalWinsOverAnUpsert() {
+        CompactMailList list = CompactMailList.of(List.of(mail("b", 20), mail("a", 10)),
+                addressPool, labelPool);
+
+        CompactMailList.Patch patch = list.patch(List.of(mail("a", 10, "starred"), mail("c", 30)),
+                List.of("a", "c"), addressPool, labelPool);
+
+        assertEquals(List.of("b"), ids(patch.getList()));
+        assertEquals(List.of("a"), patch.getChanges().getRemovedIds());
+        assertTrue(patch.getChanges().getInsertedIds().isEmpty());
+    }
+
+    @Test
+    public void patch_breaksDateTiesByHighestId() {
+        CompactMailList list = CompactMailList.of(List.of(mail("c", 10), mail("a", 10)),
+                addressPool, labelPool);
+
+        CompactMailList.Patch patch = list.patch(List.of(mail("b", 10)), List.of(),
+                addressPool, labelPool);
+
+        assertEquals(List.of("c", "b", "a"), ids(patch.getList()));
+    }
+
+    @Test
+    public void head_keepsTheFirstRows() {
+        List<SimpleMail> mails = SyntheticMailbox.generate(10).getMails();
+        CompactMailList list = CompactMailList.of(mails, addressPool, labelPool);
+
+        CompactMailList head = list.head(4);
+
+        assertEquals(4, head.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(mails.get(i).getId(), head.getId(i));
+            assertEquals(mails.get(i).getBody(), head.get(i).getBody());
+            assertEquals(mails.get(i).getLabels(), head.get(i).getLabels());
+        }
+        assertSame(list, list.head(10));
+        assertSame(list, list.head(11));
+        assertEquals(0, list.head(0).size());
+        assertEquals(0, list.head(-1).size());
+    }
+
+    private static SimpleMail mail(String id, long minute, String... labels) {
+        SimpleMail mail = new SimpleMail();
+        mail.setId(id);
+        mail.setTitle("Mail " + id);
+        mail.setFrom("alice@bmail.com");
+        mail.setTo(List.of("bob@bmail.com"));
+        mail.setLabels(List.of(labels));
+        mail.setUpdatedAt(new Date(minute * 60_000L));
+        return mail;
+    }
+
+    private static List<String> ids(CompactMailList list) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < list.size(); i++) {
+            ids.add(list.getId(i));
+        }
+        return ids;
+    }
+}
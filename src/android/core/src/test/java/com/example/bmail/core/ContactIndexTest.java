@@ -0,0 +1,90 @@
+package com.example.bmail.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+public class ContactIndexTest {
+    private static final long NOW = 1_740_821_400_000L;
+
+    @Test
+    public void suggest_ranksFrequentContactsFirst() {
+        ContactIndex.Builder builder = new ContactIndex.Builder();
+        builder.add("m1", "bob", List.of("me"), new Date(NOW));
+        builder.add("m2", "bella", List.of("me"), new Date(NOW));
+        builder.add("m3", "bella", List.of("me"), new Date(NOW));
+
+        ContactIndex index = builder.build();
+
+        assertEquals(List.of("bella@bmail.com", "bob@bmail.com"), index.suggest("B", 5));
+        assertEquals(List.of("bella@bmail.com"), index.suggest("b", 1));
+        assertEquals(List.of("bob@bmail.com"), index.suggest(" bo ", 5));
+        assertEquals(List.of(), index.suggest("x", 5));
+        assertEquals(List.of(), index.suggest("", 5));
+        assertEquals(List.of(), index.suggest(null, 5));
+    }
+
+    @Test
+    public void suggest_recentMailsCountMore() {
+        ContactIndex.Builder builder = new ContactIndex.Builder();
+        // two old mails weigh less than one a few half-lives newer
+        builder.add("m1", "anna", null, new Date(NOW - 4 * ContactIndex.HALF_LIFE_MS));
+        builder.add("m2", "anna", null, new Date(NOW - 4 * ContactIndex.HALF_LIFE_MS));
+        builder.add("m3", "alex", null, new Date(NOW));
+
+        assertEquals(List.of("alex@bmail.com", "anna@bmail.com"),
+                builder.build().suggest("a", 5));
+    }
+
+    @Test
+    public void builder_countsAMailOnce() {
+        ContactIndex.Builder builder = new ContactIndex.Builder();
+        builder.add("m1", "bob", null, new Date(NOW));
+        builder.add("m2", "bella", null, new Date(NOW));
+        builder.build();
+        // m1 is stored again, e.g. after a refresh, and must not push bob ahead
+        builder.add("m1", "bob", null, new Date(NOW));
+        builder.add("m1", "bob", null, new Date(NOW));
+        builder.add("m3", "bella", null, new Date(NOW));
+
+        assertEquals(List.of("bella@bmail.com", "bob@bmail.com"), builder.build().suggest("b", 5));
+    }
+
+    @Test
+    public void builder_mergesBatchesIntoTheSnapshot() {
+        ContactIndex.Builder builder = new ContactIndex.Builder();
+        builder.add("m1", "carol", List.of("dave, erin"), new Date(NOW));
+        ContactIndex first = builder.build();
+        builder.add("m2", "alice", null, new Date(NOW));
+        ContactIndex second = builder.build();
+
+        assertEquals(3, first.size());
+        assertEquals(4, second.size());
+        assertSame(second, builder.build());
+        builder.clear();
+        assertSame(ContactIndex.EMPTY, builder.build());
+    }
+
+    @Test
+    public void suggest_broadPrefixScansTheRanking() {
+        ContactIndex.Builder builder = new ContactIndex.Builder();
+        // more matches than the range scan limit, the best one in the middle
+        for (int i = 0; i < 3000; i++) {
+            builder.add("m" + i, String.format("user%04d", i), null, new Date(NOW));
+        }
+        for (int i = 0; i < 3; i++) {
+            builder.add("best" + i, "user1500", null, new Date(NOW));
+        }
+        List<String> suggestions = builder.build().suggest("user", 3);
+
+        assertEquals(3, suggestions.size());
+        assertEquals("user1500@bmail.com", suggestions.get(0));
+        assertEquals(new ArrayList<>(new LinkedHashSet<>(suggestions)), suggestions);
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.bmail.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.bmail.core.fixtures.SimpleMail;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class CounterDeltasTest {
+
+    @Test
+    public void add_countsADuplicateLabelOnce() {
+        CounterDeltas deltas = new CounterDeltas();
+
+        deltas.add(Arrays.asList("inbox", "work", "inbox"), 1, true);
+
+        assertArrayEquals(new int[]{1, 1}, deltas.asMap().get("inbox"));
+        assertArrayEquals(new int[]{1, 1}, deltas.asMap().get("work"));
+    }
+
+    @Test
+    public void add_readMailsOnlyCountInTheTotal() {
+        CounterDeltas deltas = new CounterDeltas();
+
+        deltas.add(List.of("inbox"), 1, false);
+        deltas.add(List.of("inbox"), 1, true);
+        deltas.add(List.of("inbox"), -1, false);
+        deltas.add(null, 1, true);
+
+        assertEquals(1, deltas.asMap().size());
+        assertArrayEquals(new int[]{1, 1}, deltas.asMap().get("inbox"));
+    }
+
+    @Test
+    public void forMerge_movesReplacedMailsToTheirNewLabels() {
+        // m1 stays in inbox and leaves work, m2 is read and moves to spam, m3 is new
+        Map<String, List<String>> stored = Map.of(
+                "m1", List.of("inbox", "work"),
+                "m2", List.of("inbox"));
+        List<SimpleMail> incoming = List.of(
+                mail("m1", "inbox"),
+                mail("m2", "spam"),
+                mail("m3", "inbox", "inbox"));
+
+        Map<String, int[]> deltas =
+                CounterDeltas.forMerge(stored, incoming, Set.of("m2")).asMap();
+
+        assertArrayEquals(new int[]{0, 1}, deltas.get("inbox"));
+        assertArrayEquals(new int[]{-1, -1}, deltas.get("work"));
+        assertArrayEquals(new int[]{1, 0}, deltas.get("spam"));
+    }
+
+    @Test
+    public void forMerge_unchangedPageIsAllZeros() {
+        Map<String, int[]> deltas = CounterDeltas.forMerge(
+                Map.of("m1", List.of("inbox")), List.of(mail("m1", "inbox")), Set.of()).asMap();
+
+        for (int[] delta : deltas.values()) {
+            assertArrayEquals(new int[]{0, 0}, delta);
+        }
+        assertTrue(deltas.containsKey("inbox"));
+    }
+
+    private static SimpleMail mail(String id, String... labels) {
+        SimpleMail mail = new SimpleMail();
+        mail.setId(id);
+        mail.setLabels(Arrays.asList(labels));
+        return mail;
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.bmail.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.List;
+
+public class LabelDiffTest {
+
+    @Test
+    public void compute_addsAndRemovesOnlyWhatChanged() {
+        LabelDiff diff = LabelDiff.compute(List.of("inbox", "work", "old"),
+                List.of("work", "new", "starred"), List.of("work", "old", "new", "starred"));
+
+        assertEquals(List.of("new", "starred"), diff.getAdded());
+        assertEquals(List.of("old"), diff.getRemoved());
+        assertFalse(diff.isEmpty());
+    }
+
+    @Test
+    public void compute_neverRemovesUnmanageableLabels() {
+        LabelDiff diff = LabelDiff.compute(List.of("inbox", "work"), List.of(), List.of("work"));
+
+        assertEquals(List.of("work"), diff.getRemoved());
+    }
+
+    @Test
+    public void compute_nullManageableMeansEveryLabel() {
+        LabelDiff diff = LabelDiff.compute(List.of("inbox", "work"), List.of("work"), null);
+
+        assertEquals(List.of(), diff.getAdded());
+        assertEquals(List.of("inbox"), diff.getRemoved());
+    }
+
+    @Test
+    public void compute_dropsDuplicates() {
+        LabelDiff diff = LabelDiff.compute(List.of("old", "old"), List.of("new", "new"), null);
+
+        assertEquals(List.of("new"), diff.getAdded());
+        assertEquals(List.of("old"), diff.getRemoved());
+    }
+
+    @Test
+    public void compute_acceptsNullLists() {
+        assertEquals(List.of("work"), LabelDiff.compute(null, List.of("work"), null).getAdded());
+        assertEquals(List.of("work"), LabelDiff.compute(List.of("work"), null, null).getRemoved());
+        assertTrue(LabelDiff.compute(null, null, null).isEmpty());
+    }
+
+    @Test
+    public void compute_sameSelectionIsEmpty() {
+        assertTrue(LabelDiff.compute(List.of("a", "b"), List.of("b", "a"), null).isEmpty());
+    }
+}
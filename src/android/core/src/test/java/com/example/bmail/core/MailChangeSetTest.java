@@ -0,0 +1,79 @@
+package com.example.bmail.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MailChangeSetTest {
+
+    @Test
+    public void dispatchTo_removesBackwardsThenInsertsThenChanges() {
+        MailChangeSet.Builder builder = new MailChangeSet.Builder();
+        builder.removed(1, "b");
+        builder.removed(4, "e");
+        builder.inserted(0, "e");
+        builder.inserted(3, "f");
+        builder.changed(2, "c");
+        MailChangeSet changes = builder.build();
+
+        List<String> events = new ArrayList<>();
+        changes.dispatchTo(new MailChangeSet.Target() {
+            @Override
+            public void onRemoved(int position) {
+                events.add("-" + position);
+            }
+
+            @Override
+            public void onInserted(int position) {
+                events.add("+" + position);
+            }
+
+            @Override
+            public void onChanged(int position) {
+                events.add("~" + position);
+            }
+        });
+
+        assertEquals(List.of("-4", "-1", "+0", "+3", "~2"), events);
+        assertEquals(5, changes.size());
+    }
+
+    @Test
+    public void movedMailIsUpdatedNotRemoved() {
+        MailChangeSet.Builder builder = new MailChangeSet.Builder();
+        builder.removed(1, "b");
+        builder.removed(2, "c");
+        builder.inserted(0, "b");
+        MailChangeSet changes = builder.build();
+
+        assertFalse(changes.isRemoved("b"));
+        assertTrue(changes.isUpdated("b"));
+        assertTrue(changes.isRemoved("c"));
+        assertFalse(changes.isUpdated("c"));
+    }
+
+    @Test
+    public void builder_growsPastItsInitialCapacity() {
+        MailChangeSet.Builder builder = new MailChangeSet.Builder();
+        for (int i = 0; i < 100; i++) {
+            builder.changed(i, "m" + i);
+        }
+        MailChangeSet changes = builder.build();
+
+        assertEquals(100, changes.size());
+        assertEquals("m99", changes.getChangedIds().get(99));
+    }
+
+    @Test
+    public void emptySet() {
+        MailChangeSet changes = new MailChangeSet.Builder().build();
+
+        assertTrue(changes.isEmpty());
+        assertEquals(0, changes.size());
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.bmail.core;
+
+import static org.junit.Assert.assertEquals;
+
+import com.example.bmail.core.fixtures.SimpleMail;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MailSearchTest {
+    private final SimpleMail report = mail("1", "Quarterly Report", "Numbers attached", null);
+    private final SimpleMail lunch = mail("2", "Lunch", "See you at the REPORT meeting", null);
+    // stored as a summary: the snippet stands in for the body
+    private final SimpleMail summary = mail("3", "Hello", null, "the report is late");
+    private final SimpleMail other = mail("4", "Hello", "nothing here", "the report is late");
+    private final List<SimpleMail> mails = List.of(report, lunch, summary, other);
+
+    @Test
+    public void filter_matchesTitleAndBodyIgnoringCase() {
+        assertEquals(List.of(report, lunch, summary), MailSearch.filter(mails, "rEpOrT"));
+    }
+
+    @Test
+    public void filter_searchesTheSnippetOnlyWithoutABody() {
+        // other has a body without the word, its snippet is not searched
+        assertEquals(List.of(summary), MailSearch.filter(mails, "late"));
+    }
+
+    @Test
+    public void filter_trimsTheQuery() {
+        assertEquals(List.of(lunch), MailSearch.filter(mails, "  lunch "));
+    }
+
+    @Test
+    public void filter_blankQueryReturnsACopyOfEveryMail() {
+        List<SimpleMail> all = MailSearch.filter(mails, "  ");
+        assertEquals(mails, all);
+        all.clear();
+        assertEquals(mails, MailSearch.filter(new ArrayList<>(mails), null));
+    }
+
+    @Test
+    public void filter_handlesNullTexts() {
+        SimpleMail empty = new SimpleMail();
+        assertEquals(List.of(), MailSearch.filter(List.of(empty), "report"));
+    }
+
+    @Test
+    public void filter_queryLongerThanTheText() {
+        assertEquals(List.of(), MailSearch.filter(List.of(lunch), "lunch tomorrow at noon"));
+    }
+
+    private static SimpleMail mail(String id, String title, String body, String snippet) {
+        SimpleMail mail = new SimpleMail();
+        mail.setId(id);
+        mail.setTitle(title);
+        mail.setBody(body);
+        mail.setSnippet(snippet);
+        return mail;
+    }
+}
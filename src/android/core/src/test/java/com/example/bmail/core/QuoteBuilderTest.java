@@ -0,0 +1,92 @@
+package com.example.bmail.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.bmail.core.fixtures.SimpleMail;
+
+import org.junit.Test;
+
+import java.util.List;
+
+public class QuoteBuilderTest {
+
+    @Test
+    public void recipients_dependOnTheMode() {
+        SimpleMail mail = mail("Lunch", "alice@bmail.com");
+        mail.setTo(List.of("me@bmail.com", "alice@bmail.com", "bob@bmail.com"));
+
+        assertEquals("alice@bmail.com", QuoteBuilder.recipients(mail, QuoteBuilder.Mode.REPLY));
+        assertEquals("alice@bmail.com, me@bmail.com, bob@bmail.com",
+                QuoteBuilder.recipients(mail, QuoteBuilder.Mode.REPLY_ALL));
+        assertEquals("", QuoteBuilder.recipients(mail, QuoteBuilder.Mode.FORWARD));
+    }
+
+    @Test
+    public void subject_keepsASinglePrefix() {
+        assertEquals("Re: Lunch", QuoteBuilder.subject(mail("Lunch", "a"), QuoteBuilder.Mode.REPLY));
+        assertEquals("RE: Lunch", QuoteBuilder.subject(mail("RE: Lunch", "a"), QuoteBuilder.Mode.REPLY_ALL));
+        assertEquals("Fwd: Re: Lunch",
+                QuoteBuilder.subject(mail("Re: Lunch", "a"), QuoteBuilder.Mode.FORWARD));
+        assertEquals("Re: ", QuoteBuilder.subject(mail(null, "a"), QuoteBuilder.Mode.REPLY));
+    }
+
+    @Test
+    public void body_quotesTheOriginalUnderAHeader() {
+        SimpleMail mail = mail("Lunch", "alice@bmail.com");
+        mail.setTo(List.of("bob@bmail.com", "carol@bmail.com"));
+        mail.setBody("See you\nat noon");
+
+        assertEquals("\n\n" + QuoteBuilder.FORWARD_HEADER + "\n"
+                        + "From: alice@bmail.com\nSubject: Lunch\n"
+                        + "To: bob@bmail.com, carol@bmail.com\n\nSee you\nat noon",
+                QuoteBuilder.body(mail, QuoteBuilder.Mode.FORWARD));
+    }
+
+    @Test
+    public void body_dropsQuotesNestedTooDeep() {
+        StringBuilder original = new StringBuilder("latest");
+        for (int i = 0; i < QuoteBuilder.MAX_NESTED_QUOTES + 2; i++) {
+            original.append('\n').append(QuoteBuilder.REPLY_HEADER).append("\nreply ").append(i);
+        }
+        SimpleMail mail = mail("Lunch", "alice");
+        mail.setBody(original.toString());
+
+        String body = QuoteBuilder.body(mail, QuoteBuilder.Mode.REPLY);
+
+        assertTrue(body.contains("reply " + (QuoteBuilder.MAX_NESTED_QUOTES - 1)));
+        assertFalse(body.contains("reply " + QuoteBuilder.MAX_NESTED_QUOTES));
+        assertTrue(body.endsWith("[2 earlier messages not shown]"));
+    }
+
+    @Test
+    public void body_dropsDeepQuoteMarks() {
+        SimpleMail mail = mail("Lunch", "alice");
+        mail.setBody("top\n> one\n> > two\n>>> three\n> > > > four");
+
+        String body = QuoteBuilder.body(mail, QuoteBuilder.Mode.REPLY);
+
+        assertTrue(body.contains(">>> three"));
+        assertFalse(body.contains("four"));
+        assertTrue(body.endsWith("[Deeper quotes not shown]"));
+    }
+
+    @Test
+    public void body_truncatesAHugeQuote() {
+        SimpleMail mail = mail("Lunch", "alice");
+        mail.setBody("line of text\n".repeat(QuoteBuilder.MAX_QUOTE_CHARS / 10));
+
+        String body = QuoteBuilder.body(mail, QuoteBuilder.Mode.REPLY);
+
+        assertTrue(body.endsWith("[Quoted text truncated]"));
+        assertTrue(body.length() < QuoteBuilder.MAX_QUOTE_CHARS + 256);
+    }
+
+    private static SimpleMail mail(String title, String from) {
+        SimpleMail mail = new SimpleMail();
+        mail.setTitle(title);
+        mail.setFrom(from);
+        return mail;
+    }
+}
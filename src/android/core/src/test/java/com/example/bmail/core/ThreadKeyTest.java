@@ -0,0 +1,46 @@
+package com.example.bmail.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+import java.util.List;
+
+public class ThreadKeyTest {
+
+    @Test
+    public void normalizeSubject_stripsPrefixesCaseAndSpaces() {
+        assertEquals("quarterly report", ThreadKey.normalizeSubject("Quarterly  Report"));
+        assertEquals("quarterly report", ThreadKey.normalizeSubject("RE: Fwd: re:Quarterly\tReport "));
+        assertEquals("quarterly report", ThreadKey.normalizeSubject("FW: Quarterly Report"));
+        assertEquals("", ThreadKey.normalizeSubject(null));
+        assertEquals("", ThreadKey.normalizeSubject("Re: "));
+        // only leading prefixes are stripped
+        assertEquals("report re: numbers", ThreadKey.normalizeSubject("Report Re: numbers"));
+    }
+
+    @Test
+    public void of_replyJoinsTheOriginal() {
+        String original = ThreadKey.of("Lunch", "alice", List.of("bob@bmail.com"));
+        String reply = ThreadKey.of("Re: lunch", "Bob@bmail", List.of("alice@bmail.com"));
+
+        assertEquals(original, reply);
+    }
+
+    @Test
+    public void of_otherParticipantsStartAnotherThread() {
+        String original = ThreadKey.of("Lunch", "alice", List.of("bob"));
+
+        assertNotEquals(original, ThreadKey.of("Lunch", "alice", List.of("carol")));
+        assertNotEquals(original, ThreadKey.of("Lunch", "alice", List.of("bob", "carol")));
+        assertNotEquals(original, ThreadKey.of("Dinner", "alice", List.of("bob")));
+    }
+
+    @Test
+    public void participants_splitsFieldsWithSeveralAddresses() {
+        assertEquals("alice@bmail.com,bob@bmail.com,carol@example.org",
+                ThreadKey.participants("alice", List.of("bob; Carol@Example.org, alice@bmail")));
+        assertEquals("", ThreadKey.participants(null, null));
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.bmail.core.fixtures;
+
+import com.example.bmail.core.MutableLabel;
+
+import java.util.List;
+
+/**
+ * @brief Plain label used by tests and benchmarks in place of the app's entity.
+ */
+public class SimpleLabel implements MutableLabel {
+    private String id;
+    private String name;
+    private boolean isDefault;
+    private boolean isAttachable;
+    private List<String> mailIds;
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public boolean isDefault() {
+        return isDefault;
+    }
+
+    @Override
+    public void setDefault(boolean isDefault) {
+        this.isDefault = isDefault;
+    }
+
+    @Override
+    public boolean isAttachable() {
+        return isAttachable;
+    }
+
+    @Override
+    public void setAttachable(boolean attachable) {
+        isAttachable = attachable;
+    }
+
+    @Override
+    public List<String> getMailIds() {
+        return mailIds;
+    }
+
+    @Override
+    public void setMailIds(List<String> mailIds) {
+        this.mailIds = mailIds;
+    }
+}
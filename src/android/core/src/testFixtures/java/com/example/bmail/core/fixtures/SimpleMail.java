@@ -0,0 +1,122 @@
+package com.example.bmail.core.fixtures;
+
+import com.example.bmail.core.MutableMail;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @brief Plain mail used by tests and benchmarks in place of the app's entity.
+ */
+public class SimpleMail implements MutableMail {
+    private String id;
+    private String title;
+    private String body;
+    private String snippet;
+    private String from;
+    private List<String> to;
+    private Boolean draft;
+    private List<String> labels;
+    private Date updatedAt;
+    private String userImage;
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    @Override
+    public String getTitle() {
+        return title;
+    }
+
+    @Override
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    @Override
+    public String getBody() {
+        return body;
+    }
+
+    @Override
+    public void setBody(String body) {
+        this.body = body;
+    }
+
+    @Override
+    public String getSnippet() {
+        return snippet;
+    }
+
+    @Override
+    public void setSnippet(String snippet) {
+        this.snippet = snippet;
+    }
+
+    @Override
+    public String getFrom() {
+        return from;
+    }
+
+    @Override
+    public void setFrom(String from) {
+        this.from = from;
+    }
+
+    @Override
+    public List<String> getTo() {
+        return to;
+    }
+
+    @Override
+    public void setTo(List<String> to) {
+        this.to = to;
+    }
+
+    @Override
+    public Boolean getDraft() {
+        return draft;
+    }
+
+    @Override
+    public void setDraft(Boolean draft) {
+        this.draft = draft;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return labels;
+    }
+
+    @Override
+    public void setLabels(List<String> labels) {
+        this.labels = labels;
+    }
+
+    @Override
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+
+    @Override
+    public void setUpdatedAt(Date updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    @Override
+    public String getUserImage() {
+        return userImage;
+    }
+
+    @Override
+    public void setUserImage(String userImage) {
+        this.userImage = userImage;
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.bmail.core.fixtures;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @brief Deterministic generated mailbox for tests and benchmarks.
+ * The same size and seed always give the same mails, so runs can be compared.
+ * Mails are newest first, like the server pages them, with 5 default labels
+ * (inbox, sent, starred, spam, trash) and a number of user labels.
+ */
+public final class SyntheticMailbox {
+    public static final String[] DEFAULT_LABELS = {"inbox", "sent", "starred", "spam", "trash"};
+    private static final String[] WORDS = {
+            "meeting", "report", "invoice", "project", "update", "lunch", "release",
+            "review", "budget", "schedule", "travel", "design", "feedback", "launch",
+            "contract", "weekly", "notes", "question", "reminder", "draft"};
+    private static final long NEWEST = 1_750_000_000_000L;
+
+    private final List<SimpleMail> mails;
+    private final List<SimpleLabel> labels;
+
+    private SyntheticMailbox(List<SimpleMail> mails, List<SimpleLabel> labels) {
+        this.mails = mails;
+        this.labels = labels;
+    }
+
+    /**
+     * @param size The number of mails.
+     * @return A mailbox with 200 contacts and 20 user labels.
+     */
+    public static SyntheticMailbox generate(int size) {
+        return generate(size, 200, 20, 42L);
+    }
+
+    /**
+     * @param size The number of mails.
+     * @param contacts The number of distinct senders and recipients.
+     * @param userLabels The number of user labels.
+     * @param seed The random seed.
+     * @return The generated mailbox.
+     */
+    public static SyntheticMailbox generate(int size, int contacts, int userLabels, long seed) {
+        Random random = new Random(seed);
+        List<SimpleLabel> labels = new ArrayList<>();
+        for (int i = 0; i < DEFAULT_LABELS.length + userLabels; i++) {
+            SimpleLabel label = new SimpleLabel();
+            boolean isDefault = i < DEFAULT_LABELS.length;
+            label.setId(labelId(i));
+            label.setName(isDefault ? DEFAULT_LABELS[i] : "label-" + i);
+            label.setDefault(isDefault);
+            label.setAttachable(!isDefault || i == 2);
+            label.setMailIds(new ArrayList<>());
+            labels.add(label);
+        }
+
+        List<SimpleMail> mails = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            SimpleMail mail = new SimpleMail();
+            mail.setId(mailId(i));
+            mail.setTitle(words(random, 3 + random.nextInt(5)));
+            String body = words(random, 20 + random.nextInt(200));
+            mail.setBody(body);
+            mail.setSnippet(body.length() > 100 ? body.substring(0, 100) : body);
+            mail.setFrom(contact(random.nextInt(contacts)));
+            List<String> to = new ArrayList<>();
+            for (int r = 1 + random.nextInt(3); r > 0; r--) {
+                to.add(contact(random.nextInt(contacts)));
+            }
+            mail.setTo(to);
+            boolean sent = random.nextInt(5) == 0;
+            mail.setDraft(random.nextInt(50) == 0);
+            List<String> mailLabels = new ArrayList<>();
+            mailLabels.add(labelId(sent ? 1 : 0));
+            if (random.nextInt(10) == 0) {
+                mailLabels.add(labelId(2));
+            }
+            for (int l = random.nextInt(3); l > 0 && userLabels > 0; l--) {
+                String id = labelId(DEFAULT_LABELS.length + random.nextInt(userLabels));
+                if (!mailLabels.contains(id)) {
+                    mailLabels.add(id);
+                }
+            }
+            mail.setLabels(mailLabels);
+            mail.setUpdatedAt(new Date(NEWEST - i * 60_000L));
+            mail.setUserImage("/uploads/" + mail.getFrom() + ".png");
+            for (String labelId : mailLabels) {
+                labels.get(Integer.parseInt(labelId.substring(1), 16)).getMailIds()
+                        .add(mail.getId());
+            }
+            mails.add(mail);
+        }
+        return new SyntheticMailbox(Collections.unmodifiableList(mails), labels);
+    }
+
+    /**
+     * @return The mails, newest first.
+     */
+    public List<SimpleMail> getMails() {
+        return mails;
+    }
+
+    public List<SimpleLabel> getLabels() {
+        return labels;
+    }
+
+    /**
+     * @return A word that occurs in most mails, for search queries with many matches.
+     */
+    public static String commonWord() {
+        return WORDS[7];
+    }
+
+    // 24 hex digits, shaped like a MongoDB ObjectId
+    private static String mailId(int i) {
+        return String.format("%024x", i);
+    }
+
+    private static String labelId(int i) {
+        return "l" + Integer.toHexString(i);
+    }
+
+    private static String contact(int i) {
+        return "user" + i + "@bmail.com";
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+}
@@ -2,6 +2,7 @@
 const { Types } = require('mongoose');
 const { created, badRequest, ok, noContent } = require('../utils/httpResponses');
 const { httpError } = require('../utils/error');
+const { sendList, encodeLabelList } = require('../utils/compactCodec');
 
 const {
   getLabelsForUser,
@@ -28,7 +29,7 @@ async function listLabels(req, res) {
   const userId = req.user.id;
   try {
     const labels = await getLabelsForUser(userId);
-    return ok(res, labels);
+    return sendList(req, res, labels, encodeLabelList);
   } catch (err) {
     return httpError(res, err);
   }
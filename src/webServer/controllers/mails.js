@@ -1,6 +1,7 @@
 const { Types } = require('mongoose');
 const { created, ok, noContent, badRequest } = require('../utils/httpResponses');
 const { httpError } = require('../utils/error');
+const { sendList, encodeMailList } = require('../utils/compactCodec');
 
 const {
   // service entrypoints
@@ -12,6 +13,7 @@ const {
   searchMailsForUser,
   addLabelToMail,
   removeLabelFromMail,
+  projectMailForList,
 } = require('../services/mailServices');
 
 const {
@@ -26,7 +28,7 @@ const mailLimit = 50;
  * List mails for the inbox view of the current user.
  * Supports optional filtering by label and a limit.
  *
- * @param {import('express').Request} req - Uses `user.username`, `user.id`, and query `{ labelId?, limit? }`.
+ * @param {import('express').Request} req - Uses `user.username`, `user.id`, and query `{ labelId?, limit?, before?, view?, fields? }`.
  * @param {import('express').Response} res - Sends 200 with an array of mails.
  * @returns {Promise<void>} Sends the HTTP response.
  * @throws Sends 400 if labelId is invalid; 500 via httpError on service errors.
@@ -34,7 +36,7 @@ const mailLimit = 50;
 async function listInbox(req, res) {
   const username = req.user.username;
   const userId = req.user.id;
-  const { labelId = null, limit = 50 } = req.query;
+  const { labelId = null, limit = 50, before = null } = req.query;
 
   if (labelId && !isValidObjectId(labelId)) {
     return badRequest(res, 'Label ID must be a valid ObjectId');
@@ -50,10 +52,11 @@ async function listInbox(req, res) {
       spamId,
       trashId,
       labelId || null,
-      Number(limit)
+      Number(limit),
+      before
     );
 
-    return ok(res, mails);
+    return sendList(req, res, mails.map((m) => projectMailForList(m, req.query)), encodeMailList);
   } catch (err) {
     return httpError(res, err);
   }
@@ -63,7 +66,7 @@ async function listInbox(req, res) {
  * List mails by a label id or by label name.
  * Accepts either an ObjectId-like string or a label name.
  *
- * @param {import('express').Request} req - `params.label` (id or name), query `{ limit? }`.
+ * @param {import('express').Request} req - `params.label` (id or name), query `{ limit?, before?, view?, fields? }`.
  * @param {import('express').Response} res - Sends 200 with matching mails.
  * @returns {Promise<void>} Sends the HTTP response.
  * @throws Sends 500 via httpError if label resolution or fetch fails.
@@ -73,7 +76,7 @@ async function listMailsByLabel(req, res) {
   const username = req.user.username;
   const userId = req.user.id;
   const { label } = req.params;
-  const { limit = 50 } = req.query;
+  const { limit = 50, before = null } = req.query;
   console.log("in listMailsByLabel label:" + label)
   try {
     const spamId = await getisDefaultLabelId(userId, 'spam');
@@ -90,10 +93,11 @@ async function listMailsByLabel(req, res) {
       spamId,
       trashId,
       labelId,
-      Number(limit)
+      Number(limit),
+      before
     );
 
-    return ok(res, mails);
+    return sendList(req, res, mails.map((m) => projectMailForList(m, req.query)), encodeMailList);
   } catch (err) {
     return httpError(res, err);
   }
@@ -220,7 +224,7 @@ async function deleteMailById(req, res) {
  * Full-text search across the user’s mails.
  * Looks in title/body; case-insensitive.
  *
- * @param {import('express').Request} req - `params.query` or `query.q`, plus optional `query.limit`.
+ * @param {import('express').Request} req - `params.query` or `query.q`, plus optional `query.limit`, `query.view` and `query.fields`.
  * @param {import('express').Response} res - Sends 200 with array of results.
  * @returns {Promise<void>} Sends the HTTP response.
  * @throws Sends 400 for empty query; 500 via httpError on service errors.
@@ -237,7 +241,7 @@ async function searchMails(req, res) {
 
   try {
     const results = await searchMailsForUser(username, query, limit);
-    return res.json(results);
+    return sendList(req, res, results.map((m) => projectMailForList(m, req.query)), encodeMailList);
   } catch (err) {
     return httpError(res, err);
   }
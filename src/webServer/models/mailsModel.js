@@ -53,4 +53,9 @@ MailSchema.path('updatedAt').options.public = true;
 // Add a text index on title and body for search queries
 MailSchema.index({ title: 'text', body: 'text' });
 
+// Mail lists are sorted and paged by (updatedAt, _id), newest first, see getMailsForUser.
+// Mails have no owner field (access is by from/to), so the index leads with the sort
+// keys and the access filter is applied while walking it, instead of sorting in memory.
+MailSchema.index({ updatedAt: -1, _id: -1 });
+
 module.exports = model('Mail', MailSchema);
@@ -6,7 +6,7 @@ const { requireAuth } = require('../middleware/auth');
 const { getMailById, updateMailById, deleteMailById } = require('../controllers/mails');
 const { searchMails, attachLabelToMail, detachLabelFromMail, listMailsByLabel } = require('../controllers/mails');
 
-// GET /api/mails → returns last 50 mails sent/received by the user
+// GET /api/mails → returns last 50 mails sent/received by the user (?before=<updatedAt>,<id> for older pages)
 router.get('/', requireAuth, listInbox);
 // GET /api/mails/byLabel/:label → returns last 50 mails filtered by label
 router.get('/byLabel/:label', requireAuth, listMailsByLabel);
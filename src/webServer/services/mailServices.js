@@ -177,6 +177,42 @@ try {
 }
 
 
+/** length of the body preview sent in summary list views */
+const SNIPPET_LENGTH = 120;
+
+/** keys of a list DTO that `fields` may select; `id` is always sent */
+const LIST_FIELDS = new Set([
+  'id', 'from', 'to', 'title', 'body', 'snippet', 'draft', 'labels', 'urls',
+  'createdAt', 'updatedAt', 'userImage',
+]);
+
+/**
+ * Shape a mail DTO for a list response.
+ * `view=summary` replaces the body with a short snippet and drops fields a list row
+ * never shows; `fields` keeps only the listed keys (plus `id`). Empty and unknown
+ * names in `fields` are ignored, and when no known name is left the DTO is sent whole.
+ *
+ * @param {object} dto - Output of filterMailForOutput.
+ * @param {{view?: string, fields?: string}} [options] - Query options from the request.
+ * @returns {object} The projected DTO (the input when no option is set).
+ */
+function projectMailForList(dto, { view, fields } = {}) {
+  let out = dto;
+  if (view === 'summary') {
+    const { body, urls, userImage, ...rest } = dto;
+    const text = String(body || '').replace(/\s+/g, ' ').trim();
+    out = { ...rest, snippet: text.slice(0, SNIPPET_LENGTH) };
+  }
+  if (typeof fields === 'string') {
+    const keep = new Set(fields.split(',').map((f) => f.trim()).filter((f) => LIST_FIELDS.has(f)));
+    if (keep.size > 0) {
+      keep.add('id');
+      out = Object.fromEntries(Object.entries(out).filter(([k]) => keep.has(k)));
+    }
+  }
+  return out;
+}
+
 /**
  * Check if a user can access a mail.
  * Sender sees their own (unless soft-deleted); recipients see non-drafts not soft-deleted for them.
@@ -355,6 +391,23 @@ async function updateMailsSpamLabel(userId, username) {
   return { added, removed };
 }
 
+/**
+ * Parse a keyset paging cursor of the form `<updatedAt ISO date>,<mail id>`.
+ *
+ * @param {string} cursor - Cursor sent by the client.
+ * @returns {{updatedAt: Date, id: Types.ObjectId}} Parsed cursor.
+ * @throws {Error} VALIDATION (400) if the date or id is invalid.
+ */
+function parseMailCursor(cursor) {
+  const sep = String(cursor).lastIndexOf(',');
+  const updatedAt = new Date(sep > 0 ? cursor.slice(0, sep) : NaN);
+  const id = sep > 0 ? cursor.slice(sep + 1) : '';
+  if (Number.isNaN(updatedAt.getTime()) || !Types.ObjectId.isValid(id)) {
+    throw createError('before must be "<updatedAt>,<id>"', { type: 'VALIDATION', status: 400 });
+  }
+  return { updatedAt, id: new Types.ObjectId(id) };
+}
+
 /**
  * Get mails visible to a user, with optional label filter.
  * Spam/Trash views are special-cased; normal views exclude them.
@@ -364,9 +417,11 @@ async function updateMailsSpamLabel(userId, username) {
  * @param {string|null} trashLabelId - Trash label ObjectId string (optional).
  * @param {string|null} labelId - Label to filter on (optional).
  * @param {number} [limit=50] - Max results.
+ * @param {string|null} [before=null] - Keyset cursor `<updatedAt>,<id>`; only older mails are returned.
  * @returns {Promise<object[]>} Public-safe mail DTOs sorted by newest first.
+ * @throws {Error} VALIDATION (400) if the cursor is malformed.
  */
-async function getMailsForUser(username, spamLabelId, trashLabelId, labelId = null, limit = 50) {
+async function getMailsForUser(username, spamLabelId, trashLabelId, labelId = null, limit = 50, before = null) {
   const internalAddrs = [`${username}`, `${username}@bmail`, `${username}@bmail.com`];
 
   // figure out which label is being viewed (by name)
@@ -422,10 +477,27 @@ async function getMailsForUser(username, spamLabelId, trashLabelId, labelId = nu
     });
   }
 
+  if (before) {
+    const cursor = parseMailCursor(before);
+    and.push({
+      $or: [
+        { updatedAt: { $lt: cursor.updatedAt } },
+        { updatedAt: cursor.updatedAt, _id: { $lt: cursor.id } },
+      ],
+    });
+  }
+
   const query = { $and: and };
 
+  // (updatedAt, _id) gives a stable order for keyset paging. Sorting by updatedAt
+  // rather than createdAt means a mail that is edited, labeled or marked moves to the
+  // top of the list. The key changes with the mail, so paging is not a snapshot: a
+  // mail updated while a client pages moves above its cursor. If the client had not
+  // reached it yet, it is skipped by the later pages; if it had, it shows up again at
+  // the top of the first page. Clients pick such mails up by fetching the first page
+  // again and merging it with what they hold.
   const docs = await Mail.find(query)
-    .sort({ createdAt: -1 })
+    .sort({ updatedAt: -1, _id: -1 })
     .limit(Math.max(1, Number(limit) || 50))
     .lean();
 
@@ -850,4 +922,7 @@ module.exports = {
   extractUrls,
   scanMail,
   updateMailsSpamLabel,
+  projectMailForList,
+  parseMailCursor,
+  SNIPPET_LENGTH,
 };
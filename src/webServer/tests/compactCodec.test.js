@@ -0,0 +1,65 @@
+const { test, describe } = require("node:test");
+const assert = require("node:assert/strict");
+const fs = require("node:fs");
+const path = require("node:path");
+const express = require("express");
+const supertest = require("supertest");
+const { COMPACT_TYPE, encodeMailList, sendList } = require("../utils/compactCodec");
+
+// shared with the Android core module, whose CompactCodecTest decodes the same bytes
+const FIXTURES = path.join(__dirname, "../../android/core/src/test/resources/compact");
+const mails = JSON.parse(fs.readFileSync(path.join(FIXTURES, "mails.json"), "utf8"));
+const BIN = path.join(FIXTURES, "mails.bin");
+
+if (process.env.UPDATE_FIXTURES) {
+  // after a deliberate format change: UPDATE_FIXTURES=1 npm test, then rerun the core tests
+  fs.writeFileSync(BIN, encodeMailList(mails));
+}
+
+// a route that lists the fixture mails like listInbox does
+const app = express();
+app.get("/list", (req, res) => sendList(req, res, mails, encodeMailList));
+const api = supertest(app);
+
+describe("compact codec", () => {
+  test("encodes the fixture mails to the bytes the Android client decodes", () => {
+    assert.deepEqual(encodeMailList(mails), fs.readFileSync(BIN));
+  });
+
+  test("the fixture covers null fields, non-ASCII text, empty lists and large varints", () => {
+    assert.deepEqual(Object.keys(mails[1]), ["id"]);
+    assert.ok(/[^\x00-\x7f]/.test(mails[0].title));
+    assert.deepEqual(mails[2].to, []);
+    assert.deepEqual(mails[2].labels, []);
+    // more than 127 strings in the table, a body over 16383 bytes and a date past 2^42
+    assert.ok(mails[3].to.length > 127);
+    assert.ok(Buffer.byteLength(mails[3].body) > 16383);
+    assert.ok(new Date(mails[3].updatedAt).getTime() > 2 ** 42);
+  });
+
+  test("sends compact when the client accepts it", async () => {
+    const res = await api.get("/list")
+      .set("Accept", `${COMPACT_TYPE}, application/json;q=0.5`)
+      .buffer(true)
+      .parse((response, done) => {
+        const chunks = [];
+        response.on("data", (chunk) => chunks.push(chunk));
+        response.on("end", () => done(null, Buffer.concat(chunks)));
+      })
+      .expect(200)
+      .expect("Content-Type", new RegExp(COMPACT_TYPE))
+      .expect("Vary", /Accept/);
+    assert.deepEqual(res.body, fs.readFileSync(BIN));
+  });
+
+  for (const accept of [undefined, "application/json", "*/*", "text/html"]) {
+    test(`sends JSON for Accept: ${accept ?? "(none)"}`, async () => {
+      const req = api.get("/list");
+      if (accept) req.set("Accept", accept);
+      const res = await req
+        .expect(200)
+        .expect("Content-Type", /application\/json/);
+      assert.deepEqual(res.body, mails);
+    });
+  }
+});
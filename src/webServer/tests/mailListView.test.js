@@ -0,0 +1,117 @@
+const { before, after, test, describe } = require("node:test");
+const mongoose = require("mongoose");
+const config = require("../utils/config");
+const supertest = require("supertest");
+const app = require("../app");
+const assert = require("node:assert/strict");
+const { projectMailForList, SNIPPET_LENGTH } = require("../services/mailServices");
+
+const api = supertest(app);
+
+// what filterMailForOutput returns for a mail
+function dto(body) {
+  return {
+    id: '66e1f0c2a1b2c3d4e5f60718',
+    from: 'alice123@bmail.com',
+    to: ['bob@bmail.com'],
+    title: 'Quarterly report',
+    body,
+    draft: false,
+    labels: ['66e1f0c2a1b2c3d4e5f60719'],
+    urls: ['https://good.com'],
+    createdAt: '2025-03-01T09:30:00.000Z',
+    updatedAt: '2025-03-01T09:30:00.000Z',
+    userImage: '/uploads/alice.png',
+  };
+}
+
+describe('mail list views', () => {
+  test('without options the mail is sent as it is', () => {
+    const mail = dto('Hello');
+    assert.equal(projectMailForList(mail), mail);
+    assert.equal(projectMailForList(mail, {}), mail);
+  });
+
+  test('view=summary replaces body, urls and userImage with a snippet', () => {
+    const out = projectMailForList(dto('Hello   there,\n\n see\tyou'), { view: 'summary' });
+    assert.equal(out.snippet, 'Hello there, see you');
+    assert.equal(out.body, undefined);
+    assert.equal(out.urls, undefined);
+    assert.equal(out.userImage, undefined);
+    assert.equal(out.title, 'Quarterly report');
+    assert.deepEqual(out.labels, ['66e1f0c2a1b2c3d4e5f60719']);
+    assert.equal(out.updatedAt, '2025-03-01T09:30:00.000Z');
+  });
+
+  test('the snippet is cut at 120 characters', () => {
+    assert.equal(SNIPPET_LENGTH, 120);
+    const exact = 'a'.repeat(SNIPPET_LENGTH);
+    assert.equal(projectMailForList(dto(exact), { view: 'summary' }).snippet, exact);
+    assert.equal(projectMailForList(dto(`${exact}b`), { view: 'summary' }).snippet, exact);
+    const short = 'a'.repeat(SNIPPET_LENGTH - 1);
+    assert.equal(projectMailForList(dto(short), { view: 'summary' }).snippet, short);
+    // collapsed whitespace does not count against the limit
+    const spaced = 'a '.repeat(SNIPPET_LENGTH / 2).replace(/ /g, '   ');
+    assert.equal(projectMailForList(dto(spaced), { view: 'summary' }).snippet,
+      'a '.repeat(SNIPPET_LENGTH / 2).trim());
+    assert.equal(projectMailForList(dto(null), { view: 'summary' }).snippet, '');
+  });
+
+  test('fields keeps the listed keys and the id', () => {
+    const out = projectMailForList(dto('Hello'), { fields: 'title,updatedAt' });
+    assert.deepEqual(Object.keys(out).sort(), ['id', 'title', 'updatedAt']);
+  });
+
+  test('fields ignores unknown and empty names', () => {
+    const out = projectMailForList(dto('Hello'), { fields: ' title , ,constructor,__proto__,passwordHash,' });
+    assert.deepEqual(Object.keys(out).sort(), ['id', 'title']);
+  });
+
+  test('fields with no known name sends the whole mail', () => {
+    const mail = dto('Hello');
+    assert.deepEqual(projectMailForList(mail, { fields: '' }), mail);
+    assert.deepEqual(projectMailForList(mail, { fields: ' , ,' }), mail);
+    assert.deepEqual(projectMailForList(mail, { fields: 'bogus' }), mail);
+  });
+
+  test('fields applies to the summary', () => {
+    const out = projectMailForList(dto('Hello there'), { view: 'summary', fields: 'snippet,body' });
+    assert.deepEqual(out, { id: '66e1f0c2a1b2c3d4e5f60718', snippet: 'Hello there' });
+  });
+
+  describe('GET /api/mails', () => {
+    const username = `viewer${Date.now()}`;
+    let token;
+
+    before(async () => {
+      await mongoose.connect(config.MONGODB_URI);
+      const password = 'aA12345!';
+      await api.post('/api/users').send({
+        username, firstName: 'list', lastName: 'Viewer', password,
+      }).expect(201);
+      const login = await api.post('/api/tokens').send({ username, password }).expect(201);
+      token = login.body.token;
+      await api.post('/api/mails')
+        .set('Authorization', 'bearer ' + token)
+        .send({ to: [`${username}@bmail.com`], title: 'Summary', body: 'x'.repeat(200) })
+        .expect(201);
+    });
+
+    test('view=summary and fields are applied to the list', async () => {
+      const res = await api.get('/api/mails')
+        .query({ view: 'summary', fields: 'title,snippet,,bogus' })
+        .set('Authorization', 'bearer ' + token)
+        .expect(200)
+        .expect('Content-Type', /application\/json/);
+
+      const mail = res.body.find((m) => m.title === 'Summary');
+      assert.ok(mail, 'the mail is in the list');
+      assert.deepEqual(Object.keys(mail).sort(), ['id', 'snippet', 'title']);
+      assert.equal(mail.snippet, 'x'.repeat(SNIPPET_LENGTH));
+    });
+
+    after(async () => {
+      await mongoose.connection.close();
+    });
+  });
+});
@@ -0,0 +1,111 @@
+const { before, after, test, describe } = require("node:test");
+const mongoose = require("mongoose");
+const config = require("../utils/config");
+const assert = require("node:assert/strict");
+const Mail = require("../models/mailsModel");
+const { getMailsForUser, parseMailCursor } = require("../services/mailServices");
+
+// a sender of its own, so mails of other tests never show up in the pages
+const username = `pager${Date.now()}`;
+const MAILS = 23;
+const PAGE = 5;
+
+/**
+ * The cursor the Android client sends for the last mail of a page.
+ */
+function cursorOf(mail) {
+  return `${new Date(mail.updatedAt).toISOString()},${mail.id}`;
+}
+
+describe('mail list paging', () => {
+  before(async () => {
+    await mongoose.connect(config.MONGODB_URI);
+    // groups of 3 mails share updatedAt, so the id has to break the ties;
+    // inserted through the driver so mongoose does not set the timestamps
+    const start = Date.parse('2025-01-01T00:00:00.000Z');
+    const docs = [];
+    for (let i = 0; i < MAILS; i++) {
+      const date = new Date(start + Math.floor(i / 3) * 60_000);
+      docs.push({
+        _id: new mongoose.Types.ObjectId(),
+        from: username,
+        to: [`${username}@bmail.com`],
+        title: `Mail ${i}`,
+        body: `Body ${i}`,
+        draft: false,
+        labels: [],
+        urls: [],
+        deletedBySender: false,
+        deletedByRecipient: [],
+        createdAt: date,
+        updatedAt: date,
+      });
+    }
+    await Mail.collection.insertMany(docs);
+  });
+
+  test('parseMailCursor reads the date and the id', () => {
+    const id = new mongoose.Types.ObjectId().toString();
+    const cursor = parseMailCursor(`2025-03-01T09:30:00.000Z,${id}`);
+    assert.equal(cursor.updatedAt.getTime(), Date.parse('2025-03-01T09:30:00.000Z'));
+    assert.equal(cursor.id.toString(), id);
+  });
+
+  test('parseMailCursor rejects malformed cursors with 400', () => {
+    const id = new mongoose.Types.ObjectId().toString();
+    const malformed = [
+      '',
+      'garbage',
+      id,
+      `,${id}`,
+      `not-a-date,${id}`,
+      '2025-03-01T09:30:00.000Z',
+      '2025-03-01T09:30:00.000Z,',
+      '2025-03-01T09:30:00.000Z,not-an-id',
+    ];
+    for (const cursor of malformed) {
+      assert.throws(() => parseMailCursor(cursor),
+        (err) => err.type === 'VALIDATION' && err.status === 400,
+        `cursor ${JSON.stringify(cursor)} was accepted`);
+    }
+  });
+
+  test('pages return every mail once across timestamp ties, newest first', async () => {
+    const seen = [];
+    let cursor = null;
+    for (let pages = 0; pages <= MAILS; pages++) {
+      const page = await getMailsForUser(username, null, null, null, PAGE, cursor);
+      seen.push(...page);
+      if (page.length < PAGE) break;
+      cursor = cursorOf(page[page.length - 1]);
+    }
+
+    assert.equal(seen.length, MAILS);
+    assert.equal(new Set(seen.map((m) => String(m.id))).size, MAILS);
+    for (let i = 1; i < seen.length; i++) {
+      const previous = new Date(seen[i - 1].updatedAt).getTime();
+      const current = new Date(seen[i].updatedAt).getTime();
+      assert.ok(previous > current || (previous === current && String(seen[i - 1].id) > String(seen[i].id)),
+        `mail ${i} is out of order`);
+    }
+  });
+
+  test('the last page is short and the page after it is empty', async () => {
+    const all = await getMailsForUser(username, null, null, null, MAILS, null);
+    assert.equal(all.length, MAILS);
+
+    const fullPages = Math.floor(MAILS / PAGE);
+    const last = await getMailsForUser(username, null, null, null, PAGE,
+      cursorOf(all[fullPages * PAGE - 1]));
+    assert.equal(last.length, MAILS % PAGE);
+    assert.deepEqual(last.map((m) => String(m.id)), all.slice(fullPages * PAGE).map((m) => String(m.id)));
+
+    const empty = await getMailsForUser(username, null, null, null, PAGE, cursorOf(all[MAILS - 1]));
+    assert.equal(empty.length, 0);
+  });
+
+  after(async () => {
+    await Mail.deleteMany({ from: username });
+    await mongoose.connection.close();
+  });
+});
@@ -0,0 +1,205 @@
+/**
+ * Compact binary encoding for mail and label lists.
+ * Sent instead of JSON when the client lists COMPACT_TYPE in its Accept header.
+ * Carries the same fields as the JSON DTOs the Android client reads.
+ *
+ * Layout (all integers are unsigned LEB128 varints, strings are varint length + UTF-8):
+ *   magic "BMC" | version byte | kind (0 = mails, 1 = labels)
+ *   string table: count, strings   (shared values: senders, recipients, label ids)
+ *   records: count, then per record a presence bitmask followed by the present fields
+ */
+
+const COMPACT_TYPE = 'application/x-bmail-compact';
+const VERSION = 1;
+const KIND_MAILS = 0;
+const KIND_LABELS = 1;
+
+// mail presence bits, in field order
+const M_ID = 1 << 0;
+const M_TITLE = 1 << 1;
+const M_BODY = 1 << 2;
+const M_SNIPPET = 1 << 3;
+const M_FROM = 1 << 4;
+const M_TO = 1 << 5;
+const M_DRAFT = 1 << 6;
+const M_DRAFT_VALUE = 1 << 7;
+const M_LABELS = 1 << 8;
+const M_UPDATED_AT = 1 << 9;
+const M_USER_IMAGE = 1 << 10;
+
+// label presence bits, in field order
+const L_ID = 1 << 0;
+const L_NAME = 1 << 1;
+const L_DEFAULT = 1 << 2;
+const L_ATTACHABLE = 1 << 3;
+const L_MAIL_IDS = 1 << 4;
+
+/** Growable byte buffer with varint and string writers. */
+class Writer {
+  constructor() {
+    this.buf = Buffer.alloc(1024);
+    this.len = 0;
+  }
+
+  ensure(n) {
+    if (this.len + n <= this.buf.length) return;
+    const next = Buffer.alloc(Math.max(this.buf.length * 2, this.len + n));
+    this.buf.copy(next, 0, 0, this.len);
+    this.buf = next;
+  }
+
+  byte(b) {
+    this.ensure(1);
+    this.buf[this.len++] = b;
+  }
+
+  varint(n) {
+    let v = Math.max(0, Math.floor(Number(n) || 0));
+    while (v >= 0x80) {
+      this.byte((v % 0x80) | 0x80);
+      v = Math.floor(v / 0x80);
+    }
+    this.byte(v);
+  }
+
+  string(s) {
+    const str = String(s);
+    const n = Buffer.byteLength(str);
+    this.varint(n);
+    this.ensure(n);
+    this.buf.write(str, this.len);
+    this.len += n;
+  }
+
+  toBuffer() {
+    return this.buf.subarray(0, this.len);
+  }
+}
+
+/** Interns repeated strings into the table written ahead of the records. */
+class StringTable {
+  constructor() {
+    this.index = new Map();
+    this.values = [];
+  }
+
+  ref(s) {
+    const str = String(s);
+    let i = this.index.get(str);
+    if (i === undefined) {
+      i = this.values.length;
+      this.index.set(str, i);
+      this.values.push(str);
+    }
+    return i;
+  }
+}
+
+const has = (v) => v !== undefined && v !== null;
+
+/**
+ * Encode a list of mail DTOs.
+ *
+ * @param {object[]} mails - Output of filterMailForOutput / projectMailForList.
+ * @returns {Buffer} Encoded payload.
+ */
+function encodeMailList(mails) {
+  const table = new StringTable();
+  const body = new Writer();
+  body.varint(mails.length);
+  for (const m of mails) {
+    let bits = 0;
+    if (has(m.id)) bits |= M_ID;
+    if (has(m.title)) bits |= M_TITLE;
+    if (has(m.body)) bits |= M_BODY;
+    if (has(m.snippet)) bits |= M_SNIPPET;
+    if (has(m.from)) bits |= M_FROM;
+    if (Array.isArray(m.to)) bits |= M_TO;
+    if (has(m.draft)) bits |= M_DRAFT | (m.draft ? M_DRAFT_VALUE : 0);
+    if (Array.isArray(m.labels)) bits |= M_LABELS;
+    if (has(m.updatedAt)) bits |= M_UPDATED_AT;
+    if (has(m.userImage)) bits |= M_USER_IMAGE;
+
+    body.varint(bits);
+    if (bits & M_ID) body.string(m.id);
+    if (bits & M_TITLE) body.string(m.title);
+    if (bits & M_BODY) body.string(m.body);
+    if (bits & M_SNIPPET) body.string(m.snippet);
+    if (bits & M_FROM) body.varint(table.ref(m.from));
+    if (bits & M_TO) {
+      body.varint(m.to.length);
+      m.to.forEach((t) => body.varint(table.ref(t)));
+    }
+    if (bits & M_LABELS) {
+      body.varint(m.labels.length);
+      m.labels.forEach((l) => body.varint(table.ref(l)));
+    }
+    if (bits & M_UPDATED_AT) body.varint(new Date(m.updatedAt).getTime());
+    if (bits & M_USER_IMAGE) body.string(m.userImage);
+  }
+  return frame(KIND_MAILS, table, body);
+}
+
+/**
+ * Encode a list of label DTOs.
+ *
+ * @param {object[]} labels - Output of toLabelDTO.
+ * @returns {Buffer} Encoded payload.
+ */
+function encodeLabelList(labels) {
+  const table = new StringTable();
+  const body = new Writer();
+  body.varint(labels.length);
+  for (const l of labels) {
+    let bits = 0;
+    if (has(l.id)) bits |= L_ID;
+    if (has(l.name)) bits |= L_NAME;
+    if (l.isDefault) bits |= L_DEFAULT;
+    if (l.isAttachable) bits |= L_ATTACHABLE;
+    if (Array.isArray(l.mailIds)) bits |= L_MAIL_IDS;
+
+    body.varint(bits);
+    if (bits & L_ID) body.string(l.id);
+    if (bits & L_NAME) body.string(l.name);
+    if (bits & L_MAIL_IDS) {
+      body.varint(l.mailIds.length);
+      l.mailIds.forEach((id) => body.string(id));
+    }
+  }
+  return frame(KIND_LABELS, table, body);
+}
+
+function frame(kind, table, body) {
+  const head = new Writer();
+  head.byte(0x42); // B
+  head.byte(0x4d); // M
+  head.byte(0x43); // C
+  head.byte(VERSION);
+  head.byte(kind);
+  head.varint(table.values.length);
+  table.values.forEach((s) => head.string(s));
+  return Buffer.concat([head.toBuffer(), body.toBuffer()]);
+}
+
+/**
+ * Send a list as compact binary when the client prefers it, JSON otherwise.
+ *
+ * @param {import('express').Request} req - Used for Accept negotiation.
+ * @param {import('express').Response} res - Sends 200.
+ * @param {object[]} list - DTOs to send.
+ * @param {(list: object[]) => Buffer} encode - encodeMailList or encodeLabelList.
+ */
+function sendList(req, res, list, encode) {
+  res.vary('Accept');
+  if (req.accepts(['application/json', COMPACT_TYPE]) === COMPACT_TYPE) {
+    return res.status(200).type(COMPACT_TYPE).send(encode(list));
+  }
+  return res.status(200).json(list);
+}
+
+module.exports = {
+  COMPACT_TYPE,
+  encodeMailList,
+  encodeLabelList,
+  sendList,
+};